@@ -0,0 +1,99 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd.benchmarks;
+
+import lindenlab.llsd.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A region statistics body received and sent in chunks, as an async HTTP
+ * server would, compared with the blocking stream forms.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AsyncBenchmark {
+    /**
+     * Discards everything written to it.
+     */
+    private static final OutputStream SINK = new OutputStream() {
+        @Override
+        public void write(final int b) {
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+        }
+    };
+
+    @Param({"100"})
+    public int regions;
+
+    @Param({"16384"})
+    public int chunkSize;
+
+    private byte[] xml;
+    private ByteBuffer[] chunks;
+    private LLSD llsd;
+    private LLSDParser parser;
+    private LLSDXMLSerialiser serialiser;
+    private ByteBuffer target;
+
+    @Setup
+    public void setUp() throws Exception {
+        xml = Documents.regionStats(regions).getBytes("UTF-8");
+        chunks = new ByteBuffer[(xml.length + chunkSize - 1) / chunkSize];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = ByteBuffer.wrap(xml, i * chunkSize, Math.min(chunkSize, xml.length - i * chunkSize)).slice();
+        }
+        parser = new LLSDParser();
+        llsd = parser.parse(new ByteArrayInputStream(xml));
+        serialiser = new LLSDXMLSerialiser();
+        target = ByteBuffer.allocateDirect(chunkSize);
+    }
+
+    @Benchmark
+    public LLSD parseStream() throws Exception {
+        return parser.parse(new ByteArrayInputStream(xml));
+    }
+
+    @Benchmark
+    public LLSD pushParse() throws Exception {
+        final LLSDPushParser push = new LLSDPushParser(parser);
+
+        for (ByteBuffer chunk: chunks) {
+            chunk.rewind();
+            push.accept(chunk);
+        }
+        return push.complete().get();
+    }
+
+    @Benchmark
+    public void serialiseStream() throws Exception {
+        serialiser.serialise(llsd, SINK);
+    }
+
+    @Benchmark
+    public long serialiseChannel() throws Exception {
+        final LLSDXMLChannel channel = serialiser.channel(llsd, chunkSize);
+        long length = 0;
+
+        while (channel.read(target) >= 0) {
+            length += target.position();
+            target.clear();
+        }
+        return length;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd.benchmarks;
+
+import lindenlab.llsd.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scaling of LLSDBatch with the number of workers: a batch of small region
+ * statistics documents parsed and serialised, and one document whose root
+ * array holds many regions parsed by splitting the array. Compare the scores
+ * for each worker count with workers = 1.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchBenchmark {
+    @Param({"1", "2", "4", "8"})
+    public int workers;
+
+    @Param({"2000"})
+    public int documents;
+
+    private ForkJoinPool pool;
+    private LLSDBatch batch;
+    private List<ByteBuffer> batchDocuments;
+    private List<LLSD> parsed;
+    private ByteBuffer array;
+
+    @Setup
+    public void setUp() throws Exception {
+        final byte[] region = Documents.regionStats(1).getBytes("UTF-8");
+
+        pool = new ForkJoinPool(workers);
+        batch = new LLSDBatch(pool);
+        batchDocuments = new ArrayList<ByteBuffer>();
+        for (int i = 0; i < documents; i++) {
+            batchDocuments.add(ByteBuffer.wrap(region));
+        }
+        parsed = batch.parse(batchDocuments);
+        array = ByteBuffer.wrap(Documents.regionStats(documents).getBytes("UTF-8"));
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public List<LLSD> parseBatch() throws Exception {
+        return batch.parse(batchDocuments);
+    }
+
+    @Benchmark
+    public List<ByteBuffer> serialiseBatch() throws Exception {
+        return batch.serialise(parsed);
+    }
+
+    @Benchmark
+    public LLSD parseArray() throws Exception {
+        return batch.parseArray(array);
+    }
+}
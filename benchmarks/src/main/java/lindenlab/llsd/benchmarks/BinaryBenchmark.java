@@ -0,0 +1,98 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd.benchmarks;
+
+import lindenlab.llsd.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single large &lt;binary&gt; value, read whole and streamed, and written
+ * from an array and from a stream. Run with "-prof gc"; the streamed forms
+ * should allocate a small fixed amount rather than multiples of the value.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BinaryBenchmark {
+    /**
+     * Discards everything written to it.
+     */
+    private static final OutputStream SINK = new OutputStream() {
+        @Override
+        public void write(final int b) {
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+        }
+    };
+
+    @Param({"1048576"})
+    public int size;
+
+    private byte[] value;
+    private byte[] xml;
+    private ByteBuffer output;
+    private LLSDStaxParser staxParser;
+    private LLSDXMLSerialiser xmlSerialiser;
+
+    @Setup
+    public void setUp() throws Exception {
+        value = new byte[size];
+        new Random(10).nextBytes(value);
+        xml = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<llsd>\n<binary encoding=\"base64\">"
+            + Base64.getEncoder().encodeToString(value) + "</binary>\n</llsd>\n").getBytes("UTF-8");
+        output = ByteBuffer.allocate(xml.length + 1024);
+        staxParser = new LLSDStaxParser();
+        xmlSerialiser = new LLSDXMLSerialiser();
+    }
+
+    @Benchmark
+    public byte[] readWhole() throws Exception {
+        final LLSDXMLReader reader = staxParser.reader(new ByteArrayInputStream(xml));
+
+        reader.next();
+        return reader.getBinary();
+    }
+
+    @Benchmark
+    public long readStreamed() throws Exception {
+        final LLSDXMLReader reader = staxParser.reader(new ByteArrayInputStream(xml));
+
+        reader.next();
+        return reader.getBinary(SINK);
+    }
+
+    @Benchmark
+    public long lazyStreamed() throws Exception {
+        return new LLSDLazyDocument(xml).getBinary(SINK);
+    }
+
+    @Benchmark
+    public int writeArray() throws Exception {
+        output.clear();
+        xmlSerialiser.serialise(new LLSD(value), output);
+        return output.position();
+    }
+
+    @Benchmark
+    public int writeStream() throws Exception {
+        output.clear();
+        xmlSerialiser.serialise(new LLSD(new ByteArrayInputStream(value)), output);
+        return output.position();
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd.benchmarks;
+
+import lindenlab.llsd.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Region statistics written normally and in canonical form, and hashed as a
+ * response cache would: by streaming the canonical form through
+ * MurmurHash3, and by digesting the canonical text with SHA-256.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CanonicalBenchmark {
+    @Param({"100"})
+    public int regions;
+
+    private LLSD llsd;
+    private LLSDXMLSerialiser serialiser;
+    private MessageDigest sha256;
+
+    @Setup
+    public void setUp() throws Exception {
+        llsd = new LLSDParser().parse(new ByteArrayInputStream(Documents.regionStats(regions).getBytes("UTF-8")));
+        serialiser = new LLSDXMLSerialiser();
+        sha256 = MessageDigest.getInstance("SHA-256");
+    }
+
+    @Benchmark
+    public ByteBuffer serialise() throws Exception {
+        return serialiser.serialise(llsd);
+    }
+
+    @Benchmark
+    public ByteBuffer serialiseCanonical() throws Exception {
+        return serialiser.serialiseCanonical(llsd);
+    }
+
+    @Benchmark
+    public LLSDHash hash() throws Exception {
+        return serialiser.hash(llsd);
+    }
+
+    @Benchmark
+    public byte[] digestCanonical() throws Exception {
+        sha256.update(serialiser.serialiseCanonical(llsd));
+        return sha256.digest();
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd.benchmarks;
+
+import lindenlab.llsd.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Region statistics documents, which repeat the same keys in every map,
+ * parsed into HashMaps and into compact maps with interned keys, and read
+ * back by key.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CompactMapBenchmark {
+    @Param({"100"})
+    public int regions;
+
+    private byte[] xml;
+    private LLSDParser plainParser;
+    private LLSDParser compactParser;
+    private List<Map<String, Object>> plainContent;
+    private List<Map<String, Object>> compactContent;
+
+    @Setup
+    public void setUp() throws Exception {
+        xml = Documents.regionStats(regions).getBytes("UTF-8");
+        plainParser = new LLSDParser();
+        compactParser = new LLSDParser();
+        compactParser.setCompactMaps(true);
+        plainContent = (List<Map<String, Object>>) plainParser.parse(ByteBuffer.wrap(xml)).getContent();
+        compactContent = (List<Map<String, Object>>) compactParser.parse(ByteBuffer.wrap(xml)).getContent();
+    }
+
+    @Benchmark
+    public LLSD parseHashMaps() throws Exception {
+        return plainParser.parse(new ByteArrayInputStream(xml));
+    }
+
+    @Benchmark
+    public LLSD parseCompactMaps() throws Exception {
+        return compactParser.parse(new ByteArrayInputStream(xml));
+    }
+
+    @Benchmark
+    public LLSD parseBufferHashMaps() throws Exception {
+        return plainParser.parse(ByteBuffer.wrap(xml));
+    }
+
+    @Benchmark
+    public LLSD parseBufferCompactMaps() throws Exception {
+        return compactParser.parse(ByteBuffer.wrap(xml));
+    }
+
+    @Benchmark
+    public double getHashMaps() {
+        return get(plainContent);
+    }
+
+    @Benchmark
+    public double getCompactMaps() {
+        return get(compactContent);
+    }
+
+    /**
+     * Reads the last statistic of each region, the worst case for a
+     * compact map's linear search.
+     */
+    private static double get(final List<Map<String, Object>> content) {
+        double total = 0;
+
+        for (Map<String, Object> region: content) {
+            final Map<String, Object> stats = (Map<String, Object>) region.get("simulator statistics");
+
+            total += (Double) stats.get("stat 20");
+        }
+        return total;
+    }
+}
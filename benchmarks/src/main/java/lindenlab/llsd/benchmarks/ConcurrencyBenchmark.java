@@ -0,0 +1,76 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd.benchmarks;
+
+import lindenlab.llsd.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of one shared parser and serialiser instance used from many
+ * threads at once. Run with increasing thread counts, for example
+ * "-t 1", "-t 4" and "-t max"; the score should grow with the number of
+ * cores, since nothing is locked on the parse or serialise path.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConcurrencyBenchmark {
+    @Param({"10"})
+    public int regions;
+
+    private byte[] xml;
+    private LLSD llsd;
+    private LLSDParser domParser;
+    private LLSDStaxParser staxParser;
+    private LLSDXMLSerialiser xmlSerialiser;
+
+    @Setup
+    public void setUp() throws Exception {
+        xml = Documents.regionStats(regions).getBytes("UTF-8");
+        domParser = new LLSDParser();
+        staxParser = new LLSDStaxParser();
+        xmlSerialiser = new LLSDXMLSerialiser();
+        llsd = staxParser.parse(new ByteArrayInputStream(xml));
+    }
+
+    /**
+     * Per-thread output, so that only the serialiser itself is shared.
+     */
+    @State(Scope.Thread)
+    public static class Output {
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    }
+
+    @Benchmark
+    public LLSD parseDOM() throws Exception {
+        return domParser.parse(new ByteArrayInputStream(xml));
+    }
+
+    @Benchmark
+    public LLSD parseStax() throws Exception {
+        return staxParser.parse(new ByteArrayInputStream(xml));
+    }
+
+    @Benchmark
+    public String serialiseXML() {
+        return llsd.toString();
+    }
+
+    @Benchmark
+    public int serialiseXMLBytes(final Output output) throws Exception {
+        output.stream.reset();
+        xmlSerialiser.serialise(llsd, output.stream);
+        return output.stream.size();
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd.benchmarks;
+
+import lindenlab.llsd.LLSD;
+import lindenlab.llsd.LLSDParser;
+import lindenlab.llsd.LLSDValue;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The original DOM parser and Writer-based serialiser over payloads of
+ * different shapes. Run with "-prof gc" to see allocation alongside ops/s:
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar CorpusBenchmark -prof gc
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CorpusBenchmark {
+    @Param({"simStats", "deepNesting", "uuidArray", "binaryHeavy", "escapeHeavy"})
+    public String corpus;
+
+    private byte[] document;
+    private LLSD llsd;
+    private LLSD tree;
+    private LLSDParser parser;
+    private StringWriter writer;
+
+    /**
+     * Every key and string value in the corpus, as passed to encodeXML.
+     */
+    private List<String> text;
+
+    @Setup
+    public void setUp() throws Exception {
+        document = Documents.corpus(corpus).getBytes("UTF-8");
+        parser = new LLSDParser();
+        llsd = parser.parse(new ByteArrayInputStream(document));
+        tree = new LLSD(parser.parseValue(new ByteArrayInputStream(document)));
+        writer = new StringWriter(document.length);
+        text = new ArrayList<String>();
+        collectText(llsd.getContent(), text);
+    }
+
+    private static void collectText(final Object value, final List<String> text) {
+        if (value instanceof Map) {
+            for (Map.Entry<String, Object> entry: ((Map<String, Object>) value).entrySet()) {
+                text.add(entry.getKey());
+                collectText(entry.getValue(), text);
+            }
+        } else if (value instanceof List) {
+            for (Object item: (List<Object>) value) {
+                collectText(item, text);
+            }
+        } else if (value instanceof String) {
+            text.add((String) value);
+        }
+    }
+
+    @Benchmark
+    public LLSD parse() throws Exception {
+        return parser.parse(new ByteArrayInputStream(document));
+    }
+
+    @Benchmark
+    public LLSDValue parseValue() throws Exception {
+        return parser.parseValue(new ByteArrayInputStream(document));
+    }
+
+    @Benchmark
+    public int serialise() throws Exception {
+        writer.getBuffer().setLength(0);
+        llsd.serialise(writer, "UTF-8");
+        return writer.getBuffer().length();
+    }
+
+    @Benchmark
+    public int serialiseValue() throws Exception {
+        writer.getBuffer().setLength(0);
+        tree.serialise(writer, "UTF-8");
+        return writer.getBuffer().length();
+    }
+
+    @Benchmark
+    public String serialiseToString() {
+        return llsd.toString();
+    }
+
+    @Benchmark
+    public void encodeXML(final Blackhole blackhole) {
+        for (String value: text) {
+            blackhole.consume(LLSD.encodeXML(value));
+        }
+    }
+
+    @Benchmark
+    public LLSD roundTrip() throws Exception {
+        return parser.parse(new ByteArrayInputStream(llsd.toString().getBytes("UTF-8")));
+    }
+}
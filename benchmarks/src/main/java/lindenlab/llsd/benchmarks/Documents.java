@@ -0,0 +1,183 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd.benchmarks;
+
+import java.util.Base64;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Synthetic LLSD documents shared by the benchmarks.
+ */
+final class Documents {
+    /**
+     * The simulator statistics map from the original LLSDTest.
+     */
+    static final String SIM_STATS = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+        + "<llsd>\n"
+        + "<map>\n"
+        + "  <key>region_id</key>\n"
+        + "    <uuid>67153d5b-3659-afb4-8510-adda2c034649</uuid>\n"
+        + "  <key>scale</key>\n"
+        + "    <string>one minute</string>\n"
+        + "  <key>simulator statistics</key>\n"
+        + "  <map>\n"
+        + "    <key>time dilation</key><real>0.9878624</real>\n"
+        + "    <key>sim fps</key><real>44.38898</real>\n"
+        + "    <key>pysics fps</key><real>44.38906</real>\n"
+        + "    <key>agent updates per second</key><real>nan</real>\n"
+        + "    <key>lsl instructions per second</key><real>0</real>\n"
+        + "    <key>total task count</key><real>4</real>\n"
+        + "    <key>active task count</key><real>0</real>\n"
+        + "    <key>active script count</key><real>4</real>\n"
+        + "    <key>main agent count</key><real>0</real>\n"
+        + "    <key>child agent count</key><real>0</real>\n"
+        + "    <key>inbound packets per second</key><real>1.228283</real>\n"
+        + "    <key>outbound packets per second</key><real>1.277508</real>\n"
+        + "    <key>pending downloads</key><real>0</real>\n"
+        + "    <key>pending uploads</key><real>0.0001096525</real>\n"
+        + "    <key>frame ms</key><real>0.7757886</real>\n"
+        + "    <key>net ms</key><real>0.3152919</real>\n"
+        + "    <key>sim other ms</key><real>0.1826937</real>\n"
+        + "    <key>sim physics ms</key><real>0.04323055</real>\n"
+        + "    <key>agent ms</key><real>0.01599029</real>\n"
+        + "    <key>image ms</key><real>0.01865955</real>\n"
+        + "    <key>script ms</key><real>0.1338836</real>\n"
+        + "  </map>\n"
+        + "</map>\n"
+        + "</llsd>";
+
+    private Documents() {
+    }
+
+    /**
+     * Looks up a corpus by name, for use as a benchmark parameter.
+     */
+    static String corpus(final String name) {
+        switch (name) {
+        case "simStats":
+            return SIM_STATS;
+        case "deepNesting":
+            return deepNesting(200);
+        case "uuidArray":
+            return uuidArray(10000);
+        case "binaryHeavy":
+            return binaryHeavy(64, 4096);
+        case "escapeHeavy":
+            return escapeHeavy(1000);
+        default:
+            throw new IllegalArgumentException("Unknown corpus \"" + name + "\".");
+        }
+    }
+
+    /**
+     * Maps and arrays nested alternately to the given depth, each level
+     * holding a couple of scalars beside the next level down.
+     */
+    static String deepNesting(final int depth) {
+        final StringBuilder builder = new StringBuilder();
+
+        builder.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<llsd>\n");
+        for (int level = 0; level < depth; level++) {
+            if ((level % 2) == 0) {
+                builder.append("<map><key>level</key><integer>").append(level)
+                    .append("</integer><key>name</key><string>level ").append(level)
+                    .append("</string><key>child</key>");
+            } else {
+                builder.append("<array><integer>").append(level)
+                    .append("</integer><real>").append(level / 3.0).append("</real>");
+            }
+        }
+        for (int level = depth - 1; level >= 0; level--) {
+            builder.append((level % 2) == 0 ? "</map>" : "</array>");
+        }
+        builder.append("\n</llsd>\n");
+
+        return builder.toString();
+    }
+
+    /**
+     * A single wide array of UUIDs.
+     */
+    static String uuidArray(final int count) {
+        final Random random = new Random(count);
+        final StringBuilder builder = new StringBuilder();
+
+        builder.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<llsd>\n<array>\n");
+        for (int i = 0; i < count; i++) {
+            builder.append("<uuid>").append(new UUID(random.nextLong(), random.nextLong()))
+                .append("</uuid>\n");
+        }
+        builder.append("</array>\n</llsd>\n");
+
+        return builder.toString();
+    }
+
+    /**
+     * Maps holding base64 binary values of the given size, like asset or
+     * texture transfers.
+     */
+    static String binaryHeavy(final int count, final int size) {
+        final Random random = new Random(count);
+        final byte[] data = new byte[size];
+        final StringBuilder builder = new StringBuilder();
+
+        builder.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<llsd>\n<array>\n");
+        for (int i = 0; i < count; i++) {
+            random.nextBytes(data);
+            builder.append("<map><key>asset_id</key><uuid>").append(new UUID(random.nextLong(), random.nextLong()))
+                .append("</uuid><key>data</key><binary encoding=\"base64\">")
+                .append(Base64.getEncoder().encodeToString(data)).append("</binary></map>\n");
+        }
+        builder.append("</array>\n</llsd>\n");
+
+        return builder.toString();
+    }
+
+    /**
+     * Chat-like strings full of characters which must be escaped in XML, and
+     * plenty of non-ASCII text.
+     */
+    static String escapeHeavy(final int count) {
+        final StringBuilder builder = new StringBuilder();
+
+        builder.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<llsd>\n<map>\n");
+        for (int i = 0; i < count; i++) {
+            builder.append("<key>message-").append(i).append(" &lt;&quot;from&quot;&gt;</key><string>")
+                .append("Tom &amp; Jerry -- \"quoted\" &lt;b&gt;bold&lt;/b&gt; caf\u00e9 \u4e2d\u6587 -")
+                .append(i).append("- &lt;&gt;&amp;</string>\n");
+        }
+        builder.append("</map>\n</llsd>\n");
+
+        return builder.toString();
+    }
+
+    /**
+     * An array of region statistics maps, each shaped like the simulator
+     * statistics in the parser tests.
+     */
+    static String regionStats(final int regions) {
+        final StringBuilder builder = new StringBuilder();
+
+        builder.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<llsd>\n<array>\n");
+        for (int i = 0; i < regions; i++) {
+            builder.append("<map>\n")
+                .append("  <key>region_id</key><uuid>67153d5b-3659-afb4-8510-")
+                .append(String.format("%012x", i)).append("</uuid>\n")
+                .append("  <key>scale</key><string>one minute</string>\n")
+                .append("  <key>simulator statistics</key>\n  <map>\n");
+            for (int stat = 0; stat < 21; stat++) {
+                builder.append("    <key>stat ").append(stat).append("</key><real>")
+                    .append(i * 0.25 + stat / 7.0).append("</real>\n");
+            }
+            builder.append("  </map>\n</map>\n");
+        }
+        builder.append("</array>\n</llsd>\n");
+
+        return builder.toString();
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd.benchmarks;
+
+import lindenlab.llsd.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing a cached region statistics file from disk, through an
+ * InputStream as before and from the mapped file.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FileBenchmark {
+    @Param({"10", "100"})
+    public int regions;
+
+    private Path file;
+    private LLSDParser parser;
+    private LLSDStaxParser staxParser;
+
+    @Setup
+    public void setUp() throws Exception {
+        file = Files.createTempFile("regions", ".xml");
+        Files.write(file, Documents.regionStats(regions).getBytes("UTF-8"));
+        parser = new LLSDParser();
+        staxParser = new LLSDStaxParser();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        Files.delete(file);
+    }
+
+    @Benchmark
+    public LLSD parseStream() throws Exception {
+        try (InputStream input = Files.newInputStream(file)) {
+            return parser.parse(input);
+        }
+    }
+
+    @Benchmark
+    public LLSD parsePath() throws Exception {
+        return parser.parse(file);
+    }
+
+    @Benchmark
+    public LLSDValue parseValuePath() throws Exception {
+        return parser.parseValue(file);
+    }
+
+    @Benchmark
+    public LLSD readerPath() throws Exception {
+        try (LLSDReader reader = staxParser.reader(file)) {
+            return reader.readDocument();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd.benchmarks;
+
+import lindenlab.llsd.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses and serialises the same content in the XML, binary, notation and
+ * JSON formats.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FormatBenchmark {
+    @Param({"100"})
+    public int regions;
+
+    private LLSD llsd;
+    private byte[] xml;
+    private ByteBuffer binary;
+    private ByteBuffer notation;
+    private ByteBuffer json;
+    private LLSDStaxParser staxParser;
+    private LLSDBinaryParser binaryParser;
+    private LLSDNotationParser notationParser;
+    private LLSDJSONParser jsonParser;
+    private LLSDBinarySerialiser binarySerialiser;
+    private LLSDNotationSerialiser notationSerialiser;
+    private LLSDJSONSerialiser jsonSerialiser;
+    private LLSDXMLSerialiser xmlSerialiser;
+    private ByteArrayOutputStream output;
+
+    @Setup
+    public void setUp() throws Exception {
+        xml = Documents.regionStats(regions).getBytes("UTF-8");
+        staxParser = new LLSDStaxParser();
+        binaryParser = new LLSDBinaryParser();
+        notationParser = new LLSDNotationParser();
+        jsonParser = new LLSDJSONParser(true);
+        binarySerialiser = new LLSDBinarySerialiser();
+        notationSerialiser = new LLSDNotationSerialiser();
+        jsonSerialiser = new LLSDJSONSerialiser(true);
+        xmlSerialiser = new LLSDXMLSerialiser();
+        output = new ByteArrayOutputStream(xml.length);
+
+        llsd = staxParser.parse(new ByteArrayInputStream(xml));
+        binary = binarySerialiser.serialise(llsd);
+        notation = notationSerialiser.serialise(llsd);
+        json = jsonSerialiser.serialise(llsd);
+    }
+
+    @Benchmark
+    public LLSD parseXML() throws Exception {
+        return staxParser.parse(new ByteArrayInputStream(xml));
+    }
+
+    @Benchmark
+    public LLSD parseBinary() throws Exception {
+        return binaryParser.parse(binary);
+    }
+
+    @Benchmark
+    public LLSD parseNotation() throws Exception {
+        return notationParser.parse(notation);
+    }
+
+    @Benchmark
+    public LLSD parseJSON() throws Exception {
+        return jsonParser.parse(json);
+    }
+
+    @Benchmark
+    public String serialiseXML() {
+        return llsd.toString();
+    }
+
+    @Benchmark
+    public int serialiseXMLWriter() throws Exception {
+        final Writer writer = new OutputStreamWriter(output, "UTF-8");
+
+        output.reset();
+        llsd.serialise(writer, "UTF-8");
+        writer.flush();
+        return output.size();
+    }
+
+    @Benchmark
+    public int serialiseXMLBytes() throws Exception {
+        output.reset();
+        xmlSerialiser.serialise(llsd, output);
+        return output.size();
+    }
+
+    @Benchmark
+    public ByteBuffer serialiseBinary() throws Exception {
+        return binarySerialiser.serialise(llsd);
+    }
+
+    @Benchmark
+    public ByteBuffer serialiseNotation() throws Exception {
+        return notationSerialiser.serialise(llsd);
+    }
+
+    @Benchmark
+    public ByteBuffer serialiseJSON() throws Exception {
+        return jsonSerialiser.serialise(llsd);
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd.benchmarks;
+
+import lindenlab.llsd.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An event queue of small messages, in messages per second: written to and
+ * read from a framed stream in each format, against serialising and parsing
+ * each message as a compact XML document of its own.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FrameBenchmark {
+    private static final int MESSAGES = 1000;
+
+    @Param({"COMPACT_XML", "BINARY", "JSON"})
+    public LLSDFormat format;
+
+    private final List<LLSD> messages = new ArrayList<LLSD>();
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    private byte[] frames;
+    private List<ByteBuffer> documents;
+    private LLSDXMLSerialiser serialiser;
+    private LLSDParser parser;
+
+    @Setup
+    public void setUp() throws Exception {
+        serialiser = new LLSDXMLSerialiser(LLSDXMLOptions.COMPACT);
+        parser = new LLSDParser();
+        documents = new ArrayList<ByteBuffer>();
+        for (int i = 0; i < MESSAGES; i++) {
+            final Map<String, Object> body = new HashMap<String, Object>();
+            final Map<String, Object> message = new HashMap<String, Object>();
+
+            body.put("FromName", "Resident " + i);
+            body.put("SourceID", new UUID(i, i));
+            body.put("Message", "Hello from message " + i);
+            body.put("Position", Arrays.asList((Object) 128.0, 64.5, 22.25));
+            message.put("message", "ChatFromSimulator");
+            message.put("sequence", i);
+            message.put("body", body);
+            messages.add(new LLSD(message));
+            documents.add(serialiser.serialise(messages.get(i)));
+        }
+        frames = writeFramed().toByteArray();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public ByteArrayOutputStream writeFramed() throws Exception {
+        final LLSDFrameWriter writer;
+
+        output.reset();
+        writer = new LLSDFrameWriter(output, format);
+        for (LLSD message: messages) {
+            writer.write(message);
+        }
+        writer.close();
+        return output;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public int readFramed() throws Exception {
+        final LLSDFrameReader reader = new LLSDFrameReader(new ByteArrayInputStream(frames));
+        int count = 0;
+
+        while (null != reader.next()) {
+            count++;
+        }
+        return count;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public ByteArrayOutputStream writeDocuments() throws Exception {
+        output.reset();
+        for (LLSD message: messages) {
+            serialiser.serialise(message, output);
+        }
+        return output;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public int readDocuments() throws Exception {
+        int count = 0;
+
+        for (ByteBuffer document: documents) {
+            if (null != parser.parse(document)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
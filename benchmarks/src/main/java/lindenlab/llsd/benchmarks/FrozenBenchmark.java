@@ -0,0 +1,71 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd.benchmarks;
+
+import lindenlab.llsd.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Region statistics sent to many recipients: serialised afresh each time,
+ * and handed out from a frozen document's cached encodings. The second pair
+ * changes one entry of the root map before encoding, re-serialising the
+ * whole document against re-encoding only what changed.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FrozenBenchmark {
+    @Param({"100"})
+    public int regions;
+
+    private LLSD llsd;
+    private LLSDFrozen frozen;
+    private LLSDXMLSerialiser serialiser;
+    private int sequence = 0;
+
+    @Setup
+    public void setUp() throws Exception {
+        // A root map, so that one entry can be changed.
+        llsd = new LLSD(Collections.singletonMap("regions",
+            new LLSDParser().parse(new ByteArrayInputStream(Documents.regionStats(regions).getBytes("UTF-8"))).getContent()));
+        frozen = llsd.freeze(new LLSDEncodingCache(LLSDEncodingCache.DEFAULT_BUDGET));
+        serialiser = new LLSDXMLSerialiser();
+    }
+
+    @Benchmark
+    public ByteBuffer serialise() throws Exception {
+        return serialiser.serialise(llsd);
+    }
+
+    @Benchmark
+    public ByteBuffer encoded() throws Exception {
+        return frozen.encoded(LLSDFormat.XML);
+    }
+
+    @Benchmark
+    public ByteBuffer serialiseChanged() throws Exception {
+        final Map<String, Object> root = new HashMap<String, Object>((Map<String, Object>) llsd.getContent());
+
+        root.put("sequence", sequence++);
+        return serialiser.serialise(new LLSD(root));
+    }
+
+    @Benchmark
+    public ByteBuffer encodedChanged() throws Exception {
+        return frozen.with("sequence", sequence++).encoded(LLSDFormat.XML);
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd.benchmarks;
+
+import lindenlab.llsd.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Region statistics serialised in the default layout, as before
+ * LLSDXMLOptions, compact and pretty. The size of each document is printed
+ * when the benchmark is set up, since it does not change between
+ * operations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LayoutBenchmark {
+    @Param({"100"})
+    public int regions;
+
+    private LLSD llsd;
+    private LLSDXMLSerialiser standard;
+    private LLSDXMLSerialiser compact;
+    private LLSDXMLSerialiser pretty;
+
+    @Setup
+    public void setUp() throws Exception {
+        llsd = new LLSDParser().parse(new ByteArrayInputStream(Documents.regionStats(regions).getBytes("UTF-8")));
+        standard = new LLSDXMLSerialiser();
+        compact = new LLSDXMLSerialiser(LLSDXMLOptions.COMPACT);
+        pretty = new LLSDXMLSerialiser(LLSDXMLOptions.PRETTY);
+        System.out.println("bytes/op: default " + standard.serialise(llsd).remaining()
+            + ", compact " + compact.serialise(llsd).remaining()
+            + ", pretty " + pretty.serialise(llsd).remaining());
+    }
+
+    @Benchmark
+    public ByteBuffer serialiseDefault() throws Exception {
+        return standard.serialise(llsd);
+    }
+
+    @Benchmark
+    public ByteBuffer serialiseCompact() throws Exception {
+        return compact.serialise(llsd);
+    }
+
+    @Benchmark
+    public ByteBuffer serialisePretty() throws Exception {
+        return pretty.serialise(llsd);
+    }
+}
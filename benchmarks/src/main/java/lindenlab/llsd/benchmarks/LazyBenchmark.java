@@ -0,0 +1,56 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd.benchmarks;
+
+import lindenlab.llsd.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading one field from the last region of a region statistics array,
+ * by full parse and lookup against a lazy document. The lazy benchmarks
+ * wrap the bytes afresh each time, so they include indexing the path.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LazyBenchmark {
+    @Param({"1", "10", "100"})
+    public int regions;
+
+    private byte[] xml;
+    private String last;
+    private LLSDStaxParser staxParser;
+
+    @Setup
+    public void setUp() throws Exception {
+        xml = Documents.regionStats(regions).getBytes("UTF-8");
+        last = Integer.toString(regions - 1);
+        staxParser = new LLSDStaxParser();
+    }
+
+    @Benchmark
+    public double parseValueThenGet() throws Exception {
+        return staxParser.parseValue(new ByteArrayInputStream(xml)).asArray().get(regions - 1)
+            .asMap().get("simulator statistics").asMap().get("stat 14").asReal();
+    }
+
+    @Benchmark
+    public double lazyGet() throws Exception {
+        return new LLSDLazyDocument(xml).get(last, "simulator statistics", "stat 14").asReal();
+    }
+
+    @Benchmark
+    public boolean lazyHas() throws Exception {
+        return new LLSDLazyDocument(xml).has(last, "region_id");
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd.benchmarks;
+
+import lindenlab.llsd.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Region statistics read into objects by LLSDMapper, and by parsing the
+ * content and converting it by hand, and written back by LLSDMapper.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MapperBenchmark {
+    public static class Region {
+        @LLSDProperty("region_id")
+        public UUID regionId;
+        public String scale;
+        @LLSDProperty("simulator statistics")
+        public Map<String, Double> stats;
+    }
+
+    @Param({"100"})
+    public int regions;
+
+    private byte[] xml;
+    private LLSDStaxParser parser;
+    private LLSDMapper mapper;
+    private Region[] content;
+
+    @Setup
+    public void setUp() throws Exception {
+        xml = Documents.regionStats(regions).getBytes("UTF-8");
+        parser = new LLSDStaxParser();
+        mapper = new LLSDMapper();
+        content = mapper.read(new ByteArrayInputStream(xml), Region[].class);
+    }
+
+    @Benchmark
+    public Region[] readMapper() throws Exception {
+        return mapper.read(new ByteArrayInputStream(xml), Region[].class);
+    }
+
+    @Benchmark
+    public Region[] readByHand() throws Exception {
+        final List<Object> regionList = (List<Object>) parser.parse(new ByteArrayInputStream(xml)).getContent();
+        final Region[] result = new Region[regionList.size()];
+
+        for (int i = 0; i < result.length; i++) {
+            final Map<String, Object> map = (Map<String, Object>) regionList.get(i);
+            final Map<String, Object> stats = (Map<String, Object>) map.get("simulator statistics");
+
+            result[i] = new Region();
+            result[i].regionId = (UUID) map.get("region_id");
+            result[i].scale = (String) map.get("scale");
+            result[i].stats = new LinkedHashMap<String, Double>();
+            for (Map.Entry<String, Object> stat: stats.entrySet()) {
+                result[i].stats.put(stat.getKey(), (Double) stat.getValue());
+            }
+        }
+        return result;
+    }
+
+    @Benchmark
+    public int writeMapper() throws Exception {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream(xml.length);
+
+        mapper.write(content, output);
+        return output.size();
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd.benchmarks;
+
+import lindenlab.llsd.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Region statistics parsed and serialised without a metrics listener, and
+ * with an LLSDMetricsHistogram, to show what measuring costs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MetricsBenchmark {
+    @Param({"100"})
+    public int regions;
+
+    private ByteBuffer document;
+    private LLSD llsd;
+    private LLSDParser plainParser;
+    private LLSDParser measuredParser;
+    private LLSDXMLSerialiser plainSerialiser;
+    private LLSDXMLSerialiser measuredSerialiser;
+
+    @Setup
+    public void setUp() throws Exception {
+        final LLSDMetricsHistogram metrics = new LLSDMetricsHistogram();
+
+        document = ByteBuffer.wrap(Documents.regionStats(regions).getBytes("UTF-8"));
+        plainParser = new LLSDParser();
+        measuredParser = new LLSDParser();
+        measuredParser.setMetrics(metrics);
+        plainSerialiser = new LLSDXMLSerialiser();
+        measuredSerialiser = new LLSDXMLSerialiser(LLSDXMLOptions.DEFAULT, metrics);
+        llsd = plainParser.parse(document);
+    }
+
+    @Benchmark
+    public LLSD parse() throws Exception {
+        return plainParser.parse(document);
+    }
+
+    @Benchmark
+    public LLSD parseMeasured() throws Exception {
+        return measuredParser.parse(document);
+    }
+
+    @Benchmark
+    public ByteBuffer serialise() throws Exception {
+        return plainSerialiser.serialise(llsd);
+    }
+
+    @Benchmark
+    public ByteBuffer serialiseMeasured() throws Exception {
+        return measuredSerialiser.serialise(llsd);
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd.benchmarks;
+
+import lindenlab.llsd.LLSD;
+import lindenlab.llsd.LLSDParser;
+import lindenlab.llsd.LLSDStaxParser;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the DOM-based {@link LLSDParser} against the StAX-based
+ * {@link LLSDStaxParser} on an array of region statistics maps. Run with
+ * "-prof gc" to see the allocation rate of each backend.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ParserBenchmark {
+    @Param({"1", "100", "5000"})
+    public int regions;
+
+    private byte[] document;
+    private LLSDParser domParser;
+    private LLSDStaxParser staxParser;
+
+    @Setup
+    public void setUp() throws Exception {
+        document = Documents.regionStats(regions).getBytes("UTF-8");
+        domParser = new LLSDParser();
+        staxParser = new LLSDStaxParser();
+    }
+
+    @Benchmark
+    public LLSD dom() throws Exception {
+        return domParser.parse(new ByteArrayInputStream(document));
+    }
+
+    @Benchmark
+    public LLSD stax() throws Exception {
+        return staxParser.parse(new ByteArrayInputStream(document));
+    }
+}
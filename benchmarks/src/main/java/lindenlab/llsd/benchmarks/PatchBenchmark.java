@@ -0,0 +1,72 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd.benchmarks;
+
+import lindenlab.llsd.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Region statistics in which two values of each region change each tick:
+ * serialising the whole document against diffing it with the previous tick
+ * and serialising the patch, and applying that patch. The size of the full
+ * document and of the patch are printed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PatchBenchmark {
+    @Param({"100"})
+    public int regions;
+
+    private Object previous;
+    private Object current;
+    private LLSDPatch patch;
+    private LLSDXMLSerialiser serialiser;
+
+    @Setup
+    public void setUp() throws Exception {
+        final LLSDParser parser = new LLSDParser();
+        final byte[] xml = Documents.regionStats(regions).getBytes("UTF-8");
+
+        previous = parser.parse(new ByteArrayInputStream(xml)).getContent();
+        current = parser.parse(new ByteArrayInputStream(xml)).getContent();
+        for (Object region: (List<Object>) current) {
+            final Map<String, Object> stats = (Map<String, Object>) ((Map<String, Object>) region)
+                .get("simulator statistics");
+
+            stats.put("stat 0", (Double) stats.get("stat 0") + 1);
+            stats.put("stat 7", (Double) stats.get("stat 7") + 1);
+        }
+        patch = LLSDPatch.diff(previous, current);
+        serialiser = new LLSDXMLSerialiser(LLSDXMLOptions.COMPACT);
+        System.out.println("\nFull document " + serialiseFull().remaining() + " bytes, patch "
+            + serialisePatch().remaining() + " bytes");
+    }
+
+    @Benchmark
+    public ByteBuffer serialiseFull() throws Exception {
+        return serialiser.serialise(new LLSD(current));
+    }
+
+    @Benchmark
+    public ByteBuffer serialisePatch() throws Exception {
+        return serialiser.serialise(new LLSD(LLSDPatch.diff(previous, current).getContent()));
+    }
+
+    @Benchmark
+    public Object applyCopy() throws Exception {
+        return patch.applyCopy(previous);
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd.benchmarks;
+
+import lindenlab.llsd.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The scalar scanners against the JDK conversions they replaced, each over
+ * an array of 1024 values of one type. The "jdk" benchmark parses the same
+ * text as strings and converts each with the JDK, as the parsers used to.
+ * The StAX parser scans values from its character buffer, and the buffer
+ * parser scans them straight from the document bytes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ScalarBenchmark {
+    private static final int COUNT = 1024;
+
+    @Param({"integer", "real", "uuid", "date"})
+    public String type;
+
+    private byte[] typed;
+    private byte[] strings;
+    private LLSDParser parser;
+    private LLSDStaxParser staxParser;
+
+    @Setup
+    public void setUp() throws Exception {
+        final Random random = new Random(10);
+        final StringBuilder typedBuilder = new StringBuilder("<llsd><array>\n");
+        final StringBuilder stringBuilder = new StringBuilder("<llsd><array>\n");
+
+        for (int i = 0; i < COUNT; i++) {
+            final String value;
+
+            switch (type) {
+            case "integer":
+                value = Integer.toString(random.nextInt(1000000) - 500000);
+                break;
+            case "real":
+                // Statistics-like reals, as in the simulator statistics document.
+                value = Float.toString(random.nextFloat() * 100.0f);
+                break;
+            case "uuid":
+                value = new UUID(random.nextLong(), random.nextLong()).toString();
+                break;
+            default:
+                value = Instant.ofEpochSecond(random.nextInt(Integer.MAX_VALUE)).toString();
+                break;
+            }
+            typedBuilder.append('<').append(type).append('>').append(value)
+                .append("</").append(type).append(">\n");
+            stringBuilder.append("<string>").append(value).append("</string>\n");
+        }
+        typed = typedBuilder.append("</array></llsd>\n").toString().getBytes("UTF-8");
+        strings = stringBuilder.append("</array></llsd>\n").toString().getBytes("UTF-8");
+        parser = new LLSDParser();
+        staxParser = new LLSDStaxParser();
+    }
+
+    @Benchmark
+    public void jdk(final Blackhole blackhole) throws Exception {
+        final LLSDArray values = staxParser.parseValue(new ByteArrayInputStream(strings)).asArray();
+
+        for (int i = 0; i < values.size(); i++) {
+            final String text = values.get(i).asString();
+
+            switch (type) {
+            case "integer":
+                blackhole.consume(Integer.parseInt(text));
+                break;
+            case "real":
+                blackhole.consume(Double.parseDouble(text));
+                break;
+            case "uuid":
+                blackhole.consume(UUID.fromString(text));
+                break;
+            default:
+                blackhole.consume(Instant.parse(text));
+                break;
+            }
+        }
+    }
+
+    @Benchmark
+    public LLSDValue scan() throws Exception {
+        return staxParser.parseValue(new ByteArrayInputStream(typed));
+    }
+
+    @Benchmark
+    public LLSDValue scanBytes() throws Exception {
+        return parser.parseValue(ByteBuffer.wrap(typed));
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd.benchmarks;
+
+import lindenlab.llsd.LLSD;
+import lindenlab.llsd.LLSDXMLSerialiser;
+import lindenlab.llsd.LLSDXMLWriter;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An inventory dump of many small maps, built as a tree and serialised, and
+ * written entry by entry through {@link LLSDXMLWriter}. Run with "-prof gc";
+ * the writer should allocate the same small amount whatever the number of
+ * entries, while the tree grows with them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WriterBenchmark {
+    /**
+     * Discards everything written to it.
+     */
+    private static final WritableByteChannel SINK = new WritableByteChannel() {
+        @Override
+        public int write(final ByteBuffer source) {
+            final int length = source.remaining();
+
+            source.position(source.limit());
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    private static final UUID OWNER = UUID.fromString("67153d5b-3659-afb4-8510-adda2c034649");
+
+    @Param({"1000", "100000"})
+    public int entries;
+
+    private LLSDXMLSerialiser serialiser;
+
+    @Setup
+    public void setUp() {
+        serialiser = new LLSDXMLSerialiser();
+    }
+
+    @Benchmark
+    public void serialiseTree() throws Exception {
+        final List<Object> items = new ArrayList<Object>(entries);
+
+        for (int i = 0; i < entries; i++) {
+            final Map<String, Object> item = new LinkedHashMap<String, Object>();
+
+            item.put("item_id", i);
+            item.put("owner_id", OWNER);
+            item.put("name", "Object");
+            item.put("scale", 0.5);
+            items.add(item);
+        }
+        serialiser.serialise(new LLSD(items), Channels.newOutputStream(SINK));
+    }
+
+    @Benchmark
+    public void writeIncrementally() throws Exception {
+        try (LLSDXMLWriter writer = serialiser.writer(SINK)) {
+            writer.beginArray();
+            for (int i = 0; i < entries; i++) {
+                writer.beginMap()
+                    .key("item_id").value(i)
+                    .key("owner_id").value(OWNER)
+                    .key("name").value("Object")
+                    .key("scale").value(0.5)
+                    .endMap();
+            }
+            writer.endArray();
+        }
+    }
+}
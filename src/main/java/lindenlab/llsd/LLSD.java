@@ -7,21 +7,28 @@
 package lindenlab.llsd;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.net.URI;
-import java.text.DateFormat;
-import java.text.DecimalFormat;
-import java.text.SimpleDateFormat;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 /**
  * LLSD root, returns by an LLSDParser.
  */
 public class LLSD {
+    /**
+     * Number of bytes base64 encoded at a time; a multiple of three.
+     */
+    private static final int BASE64_CHUNK = 3 * 1024;
+
+    /**
+     * Listener told about each document serialised, or null.
+     */
+    private static volatile LLSDMetrics metrics = null;
+
     private final Object content;
-    private DecimalFormat decimalFormat = null;
-    private DateFormat iso9601Format = null;
 
     /**
      * Constructs a new LLSD document around the given root element.
@@ -40,12 +47,49 @@ public class LLSD {
      * </ul>
      *
      * If a list or map, must only contain one of those classes inside,
-     * as well.
+     * as well. Alternatively the content may be a typed {@link LLSDValue}
+     * tree.
+     *
+     * Binary values may be given as byte[], or to avoid holding them in
+     * memory as a java.nio.ByteBuffer, whose remaining bytes are written
+     * without changing its position, or a java.io.InputStream, which is read
+     * to its end (but not closed) when serialised, and so can only be
+     * serialised once.
      */
     public  LLSD(final Object setContent) {
         this.content = setContent;
     }
 
+    /**
+     * Writes the base64 encoding of either the remaining bytes of a buffer
+     * or the rest of a stream, a chunk at a time.
+     */
+    private static void serialiseBase64(final Writer writer, final ByteBuffer buffer, final InputStream stream)
+        throws IOException {
+        final Base64.Encoder encoder = Base64.getEncoder();
+        final byte[] chunk = new byte[BASE64_CHUNK];
+        final byte[] encoded = new byte[BASE64_CHUNK / 3 * 4];
+        final char[] characters = new char[encoded.length];
+        int length;
+
+        do {
+            if (null != buffer) {
+                length = Math.min(buffer.remaining(), chunk.length);
+                buffer.get(chunk, 0, length);
+            } else {
+                length = LLSDOutputBuffer.readFully(stream, chunk);
+            }
+
+            final int encodedLength = encoder.encode(length == chunk.length ? chunk : Arrays.copyOf(chunk, length),
+                encoded);
+
+            for (int i = 0; i < encodedLength; i++) {
+                characters[i] = (char) encoded[i];
+            }
+            writer.write(characters, 0, encodedLength);
+        } while (length == chunk.length);
+    }
+
     /**
      * Encodes text into HTML - this involves replacing '<', '>', '&' and
      * '"' with their HTML entity equivalents.
@@ -177,12 +221,63 @@ public class LLSD {
         return this.content;
     }
 
+    /**
+     * Freezes this document for sending many times. See {@link LLSDFrozen}.
+     *
+     * @return an immutable copy of this document, whose encodings are
+     * cached in {@link LLSDEncodingCache#shared()}.
+     * @throws LLSDException if the content holds a type which cannot be
+     * serialised, or a binary value given as an InputStream.
+     */
+    public  LLSDFrozen  freeze()
+        throws LLSDException {
+        return freeze(LLSDEncodingCache.shared());
+    }
+
+    /**
+     * Freezes this document for sending many times, caching its encodings
+     * in the given cache.
+     */
+    public  LLSDFrozen  freeze(final LLSDEncodingCache cache)
+        throws LLSDException {
+        return LLSDFrozen.freeze(content, cache);
+    }
+
+    /**
+     * Sets the listener told about each document written by
+     * {@link #serialise(Writer, String)}, in this class loader, or null for
+     * none, which is the default. Documents are only measured while a
+     * listener is set; {@link #toString()} is never measured.
+     */
+    public  static  void    setMetrics(final LLSDMetrics setMetrics) {
+        metrics = setMetrics;
+    }
+
     /**
      * Writes out this LLSD as an XML document to the given writer.
      *
      * @param charset the character set to specify in the XML intro.
      */
     public  void    serialise(final Writer writer, final String charset)
+        throws IOException, LLSDException {
+        final LLSDMeasurement measurement = LLSDMeasurement.start(metrics, LLSDMetrics.Operation.SERIALISE);
+
+        if (null == measurement) {
+            write(writer, charset);
+            return;
+        }
+
+        try {
+            write(measurement.count(writer), charset);
+        } catch(IOException e) {
+            throw measurement.failed(e);
+        } catch(LLSDException e) {
+            throw measurement.failed(e);
+        }
+        measurement.completed(content);
+    }
+
+    private void write(final Writer writer, final String charset)
         throws IOException, LLSDException {
         writer.write("<?xml version=\"1.0\" encoding=\""
             + charset + "\"?>\n");
@@ -195,11 +290,6 @@ public class LLSD {
 
     private void serialiseElement(final Writer writer, final Object toSerialise)
         throws IOException, LLSDException {
-        if (null == iso9601Format) {
-            iso9601Format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
-            decimalFormat = new DecimalFormat("#0.0#");
-        }
-
         assert null != toSerialise;
 
         if (toSerialise instanceof Map) {
@@ -226,20 +316,9 @@ public class LLSD {
         } else if (toSerialise instanceof Integer) {
             writer.write("<integer>"
                 + toSerialise.toString() + "</integer>\n");
-        } else if (toSerialise instanceof Double) {
-            if (toSerialise.equals(Double.NaN)) {
-                writer.write("<real>nan</real>\n");
-            } else {
-                writer.write("<real>"
-                    + decimalFormat.format(toSerialise) + "</real>\n");
-            }
-        } else if (toSerialise instanceof Float) {
-            if (toSerialise.equals(Float.NaN)) {
-                writer.write("<real>nan</real>\n");
-            } else {
-                writer.write("<real>"
-                    + decimalFormat.format(toSerialise) + "</real>\n");
-            }
+        } else if (toSerialise instanceof Double
+            || toSerialise instanceof Float) {
+            serialiseReal(writer, ((Number) toSerialise).doubleValue());
         } else if (toSerialise instanceof UUID) {
             writer.write("<uuid>"
                     + toSerialise.toString() + "</uuid>\n");
@@ -248,13 +327,24 @@ public class LLSD {
                     + encodeXML((String)toSerialise) + "</string>\n");
         } else if (toSerialise instanceof Date) {
             writer.write("<date>"
-                    + iso9601Format.format((Date)toSerialise) + "</date>");
+                    + LLSDScalars.formatDate((Date)toSerialise) + "</date>");
         } else if (toSerialise instanceof URI) {
             writer.write("<uri>"
                     + encodeXML(toSerialise.toString()) + "</uri>");
         } else if (toSerialise instanceof byte[]) {
-            writer.write("<binary encoding=\"base64\">"
-                    + Base64.getEncoder().encodeToString((byte[]) toSerialise) + "</binary>");
+            writer.write("<binary encoding=\"base64\">");
+            serialiseBase64(writer, ByteBuffer.wrap((byte[]) toSerialise), null);
+            writer.write("</binary>");
+        } else if (toSerialise instanceof ByteBuffer) {
+            writer.write("<binary encoding=\"base64\">");
+            serialiseBase64(writer, ((ByteBuffer) toSerialise).duplicate(), null);
+            writer.write("</binary>");
+        } else if (toSerialise instanceof InputStream) {
+            writer.write("<binary encoding=\"base64\">");
+            serialiseBase64(writer, null, (InputStream) toSerialise);
+            writer.write("</binary>");
+        } else if (toSerialise instanceof LLSDValue) {
+            serialiseValue(writer, (LLSDValue) toSerialise);
         } else if (toSerialise instanceof LLSDUndefined) {
             switch((LLSDUndefined)toSerialise) {
             case BINARY:
@@ -289,11 +379,94 @@ public class LLSD {
 
     }
 
+    /**
+     * Writes a typed tree in the same form as the equivalent Object content,
+     * without boxing numbers.
+     */
+    private void serialiseValue(final Writer writer, final LLSDValue value)
+        throws IOException, LLSDException {
+        if (value == LLSDUndef.UNDEF) {
+            writer.write("<undef />\n");
+            return;
+        } else if (value.isUndefined()) {
+            serialiseElement(writer, value.toObject());
+            return;
+        }
+
+        switch (value.getType()) {
+        case MAP:
+            writer.write("<map>\n");
+            for (Map.Entry<String, LLSDValue> entry: ((LLSDMap) value).entrySet()) {
+                writer.write("\t<key>");
+                writer.write(encodeXML(entry.getKey()));
+                writer.write("</key>\n\t");
+                serialiseValue(writer, entry.getValue());
+            }
+            writer.write("</map>\n");
+            break;
+        case ARRAY:
+            writer.write("<array>\n");
+            if (value instanceof LLSDIntegerArray) {
+                final LLSDIntegerArray integers = (LLSDIntegerArray) value;
+
+                for (int i = 0; i < integers.size(); i++) {
+                    writer.write("\t<integer>");
+                    writer.write(Integer.toString(integers.getInteger(i)));
+                    writer.write("</integer>\n");
+                }
+            } else if (value instanceof LLSDRealArray) {
+                final LLSDRealArray reals = (LLSDRealArray) value;
+
+                for (int i = 0; i < reals.size(); i++) {
+                    writer.write("\t");
+                    serialiseReal(writer, reals.getReal(i));
+                }
+            } else {
+                final LLSDArray array = (LLSDArray) value;
+
+                for (int i = 0; i < array.size(); i++) {
+                    writer.write("\t");
+                    serialiseValue(writer, array.get(i));
+                }
+            }
+            writer.write("</array>\n");
+            break;
+        case BOOLEAN:
+            writer.write(value.asBoolean()
+                ? "<boolean>true</boolean>\n"
+                : "<boolean>false</boolean>\n");
+            break;
+        case INTEGER:
+            writer.write("<integer>");
+            writer.write(Integer.toString(value.asInteger()));
+            writer.write("</integer>\n");
+            break;
+        case REAL:
+            serialiseReal(writer, value.asReal());
+            break;
+        default:
+            // The remaining scalars hold their values as objects already.
+            serialiseElement(writer, value.toObject());
+            break;
+        }
+    }
+
+    private static void serialiseReal(final Writer writer, final double value)
+        throws IOException {
+        if (Double.isNaN(value)) {
+            writer.write("<real>nan</real>\n");
+        } else {
+            writer.write("<real>");
+            writer.write(LLSDRealFormat.format(value));
+            writer.write("</real>\n");
+        }
+    }
+
     public String toString() {
         final StringWriter writer = new StringWriter();
 
         try {
-            serialise(writer, "UTF-8");
+            write(writer, "UTF-8");
         } catch(IOException e) {
             return "Unable to serialise LLSD for display: " + e.getMessage();
         } catch(LLSDException e) {
@@ -0,0 +1,107 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An LLSD array. {@link LLSDValueArray} holds any values, while
+ * {@link LLSDIntegerArray} and {@link LLSDRealArray} hold only defined
+ * integers or reals, in primitive arrays; use {@link #getInteger(int)} and
+ * {@link #getReal(int)} to read them without creating nodes.
+ *
+ * Arrays are equal if they hold equal values, whichever representation they
+ * use.
+ */
+public abstract class LLSDArray extends LLSDValue {
+    LLSDArray() {
+    }
+
+    public LLSDType getType() {
+        return LLSDType.ARRAY;
+    }
+
+    public LLSDArray asArray() {
+        return this;
+    }
+
+    public abstract int size();
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @throws IndexOutOfBoundsException if the index is not within the
+     * array.
+     */
+    public abstract LLSDValue get(int index);
+
+    /**
+     * @return the integer at the given index.
+     * @throws LLSDException if the value there is not a defined integer.
+     */
+    public int getInteger(final int index) throws LLSDException {
+        return get(index).asInteger();
+    }
+
+    /**
+     * @return the real at the given index.
+     * @throws LLSDException if the value there is not a defined real.
+     */
+    public double getReal(final int index) throws LLSDException {
+        return get(index).asReal();
+    }
+
+    public Object toObject() {
+        final int size = size();
+        final List<Object> value = new ArrayList<Object>(size);
+
+        for (int i = 0; i < size; i++) {
+            value.add(get(i).toObject());
+        }
+        return value;
+    }
+
+    public boolean equals(final Object other) {
+        final LLSDArray array;
+        final int size = size();
+
+        if (!(other instanceof LLSDArray)) {
+            return false;
+        }
+
+        array = (LLSDArray) other;
+        if (array.size() != size) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (!get(i).equals(array.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int hashCode() {
+        final int size = size();
+        int hash = 1;
+
+        for (int i = 0; i < size; i++) {
+            hash = 31 * hash + get(i).hashCode();
+        }
+        return hash;
+    }
+
+    void checkIndex(final int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for LLSD array of size "
+                + size() + ".");
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+/**
+ * Collects the values of an array while it is being read, choosing the most
+ * compact representation: an {@link LLSDIntegerArray} or
+ * {@link LLSDRealArray} while every value is a defined integer or real
+ * respectively, otherwise an {@link LLSDValueArray}.
+ */
+final class LLSDArrayBuilder {
+    private LLSDIntegerArray integers = null;
+    private LLSDRealArray reals = null;
+    private LLSDValueArray values = null;
+
+    void addInteger(final int value) {
+        if (null == values && null == reals) {
+            if (null == integers) {
+                integers = new LLSDIntegerArray();
+            }
+            integers.add(value);
+        } else {
+            toValues().add(LLSDInteger.valueOf(value));
+        }
+    }
+
+    void addReal(final double value) {
+        if (null == values && null == integers) {
+            if (null == reals) {
+                reals = new LLSDRealArray();
+            }
+            reals.add(value);
+        } else {
+            toValues().add(new LLSDReal(value));
+        }
+    }
+
+    void add(final LLSDValue value) {
+        if (value instanceof LLSDInteger) {
+            addInteger(((LLSDInteger) value).asInteger());
+        } else if (value instanceof LLSDReal) {
+            addReal(((LLSDReal) value).asReal());
+        } else {
+            toValues().add(value);
+        }
+    }
+
+    LLSDArray build() {
+        if (null != integers) {
+            return integers;
+        } else if (null != reals) {
+            return reals;
+        } else if (null != values) {
+            return values;
+        }
+        return new LLSDValueArray(0);
+    }
+
+    private LLSDValueArray toValues() {
+        if (null == values) {
+            final LLSDArray primitives = null != integers
+                ? integers
+                : reals;
+
+            values = new LLSDValueArray();
+            if (null != primitives) {
+                for (int i = 0; i < primitives.size(); i++) {
+                    values.add(primitives.get(i));
+                }
+            }
+            integers = null;
+            reals = null;
+        }
+        return values;
+    }
+}
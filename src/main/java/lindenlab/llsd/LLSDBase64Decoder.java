@@ -0,0 +1,272 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Incremental decoder for standard base64, as used by &lt;binary&gt;
+ * elements. Text is fed in as many pieces as it arrives in, and decoded
+ * bytes go straight to an {@link LLSDOutputBuffer}, so a value never has to
+ * be held whole in either form.
+ *
+ * Whitespace is ignored, since XML writers may wrap long values. Padding is
+ * optional at the end, as with {@link java.util.Base64#getDecoder()}, but
+ * nothing may follow it.
+ */
+final class LLSDBase64Decoder {
+    private static final byte WHITESPACE = -2;
+    private static final byte PADDING = -3;
+    private static final byte INVALID = -1;
+
+    /**
+     * Six bit value of each Latin-1 character, or one of the negative
+     * constants above.
+     */
+    private static final byte[] VALUES = new byte[256];
+
+    static {
+        final String digits = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+        Arrays.fill(VALUES, INVALID);
+        for (int i = 0; i < digits.length(); i++) {
+            VALUES[digits.charAt(i)] = (byte) i;
+        }
+        VALUES[' '] = WHITESPACE;
+        VALUES['\t'] = WHITESPACE;
+        VALUES['\r'] = WHITESPACE;
+        VALUES['\n'] = WHITESPACE;
+        VALUES['='] = PADDING;
+    }
+
+    /**
+     * Decoded bytes are gathered here and written to the output a chunk at
+     * a time.
+     */
+    private static final int CHUNK_SIZE = 3 * 1024;
+
+    private final LLSDOutputBuffer output;
+    private final byte[] chunk;
+    private int chunkLength = 0;
+
+    /**
+     * Bits of the current four character group, and how many characters of
+     * it have been seen, including padding.
+     */
+    private int bits = 0;
+    private int count = 0;
+    private int padding = 0;
+    private boolean isComplete = false;
+    private long length = 0;
+
+    LLSDBase64Decoder(final LLSDOutputBuffer output) {
+        this(output, CHUNK_SIZE);
+    }
+
+    /**
+     * @param expectedLength the number of bytes expected, if known, so that
+     * small values do not need a full size chunk.
+     */
+    LLSDBase64Decoder(final LLSDOutputBuffer output, final int expectedLength) {
+        this.output = output;
+        this.chunk = new byte[Math.max(3, Math.min(expectedLength, CHUNK_SIZE))];
+    }
+
+    /**
+     * @return true if the given character is a base64 digit, rather than
+     * whitespace, padding or anything else.
+     */
+    static boolean isDigit(final char current) {
+        return current < 256 && VALUES[current] >= 0;
+    }
+
+    /**
+     * @return the number of bytes the given text decodes to, assuming it is
+     * valid.
+     */
+    static int decodedLength(final CharSequence text, final int start, final int end) {
+        long digits = 0;
+
+        for (int i = start; i < end; i++) {
+            if (isDigit(text.charAt(i))) {
+                digits++;
+            }
+        }
+        return (int) (digits * 3 / 4);
+    }
+
+    static int decodedLength(final byte[] text, final int start, final int end) {
+        long digits = 0;
+
+        for (int i = start; i < end; i++) {
+            if (VALUES[text[i] & 0xff] >= 0) {
+                digits++;
+            }
+        }
+        return (int) (digits * 3 / 4);
+    }
+
+    void decode(final CharSequence text, final int start, final int end)
+        throws IOException, LLSDException {
+        int i = start;
+
+        while (i < end) {
+            // Whole groups of four digits, the usual case, without per
+            // character checks. Any other character makes the sum negative.
+            if (count == 0) {
+                while (i + 4 <= end) {
+                    final char c1 = text.charAt(i);
+                    final char c2 = text.charAt(i + 1);
+                    final char c3 = text.charAt(i + 2);
+                    final char c4 = text.charAt(i + 3);
+
+                    if ((c1 | c2 | c3 | c4) > 0xff || !putGroup(VALUES[c1] << 18 | VALUES[c2] << 12
+                        | VALUES[c3] << 6 | VALUES[c4])) {
+                        break;
+                    }
+                    i += 4;
+                }
+                if (i == end) {
+                    break;
+                }
+            }
+
+            final char current = text.charAt(i++);
+
+            accept(current < 256 ? VALUES[current] : INVALID);
+        }
+    }
+
+    void decode(final char[] text, final int start, final int end)
+        throws IOException, LLSDException {
+        int i = start;
+
+        while (i < end) {
+            if (count == 0) {
+                while (i + 4 <= end) {
+                    final char c1 = text[i];
+                    final char c2 = text[i + 1];
+                    final char c3 = text[i + 2];
+                    final char c4 = text[i + 3];
+
+                    if ((c1 | c2 | c3 | c4) > 0xff || !putGroup(VALUES[c1] << 18 | VALUES[c2] << 12
+                        | VALUES[c3] << 6 | VALUES[c4])) {
+                        break;
+                    }
+                    i += 4;
+                }
+                if (i == end) {
+                    break;
+                }
+            }
+
+            final char current = text[i++];
+
+            accept(current < 256 ? VALUES[current] : INVALID);
+        }
+    }
+
+    void decode(final byte[] text, final int start, final int end)
+        throws IOException, LLSDException {
+        int i = start;
+
+        while (i < end) {
+            if (count == 0) {
+                while (i + 4 <= end && putGroup(VALUES[text[i] & 0xff] << 18 | VALUES[text[i + 1] & 0xff] << 12
+                    | VALUES[text[i + 2] & 0xff] << 6 | VALUES[text[i + 3] & 0xff])) {
+                    i += 4;
+                }
+                if (i == end) {
+                    break;
+                }
+            }
+            accept(VALUES[text[i++] & 0xff]);
+        }
+    }
+
+    /**
+     * Writes a whole group of three bytes decoded by the fast paths.
+     *
+     * @return false, writing nothing, if the group held anything other
+     * than four digits, or padding has already been seen.
+     */
+    private boolean putGroup(final int group) throws IOException {
+        if (group < 0 || isComplete) {
+            return false;
+        }
+        bits = group;
+        writeGroup(3);
+        return true;
+    }
+
+    /**
+     * Checks that the text ended on a whole group, and writes out the
+     * remaining decoded bytes. Does not flush the output.
+     *
+     * @return the total number of bytes decoded.
+     */
+    long finish() throws IOException, LLSDException {
+        if (count != 0 && !isComplete) {
+            if (padding > 0 || count == 1) {
+                throw invalid("it ends part way through a group");
+            }
+            bits <<= 6 * (4 - count);
+            writeGroup(count - 1);
+        }
+        output.write(chunk, 0, chunkLength);
+        chunkLength = 0;
+        return length;
+    }
+
+    private void accept(final byte value)
+        throws IOException, LLSDException {
+        if (value >= 0) {
+            if (padding > 0 || isComplete) {
+                throw invalid("there is data after the padding");
+            }
+            bits = bits << 6 | value;
+            if (++count == 4) {
+                writeGroup(3);
+            }
+        } else if (value == PADDING) {
+            if (count < 2 || isComplete) {
+                throw invalid("the padding is misplaced");
+            }
+            bits <<= 6;
+            padding++;
+            if (++count == 4) {
+                writeGroup(3 - padding);
+                isComplete = true;
+            }
+        } else if (value != WHITESPACE) {
+            throw invalid("it contains a character outside the base64 alphabet");
+        }
+    }
+
+    private void writeGroup(final int bytes) throws IOException {
+        if (chunkLength + 3 > chunk.length) {
+            output.write(chunk, 0, chunkLength);
+            chunkLength = 0;
+        }
+        chunk[chunkLength++] = (byte) (bits >>> 16);
+        if (bytes > 1) {
+            chunk[chunkLength++] = (byte) (bits >>> 8);
+        }
+        if (bytes > 2) {
+            chunk[chunkLength++] = (byte) bits;
+        }
+        length += bytes;
+        bits = 0;
+        count = 0;
+    }
+
+    private static LLSDException invalid(final String reason) {
+        return new LLSDValueException("Unable to parse LLSD binary value, as " + reason
+            + ". Contents omitted in exception.");
+    }
+}
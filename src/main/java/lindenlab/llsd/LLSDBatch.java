@@ -0,0 +1,282 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Parses and serialises batches of independent documents in parallel, and
+ * parses single documents whose root is a large array by converting ranges
+ * of its items in parallel:
+ *
+ * <pre>
+ * LLSDBatch batch = new LLSDBatch(new ForkJoinPool(8));
+ * List&lt;LLSD&gt; documents = batch.parse(archive);
+ * List&lt;ByteBuffer&gt; encoded = batch.serialise(documents);
+ * </pre>
+ *
+ * Work is split into ranges of documents, a few per worker, so that idle
+ * workers can take ranges from busy ones. On a {@link ForkJoinPool} the
+ * ranges are split recursively and stolen; on any other executor, such as
+ * one starting a virtual thread per task, each range is submitted as a
+ * task. The parser and serialiser are shared by all workers; each thread
+ * keeps its own parser state, as it does outside a batch.
+ *
+ * The calling thread waits for the whole batch. Instances may be shared
+ * between threads.
+ */
+public class LLSDBatch {
+    /**
+     * Ranges per worker, so that a worker which finishes early has work to
+     * take from the others.
+     */
+    private static final int RANGES_PER_WORKER = 8;
+
+    private final LLSDParser parser;
+    private final LLSDXMLSerialiser serialiser;
+    private final ExecutorService executor;
+
+    /**
+     * Creates a batch running on the common fork-join pool.
+     */
+    public      LLSDBatch()
+        throws ParserConfigurationException {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public      LLSDBatch(final ExecutorService executor)
+        throws ParserConfigurationException {
+        this(new LLSDParser(), new LLSDXMLSerialiser(), executor);
+    }
+
+    /**
+     * @param parser the parser documents are read with, including its
+     * limits and maps.
+     * @param serialiser the serialiser documents are written with.
+     * @param executor the executor batches run on.
+     */
+    public      LLSDBatch(final LLSDParser parser, final LLSDXMLSerialiser serialiser,
+        final ExecutorService executor) {
+        this.parser = parser;
+        this.serialiser = serialiser;
+        this.executor = executor;
+    }
+
+    /**
+     * Parses each of the given XML documents, as
+     * {@link LLSDParser#parse(ByteBuffer)} does. The buffers' positions are
+     * not changed.
+     *
+     * @return the documents, in the same order.
+     * @throws LLSDException if any document cannot be parsed, reporting the
+     * first in order which failed, with its failure as the cause.
+     */
+    public List<LLSD> parse(final List<ByteBuffer> documents)
+        throws LLSDException {
+        final LLSD[] results = new LLSD[documents.size()];
+
+        forEach(results.length, "parse document", new Item() {
+            public void run(final int index) throws Exception {
+                results[index] = parser.parse(documents.get(index));
+            }
+        });
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Serialises each of the given documents, as
+     * {@link LLSDXMLSerialiser#serialise(LLSD)} does.
+     *
+     * @return the encoded documents, in the same order.
+     * @throws LLSDException if any document cannot be serialised, reporting
+     * the first in order which failed, with its failure as the cause.
+     */
+    public List<ByteBuffer> serialise(final List<? extends LLSD> documents)
+        throws LLSDException {
+        final ByteBuffer[] results = new ByteBuffer[documents.size()];
+
+        forEach(results.length, "serialise document", new Item() {
+            public void run(final int index) throws Exception {
+                results[index] = serialiser.serialise(documents.get(index));
+            }
+        });
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Parses a single XML document whose root is an array, converting ranges
+     * of its items in parallel. The items are found by scanning the
+     * document once, as {@link LLSDLazyDocument} does, and then converted by
+     * the workers. The content is the same as
+     * {@link LLSDParser#parse(ByteBuffer)} gives.
+     *
+     * Documents which are not UTF-8, whose root is not an array, or which
+     * are read with a limit on the number of values, which can only be
+     * counted over the whole document, are parsed on the calling thread.
+     * The parser's metrics listener is not told of documents parsed in
+     * parallel.
+     *
+     * @throws LLSDException if the document is invalid LLSD, or breaks the
+     * parser's limits.
+     */
+    public LLSD parseArray(final ByteBuffer document)
+        throws LLSDException {
+        final LLSDLimits limits = parser.getLimits();
+        final LLSDLazyDocument lazy;
+        final int size;
+        final Object[] items;
+
+        if (!LLSDParser.isUTF8(document) || limits.getMaxNodes() != LLSDLimits.UNLIMITED) {
+            return parseSequentially(document);
+        }
+        limits.checkDocument(document.remaining());
+        lazy = new LLSDLazyDocument(document, limits);
+        size = lazy.rootArraySize();
+        if (size < 0) {
+            return parseSequentially(document);
+        }
+
+        items = new Object[size];
+        forEach(items.length, "parse array item", new Item() {
+            public void run(final int index) throws Exception {
+                items[index] = parser.toContent(lazy.convertRootItem(index, limits.counter()));
+            }
+        });
+        return new LLSD(new ArrayList<Object>(Arrays.asList(items)));
+    }
+
+    private LLSD parseSequentially(final ByteBuffer document)
+        throws LLSDException {
+        try {
+            return parser.parse(document);
+        } catch(LLSDException e) {
+            throw e;
+        } catch(Exception e) {
+            throw new LLSDException("Unable to parse document: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Runs the item for every index from zero up to the count, across the
+     * executor, and waits for them all.
+     *
+     * @param action what an item does, for failure messages.
+     */
+    private void forEach(final int count, final String action, final Item item)
+        throws LLSDException {
+        final Exception[] failures = new Exception[count];
+        final int parallelism = executor instanceof ForkJoinPool
+            ? ((ForkJoinPool) executor).getParallelism()
+            : Runtime.getRuntime().availableProcessors();
+        final int grain = Math.max(1, count / (parallelism * RANGES_PER_WORKER));
+
+        if (count == 0) {
+            return;
+        } else if (executor instanceof ForkJoinPool) {
+            ((ForkJoinPool) executor).invoke(new Range(item, failures, 0, count, grain));
+        } else {
+            submitRanges(item, failures, count, grain);
+        }
+
+        // Each failure was stored by the worker which ran its item, before
+        // the batch was joined.
+        for (int i = 0; i < count; i++) {
+            if (null != failures[i]) {
+                throw new LLSDException("Unable to " + action + " " + i + ": " + failures[i].getMessage(),
+                    failures[i]);
+            }
+        }
+    }
+
+    private void submitRanges(final Item item, final Exception[] failures, final int count, final int grain)
+        throws LLSDException {
+        final List<Callable<Void>> ranges = new ArrayList<Callable<Void>>();
+
+        for (int start = 0; start < count; start += grain) {
+            final int rangeStart = start;
+            final int rangeEnd = Math.min(count, start + grain);
+
+            ranges.add(new Callable<Void>() {
+                public Void call() {
+                    runRange(item, failures, rangeStart, rangeEnd);
+                    return null;
+                }
+            });
+        }
+
+        try {
+            for (Future<Void> range: executor.invokeAll(ranges)) {
+                range.get();
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LLSDException("Interrupted while waiting for a batch.", e);
+        } catch(ExecutionException e) {
+            // Failures of items are stored; only errors reach here.
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new LLSDException("Unable to run a batch: " + e.getCause(), e.getCause());
+        }
+    }
+
+    private static void runRange(final Item item, final Exception[] failures, final int start, final int end) {
+        for (int i = start; i < end; i++) {
+            try {
+                item.run(i);
+            } catch(Exception e) {
+                failures[i] = e;
+            }
+        }
+    }
+
+    /**
+     * The work done for one index of a batch.
+     */
+    private interface Item {
+        void run(int index) throws Exception;
+    }
+
+    /**
+     * A range of indexes, split in half until no larger than the grain.
+     */
+    private static final class Range extends RecursiveAction {
+        private final Item item;
+        private final Exception[] failures;
+        private final int start;
+        private final int end;
+        private final int grain;
+
+        Range(final Item item, final Exception[] failures, final int start, final int end, final int grain) {
+            this.item = item;
+            this.failures = failures;
+            this.start = start;
+            this.end = end;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            final int middle;
+
+            if (end - start <= grain) {
+                runRange(item, failures, start, end);
+                return;
+            }
+            middle = (start + end) >>> 1;
+            invokeAll(new Range(item, failures, start, middle, grain), new Range(item, failures, middle, end, grain));
+        }
+    }
+}
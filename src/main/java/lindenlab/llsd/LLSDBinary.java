@@ -0,0 +1,49 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+import java.util.Arrays;
+
+/**
+ * An LLSD binary value. The byte array is neither copied on construction nor
+ * by {@link #asBinary()}, so callers must not modify it once wrapped.
+ */
+public final class LLSDBinary extends LLSDValue {
+    private final byte[] value;
+
+    public      LLSDBinary(final byte[] value) {
+        if (null == value) {
+            throw new NullPointerException("value");
+        }
+        this.value = value;
+    }
+
+    public LLSDType getType() {
+        return LLSDType.BINARY;
+    }
+
+    public byte[] asBinary() {
+        return value;
+    }
+
+    public Object toObject() {
+        return value;
+    }
+
+    public boolean equals(final Object other) {
+        return other instanceof LLSDBinary
+            && Arrays.equals(((LLSDBinary) other).value, value);
+    }
+
+    public int hashCode() {
+        return Arrays.hashCode(value);
+    }
+
+    public String toString() {
+        return "binary(" + value.length + ")";
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Parser for binary (application/llsd+binary) LLSD documents, as written by
+ * {@link LLSDBinarySerialiser}. The '?' extension for typed undefined values
+ * is only read by a parser created with it enabled; otherwise it is
+ * rejected as any unknown marker is.
+ *
+ * Instances may be shared between threads once configured.
+ */
+public class LLSDBinaryParser {
+    private final boolean typedUndefined;
+    private volatile LLSDLimits limits = LLSDLimits.DEFAULT;
+
+    public      LLSDBinaryParser() {
+        this(false);
+    }
+
+    /**
+     * @param typedUndefined true to read typed undefined values written by
+     * an {@link LLSDBinarySerialiser} with the same option.
+     */
+    public      LLSDBinaryParser(final boolean typedUndefined) {
+        this.typedUndefined = typedUndefined;
+    }
+
+    public boolean isTypedUndefined() {
+        return typedUndefined;
+    }
+
+    /**
+     * Sets the limits checked as documents are read, as for
+     * {@link LLSDParser#setLimits(LLSDLimits)}.
+     */
+    public void setLimits(final LLSDLimits limits) {
+        if (null == limits) {
+            throw new NullPointerException("limits");
+        }
+        this.limits = limits;
+    }
+
+    /**
+     * Parses a binary LLSD document from the given input stream.
+     *
+     * @param input the stream to read and parse as binary LLSD.
+     * @throws IOException if there was a problem reading from the input
+     * stream.
+     * @throws LLSDException if the document is not valid binary LLSD.
+     */
+    public LLSD parse(final InputStream input)
+        throws IOException, LLSDException {
+        return reader(input).readDocument();
+    }
+
+    /**
+     * Parses a binary LLSD document from the remaining bytes of the given
+     * buffer. The buffer's position is not changed.
+     *
+     * @throws LLSDException if the document is not valid binary LLSD.
+     */
+    public LLSD parse(final ByteBuffer input)
+        throws LLSDException {
+        try {
+            return reader(input).readDocument();
+        } catch(IOException e) {
+            // Only possible when reading from a stream.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Parses a binary LLSD document from the given input stream into a typed
+     * tree.
+     *
+     * @return the root value, or null if the document is empty.
+     * @throws IOException if there was a problem reading from the input
+     * stream.
+     * @throws LLSDException if the document is not valid binary LLSD.
+     */
+    public LLSDValue parseValue(final InputStream input)
+        throws IOException, LLSDException {
+        return reader(input).readDocumentTree();
+    }
+
+    /**
+     * Parses a binary LLSD document from the remaining bytes of the given
+     * buffer into a typed tree. The buffer's position is not changed.
+     *
+     * @return the root value, or null if the document is empty.
+     * @throws LLSDException if the document is not valid binary LLSD.
+     */
+    public LLSDValue parseValue(final ByteBuffer input)
+        throws LLSDException {
+        try {
+            return reader(input).readDocumentTree();
+        } catch(IOException e) {
+            // Only possible when reading from a stream.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Opens a streaming reader over the binary LLSD document in the given
+     * input stream.
+     */
+    public LLSDBinaryReader reader(final InputStream input) {
+        return new LLSDBinaryReader(input, limits, typedUndefined);
+    }
+
+    /**
+     * Opens a streaming reader over the binary LLSD document in the
+     * remaining bytes of the given buffer. The buffer's position is not
+     * changed.
+     */
+    public LLSDBinaryReader reader(final ByteBuffer input) {
+        return new LLSDBinaryReader(input, limits, typedUndefined);
+    }
+}
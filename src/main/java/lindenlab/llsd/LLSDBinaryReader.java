@@ -0,0 +1,500 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * {@link LLSDReader} over a binary (application/llsd+binary) LLSD document.
+ * See {@link LLSDBinarySerialiser} for a description of the encoding. An
+ * optional "&lt;? llsd/binary ?&gt;" header line is skipped if present, and
+ * nothing may follow the root value. Lengths are checked against the
+ * {@link LLSDLimits} given, and stream input is read into memory only as
+ * it arrives, so a false length costs no more than the input really holds.
+ *
+ * Obtain instances from {@link LLSDBinaryParser}. Closing the reader does
+ * not close the underlying input stream.
+ */
+public class LLSDBinaryReader implements LLSDReader {
+    private static final byte ARRAY = 0;
+    private static final byte MAP_KEY = 1;
+    private static final byte MAP_VALUE = 2;
+
+    private final Source source;
+    private final LLSDLimits limits;
+
+    /**
+     * Counts the values read, checking their depth and number against the
+     * limits so that the recursive default methods of {@link LLSDReader}
+     * cannot overflow the stack.
+     */
+    private final LLSDLimits.Counter counter;
+
+    /**
+     * True to read the '?' extension for typed undefined values.
+     */
+    private final boolean typedUndefined;
+
+    /**
+     * Container type and number of entries still to be read for each
+     * enclosing map or array, innermost last.
+     */
+    private byte[] containers = new byte[16];
+    private int[] remaining = new int[16];
+    private int depth = 0;
+
+    private LLSDToken token = null;
+    private boolean isUndefined = false;
+    private boolean booleanValue;
+    private int integerValue;
+    private double realValue;
+    private long uuidHigh;
+    private long uuidLow;
+    private String stringValue;
+    private byte[] binaryValue;
+
+    LLSDBinaryReader(final InputStream input, final LLSDLimits limits, final boolean typedUndefined) {
+        this.source = new StreamSource(input);
+        this.limits = limits;
+        this.counter = limits.counter();
+        this.typedUndefined = typedUndefined;
+    }
+
+    LLSDBinaryReader(final ByteBuffer input, final LLSDLimits limits, final boolean typedUndefined) {
+        this.source = new BufferSource(input);
+        this.limits = limits;
+        this.counter = limits.counter();
+        this.typedUndefined = typedUndefined;
+    }
+
+    public LLSDToken next() throws IOException, LLSDException {
+        if (token == LLSDToken.END_DOCUMENT) {
+            return token;
+        }
+
+        isUndefined = false;
+        stringValue = null;
+        binaryValue = null;
+        try {
+            if (depth == 0) {
+                if (null != token) {
+                    if (source.peek() >= 0) {
+                        throw new LLSDException("Unexpected data after the end of binary LLSD document.");
+                    }
+                    return token = LLSDToken.END_DOCUMENT;
+                }
+                return token = readDocumentStart();
+            }
+
+            final int current = depth - 1;
+
+            if (containers[current] == MAP_VALUE) {
+                containers[current] = MAP_KEY;
+                remaining[current]--;
+                return token = readValue(source.readByte());
+            }
+
+            if (remaining[current] == 0) {
+                final byte marker = source.readByte();
+
+                depth--;
+                if (containers[current] == ARRAY) {
+                    expectMarker(']', marker);
+                    return token = LLSDToken.END_ARRAY;
+                }
+                expectMarker('}', marker);
+                return token = LLSDToken.END_MAP;
+            }
+
+            if (containers[current] == MAP_KEY) {
+                expectMarker('k', source.readByte());
+                stringValue = readString();
+                containers[current] = MAP_VALUE;
+                return token = LLSDToken.KEY;
+            }
+
+            remaining[current]--;
+            return token = readValue(source.readByte());
+        } catch(EOFException e) {
+            throw new LLSDException("Unexpected end of binary LLSD document.", e);
+        } catch(BufferUnderflowException e) {
+            throw new LLSDException("Unexpected end of binary LLSD document.", e);
+        }
+    }
+
+    public LLSDToken getToken() {
+        return token;
+    }
+
+    public String getKey() throws LLSDException {
+        requireToken(LLSDToken.KEY);
+        return stringValue;
+    }
+
+    public boolean isUndefined() {
+        return isUndefined;
+    }
+
+    public boolean getBoolean() throws LLSDException {
+        requireDefined(LLSDToken.BOOLEAN);
+        return booleanValue;
+    }
+
+    public int getInteger() throws LLSDException {
+        requireDefined(LLSDToken.INTEGER);
+        return integerValue;
+    }
+
+    public double getReal() throws LLSDException {
+        requireDefined(LLSDToken.REAL);
+        return realValue;
+    }
+
+    public String getString() throws LLSDException {
+        requireDefined(LLSDToken.STRING);
+        return stringValue;
+    }
+
+    public UUID getUUID() throws LLSDException {
+        requireDefined(LLSDToken.UUID);
+        return new UUID(uuidHigh, uuidLow);
+    }
+
+    public Date getDate() throws LLSDException {
+        requireDefined(LLSDToken.DATE);
+        return new Date(Math.round(realValue * 1000.0));
+    }
+
+    public URI getURI() throws LLSDException {
+        requireDefined(LLSDToken.URI);
+        return LLSDScalars.parseURI(stringValue);
+    }
+
+    public byte[] getBinary() throws LLSDException {
+        requireDefined(LLSDToken.BINARY);
+        return binaryValue;
+    }
+
+    public Object getValue() throws LLSDException {
+        if (null == token) {
+            throw new LLSDException("No current token, call next() first.");
+        }
+
+        switch (token) {
+        case UNDEF:
+            return "";
+        case BOOLEAN:
+            return isUndefined
+                    ? LLSDUndefined.BOOLEAN
+                    : Boolean.valueOf(booleanValue);
+        case DATE:
+            return isUndefined
+                    ? LLSDUndefined.DATE
+                    : getDate();
+        case INTEGER:
+            return isUndefined
+                    ? LLSDUndefined.INTEGER
+                    : Integer.valueOf(integerValue);
+        case REAL:
+            return isUndefined
+                    ? LLSDUndefined.REAL
+                    : Double.valueOf(realValue);
+        case STRING:
+            return isUndefined
+                    ? LLSDUndefined.STRING
+                    : stringValue;
+        case URI:
+            return isUndefined
+                    ? LLSDUndefined.URI
+                    : getURI();
+        case UUID:
+            return isUndefined
+                    ? LLSDUndefined.UUID
+                    : getUUID();
+        case BINARY:
+            return isUndefined
+                    ? LLSDUndefined.BINARY
+                    : binaryValue;
+        default:
+            throw new LLSDException("Current token " + token + " is not a scalar value.");
+        }
+    }
+
+    public void close() throws IOException {
+        // Nothing to release; the underlying input belongs to the caller.
+    }
+
+    private LLSDToken readDocumentStart() throws IOException, LLSDException {
+        int marker = source.peek();
+
+        if (marker == '<') {
+            final StringBuilder header = new StringBuilder();
+
+            do {
+                marker = source.readByte();
+                header.append((char) marker);
+                if (header.length() > 64) {
+                    throw new LLSDException("Binary LLSD header is not terminated.");
+                }
+            } while (marker != '\n');
+
+            if (!header.toString().toLowerCase().contains("llsd/binary")) {
+                throw new LLSDException("Unexpected binary LLSD header \""
+                    + header.toString().trim() + "\".");
+            }
+            marker = source.peek();
+        }
+
+        if (marker < 0) {
+            return LLSDToken.END_DOCUMENT;
+        }
+
+        return readValue(source.readByte());
+    }
+
+    private LLSDToken readValue(final byte marker)
+        throws IOException, LLSDException {
+        counter.node(depth + 1);
+        switch (marker) {
+        case '{':
+            push(MAP_KEY, readLength());
+            return LLSDToken.START_MAP;
+        case '[':
+            push(ARRAY, readLength());
+            return LLSDToken.START_ARRAY;
+        case '!':
+            return LLSDToken.UNDEF;
+        case '1':
+            booleanValue = true;
+            return LLSDToken.BOOLEAN;
+        case '0':
+            booleanValue = false;
+            return LLSDToken.BOOLEAN;
+        case 'i':
+            integerValue = source.readInt();
+            return LLSDToken.INTEGER;
+        case 'r':
+            realValue = Double.longBitsToDouble(source.readLong());
+            return LLSDToken.REAL;
+        case 'd':
+            realValue = Double.longBitsToDouble(Long.reverseBytes(source.readLong()));
+            return LLSDToken.DATE;
+        case 'u':
+            uuidHigh = source.readLong();
+            uuidLow = source.readLong();
+            return LLSDToken.UUID;
+        case 's':
+            stringValue = readString();
+            return LLSDToken.STRING;
+        case 'l':
+            stringValue = readString();
+            return LLSDToken.URI;
+        case 'b':
+            final int length = readLength();
+
+            limits.checkBinary(length);
+            binaryValue = source.readBytes(length);
+            return LLSDToken.BINARY;
+        case '?':
+            if (!typedUndefined) {
+                throw new LLSDException("Unexpected binary LLSD marker '?'; typed undefined values"
+                    + " are an extension which is not enabled.");
+            }
+
+            final LLSDToken undefinedToken = undefinedType(source.readByte());
+
+            isUndefined = true;
+            return undefinedToken;
+        default:
+            throw new LLSDException("Unexpected binary LLSD marker 0x"
+                + Integer.toHexString(marker & 0xff) + ".");
+        }
+    }
+
+    private LLSDToken undefinedType(final byte marker) throws LLSDException {
+        final LLSDUndefined undefined = LLSDUndefined.forMarker(marker);
+
+        if (null == undefined) {
+            throw new LLSDException("Unexpected binary LLSD undefined type marker 0x"
+                + Integer.toHexString(marker & 0xff) + ".");
+        }
+        return undefined.token();
+    }
+
+    private int readLength() throws IOException, LLSDException {
+        final int length = source.readInt();
+
+        if (length < 0) {
+            throw new LLSDException("Binary LLSD length " + (length & 0xffffffffL)
+                + " is too large.");
+        }
+        return length;
+    }
+
+    /**
+     * Reads a string, checking its length against the limits. A UTF-8 byte
+     * encodes at most one UTF-16 character, and three at least one, so the
+     * length in bytes bounds the string's before it is read.
+     */
+    private String readString() throws IOException, LLSDException {
+        final int length = readLength();
+        final String value;
+
+        if (length > limits.getMaxStringLength() * 3L) {
+            throw new LLSDLimitException.StringLength(limits.getMaxStringLength(), length);
+        }
+        value = new String(source.readBytes(length), StandardCharsets.UTF_8);
+        limits.checkString(value.length());
+        return value;
+    }
+
+    private void expectMarker(final char expected, final byte marker)
+        throws LLSDException {
+        if (marker != expected) {
+            throw new LLSDException("Expected binary LLSD marker '" + expected
+                + "' but found 0x" + Integer.toHexString(marker & 0xff) + ".");
+        }
+    }
+
+    private void push(final byte container, final int count) {
+        if (depth == containers.length) {
+            containers = Arrays.copyOf(containers, depth * 2);
+            remaining = Arrays.copyOf(remaining, depth * 2);
+        }
+        containers[depth] = container;
+        remaining[depth] = count;
+        depth++;
+    }
+
+    private void requireToken(final LLSDToken expected) throws LLSDException {
+        if (token != expected) {
+            throw new LLSDException("Expected current token to be " + expected
+                + " but it is " + token + ".");
+        }
+    }
+
+    private void requireDefined(final LLSDToken expected) throws LLSDException {
+        requireToken(expected);
+        if (isUndefined) {
+            throw new LLSDException("The current " + expected + " value is undefined.");
+        }
+    }
+
+    /**
+     * Big-endian primitive input, from either a stream or a buffer.
+     */
+    private abstract static class Source {
+        /**
+         * @return the next byte without consuming it, or -1 at end of input.
+         */
+        abstract int peek() throws IOException;
+
+        abstract byte readByte() throws IOException;
+
+        abstract int readInt() throws IOException;
+
+        abstract long readLong() throws IOException;
+
+        abstract byte[] readBytes(int length) throws IOException, LLSDException;
+    }
+
+    private static final class StreamSource extends Source {
+        private final DataInputStream input;
+
+        StreamSource(final InputStream input) {
+            this.input = new DataInputStream(new BufferedInputStream(input));
+        }
+
+        int peek() throws IOException {
+            final int value;
+
+            input.mark(1);
+            value = input.read();
+            input.reset();
+            return value;
+        }
+
+        byte readByte() throws IOException {
+            return input.readByte();
+        }
+
+        int readInt() throws IOException {
+            return input.readInt();
+        }
+
+        long readLong() throws IOException {
+            return input.readLong();
+        }
+
+        /**
+         * Reads the given number of bytes a chunk at a time, growing the
+         * value as they arrive rather than trusting the length up front.
+         */
+        byte[] readBytes(final int length) throws IOException {
+            byte[] value = new byte[Math.min(length, LLSDOutputBuffer.STREAM_BUFFER_SIZE)];
+            int count = 0;
+
+            while (count < length) {
+                if (count == value.length) {
+                    value = Arrays.copyOf(value, (int) Math.min(length, value.length * 2L));
+                }
+                input.readFully(value, count, value.length - count);
+                count = value.length;
+            }
+            return value;
+        }
+    }
+
+    private static final class BufferSource extends Source {
+        private final ByteBuffer input;
+
+        BufferSource(final ByteBuffer input) {
+            this.input = input.slice().order(ByteOrder.BIG_ENDIAN);
+        }
+
+        int peek() {
+            return input.hasRemaining()
+                ? input.get(input.position()) & 0xff
+                : -1;
+        }
+
+        byte readByte() {
+            return input.get();
+        }
+
+        int readInt() {
+            return input.getInt();
+        }
+
+        long readLong() {
+            return input.getLong();
+        }
+
+        byte[] readBytes(final int length) throws LLSDException {
+            final byte[] value;
+
+            if (length > input.remaining()) {
+                throw new LLSDException("Unexpected end of binary LLSD document.");
+            }
+            value = new byte[length];
+            input.get(value);
+            return value;
+        }
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Writes LLSD content in the binary (application/llsd+binary) format. Each
+ * value is a one byte marker followed by its payload, with all numbers
+ * big-endian:
+ *
+ * <ul>
+ * <li>'!' undefined</li>
+ * <li>'1' / '0' boolean true / false</li>
+ * <li>'i' 32-bit integer</li>
+ * <li>'r' 64-bit IEEE real</li>
+ * <li>'u' 16 byte UUID</li>
+ * <li>'s' 32-bit length and UTF-8 string</li>
+ * <li>'l' 32-bit length and UTF-8 URI</li>
+ * <li>'d' date, as 64-bit real seconds since the epoch. This one is
+ * little-endian, for compatibility with the Linden Lab implementation.</li>
+ * <li>'b' 32-bit length and raw bytes</li>
+ * <li>'[' 32-bit count, the values, then ']'</li>
+ * <li>'{' 32-bit count, then for each entry 'k', a 32-bit length and UTF-8
+ * key followed by the value, then '}'</li>
+ * </ul>
+ *
+ * Binary LLSD has no typed undefined value, so {@link LLSDUndefined} values
+ * are written as '!' and read back as plain undefined values. A serialiser
+ * created with typed undefined values enabled writes them instead as the
+ * extension marker '?' followed by the marker of their type ('1' for
+ * boolean), which only an {@link LLSDBinaryParser} with the same option
+ * reads. Frozen documents are then encoded afresh rather than from their
+ * cached encoding, which is always standard.
+ *
+ * Instances hold no state and may be shared between threads.
+ */
+public class LLSDBinarySerialiser {
+    private final boolean typedUndefined;
+
+    public      LLSDBinarySerialiser() {
+        this(false);
+    }
+
+    /**
+     * @param typedUndefined true to write {@link LLSDUndefined} values with
+     * the '?' extension, for reading by this library only.
+     */
+    public      LLSDBinarySerialiser(final boolean typedUndefined) {
+        this.typedUndefined = typedUndefined;
+    }
+
+    public boolean isTypedUndefined() {
+        return typedUndefined;
+    }
+
+    /**
+     * Writes the given LLSD to an output stream.
+     *
+     * @throws IOException if there was a problem writing to the stream.
+     * @throws LLSDException if the content holds a type which cannot be
+     * serialised.
+     */
+    public void serialise(final LLSD llsd, final OutputStream output)
+        throws IOException, LLSDException {
+        final LLSDOutputBuffer buffer = LLSDOutputBuffer.forStream(output);
+
+        if (llsd instanceof LLSDFrozen && !typedUndefined) {
+            output.write(((LLSDFrozen) llsd).encodedBytes(LLSDFormat.BINARY));
+            return;
+        }
+        new Encoder(buffer, typedUndefined).writeContent(llsd.getContent());
+        buffer.flush();
+    }
+
+    /**
+     * Writes the given LLSD into a buffer, starting at its current position.
+     *
+     * @throws BufferOverflowException if the buffer does not have enough
+     * space remaining. The buffer's position is then undefined.
+     * @throws LLSDException if the content holds a type which cannot be
+     * serialised.
+     */
+    public void serialise(final LLSD llsd, final ByteBuffer target)
+        throws LLSDException {
+        final ByteOrder order = target.order();
+
+        if (llsd instanceof LLSDFrozen && !typedUndefined) {
+            target.put(((LLSDFrozen) llsd).encodedBytes(LLSDFormat.BINARY));
+            return;
+        }
+        try {
+            new Encoder(LLSDOutputBuffer.forBuffer(target), typedUndefined).writeContent(llsd.getContent());
+        } catch(IOException e) {
+            // Only possible when reading an InputStream binary value.
+            throw new LLSDException("Unable to read binary value.", e);
+        } finally {
+            target.order(order);
+        }
+    }
+
+    /**
+     * Writes the given LLSD into a new buffer.
+     *
+     * @return a heap buffer positioned at zero, with the encoded document
+     * between its position and limit.
+     */
+    public ByteBuffer serialise(final LLSD llsd)
+        throws LLSDException {
+        final LLSDOutputBuffer buffer = LLSDOutputBuffer.growable(256);
+
+        if (llsd instanceof LLSDFrozen && !typedUndefined) {
+            return ByteBuffer.wrap(((LLSDFrozen) llsd).encodedBytes(LLSDFormat.BINARY).clone());
+        }
+        try {
+            new Encoder(buffer, typedUndefined).writeContent(llsd.getContent());
+        } catch(IOException e) {
+            // Only possible when reading an InputStream binary value.
+            throw new LLSDException("Unable to read binary value.", e);
+        }
+        return buffer.toBuffer();
+    }
+
+    /**
+     * Encodes the given content into a buffer.
+     */
+    static void write(final Object content, final LLSDOutputBuffer buffer)
+        throws IOException, LLSDException {
+        new Encoder(buffer, false).writeContent(content);
+    }
+
+    /**
+     * Encoding state for one document.
+     */
+    private static final class Encoder {
+        private final LLSDOutputBuffer buffer;
+        private final boolean typedUndefined;
+
+        Encoder(final LLSDOutputBuffer buffer, final boolean typedUndefined) {
+            this.buffer = buffer;
+            this.typedUndefined = typedUndefined;
+        }
+
+        void writeContent(final Object content) throws IOException, LLSDException {
+            if (null != content) {
+                writeElement(content);
+            }
+        }
+
+        private void writeElement(final Object toSerialise)
+            throws IOException, LLSDException {
+            assert null != toSerialise;
+
+            if (toSerialise instanceof LLSDFrozen.Node) {
+                final LLSDFrozen.Node node = (LLSDFrozen.Node) toSerialise;
+                final byte[] cached = node.cached(LLSDFormat.BINARY);
+                final int start = buffer.size();
+
+                if (typedUndefined) {
+                    // The cache only holds standard encodings.
+                    writeElement(node.content());
+                } else if (null != cached) {
+                    buffer.write(cached);
+                } else {
+                    writeElement(node.content());
+                    node.cache(LLSDFormat.BINARY, buffer, start);
+                }
+            } else if (toSerialise instanceof Map) {
+                final Map<String, Object> serialiseMap = (Map<String, Object>)toSerialise;
+
+                buffer.put((byte) '{');
+                buffer.putInt(serialiseMap.size());
+                for (Map.Entry<String, Object> entry: serialiseMap.entrySet()) {
+                    writeString('k', entry.getKey());
+                    writeElement(entry.getValue());
+                }
+                buffer.put((byte) '}');
+            } else if (toSerialise instanceof List) {
+                final List<Object> serialiseList = (List<Object>)toSerialise;
+
+                buffer.put((byte) '[');
+                buffer.putInt(serialiseList.size());
+                for (Object current: serialiseList) {
+                    writeElement(current);
+                }
+                buffer.put((byte) ']');
+            } else if (toSerialise instanceof Boolean) {
+                buffer.put(((Boolean) toSerialise) ? (byte) '1' : (byte) '0');
+            } else if (toSerialise instanceof Integer) {
+                buffer.put((byte) 'i');
+                buffer.putInt((Integer) toSerialise);
+            } else if (toSerialise instanceof Double
+                || toSerialise instanceof Float) {
+                buffer.put((byte) 'r');
+                buffer.putDouble(((Number) toSerialise).doubleValue());
+            } else if (toSerialise instanceof UUID) {
+                final UUID uuid = (UUID) toSerialise;
+
+                buffer.put((byte) 'u');
+                buffer.putLong(uuid.getMostSignificantBits());
+                buffer.putLong(uuid.getLeastSignificantBits());
+            } else if (toSerialise instanceof String) {
+                writeString('s', (String) toSerialise);
+            } else if (toSerialise instanceof Date) {
+                final double seconds = ((Date) toSerialise).getTime() / 1000.0;
+
+                buffer.put((byte) 'd');
+                buffer.putLong(Long.reverseBytes(Double.doubleToLongBits(seconds)));
+            } else if (toSerialise instanceof URI) {
+                writeString('l', toSerialise.toString());
+            } else if (toSerialise instanceof byte[]) {
+                writeBytes('b', (byte[]) toSerialise);
+            } else if (toSerialise instanceof ByteBuffer) {
+                final ByteBuffer binary = (ByteBuffer) toSerialise;
+
+                buffer.put((byte) 'b');
+                buffer.putInt(binary.remaining());
+                buffer.write(binary);
+            } else if (toSerialise instanceof InputStream) {
+                // The length comes first, so the stream has to be read before
+                // anything is written.
+                final LLSDOutputBuffer binary = LLSDOutputBuffer.growable(LLSDOutputBuffer.STREAM_BUFFER_SIZE);
+                final byte[] chunk = new byte[LLSDOutputBuffer.STREAM_BUFFER_SIZE];
+                int length;
+
+                do {
+                    length = LLSDOutputBuffer.readFully((InputStream) toSerialise, chunk);
+                    binary.write(chunk, 0, length);
+                } while (length == chunk.length);
+
+                final ByteBuffer contents = binary.toBuffer();
+
+                buffer.put((byte) 'b');
+                buffer.putInt(contents.remaining());
+                buffer.write(contents);
+            } else if (toSerialise instanceof LLSDValue) {
+                writeValue((LLSDValue) toSerialise);
+            } else if (toSerialise instanceof LLSDUndefined) {
+                if (typedUndefined) {
+                    buffer.put((byte) '?');
+                    buffer.put(((LLSDUndefined) toSerialise).marker());
+                } else {
+                    buffer.put((byte) '!');
+                }
+            } else {
+                throw new LLSDException("Unable to serialise type \""
+                    + toSerialise.getClass().getName() + "\".");
+            }
+        }
+
+        private void writeValue(final LLSDValue value)
+            throws IOException, LLSDException {
+            if (value == LLSDUndef.UNDEF) {
+                buffer.put((byte) '!');
+                return;
+            } else if (value.isUndefined()) {
+                writeElement(value.toObject());
+                return;
+            }
+
+            switch (value.getType()) {
+            case MAP:
+                final LLSDMap map = (LLSDMap) value;
+
+                buffer.put((byte) '{');
+                buffer.putInt(map.size());
+                for (Map.Entry<String, LLSDValue> entry: map.entrySet()) {
+                    writeString('k', entry.getKey());
+                    writeValue(entry.getValue());
+                }
+                buffer.put((byte) '}');
+                break;
+            case ARRAY:
+                final LLSDArray array = (LLSDArray) value;
+                final int size = array.size();
+
+                buffer.put((byte) '[');
+                buffer.putInt(size);
+                if (array instanceof LLSDIntegerArray) {
+                    for (int i = 0; i < size; i++) {
+                        buffer.put((byte) 'i');
+                        buffer.putInt(((LLSDIntegerArray) array).getInteger(i));
+                    }
+                } else if (array instanceof LLSDRealArray) {
+                    for (int i = 0; i < size; i++) {
+                        buffer.put((byte) 'r');
+                        buffer.putDouble(((LLSDRealArray) array).getReal(i));
+                    }
+                } else {
+                    for (int i = 0; i < size; i++) {
+                        writeValue(array.get(i));
+                    }
+                }
+                buffer.put((byte) ']');
+                break;
+            case BOOLEAN:
+                buffer.put(value.asBoolean() ? (byte) '1' : (byte) '0');
+                break;
+            case INTEGER:
+                buffer.put((byte) 'i');
+                buffer.putInt(value.asInteger());
+                break;
+            case REAL:
+                buffer.put((byte) 'r');
+                buffer.putDouble(value.asReal());
+                break;
+            default:
+                // The remaining scalars hold their values as objects already.
+                writeElement(value.toObject());
+                break;
+            }
+        }
+
+        private void writeString(final char marker, final String value)
+            throws IOException {
+            writeBytes(marker, value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private void writeBytes(final char marker, final byte[] value)
+            throws IOException {
+            buffer.put((byte) marker);
+            buffer.putInt(value.length);
+            buffer.write(value);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+/**
+ * An LLSD boolean. There are only two instances; use {@link #valueOf(boolean)}.
+ */
+public final class LLSDBoolean extends LLSDValue {
+    public static final LLSDBoolean TRUE = new LLSDBoolean(true);
+    public static final LLSDBoolean FALSE = new LLSDBoolean(false);
+
+    private final boolean value;
+
+    private     LLSDBoolean(final boolean value) {
+        this.value = value;
+    }
+
+    public static LLSDBoolean valueOf(final boolean value) {
+        return value
+            ? TRUE
+            : FALSE;
+    }
+
+    public LLSDType getType() {
+        return LLSDType.BOOLEAN;
+    }
+
+    public boolean asBoolean() {
+        return value;
+    }
+
+    public Object toObject() {
+        return Boolean.valueOf(value);
+    }
+}
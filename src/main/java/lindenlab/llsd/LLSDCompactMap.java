@@ -0,0 +1,234 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+import java.util.*;
+
+/**
+ * Map for small maps whose keys repeat from one map to the next. The keys
+ * are held once, in an {@link LLSDMapLayout} shared by every map with the
+ * same keys, and each map holds only a flat array of its values: there are
+ * no entry objects or hash table, and lookups compare a few references.
+ *
+ * The full Map interface is supported. Replacing and removing values works
+ * in place; adding a key the layout does not have moves the map's contents
+ * into a LinkedHashMap, which it uses from then on. Iteration is in
+ * document order. As with HashMap, instances are not thread safe.
+ */
+final class LLSDCompactMap extends AbstractMap<String, Object> {
+    /**
+     * Value of a key which has been removed.
+     */
+    private static final Object ABSENT = new Object();
+
+    private final LLSDMapLayout layout;
+    private final Object[] values;
+    private int size;
+
+    /**
+     * Plain map holding the contents once a key outside the layout has been
+     * added, or null.
+     */
+    private Map<String, Object> spill = null;
+
+    private     LLSDCompactMap(final LLSDMapLayout layout, final Object[] values) {
+        this.layout = layout;
+        this.values = values;
+        this.size = values.length;
+    }
+
+    /**
+     * Builds a map of the given entries. As with the other parsers, the
+     * last value given for a duplicated key wins.
+     *
+     * @return the map, or null if the entries do not fit the limits of the
+     * layout tree and a plain map should be used instead.
+     */
+    static Map<String, Object> build(final LLSDMapLayout root, final String[] keys,
+            final Object[] entryValues, final int count) {
+        final Object[] values;
+        LLSDMapLayout layout = root;
+        int duplicates = 0;
+
+        if (count > LLSDMapLayout.MAX_KEYS) {
+            return null;
+        }
+        for (int i = 0; i < count; i++) {
+            if (null == keys[i]) {
+                // An empty <key /> is parsed as a null key, which only a
+                // plain map can hold.
+                return null;
+            } else if (layout.indexOf(keys[i]) >= 0) {
+                duplicates++;
+                continue;
+            }
+            layout = layout.with(keys[i]);
+            if (null == layout) {
+                return null;
+            }
+        }
+
+        values = duplicates == 0
+            ? Arrays.copyOf(entryValues, count)
+            : new Object[count - duplicates];
+        if (duplicates > 0) {
+            for (int i = 0; i < count; i++) {
+                values[layout.indexOf(keys[i])] = entryValues[i];
+            }
+        }
+        return new LLSDCompactMap(layout, values);
+    }
+
+    @Override
+    public int size() {
+        return null == spill
+            ? size
+            : spill.size();
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        final int index;
+
+        if (null != spill) {
+            return spill.containsKey(key);
+        }
+        index = layout.indexOf(key);
+        return index >= 0 && values[index] != ABSENT;
+    }
+
+    @Override
+    public Object get(final Object key) {
+        final int index;
+
+        if (null != spill) {
+            return spill.get(key);
+        }
+        index = layout.indexOf(key);
+        return index >= 0 && values[index] != ABSENT
+            ? values[index]
+            : null;
+    }
+
+    @Override
+    public Object put(final String key, final Object value) {
+        final int index;
+        final Object previous;
+
+        if (null != spill) {
+            return spill.put(key, value);
+        }
+        index = layout.indexOf(key);
+        if (index < 0) {
+            spill();
+            return spill.put(key, value);
+        }
+
+        previous = values[index];
+        values[index] = value;
+        if (previous == ABSENT) {
+            size++;
+            return null;
+        }
+        return previous;
+    }
+
+    @Override
+    public Object remove(final Object key) {
+        final int index;
+        final Object previous;
+
+        if (null != spill) {
+            return spill.remove(key);
+        }
+        index = layout.indexOf(key);
+        if (index < 0 || values[index] == ABSENT) {
+            return null;
+        }
+        previous = values[index];
+        values[index] = ABSENT;
+        size--;
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        if (null != spill) {
+            spill.clear();
+            return;
+        }
+        Arrays.fill(values, ABSENT);
+        size = 0;
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        return new AbstractSet<Map.Entry<String, Object>>() {
+            @Override
+            public int size() {
+                return LLSDCompactMap.this.size();
+            }
+
+            @Override
+            public Iterator<Map.Entry<String, Object>> iterator() {
+                return null == spill
+                    ? new EntryIterator()
+                    : spill.entrySet().iterator();
+            }
+        };
+    }
+
+    private void spill() {
+        spill = new LinkedHashMap<String, Object>(Math.max(4, (size + 1) * 4 / 3 + 1));
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != ABSENT) {
+                spill.put(layout.keys[i], values[i]);
+            }
+        }
+    }
+
+    private final class EntryIterator implements Iterator<Map.Entry<String, Object>> {
+        private int next = advance(0);
+        private int current = -1;
+
+        private int advance(int index) {
+            while (index < values.length && values[index] == ABSENT) {
+                index++;
+            }
+            return index;
+        }
+
+        public boolean hasNext() {
+            return next < values.length;
+        }
+
+        public Map.Entry<String, Object> next() {
+            final int index = next;
+
+            if (index >= values.length) {
+                throw new NoSuchElementException();
+            }
+            current = index;
+            next = advance(index + 1);
+            return new AbstractMap.SimpleEntry<String, Object>(layout.keys[index], values[index]) {
+                @Override
+                public Object setValue(final Object value) {
+                    values[index] = value;
+                    return super.setValue(value);
+                }
+            };
+        }
+
+        public void remove() {
+            if (current < 0 || values[current] == ABSENT) {
+                throw new IllegalStateException();
+            }
+            values[current] = ABSENT;
+            size--;
+        }
+    }
+}
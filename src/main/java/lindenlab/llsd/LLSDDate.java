@@ -0,0 +1,55 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+import java.util.Date;
+
+/**
+ * An LLSD date, held as milliseconds since the epoch.
+ */
+public final class LLSDDate extends LLSDValue {
+    private final long time;
+
+    public      LLSDDate(final long time) {
+        this.time = time;
+    }
+
+    public      LLSDDate(final Date value) {
+        this(value.getTime());
+    }
+
+    public LLSDType getType() {
+        return LLSDType.DATE;
+    }
+
+    /**
+     * @return a new Date, as Date is mutable.
+     */
+    public Date asDate() {
+        return new Date(time);
+    }
+
+    /**
+     * @return the date in milliseconds since the epoch.
+     */
+    public long getTime() {
+        return time;
+    }
+
+    public Object toObject() {
+        return asDate();
+    }
+
+    public boolean equals(final Object other) {
+        return other instanceof LLSDDate
+            && ((LLSDDate) other).time == time;
+    }
+
+    public int hashCode() {
+        return Long.hashCode(time);
+    }
+}
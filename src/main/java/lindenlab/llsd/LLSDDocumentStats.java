@@ -0,0 +1,209 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Figures for one document parsed or serialised, given to
+ * {@link LLSDMetrics#completed(LLSDMetrics.Operation, LLSDDocumentStats)}.
+ * The nodes are counted from the finished content, after the time has been
+ * taken, so counting does not add to the times reported.
+ */
+public final class LLSDDocumentStats {
+    private final long bytes;
+    private final long elapsedNanos;
+    private final long conversionNanos;
+    private final int[] counts = new int[LLSDType.values().length];
+    private int nodes = 0;
+    private int maxDepth = 0;
+    private long binaryBytes = 0;
+    private long stringChars = 0;
+
+    LLSDDocumentStats(final Object content, final long bytes, final long elapsedNanos,
+            final long conversionNanos) {
+        this.bytes = bytes;
+        this.elapsedNanos = elapsedNanos;
+        this.conversionNanos = conversionNanos;
+        if (null != content) {
+            count(content, 1);
+        }
+    }
+
+    /**
+     * @return the size of the document in bytes, or in characters when it
+     * was written to a Writer, or -1 if it is not known.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return the time taken to parse or serialise the document, in
+     * nanoseconds.
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * @return the part of {@link #getElapsedNanos()} spent converting a DOM
+     * or typed tree into the content of an {@link LLSD}, rather than
+     * building that tree. Zero if the document was not converted, as when
+     * serialising or parsing into a typed tree.
+     */
+    public long getConversionNanos() {
+        return conversionNanos;
+    }
+
+    /**
+     * @return the number of values in the document, including maps and
+     * arrays.
+     */
+    public int getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return the number of values of the given type.
+     */
+    public int getCount(final LLSDType type) {
+        return counts[type.ordinal()];
+    }
+
+    /**
+     * @return the deepest nesting of values, where a lone scalar is 1 and a
+     * map of scalars is 2.
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * @return the total length of the binary values. Binary values given as
+     * an InputStream are not counted.
+     */
+    public long getBinaryBytes() {
+        return binaryBytes;
+    }
+
+    /**
+     * @return the total length of the strings and map keys, in characters.
+     */
+    public long getStringChars() {
+        return stringChars;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder text = new StringBuilder();
+
+        text.append(bytes).append(" bytes, ").append(nodes).append(" nodes, depth ").append(maxDepth)
+            .append(", ").append(elapsedNanos).append(" ns");
+        for (LLSDType type: LLSDType.values()) {
+            if (counts[type.ordinal()] > 0) {
+                text.append(", ").append(type.name().toLowerCase()).append(' ').append(counts[type.ordinal()]);
+            }
+        }
+        return text.toString();
+    }
+
+    private void count(final Object value, final int depth) {
+        nodes++;
+        maxDepth = Math.max(maxDepth, depth);
+        if (value instanceof Map) {
+            counts[LLSDType.MAP.ordinal()]++;
+            for (Map.Entry<String, Object> entry: ((Map<String, Object>) value).entrySet()) {
+                stringChars += null == entry.getKey() ? 0 : entry.getKey().length();
+                count(entry.getValue(), depth + 1);
+            }
+        } else if (value instanceof List) {
+            counts[LLSDType.ARRAY.ordinal()]++;
+            for (Object item: (List<Object>) value) {
+                count(item, depth + 1);
+            }
+        } else if (value instanceof LLSDValue) {
+            countValue((LLSDValue) value, depth);
+        } else if (value instanceof String) {
+            counts[LLSDType.STRING.ordinal()]++;
+            stringChars += ((String) value).length();
+        } else if (value instanceof byte[]) {
+            counts[LLSDType.BINARY.ordinal()]++;
+            binaryBytes += ((byte[]) value).length;
+        } else if (value instanceof ByteBuffer) {
+            counts[LLSDType.BINARY.ordinal()]++;
+            binaryBytes += ((ByteBuffer) value).remaining();
+        } else if (value instanceof LLSDUndefined) {
+            counts[LLSDType.valueOf(((LLSDUndefined) value).name()).ordinal()]++;
+        } else {
+            counts[scalarType(value).ordinal()]++;
+        }
+    }
+
+    private void countValue(final LLSDValue value, final int depth) {
+        counts[value.getType().ordinal()]++;
+        switch (value.getType()) {
+        case MAP:
+            for (Map.Entry<String, LLSDValue> entry: ((LLSDMap) value).entrySet()) {
+                stringChars += null == entry.getKey() ? 0 : entry.getKey().length();
+                count(entry.getValue(), depth + 1);
+            }
+            break;
+        case ARRAY:
+            final LLSDArray array = (LLSDArray) value;
+
+            if (array instanceof LLSDIntegerArray || array instanceof LLSDRealArray) {
+                // Primitive arrays are not boxed to be counted.
+                if (array.size() > 0) {
+                    nodes += array.size();
+                    maxDepth = Math.max(maxDepth, depth + 1);
+                    counts[(array instanceof LLSDIntegerArray ? LLSDType.INTEGER : LLSDType.REAL).ordinal()]
+                        += array.size();
+                }
+            } else {
+                for (int i = 0; i < array.size(); i++) {
+                    count(array.get(i), depth + 1);
+                }
+            }
+            break;
+        case STRING:
+        case BINARY:
+            final Object object = value.toObject();
+
+            if (object instanceof String) {
+                stringChars += ((String) object).length();
+            } else if (object instanceof byte[]) {
+                binaryBytes += ((byte[]) object).length;
+            }
+            break;
+        default:
+            break;
+        }
+    }
+
+    private static LLSDType scalarType(final Object value) {
+        if (value instanceof Boolean) {
+            return LLSDType.BOOLEAN;
+        } else if (value instanceof Integer) {
+            return LLSDType.INTEGER;
+        } else if (value instanceof Double || value instanceof Float) {
+            return LLSDType.REAL;
+        } else if (value instanceof UUID) {
+            return LLSDType.UUID;
+        } else if (value instanceof Date) {
+            return LLSDType.DATE;
+        } else if (value instanceof URI) {
+            return LLSDType.URI;
+        } else if (value instanceof InputStream) {
+            return LLSDType.BINARY;
+        }
+        return LLSDType.UNDEF;
+    }
+}
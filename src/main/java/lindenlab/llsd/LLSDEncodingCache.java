@@ -0,0 +1,104 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Encoded forms of {@link LLSDFrozen} documents, and of the larger maps and
+ * arrays within them, held within a budget of bytes. When the budget is
+ * reached the least recently used encodings are evicted; they are encoded
+ * again the next time they are needed.
+ *
+ * Documents frozen with {@link LLSD#freeze()} share one cache, whose budget
+ * is {@value #DEFAULT_BUDGET} bytes. Instances may be shared between
+ * threads.
+ */
+public final class LLSDEncodingCache {
+    public static final long DEFAULT_BUDGET = 64L * 1024 * 1024;
+
+    private static final LLSDEncodingCache SHARED = new LLSDEncodingCache(DEFAULT_BUDGET);
+    private static final int FORMATS = LLSDFormat.values().length;
+
+    private final long budget;
+    private final Map<Long, byte[]> encodings = new LinkedHashMap<Long, byte[]>(16, 0.75f, true);
+    private long size = 0;
+
+    /**
+     * @param budget the most bytes of encodings to hold.
+     */
+    public      LLSDEncodingCache(final long budget) {
+        if (budget < 0) {
+            throw new IllegalArgumentException("Negative budget " + budget + ".");
+        }
+        this.budget = budget;
+    }
+
+    /**
+     * @return the cache used by {@link LLSD#freeze()}.
+     */
+    public static LLSDEncodingCache shared() {
+        return SHARED;
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    /**
+     * @return the number of bytes of encodings held.
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    /**
+     * Evicts every encoding.
+     */
+    public synchronized void clear() {
+        encodings.clear();
+        size = 0;
+    }
+
+    /**
+     * @return the key of the given frozen value's encoding in the given
+     * format.
+     */
+    static long key(final long id, final LLSDFormat format) {
+        return id * FORMATS + format.ordinal();
+    }
+
+    /**
+     * @return the encoding with the given key, or null if it is not held.
+     */
+    synchronized byte[] get(final long key) {
+        return encodings.get(key);
+    }
+
+    /**
+     * Holds an encoding, evicting others as needed to keep within the
+     * budget. Encodings larger than the whole budget are not held.
+     */
+    synchronized void put(final long key, final byte[] encoding) {
+        final byte[] previous;
+        final Iterator<byte[]> eldest;
+
+        if (encoding.length > budget) {
+            return;
+        }
+        previous = encodings.put(key, encoding);
+        size += encoding.length - (null == previous ? 0 : previous.length);
+
+        eldest = encodings.values().iterator();
+        while (size > budget) {
+            size -= eldest.next().length;
+            eldest.remove();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+import java.io.IOException;
+
+/**
+ * The encodings of LLSD which this library writes, as cached by
+ * {@link LLSDFrozen#encoded(LLSDFormat)}.
+ */
+public enum LLSDFormat {
+    /**
+     * XML, as written by {@link LLSD#serialise(java.io.Writer, String)} and
+     * {@link LLSDXMLSerialiser}.
+     */
+    XML {
+        void write(final Object content, final LLSDOutputBuffer buffer)
+            throws IOException, LLSDException {
+            new LLSDXMLSerialiser.Encoder(buffer).writeDocument(content);
+        }
+    },
+
+    /**
+     * XML without whitespace, as written with {@link LLSDXMLOptions#COMPACT}.
+     */
+    COMPACT_XML {
+        void write(final Object content, final LLSDOutputBuffer buffer)
+            throws IOException, LLSDException {
+            new LLSDXMLSerialiser.Encoder(buffer, LLSDXMLOptions.COMPACT.syntax).writeDocument(content);
+        }
+    },
+
+    /**
+     * The canonical XML form written by
+     * {@link LLSDXMLSerialiser#serialiseCanonical(LLSD)}.
+     */
+    CANONICAL_XML {
+        void write(final Object content, final LLSDOutputBuffer buffer)
+            throws IOException, LLSDException {
+            new LLSDXMLSerialiser.Encoder(buffer, LLSDXMLSerialiser.Syntax.CANONICAL).writeDocument(content);
+        }
+    },
+
+    /**
+     * Binary, as written by {@link LLSDBinarySerialiser}.
+     */
+    BINARY {
+        void write(final Object content, final LLSDOutputBuffer buffer)
+            throws IOException, LLSDException {
+            LLSDBinarySerialiser.write(content, buffer);
+        }
+    },
+
+    /**
+     * Notation, as written by {@link LLSDNotationSerialiser}.
+     */
+    NOTATION {
+        void write(final Object content, final LLSDOutputBuffer buffer)
+            throws IOException, LLSDException {
+            LLSDNotationSerialiser.write(content, buffer);
+        }
+    },
+
+    /**
+     * JSON, as written by {@link LLSDJSONSerialiser#LLSDJSONSerialiser()}.
+     */
+    JSON {
+        void write(final Object content, final LLSDOutputBuffer buffer)
+            throws IOException, LLSDException {
+            LLSDJSONSerialiser.write(content, buffer, false);
+        }
+    },
+
+    /**
+     * JSON with typed values, as written by a typed
+     * {@link LLSDJSONSerialiser}.
+     */
+    TYPED_JSON {
+        void write(final Object content, final LLSDOutputBuffer buffer)
+            throws IOException, LLSDException {
+            LLSDJSONSerialiser.write(content, buffer, true);
+        }
+    };
+
+    /**
+     * Encodes a document with the given content.
+     */
+    abstract void write(Object content, LLSDOutputBuffer buffer)
+        throws IOException, LLSDException;
+}
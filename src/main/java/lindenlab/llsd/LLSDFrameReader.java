@@ -0,0 +1,424 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads a framed stream of LLSD documents written by
+ * {@link LLSDFrameWriter}, one record at a time, so that streams far larger
+ * than memory can be read:
+ *
+ * <pre>
+ * LLSDFrameReader reader = new LLSDFrameReader(channel);
+ * LLSD event;
+ *
+ * while (null != (event = reader.next())) {
+ *     dispatch(event);
+ * }
+ * </pre>
+ *
+ * The underlying stream or channel is read in blocks of
+ * {@link LLSDFrameWriter#BATCH_SIZE} bytes, and each record is parsed
+ * directly from the block holding it. A {@link SeekableByteChannel}, such as
+ * a file channel, may also be read by record number with
+ * {@link #get(int)} and {@link #seek(int)}; the offsets of the records are
+ * taken from the stream's index if it was written with one, or else found
+ * by stepping through the length of each record.
+ *
+ * Record lengths are checked against the document size limit of the
+ * parser given, and against the size of a seekable channel, before their
+ * bytes are read; the block holding a record only grows as its bytes
+ * arrive, so a corrupt length cannot make the reader allocate more than the
+ * stream holds.
+ *
+ * The reader does not close the underlying stream or channel. Instances are
+ * not thread safe.
+ */
+public class LLSDFrameReader {
+    private final ReadableByteChannel channel;
+    private final LLSDFormat format;
+    private final LLSDParser xmlParser;
+    private final LLSDBinaryParser binaryParser = new LLSDBinaryParser();
+    private final LLSDNotationParser notationParser = new LLSDNotationParser();
+    private final LLSDJSONParser jsonParser;
+    private final LLSDLimits limits;
+
+    /**
+     * Block of the stream read ahead, between its position and limit.
+     */
+    private ByteBuffer buffer = ByteBuffer.allocate(LLSDFrameWriter.BATCH_SIZE);
+
+    /**
+     * Offset of the first record from the start of the stream.
+     */
+    private final long headerSize;
+
+    /**
+     * Offsets of the records, once read from the index or found.
+     */
+    private long[] offsets = null;
+
+    /**
+     * Number of the record which {@link #next()} returns.
+     */
+    private int record = 0;
+    private boolean isEnd = false;
+
+    public      LLSDFrameReader(final InputStream input)
+        throws IOException, LLSDException {
+        this(Channels.newChannel(input), null);
+    }
+
+    public      LLSDFrameReader(final ReadableByteChannel channel)
+        throws IOException, LLSDException {
+        this(channel, null);
+    }
+
+    /**
+     * @param xmlParser the parser XML records are read with, including its
+     * limits and maps, or null for a default parser. Its limits apply to
+     * records of every format.
+     * @throws LLSDException if the stream does not start with a valid
+     * header.
+     */
+    public      LLSDFrameReader(final ReadableByteChannel channel, final LLSDParser xmlParser)
+        throws IOException, LLSDException {
+        final int nameLength;
+
+        this.channel = channel;
+        this.limits = null == xmlParser ? LLSDLimits.DEFAULT : xmlParser.getLimits();
+        buffer.limit(0);
+        if (!fill(LLSDFrameWriter.MAGIC.length + 2)
+            || !Arrays.equals(LLSDFrameWriter.MAGIC, take(LLSDFrameWriter.MAGIC.length))) {
+            throw new LLSDException("Stream does not start with an LLSD frame header.");
+        } else if (buffer.get() != LLSDFrameWriter.VERSION) {
+            throw new LLSDException("Unsupported LLSD frame version.");
+        }
+        nameLength = buffer.get() & 0xff;
+        if (!fill(nameLength)) {
+            throw new LLSDException("Truncated LLSD frame header.");
+        }
+        this.format = parseFormat(new String(take(nameLength), StandardCharsets.US_ASCII));
+        this.headerSize = LLSDFrameWriter.MAGIC.length + 2 + nameLength;
+        this.jsonParser = new LLSDJSONParser(LLSDFormat.TYPED_JSON == format);
+        jsonParser.setLimits(limits);
+        binaryParser.setLimits(limits);
+        notationParser.setLimits(limits);
+        this.xmlParser = null != xmlParser || !isXML(format) ? xmlParser : createParser();
+    }
+
+    private static LLSDFormat parseFormat(final String name)
+        throws LLSDException {
+        try {
+            return LLSDFormat.valueOf(name);
+        } catch(IllegalArgumentException e) {
+            throw new LLSDException("Unknown LLSD frame format \"" + name + "\".", e);
+        }
+    }
+
+    private static boolean isXML(final LLSDFormat format) {
+        return LLSDFormat.XML == format || LLSDFormat.COMPACT_XML == format
+            || LLSDFormat.CANONICAL_XML == format;
+    }
+
+    private static LLSDParser createParser()
+        throws LLSDException {
+        try {
+            return new LLSDParser();
+        } catch(ParserConfigurationException e) {
+            throw new LLSDException("Unable to create an XML parser: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return the format of the records, as named by the header.
+     */
+    public LLSDFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Reads and parses the next record.
+     *
+     * @return the document, or null at the end of the stream.
+     * @throws LLSDException if the record is truncated or cannot be parsed.
+     */
+    public LLSD next() throws IOException, LLSDException {
+        final int number = record;
+        final ByteBuffer document = nextRecord();
+
+        if (null == document) {
+            return null;
+        }
+
+        try {
+            return parse(document);
+        } catch(LLSDException e) {
+            throw new LLSDException("Unable to parse record " + number + ": " + e.getMessage(), e);
+        } catch(SAXException e) {
+            throw new LLSDException("Unable to parse record " + number + ": " + e.getMessage(), e);
+        }
+    }
+
+    private LLSD parse(final ByteBuffer document)
+        throws IOException, LLSDException, SAXException {
+        switch (format) {
+        case BINARY:
+            return binaryParser.parse(document);
+        case NOTATION:
+            return notationParser.parse(document);
+        case JSON:
+        case TYPED_JSON:
+            return jsonParser.parse(document);
+        default:
+            return xmlParser.parse(document);
+        }
+    }
+
+    /**
+     * Reads the next record without parsing it.
+     *
+     * @return the encoded document, between the returned buffer's position
+     * and limit, or null at the end of the stream. The buffer shares the
+     * reader's block and is only valid until the reader is next used.
+     * @throws LLSDException if the record is truncated, or larger than the
+     * document size limit.
+     */
+    public ByteBuffer nextRecord() throws IOException, LLSDException {
+        final ByteBuffer document;
+        final int length;
+
+        if (isEnd) {
+            return null;
+        } else if (!fill(4)) {
+            if (buffer.hasRemaining()) {
+                throw new LLSDException("Truncated length of record " + record + ".");
+            }
+            isEnd = true;
+            return null;
+        }
+
+        length = buffer.getInt();
+        if (LLSDFrameWriter.TRAILER == length) {
+            isEnd = true;
+            return null;
+        } else if (length < 0) {
+            throw new LLSDException("Invalid length " + length + " of record " + record + ".");
+        }
+        limits.checkDocument(length);
+        if (channel instanceof SeekableByteChannel
+            && length > ((SeekableByteChannel) channel).size() - position()) {
+            throw new LLSDException("Truncated record " + record + ".");
+        } else if (!fill(length)) {
+            throw new LLSDException("Truncated record " + record + ".");
+        }
+
+        document = buffer.slice();
+        document.limit(length);
+        buffer.position(buffer.position() + length);
+        record++;
+        return document;
+    }
+
+    /**
+     * @return the number of records in a seekable stream.
+     * @throws UnsupportedOperationException if the channel is not seekable.
+     */
+    public int size() throws IOException, LLSDException {
+        return offsets().length;
+    }
+
+    /**
+     * Reads and parses the given record of a seekable stream. Reading
+     * continues from the record after it.
+     *
+     * @throws IndexOutOfBoundsException if there is no such record.
+     * @throws UnsupportedOperationException if the channel is not seekable.
+     */
+    public LLSD get(final int index) throws IOException, LLSDException {
+        seek(index);
+        return next();
+    }
+
+    /**
+     * Moves to the given record of a seekable stream, so that
+     * {@link #next()} reads it.
+     *
+     * @throws IndexOutOfBoundsException if there is no such record.
+     * @throws UnsupportedOperationException if the channel is not seekable.
+     */
+    public void seek(final int index) throws IOException, LLSDException {
+        final long[] offsets = offsets();
+
+        if (index < 0 || index >= offsets.length) {
+            throw new IndexOutOfBoundsException("Record " + index + " of " + offsets.length + ".");
+        }
+        moveTo(offsets[index]);
+        record = index;
+    }
+
+    private long[] offsets() throws IOException, LLSDException {
+        if (!(channel instanceof SeekableByteChannel)) {
+            throw new UnsupportedOperationException("Unable to seek within a channel which is not seekable.");
+        } else if (null == offsets) {
+            final SeekableByteChannel seekable = (SeekableByteChannel) channel;
+            final long resume = position();
+
+            offsets = readIndex(seekable);
+            if (null == offsets) {
+                offsets = findRecords(seekable);
+            }
+            moveTo(resume);
+        }
+        return offsets;
+    }
+
+    /**
+     * @return the offsets in the stream's index, or null if it has none.
+     */
+    private long[] readIndex(final SeekableByteChannel seekable)
+        throws IOException, LLSDException {
+        final long size = seekable.size();
+        final ByteBuffer end = ByteBuffer.allocate(12);
+        final ByteBuffer trailer = ByteBuffer.allocate(8);
+        final ByteBuffer index;
+        final long start;
+        final int count;
+        final long[] offsets;
+
+        if (size < headerSize + 20) {
+            return null;
+        }
+        readAt(seekable, size - end.capacity(), end);
+        start = end.getLong();
+        if (!Arrays.equals(LLSDFrameWriter.INDEX_MAGIC, Arrays.copyOfRange(end.array(), 8, 12))) {
+            return null;
+        } else if (start < headerSize || start > size - 20) {
+            throw new LLSDException("Invalid offset " + start + " of the LLSD frame index.");
+        }
+
+        readAt(seekable, start, trailer);
+        count = trailer.getInt(4);
+        if (LLSDFrameWriter.TRAILER != trailer.getInt(0) || count < 0
+            || size - 12 - start != 8 + (long) count * 8) {
+            throw new LLSDException("Invalid LLSD frame index.");
+        }
+        index = ByteBuffer.allocate(count * 8);
+        readAt(seekable, start + 8, index);
+        offsets = new long[count];
+        index.asLongBuffer().get(offsets);
+        return offsets;
+    }
+
+    /**
+     * @return the offsets of the records, found by stepping through their
+     * lengths.
+     */
+    private long[] findRecords(final SeekableByteChannel seekable)
+        throws IOException, LLSDException {
+        final long size = seekable.size();
+        final ByteBuffer length = ByteBuffer.allocate(4);
+        long[] offsets = new long[64];
+        long position = headerSize;
+        int count = 0;
+
+        while (position < size) {
+            final int recordLength;
+
+            length.clear();
+            readAt(seekable, position, length);
+            recordLength = length.getInt();
+            if (LLSDFrameWriter.TRAILER == recordLength) {
+                break;
+            } else if (recordLength < 0 || position + 4 + recordLength > size) {
+                throw new LLSDException("Truncated record " + count + ".");
+            }
+
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+            }
+            offsets[count++] = position;
+            position += 4 + recordLength;
+        }
+        return Arrays.copyOf(offsets, count);
+    }
+
+    /**
+     * Fills the given buffer from the given offset, leaving it flipped.
+     */
+    private static void readAt(final SeekableByteChannel seekable, final long position, final ByteBuffer target)
+        throws IOException, LLSDException {
+        seekable.position(position);
+        while (target.hasRemaining()) {
+            if (seekable.read(target) < 0) {
+                throw new LLSDException("Unexpected end of an LLSD frame stream.");
+            }
+        }
+        target.flip();
+    }
+
+    /**
+     * @return the offset from the start of a seekable stream of the next
+     * byte to be read from the block.
+     */
+    private long position() throws IOException {
+        return ((SeekableByteChannel) channel).position() - buffer.remaining();
+    }
+
+    private void moveTo(final long position) throws IOException {
+        ((SeekableByteChannel) channel).position(position);
+        buffer.clear().limit(0);
+        isEnd = false;
+    }
+
+    /**
+     * Reads until the block holds at least the given number of bytes,
+     * growing it if it is too small. The block is only grown once it is
+     * full, so it never holds much more than the stream has given.
+     *
+     * @return false if the stream ended first.
+     */
+    private boolean fill(final int length) throws IOException {
+        if (buffer.remaining() >= length) {
+            return true;
+        }
+
+        buffer.compact();
+        while (buffer.position() < length) {
+            if (!buffer.hasRemaining()) {
+                final ByteBuffer grown = ByteBuffer.allocate((int) Math.min(length, buffer.capacity() * 2L));
+
+                buffer.flip();
+                grown.put(buffer);
+                buffer = grown;
+            }
+            if (channel.read(buffer) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        return buffer.remaining() >= length;
+    }
+
+    private byte[] take(final int length) {
+        final byte[] bytes = new byte[length];
+
+        buffer.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes a framed stream of LLSD documents, such as an event queue or an
+ * audit log, in any {@link LLSDFormat}. Each document is a record of its
+ * own, written complete with its prolog and preceded by its length, so that
+ * a reader can step from record to record without parsing them:
+ *
+ * <pre>
+ * try (LLSDFrameWriter writer = new LLSDFrameWriter(channel, LLSDFormat.BINARY, true)) {
+ *     for (LLSD event: events) {
+ *         writer.write(event);
+ *     }
+ * }
+ * </pre>
+ *
+ * The stream starts with a header naming the format. Each record is a four
+ * byte big-endian length followed by the encoded document. An indexed
+ * stream ends with a trailer: a length of -1, the number of records, the
+ * eight byte offset of each record from the start of the stream, and
+ * finally the offset of the trailer itself and the bytes "LIDX", so that
+ * {@link LLSDFrameReader} can find it from the end of a file.
+ *
+ * Records are collected in memory and written out together once
+ * {@link #BATCH_SIZE} bytes are waiting, so that many small documents cost
+ * one write to the underlying stream or channel; call {@link #flush()} to
+ * write out a partial batch. Closing the writer writes the trailer, if any,
+ * and flushes, but does not close the underlying stream or channel.
+ * Instances are not thread safe.
+ */
+public class LLSDFrameWriter implements Closeable, Flushable {
+    /**
+     * Number of bytes of records collected before they are written out.
+     */
+    public static final int BATCH_SIZE = 65536;
+
+    static final byte[] MAGIC = "LLSF".getBytes(StandardCharsets.US_ASCII);
+    static final byte VERSION = 1;
+    static final byte[] INDEX_MAGIC = "LIDX".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Length written in place of a record's to mark the start of the
+     * trailer.
+     */
+    static final int TRAILER = -1;
+
+    private final LLSDFormat format;
+    private final OutputStream output;
+    private final WritableByteChannel channel;
+    private final LLSDOutputBuffer batch = LLSDOutputBuffer.growable(BATCH_SIZE + LLSDOutputBuffer.STREAM_BUFFER_SIZE);
+
+    /**
+     * Offsets of the records written, or null if the stream has no index.
+     */
+    private final LLSDOutputBuffer index;
+
+    /**
+     * Number of bytes written out before the current batch.
+     */
+    private long written = 0;
+    private int count = 0;
+    private boolean isClosed = false;
+
+    /**
+     * Creates a writer without an index.
+     */
+    public      LLSDFrameWriter(final OutputStream output, final LLSDFormat format)
+        throws IOException {
+        this(output, null, format, false);
+    }
+
+    /**
+     * @param indexed true to write an index of the records when closed.
+     */
+    public      LLSDFrameWriter(final OutputStream output, final LLSDFormat format, final boolean indexed)
+        throws IOException {
+        this(output, null, format, indexed);
+    }
+
+    /**
+     * @param channel a channel in blocking mode.
+     * @param indexed true to write an index of the records when closed.
+     */
+    public      LLSDFrameWriter(final WritableByteChannel channel, final LLSDFormat format, final boolean indexed)
+        throws IOException {
+        this(null, channel, format, indexed);
+    }
+
+    private     LLSDFrameWriter(final OutputStream output, final WritableByteChannel channel,
+            final LLSDFormat format, final boolean indexed)
+        throws IOException {
+        this.output = output;
+        this.channel = channel;
+        this.format = format;
+        this.index = indexed ? LLSDOutputBuffer.growable(1024) : null;
+
+        batch.write(MAGIC);
+        batch.put(VERSION);
+        batch.put((byte) format.name().length());
+        batch.writeASCII(format.name());
+    }
+
+    public LLSDFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * @return the number of records written so far.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Writes a document as the next record. Frozen documents are written
+     * from their cached encoding.
+     *
+     * Nothing is written for a document which fails to encode, whatever the
+     * failure.
+     *
+     * @throws LLSDException if the document cannot be encoded.
+     */
+    public void write(final LLSD llsd) throws IOException, LLSDException {
+        final int start = beginRecord();
+        boolean isEncoded = false;
+
+        try {
+            if (llsd instanceof LLSDFrozen) {
+                batch.write(((LLSDFrozen) llsd).encodedBytes(format));
+            } else {
+                format.write(llsd.getContent(), batch);
+            }
+            isEncoded = true;
+        } finally {
+            if (!isEncoded) {
+                batch.truncate(start);
+            }
+        }
+        endRecord(start);
+    }
+
+    /**
+     * Writes the remaining bytes of the given buffer, which must already be
+     * a document in this writer's format, as the next record. The buffer's
+     * position is not changed.
+     */
+    public void writeRecord(final ByteBuffer document) throws IOException {
+        final int start = beginRecord();
+
+        batch.write(document);
+        endRecord(start);
+    }
+
+    private int beginRecord() throws IOException {
+        final int start = batch.size();
+
+        if (isClosed) {
+            throw new IOException("Unable to write a record to a closed frame writer.");
+        }
+        batch.putInt(0);
+        return start;
+    }
+
+    private void endRecord(final int start) throws IOException {
+        batch.putInt(start, batch.size() - start - 4);
+        if (null != index) {
+            index.putLong(written + start);
+        }
+        count++;
+        if (batch.size() >= BATCH_SIZE) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes out the records collected so far. The underlying stream, if
+     * any, is not flushed itself.
+     */
+    @Override
+    public void flush() throws IOException {
+        final int size = batch.size();
+
+        if (size == 0) {
+            return;
+        } else if (null != output) {
+            batch.writeTo(output);
+        } else {
+            batch.writeTo(channel);
+        }
+        written += size;
+    }
+
+    /**
+     * Writes the trailer, if the stream is indexed, and flushes.
+     */
+    @Override
+    public void close() throws IOException {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+        if (null != index) {
+            final long trailer = written + batch.size();
+
+            batch.putInt(TRAILER);
+            batch.putInt(count);
+            batch.write(index.toBuffer());
+            batch.putLong(trailer);
+            batch.write(INDEX_MAGIC);
+        }
+        flush();
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An immutable LLSD document, which is encoded once per format and then
+ * handed out from an {@link LLSDEncodingCache}, for documents sent to many
+ * recipients. Create one with {@link LLSD#freeze()}.
+ *
+ * The content is copied when frozen, into maps and lists which cannot be
+ * modified, so it is safe to serialise from any number of threads at once.
+ * Binary values are copied too; do not modify the byte arrays returned
+ * within {@link #getContent()}. The serialisers in this package write the
+ * cached encoding of a frozen document rather than encoding it again.
+ *
+ * Maps and arrays within the document which encode to at least
+ * {@value #MIN_FRAGMENT} bytes are cached on their own, so a document
+ * derived from another with {@link #with(String, Object)} re-encodes only
+ * what changed.
+ */
+public final class LLSDFrozen extends LLSD {
+    /**
+     * Fewest bytes for which the encoding of a map or array within a
+     * document is cached.
+     */
+    public static final int MIN_FRAGMENT = 1024;
+
+    private static final AtomicLong NEXT_ID = new AtomicLong();
+
+    private final LLSDEncodingCache cache;
+    private final long id = NEXT_ID.incrementAndGet();
+
+    private     LLSDFrozen(final Object content, final LLSDEncodingCache cache) {
+        super(content);
+        this.cache = cache;
+    }
+
+    /**
+     * Freezes the given content, sharing any maps and arrays which are
+     * already frozen.
+     */
+    static LLSDFrozen freeze(final Object content, final LLSDEncodingCache cache)
+        throws LLSDException {
+        return new LLSDFrozen(null == content ? null : freezeContent(content, cache), cache);
+    }
+
+    /**
+     * @return a read-only view of the document encoded in the given format,
+     * encoding it if it is not already cached.
+     * @throws LLSDException if the content holds a value which cannot be
+     * written in the given format.
+     */
+    public ByteBuffer encoded(final LLSDFormat format)
+        throws LLSDException {
+        return ByteBuffer.wrap(encodedBytes(format)).asReadOnlyBuffer();
+    }
+
+    /**
+     * @return a copy of this document with the given entry of its root map
+     * replaced or added. Maps and arrays which are not changed are shared,
+     * along with their cached encodings.
+     * @throws LLSDException if the root is not a map, or the value cannot be
+     * frozen.
+     */
+    public LLSDFrozen with(final String key, final Object value)
+        throws LLSDException {
+        final Map<String, Object> entries;
+
+        if (!(getContent() instanceof FrozenMap)) {
+            throw new LLSDException("Only a frozen document whose root is a map can be changed with a key.");
+        }
+        entries = new LinkedHashMap<String, Object>(((FrozenMap) getContent()).entries);
+        entries.put(key, freezeContent(value, cache));
+        return new LLSDFrozen(new FrozenMap(Collections.unmodifiableMap(entries), cache), cache);
+    }
+
+    @Override
+    public LLSDFrozen freeze(final LLSDEncodingCache cache)
+        throws LLSDException {
+        return this.cache == cache
+            ? this
+            : super.freeze(cache);
+    }
+
+    /**
+     * @return the XML encoding, from the cache.
+     */
+    @Override
+    public String toString() {
+        try {
+            return new String(encodedBytes(LLSDFormat.XML), StandardCharsets.UTF_8);
+        } catch(LLSDException e) {
+            return "Unable to serialise LLSD for display: " + e.getMessage();
+        }
+    }
+
+    /**
+     * @return the cached encoding itself, which must not be modified.
+     */
+    byte[] encodedBytes(final LLSDFormat format)
+        throws LLSDException {
+        final long key = LLSDEncodingCache.key(id, format);
+        final Object content = getContent();
+        byte[] encoding = cache.get(key);
+
+        if (null == encoding) {
+            final LLSDOutputBuffer buffer = LLSDOutputBuffer.growable(256);
+
+            try {
+                // The root is cached as the whole document, not as a map or
+                // array of its own.
+                format.write(content instanceof Node ? ((Node) content).content() : content, buffer);
+            } catch(IOException e) {
+                // Only possible when reading an InputStream, which cannot be
+                // frozen.
+                throw new IllegalStateException(e);
+            }
+            encoding = buffer.copy(0, buffer.size());
+            cache.put(key, encoding);
+        }
+        return encoding;
+    }
+
+    private static Object freezeContent(final Object content, final LLSDEncodingCache cache)
+        throws LLSDException {
+        if (null == content) {
+            throw new LLSDException("Unable to freeze a null value within a map or array.");
+        } else if (content instanceof Node) {
+            return content;
+        } else if (content instanceof Map) {
+            final Map<String, Object> map = (Map<String, Object>) content;
+            final Map<String, Object> entries = new LinkedHashMap<String, Object>(Math.max(4, map.size() * 4 / 3 + 1));
+
+            for (Map.Entry<String, Object> entry: map.entrySet()) {
+                entries.put(entry.getKey(), freezeContent(entry.getValue(), cache));
+            }
+            return new FrozenMap(Collections.unmodifiableMap(entries), cache);
+        } else if (content instanceof List) {
+            final List<Object> list = (List<Object>) content;
+            final List<Object> values = new ArrayList<Object>(list.size());
+
+            for (Object value: list) {
+                values.add(freezeContent(value, cache));
+            }
+            return new FrozenList(Collections.unmodifiableList(values), cache);
+        } else if (content instanceof byte[]) {
+            return ((byte[]) content).clone();
+        } else if (content instanceof ByteBuffer) {
+            final ByteBuffer source = ((ByteBuffer) content).duplicate();
+            final byte[] bytes = new byte[source.remaining()];
+
+            source.get(bytes);
+            return bytes;
+        } else if (content instanceof Date) {
+            return new Date(((Date) content).getTime());
+        } else if (content instanceof LLSDValue) {
+            return freezeContent(((LLSDValue) content).toObject(), cache);
+        } else if (content instanceof InputStream) {
+            throw new LLSDException("Unable to freeze a binary value given as an InputStream, "
+                + "which can only be read once.");
+        } else if (content instanceof Boolean || content instanceof Integer || content instanceof Double
+            || content instanceof Float || content instanceof String || content instanceof UUID
+            || content instanceof java.net.URI || content instanceof LLSDUndefined) {
+            return content;
+        }
+        throw new LLSDException("Unable to serialise type \""
+            + content.getClass().getName() + "\".");
+    }
+
+    /**
+     * A frozen map or array, whose encodings are cached if they are large
+     * enough. The encoders write the cached encoding when there is one, and
+     * otherwise encode {@link #content()} and offer the result to
+     * {@link #cache(LLSDFormat, LLSDOutputBuffer, int)}.
+     */
+    interface Node {
+        /**
+         * @return the unmodifiable map or list this wraps.
+         */
+        Object content();
+
+        /**
+         * @return the cached encoding in the given format, or null.
+         */
+        byte[] cached(LLSDFormat format);
+
+        /**
+         * Caches the encoding written to the given buffer from the given
+         * position, if it is large enough and still in the buffer.
+         */
+        void cache(LLSDFormat format, LLSDOutputBuffer buffer, int start);
+    }
+
+    private static final class FrozenMap extends AbstractMap<String, Object> implements Node {
+        private final Map<String, Object> entries;
+        private final LLSDEncodingCache cache;
+        private final long id = NEXT_ID.incrementAndGet();
+
+        FrozenMap(final Map<String, Object> entries, final LLSDEncodingCache cache) {
+            this.entries = entries;
+            this.cache = cache;
+        }
+
+        public Object content() {
+            return entries;
+        }
+
+        public byte[] cached(final LLSDFormat format) {
+            return cache.get(LLSDEncodingCache.key(id, format));
+        }
+
+        public void cache(final LLSDFormat format, final LLSDOutputBuffer buffer, final int start) {
+            cacheFragment(cache, LLSDEncodingCache.key(id, format), buffer, start);
+        }
+
+        @Override
+        public int size() {
+            return entries.size();
+        }
+
+        @Override
+        public boolean containsKey(final Object key) {
+            return entries.containsKey(key);
+        }
+
+        @Override
+        public Object get(final Object key) {
+            return entries.get(key);
+        }
+
+        @Override
+        public Set<Map.Entry<String, Object>> entrySet() {
+            return entries.entrySet();
+        }
+    }
+
+    private static final class FrozenList extends AbstractList<Object> implements RandomAccess, Node {
+        private final List<Object> values;
+        private final LLSDEncodingCache cache;
+        private final long id = NEXT_ID.incrementAndGet();
+
+        FrozenList(final List<Object> values, final LLSDEncodingCache cache) {
+            this.values = values;
+            this.cache = cache;
+        }
+
+        public Object content() {
+            return values;
+        }
+
+        public byte[] cached(final LLSDFormat format) {
+            return cache.get(LLSDEncodingCache.key(id, format));
+        }
+
+        public void cache(final LLSDFormat format, final LLSDOutputBuffer buffer, final int start) {
+            cacheFragment(cache, LLSDEncodingCache.key(id, format), buffer, start);
+        }
+
+        @Override
+        public int size() {
+            return values.size();
+        }
+
+        @Override
+        public Object get(final int index) {
+            return values.get(index);
+        }
+    }
+
+    private static void cacheFragment(final LLSDEncodingCache cache, final long key,
+            final LLSDOutputBuffer buffer, final int start) {
+        if (buffer.retainsOutput() && buffer.size() - start >= MIN_FRAGMENT) {
+            cache.put(key, buffer.copy(start, buffer.size()));
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+/**
+ * 128-bit hash of the canonical form of an LLSD document, as computed by
+ * {@link LLSDXMLSerialiser#hash(LLSD)}. Documents with equal content have
+ * equal hashes however their maps are ordered, so hashes can key response
+ * caches and serve as ETags.
+ *
+ * The hash is MurmurHash3 (x64, 128-bit, seed zero) of the canonical XML,
+ * and {@link #toString()} gives its bytes in hexadecimal as other
+ * MurmurHash3 implementations do, so it can be checked against them. It is
+ * fast rather than cryptographic: do not rely on it where collisions could
+ * be forced by an attacker.
+ */
+public final class LLSDHash {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final long high;
+    private final long low;
+
+    LLSDHash(final long high, final long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    /**
+     * @return the first 64 bits of the hash, which are themselves a good
+     * 64-bit hash.
+     */
+    public long asLong() {
+        return high;
+    }
+
+    /**
+     * @return the 16 bytes of the hash.
+     */
+    public byte[] asBytes() {
+        final byte[] bytes = new byte[16];
+
+        for (int i = 0; i < 8; i++) {
+            bytes[i] = (byte) (high >>> (i * 8));
+            bytes[i + 8] = (byte) (low >>> (i * 8));
+        }
+        return bytes;
+    }
+
+    public boolean equals(final Object other) {
+        return other instanceof LLSDHash
+            && ((LLSDHash) other).high == high
+            && ((LLSDHash) other).low == low;
+    }
+
+    public int hashCode() {
+        return (int) high;
+    }
+
+    /**
+     * @return the hash as 32 hexadecimal digits.
+     */
+    public String toString() {
+        final StringBuilder text = new StringBuilder(32);
+
+        for (byte b: asBytes()) {
+            text.append(HEX[(b >> 4) & 0xf]).append(HEX[b & 0xf]);
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+import java.io.OutputStream;
+
+/**
+ * Stream which computes MurmurHash3 (x64, 128-bit, seed zero) of the bytes
+ * written to it, a block at a time, without keeping them.
+ */
+final class LLSDHasher extends OutputStream {
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private final byte[] tail = new byte[16];
+    private int tailLength = 0;
+    private long length = 0;
+    private long h1 = 0;
+    private long h2 = 0;
+
+    @Override
+    public void write(final int b) {
+        tail[tailLength++] = (byte) b;
+        length++;
+        if (tailLength == 16) {
+            block(tail, 0);
+            tailLength = 0;
+        }
+    }
+
+    @Override
+    public void write(final byte[] b, int off, int len) {
+        length += len;
+        if (tailLength > 0) {
+            final int fill = Math.min(16 - tailLength, len);
+
+            System.arraycopy(b, off, tail, tailLength, fill);
+            tailLength += fill;
+            off += fill;
+            len -= fill;
+            if (tailLength < 16) {
+                return;
+            }
+            block(tail, 0);
+            tailLength = 0;
+        }
+        while (len >= 16) {
+            block(b, off);
+            off += 16;
+            len -= 16;
+        }
+        System.arraycopy(b, off, tail, 0, len);
+        tailLength = len;
+    }
+
+    /**
+     * @return the hash of everything written so far.
+     */
+    LLSDHash finish() {
+        long k1 = 0;
+        long k2 = 0;
+        long a = h1;
+        long b = h2;
+
+        for (int i = tailLength - 1; i >= 8; i--) {
+            k2 = (k2 << 8) | (tail[i] & 0xff);
+        }
+        for (int i = Math.min(tailLength, 8) - 1; i >= 0; i--) {
+            k1 = (k1 << 8) | (tail[i] & 0xff);
+        }
+        if (tailLength > 8) {
+            b ^= Long.rotateLeft(k2 * C2, 33) * C1;
+        }
+        if (tailLength > 0) {
+            a ^= Long.rotateLeft(k1 * C1, 31) * C2;
+        }
+
+        a ^= length;
+        b ^= length;
+        a += b;
+        b += a;
+        a = mix(a);
+        b = mix(b);
+        a += b;
+        b += a;
+        return new LLSDHash(a, b);
+    }
+
+    private void block(final byte[] b, final int off) {
+        final long k1 = littleEndian(b, off);
+        final long k2 = littleEndian(b, off + 8);
+
+        h1 ^= Long.rotateLeft(k1 * C1, 31) * C2;
+        h1 = Long.rotateLeft(h1, 27) + h2;
+        h1 = h1 * 5 + 0x52dce729;
+
+        h2 ^= Long.rotateLeft(k2 * C2, 33) * C1;
+        h2 = Long.rotateLeft(h2, 31) + h1;
+        h2 = h2 * 5 + 0x38495ab5;
+    }
+
+    private static long littleEndian(final byte[] b, final int off) {
+        long value = 0;
+
+        for (int i = 7; i >= 0; i--) {
+            value = (value << 8) | (b[off + i] & 0xff);
+        }
+        return value;
+    }
+
+    private static long mix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
@@ -0,0 +1,344 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Byte input used by the parsers for files, buffers and channels.
+ */
+final class LLSDInput {
+    /**
+     * Largest region of a file mapped at once. Larger files are mapped a
+     * window at a time when streamed.
+     */
+    static final long MAP_WINDOW = 1L << 30;
+
+    private     LLSDInput() {
+    }
+
+    /**
+     * Maps the whole of the given file read-only. The mapping stays valid
+     * after this returns; the file itself is not held open.
+     *
+     * @throws IOException if the file cannot be read, or is too large to map
+     * as a single buffer.
+     */
+    static ByteBuffer map(final Path file)
+        throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File " + file + " is too large to map ("
+                    + size + " bytes), read it as a stream instead.");
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    /**
+     * @return the size of the given file in bytes.
+     */
+    static long size(final Path file)
+        throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.size();
+        }
+    }
+
+    /**
+     * Reads the given channel to its end into a heap buffer. The channel is
+     * not closed.
+     *
+     * @return a buffer positioned at zero, with the bytes read between its
+     * position and limit.
+     * @throws LLSDLimitException if the channel holds more bytes than the
+     * limits allow, as soon as they have been read.
+     */
+    static ByteBuffer readFully(final ReadableByteChannel channel, final LLSDLimits limits)
+        throws IOException, LLSDLimitException {
+        ByteBuffer buffer = ByteBuffer.allocate(LLSDOutputBuffer.STREAM_BUFFER_SIZE);
+
+        while (channel.read(buffer) >= 0) {
+            limits.checkDocument(buffer.position());
+            if (!buffer.hasRemaining()) {
+                final ByteBuffer grown = ByteBuffer.allocate(buffer.capacity() * 2);
+
+                buffer.flip();
+                grown.put(buffer);
+                buffer = grown;
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * @return a stream over the remaining bytes of the given buffer. The
+     * buffer's position is not changed.
+     */
+    static InputStream stream(final ByteBuffer buffer) {
+        return new BufferStream(buffer.duplicate());
+    }
+
+    /**
+     * @return a stream over the given file, which maps it a window of
+     * {@link #MAP_WINDOW} bytes at a time so that files of any size can be
+     * read without holding them in memory. Nothing needs closing; each
+     * window is mapped when reached, and the file is only open while that
+     * happens.
+     */
+    static InputStream stream(final Path file)
+        throws IOException {
+        return new FileStream(file, size(file));
+    }
+
+    /**
+     * @return the given stream, stopping with a {@link LimitExceeded} once
+     * more bytes have been read than the limits allow, or at a DOCTYPE
+     * declaration if they are not allowed. The stream is returned as it is
+     * if neither is limited.
+     */
+    static InputStream limit(final InputStream input, final LLSDLimits limits) {
+        if (limits.getMaxDocumentBytes() == Long.MAX_VALUE && limits.allowsDoctype()) {
+            return input;
+        }
+        return new LimitedStream(input, limits);
+    }
+
+    /**
+     * Carries an {@link LLSDLimitException} from the input out through the
+     * XML parser, which only passes on IOExceptions.
+     */
+    static final class LimitExceeded extends IOException {
+        LimitExceeded(final LLSDLimitException cause) {
+            super(cause.getMessage(), cause);
+        }
+
+        LLSDLimitException getLimitException() {
+            return (LLSDLimitException) getCause();
+        }
+    }
+
+    /**
+     * Stream counting the bytes read, and scanning the prolog for a
+     * DOCTYPE so that it is refused before the XML parser reads its
+     * declarations. Only ASCII-compatible encodings are scanned; for
+     * anything else the parser checks the finished document instead.
+     */
+    private static final class LimitedStream extends FilterInputStream {
+        private static final int TEXT = 0;
+        private static final int OPEN = 1;
+        private static final int DECLARATION = 2;
+        private static final int INSTRUCTION = 3;
+        private static final int INSTRUCTION_END = 4;
+        private static final int COMMENT_START = 5;
+        private static final int COMMENT = 6;
+        private static final int COMMENT_DASH = 7;
+        private static final int COMMENT_END = 8;
+        private static final int DONE = 9;
+
+        private final LLSDLimits limits;
+        private long count = 0;
+        private int state;
+
+        LimitedStream(final InputStream input, final LLSDLimits limits) {
+            super(input);
+            this.limits = limits;
+            this.state = limits.allowsDoctype() ? DONE : TEXT;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+
+            if (b >= 0) {
+                counted(1);
+                if (state != DONE) {
+                    scan((byte) b);
+                }
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int read = super.read(b, off, len);
+
+            if (read > 0) {
+                counted(read);
+                for (int i = off; i < off + read && state != DONE; i++) {
+                    scan(b[i]);
+                }
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            final long skipped = super.skip(n);
+
+            counted(skipped);
+            return skipped;
+        }
+
+        private void counted(final long read) throws LimitExceeded {
+            count += read;
+            try {
+                limits.checkDocument(count);
+            } catch(LLSDLimitException e) {
+                throw new LimitExceeded(e);
+            }
+        }
+
+        /**
+         * Advances the scan of the prolog by one byte.
+         */
+        private void scan(final byte b) throws LimitExceeded {
+            if (b == 0) {
+                // UTF-16 or UTF-32.
+                state = DONE;
+                return;
+            }
+            switch (state) {
+            case TEXT:
+                state = b == '<' ? OPEN : TEXT;
+                break;
+            case OPEN:
+                state = b == '?'
+                    ? INSTRUCTION
+                    : b == '!' ? DECLARATION : DONE;
+                break;
+            case DECLARATION:
+                if (b == 'D') {
+                    throw new LimitExceeded(new LLSDLimitException.Doctype());
+                }
+                state = b == '-' ? COMMENT_START : DONE;
+                break;
+            case INSTRUCTION:
+            case INSTRUCTION_END:
+                state = b == '>' && state == INSTRUCTION_END
+                    ? TEXT
+                    : b == '?' ? INSTRUCTION_END : INSTRUCTION;
+                break;
+            case COMMENT_START:
+                state = COMMENT;
+                break;
+            case COMMENT:
+                state = b == '-' ? COMMENT_DASH : COMMENT;
+                break;
+            case COMMENT_DASH:
+                state = b == '-' ? COMMENT_END : COMMENT;
+                break;
+            case COMMENT_END:
+                state = b == '>'
+                    ? TEXT
+                    : b == '-' ? COMMENT_END : COMMENT;
+                break;
+            default:
+                break;
+            }
+        }
+    }
+
+    /**
+     * Stream over a buffer, which subclasses may replace with the next
+     * buffer when it runs out.
+     */
+    private static class BufferStream extends InputStream {
+        protected ByteBuffer buffer;
+
+        BufferStream(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        /**
+         * @return false if there is no more input.
+         */
+        protected boolean nextBuffer() throws IOException {
+            return false;
+        }
+
+        @Override
+        public int read() throws IOException {
+            while (!buffer.hasRemaining()) {
+                if (!nextBuffer()) {
+                    return -1;
+                }
+            }
+            return buffer.get() & 0xff;
+        }
+
+        @Override
+        public int read(final byte[] target, final int offset, final int length) throws IOException {
+            final int count;
+
+            if (length == 0) {
+                return 0;
+            }
+            while (!buffer.hasRemaining()) {
+                if (!nextBuffer()) {
+                    return -1;
+                }
+            }
+            count = Math.min(length, buffer.remaining());
+            buffer.get(target, offset, count);
+            return count;
+        }
+
+        @Override
+        public long skip(final long count) throws IOException {
+            final int skipped;
+
+            if (count <= 0 || (!buffer.hasRemaining() && !nextBuffer())) {
+                return 0;
+            }
+            skipped = (int) Math.min(count, buffer.remaining());
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    private static final class FileStream extends BufferStream {
+        private final Path file;
+        private final long size;
+        private long mapped = 0;
+
+        FileStream(final Path file, final long size) {
+            super(ByteBuffer.allocate(0));
+            this.file = file;
+            this.size = size;
+        }
+
+        @Override
+        protected boolean nextBuffer() throws IOException {
+            if (mapped >= size) {
+                return false;
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                final long length = Math.min(MAP_WINDOW, size - mapped);
+
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, mapped, length);
+                mapped += length;
+            }
+            return true;
+        }
+    }
+}
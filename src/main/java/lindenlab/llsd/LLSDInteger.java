@@ -0,0 +1,61 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+/**
+ * An LLSD integer, held as a primitive int. {@link #valueOf(int)} shares
+ * instances for small values.
+ */
+public final class LLSDInteger extends LLSDValue {
+    private static final int CACHE_LOW = -128;
+    private static final int CACHE_HIGH = 1023;
+    private static final LLSDInteger[] CACHE = new LLSDInteger[CACHE_HIGH - CACHE_LOW + 1];
+
+    static {
+        for (int i = 0; i < CACHE.length; i++) {
+            CACHE[i] = new LLSDInteger(i + CACHE_LOW);
+        }
+    }
+
+    private final int value;
+
+    public      LLSDInteger(final int value) {
+        this.value = value;
+    }
+
+    public static LLSDInteger valueOf(final int value) {
+        if (value >= CACHE_LOW && value <= CACHE_HIGH) {
+            return CACHE[value - CACHE_LOW];
+        }
+        return new LLSDInteger(value);
+    }
+
+    public LLSDType getType() {
+        return LLSDType.INTEGER;
+    }
+
+    public int asInteger() {
+        return value;
+    }
+
+    public Object toObject() {
+        return Integer.valueOf(value);
+    }
+
+    public boolean equals(final Object other) {
+        return other instanceof LLSDInteger
+            && ((LLSDInteger) other).value == value;
+    }
+
+    public int hashCode() {
+        return value;
+    }
+
+    public String toString() {
+        return Integer.toString(value);
+    }
+}
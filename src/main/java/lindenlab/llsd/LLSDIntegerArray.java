@@ -0,0 +1,85 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+import java.util.Arrays;
+
+/**
+ * An LLSD array of defined integers, stored in a primitive int[].
+ */
+public final class LLSDIntegerArray extends LLSDArray {
+    private int[] values;
+    private int size;
+
+    public      LLSDIntegerArray() {
+        this.values = new int[8];
+    }
+
+    /**
+     * Creates an array holding a copy of the given values.
+     */
+    public      LLSDIntegerArray(final int[] values) {
+        this.values = values.clone();
+        this.size = values.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public LLSDValue get(final int index) {
+        checkIndex(index);
+        return LLSDInteger.valueOf(values[index]);
+    }
+
+    public int getInteger(final int index) {
+        checkIndex(index);
+        return values[index];
+    }
+
+    public void add(final int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, Math.max(8, size * 2));
+        }
+        values[size++] = value;
+    }
+
+    /**
+     * @return a copy of the values.
+     */
+    public int[] toIntegerArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    public boolean equals(final Object object) {
+        final LLSDIntegerArray other;
+
+        if (!(object instanceof LLSDIntegerArray)) {
+            return super.equals(object);
+        }
+
+        other = (LLSDIntegerArray) object;
+        if (other.size != size) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (other.values[i] != values[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int hashCode() {
+        int hash = 1;
+
+        for (int i = 0; i < size; i++) {
+            hash = 31 * hash + values[i];
+        }
+        return hash;
+    }
+}
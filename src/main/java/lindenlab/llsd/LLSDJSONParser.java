@@ -0,0 +1,128 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Parser for JSON (application/llsd+json) LLSD documents, as written by
+ * {@link LLSDJSONSerialiser}. Documents are read straight into LLSD
+ * content, or a typed tree, without an intermediate JSON tree; see
+ * {@link LLSDJSONReader} for how JSON values are typed.
+ *
+ * Instances may be shared between threads once configured.
+ */
+public class LLSDJSONParser {
+    private final boolean typed;
+    private volatile LLSDLimits limits = LLSDLimits.DEFAULT;
+
+    /**
+     * Creates a parser for the plain mapping.
+     */
+    public      LLSDJSONParser() {
+        this(false);
+    }
+
+    /**
+     * @param typed if true, read the tagged objects written by a typed
+     * {@link LLSDJSONSerialiser} as the values they stand for.
+     */
+    public      LLSDJSONParser(final boolean typed) {
+        this.typed = typed;
+    }
+
+    /**
+     * Sets the limits checked as documents are read, as for
+     * {@link LLSDParser#setLimits(LLSDLimits)}. Only the nesting depth and
+     * number of values are checked.
+     */
+    public void setLimits(final LLSDLimits limits) {
+        if (null == limits) {
+            throw new NullPointerException("limits");
+        }
+        this.limits = limits;
+    }
+
+    /**
+     * Parses a JSON LLSD document from the given input stream.
+     *
+     * @param input the stream to read and parse as JSON LLSD.
+     * @throws IOException if there was a problem reading from the input
+     * stream.
+     * @throws LLSDException if the document is not valid JSON LLSD.
+     */
+    public LLSD parse(final InputStream input)
+        throws IOException, LLSDException {
+        return reader(input).readDocument();
+    }
+
+    /**
+     * Parses a JSON LLSD document from the remaining bytes of the given
+     * buffer. The buffer's position is not changed.
+     *
+     * @throws LLSDException if the document is not valid JSON LLSD.
+     */
+    public LLSD parse(final ByteBuffer input)
+        throws LLSDException {
+        try {
+            return reader(input).readDocument();
+        } catch(IOException e) {
+            // Only possible when reading from a stream.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Parses a JSON LLSD document from the given input stream into a typed
+     * tree.
+     *
+     * @return the root value, or null if the document is empty.
+     * @throws IOException if there was a problem reading from the input
+     * stream.
+     * @throws LLSDException if the document is not valid JSON LLSD.
+     */
+    public LLSDValue parseValue(final InputStream input)
+        throws IOException, LLSDException {
+        return reader(input).readDocumentTree();
+    }
+
+    /**
+     * Parses a JSON LLSD document from the remaining bytes of the given
+     * buffer into a typed tree. The buffer's position is not changed.
+     *
+     * @return the root value, or null if the document is empty.
+     * @throws LLSDException if the document is not valid JSON LLSD.
+     */
+    public LLSDValue parseValue(final ByteBuffer input)
+        throws LLSDException {
+        try {
+            return reader(input).readDocumentTree();
+        } catch(IOException e) {
+            // Only possible when reading from a stream.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Opens a streaming reader over the JSON LLSD document in the given
+     * input stream.
+     */
+    public LLSDJSONReader reader(final InputStream input) {
+        return new LLSDJSONReader(input, limits, typed);
+    }
+
+    /**
+     * Opens a streaming reader over the JSON LLSD document in the
+     * remaining bytes of the given buffer. The buffer's position is not
+     * changed.
+     */
+    public LLSDJSONReader reader(final ByteBuffer input) {
+        return new LLSDJSONReader(input, limits, typed);
+    }
+}
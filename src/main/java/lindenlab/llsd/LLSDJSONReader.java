@@ -0,0 +1,710 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * {@link LLSDReader} over a JSON (application/llsd+json) LLSD document,
+ * mapped as {@link LLSDJSONSerialiser} describes. Works in a single pass
+ * directly over the UTF-8 bytes, holding only the current token.
+ *
+ * Numbers without a fraction or exponent which fit are integers, and
+ * anything else is a real; null is undefined. A typed reader also reads
+ * the tagged objects of a typed serialiser as the values they stand for,
+ * and removes the extra '$' from escaped map keys. Numbers must follow the
+ * JSON grammar, so leading zeros are refused, and nothing but whitespace
+ * may follow the root value.
+ *
+ * Obtain instances from {@link LLSDJSONParser}. Closing the reader does not
+ * close the underlying input stream.
+ */
+public class LLSDJSONReader implements LLSDReader {
+    private static final byte ARRAY_START = 0;
+    private static final byte ARRAY_NEXT = 1;
+    private static final byte MAP_START = 2;
+    private static final byte MAP_NEXT = 3;
+    private static final byte MAP_VALUE = 4;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final boolean typed;
+
+    /**
+     * Counts the values read, checking their depth and number against the
+     * limits so that the recursive default methods of {@link LLSDReader}
+     * cannot overflow the stack.
+     */
+    private final LLSDLimits.Counter counter;
+    private final InputStream input;
+    private final ByteBuffer inputBuffer;
+    private byte[] buffer;
+    private int position;
+    private int limit;
+
+    /**
+     * Bytes of the current string or number, where it cannot be decoded in
+     * place.
+     */
+    private byte[] scratch = new byte[256];
+    private int scratchLength;
+
+    private byte[] containers = new byte[16];
+    private int depth = 0;
+
+    /**
+     * First key of the map just started, read while looking for a typed
+     * value, to be returned by the next call to next().
+     */
+    private String pendingKey = null;
+
+    private LLSDToken token = null;
+    private boolean isUndefined = false;
+    private boolean booleanValue;
+    private int integerValue;
+    private double realValue;
+    private String stringValue;
+
+    LLSDJSONReader(final InputStream input, final LLSDLimits limits, final boolean typed) {
+        this.typed = typed;
+        this.counter = limits.counter();
+        this.input = input;
+        this.inputBuffer = null;
+        this.buffer = new byte[BUFFER_SIZE];
+    }
+
+    LLSDJSONReader(final ByteBuffer input, final LLSDLimits limits, final boolean typed) {
+        final ByteBuffer view = input.slice();
+
+        this.typed = typed;
+        this.counter = limits.counter();
+        this.input = null;
+        if (view.hasArray()) {
+            this.inputBuffer = null;
+            this.buffer = view.array();
+            this.position = view.arrayOffset();
+            this.limit = view.arrayOffset() + view.limit();
+        } else {
+            this.inputBuffer = view;
+            this.buffer = new byte[BUFFER_SIZE];
+        }
+    }
+
+    public LLSDToken next() throws IOException, LLSDException {
+        if (token == LLSDToken.END_DOCUMENT) {
+            return token;
+        }
+
+        isUndefined = false;
+        stringValue = null;
+        if (null != pendingKey) {
+            containers[depth - 1] = MAP_VALUE;
+            stringValue = pendingKey;
+            pendingKey = null;
+            return token = LLSDToken.KEY;
+        }
+        if (depth == 0) {
+            final int marker = skipWhitespace();
+
+            if (null != token && marker >= 0) {
+                throw new LLSDException("Unexpected character '" + (char) marker
+                    + "' after the end of JSON LLSD document.");
+            } else if (null != token || marker < 0) {
+                return token = LLSDToken.END_DOCUMENT;
+            }
+            return token = readValue(read());
+        }
+
+        final int current = depth - 1;
+        int marker = skipWhitespace();
+
+        switch (containers[current]) {
+        case ARRAY_START:
+            if (marker == ']') {
+                position++;
+                depth--;
+                return token = LLSDToken.END_ARRAY;
+            }
+            containers[current] = ARRAY_NEXT;
+            return token = readValue(read());
+        case ARRAY_NEXT:
+            marker = read();
+            if (marker == ']') {
+                depth--;
+                return token = LLSDToken.END_ARRAY;
+            }
+            expect(',', marker);
+            skipWhitespace();
+            return token = readValue(read());
+        case MAP_VALUE:
+            expect(':', read());
+            skipWhitespace();
+            containers[current] = MAP_NEXT;
+            return token = readValue(read());
+        case MAP_NEXT:
+            marker = read();
+            if (marker == '}') {
+                depth--;
+                return token = LLSDToken.END_MAP;
+            }
+            expect(',', marker);
+            skipWhitespace();
+            break;
+        default:
+            if (marker == '}') {
+                position++;
+                depth--;
+                return token = LLSDToken.END_MAP;
+            }
+            break;
+        }
+
+        containers[current] = MAP_VALUE;
+        stringValue = readKey();
+        return token = LLSDToken.KEY;
+    }
+
+    public LLSDToken getToken() {
+        return token;
+    }
+
+    public String getKey() throws LLSDException {
+        requireToken(LLSDToken.KEY);
+        return stringValue;
+    }
+
+    public boolean isUndefined() {
+        return isUndefined;
+    }
+
+    public boolean getBoolean() throws LLSDException {
+        requireDefined(LLSDToken.BOOLEAN);
+        return booleanValue;
+    }
+
+    public int getInteger() throws LLSDException {
+        requireDefined(LLSDToken.INTEGER);
+        return integerValue;
+    }
+
+    public double getReal() throws LLSDException {
+        requireDefined(LLSDToken.REAL);
+        return realValue;
+    }
+
+    public String getString() throws LLSDException {
+        requireDefined(LLSDToken.STRING);
+        return stringValue;
+    }
+
+    public UUID getUUID() throws LLSDException {
+        requireDefined(LLSDToken.UUID);
+        return LLSDScalars.parseUUID(stringValue);
+    }
+
+    public Date getDate() throws LLSDException {
+        requireDefined(LLSDToken.DATE);
+        return LLSDScalars.parseDate(stringValue);
+    }
+
+    public URI getURI() throws LLSDException {
+        requireDefined(LLSDToken.URI);
+        return LLSDScalars.parseURI(stringValue);
+    }
+
+    public byte[] getBinary() throws LLSDException {
+        requireDefined(LLSDToken.BINARY);
+        return LLSDScalars.parseBinary(stringValue);
+    }
+
+    public Object getValue() throws LLSDException {
+        if (null == token) {
+            throw new LLSDException("No current token, call next() first.");
+        }
+
+        switch (token) {
+        case UNDEF:
+            return "";
+        case BOOLEAN:
+            return isUndefined
+                    ? LLSDUndefined.BOOLEAN
+                    : Boolean.valueOf(booleanValue);
+        case DATE:
+            return isUndefined
+                    ? LLSDUndefined.DATE
+                    : getDate();
+        case INTEGER:
+            return isUndefined
+                    ? LLSDUndefined.INTEGER
+                    : Integer.valueOf(integerValue);
+        case REAL:
+            return isUndefined
+                    ? LLSDUndefined.REAL
+                    : Double.valueOf(realValue);
+        case STRING:
+            return isUndefined
+                    ? LLSDUndefined.STRING
+                    : stringValue;
+        case URI:
+            return isUndefined
+                    ? LLSDUndefined.URI
+                    : getURI();
+        case UUID:
+            return isUndefined
+                    ? LLSDUndefined.UUID
+                    : getUUID();
+        case BINARY:
+            return isUndefined
+                    ? LLSDUndefined.BINARY
+                    : getBinary();
+        default:
+            throw new LLSDException("Current token " + token + " is not a scalar value.");
+        }
+    }
+
+    public void close() throws IOException {
+        // Nothing to release; the underlying input belongs to the caller.
+    }
+
+    private LLSDToken readValue(final int marker)
+        throws IOException, LLSDException {
+        counter.node(depth + 1);
+        switch (marker) {
+        case '{':
+            if (typed && skipWhitespace() == '"') {
+                final String key;
+
+                position++;
+                key = readString();
+                if (isTag(key)) {
+                    return readTyped(key);
+                }
+                pendingKey = unescapeKey(key);
+            }
+            push(MAP_START);
+            return LLSDToken.START_MAP;
+        case '[':
+            push(ARRAY_START);
+            return LLSDToken.START_ARRAY;
+        case '"':
+            stringValue = readString();
+            return LLSDToken.STRING;
+        case 't':
+            expectWord("rue");
+            booleanValue = true;
+            return LLSDToken.BOOLEAN;
+        case 'f':
+            expectWord("alse");
+            booleanValue = false;
+            return LLSDToken.BOOLEAN;
+        case 'n':
+            expectWord("ull");
+            return LLSDToken.UNDEF;
+        default:
+            if (marker == '-' || (marker >= '0' && marker <= '9')) {
+                return readNumber(marker);
+            }
+            throw new LLSDException("Unexpected character '" + (char) marker
+                + "' in JSON LLSD.");
+        }
+    }
+
+    private static boolean isTag(final String key) {
+        switch (key) {
+        case "$uuid":
+        case "$date":
+        case "$uri":
+        case "$binary":
+        case "$real":
+        case "$undef":
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Reads the rest of a typed value, <code>{"$type":"text"}</code>, its
+     * key having been read.
+     */
+    private LLSDToken readTyped(final String tag)
+        throws IOException, LLSDException {
+        final String text;
+
+        skipWhitespace();
+        expect(':', read());
+        skipWhitespace();
+        expect('"', read());
+        text = readString();
+        skipWhitespace();
+        if (read() != '}') {
+            throw new LLSDException("Typed value " + tag + " in JSON LLSD has more than one key.");
+        }
+
+        switch (tag) {
+        case "$uuid":
+            stringValue = text;
+            return LLSDToken.UUID;
+        case "$date":
+            stringValue = text;
+            return LLSDToken.DATE;
+        case "$uri":
+            stringValue = text;
+            return LLSDToken.URI;
+        case "$binary":
+            stringValue = text;
+            return LLSDToken.BINARY;
+        case "$real":
+            realValue = LLSDScalars.parseReal(text);
+            return LLSDToken.REAL;
+        default:
+            isUndefined = true;
+            try {
+                return LLSDUndefined.valueOf(text.toUpperCase()).token();
+            } catch(IllegalArgumentException e) {
+                throw new LLSDException("Unexpected undefined type \"" + text + "\" in JSON LLSD.");
+            }
+        }
+    }
+
+    private String readKey() throws IOException, LLSDException {
+        expect('"', read());
+        return unescapeKey(readString());
+    }
+
+    /**
+     * @return the given map key with the '$' doubled by a typed serialiser
+     * removed.
+     */
+    private String unescapeKey(final String key) {
+        return typed && key.length() > 1 && key.charAt(0) == LLSDJSONSerialiser.TAG
+            && key.charAt(1) == LLSDJSONSerialiser.TAG
+            ? key.substring(1)
+            : key;
+    }
+
+    /**
+     * Reads a number, an integer if it has no fraction or exponent and
+     * fits, otherwise a real.
+     */
+    private LLSDToken readNumber(final int first) throws IOException, LLSDException {
+        boolean isReal = false;
+        int current = first;
+
+        scratchLength = 0;
+        while (true) {
+            if (current == '.' || current == 'e' || current == 'E') {
+                isReal = true;
+            }
+            appendScratch((byte) current);
+            current = peek();
+            if (!((current >= '0' && current <= '9') || current == '.' || current == 'e' || current == 'E'
+                || current == '-' || current == '+')) {
+                break;
+            }
+            position++;
+        }
+
+        if (!isNumber(scratch, scratchLength)) {
+            throw new LLSDException("Invalid number \"" + new String(scratch, 0, scratchLength, StandardCharsets.UTF_8)
+                + "\" in JSON LLSD.");
+        }
+        if (!isReal && scratchLength <= 11) {
+            final boolean negative = scratch[0] == '-';
+            boolean valid = scratchLength > (negative ? 1 : 0);
+            long value = 0;
+
+            for (int i = negative ? 1 : 0; i < scratchLength && valid; i++) {
+                final int digit = scratch[i] - '0';
+
+                valid = digit >= 0 && digit <= 9;
+                value = value * 10 + digit;
+            }
+            value = negative ? -value : value;
+            if (valid && value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                integerValue = (int) value;
+                return LLSDToken.INTEGER;
+            }
+        }
+        realValue = LLSDScalars.parseReal(scratch, 0, scratchLength);
+        return LLSDToken.REAL;
+    }
+
+    /**
+     * @return true if the given bytes are a JSON number: an optional minus,
+     * an integer part with no leading zero, then an optional fraction and
+     * exponent, each with at least one digit.
+     */
+    static boolean isNumber(final byte[] text, final int length) {
+        int i = 0;
+
+        if (i < length && text[i] == '-') {
+            i++;
+        }
+        if (i < length && text[i] == '0') {
+            i++;
+        } else if (i < length && text[i] >= '1' && text[i] <= '9') {
+            i = skipDigits(text, i, length);
+        } else {
+            return false;
+        }
+        if (i < length && text[i] == '.') {
+            final int start = ++i;
+
+            i = skipDigits(text, i, length);
+            if (i == start) {
+                return false;
+            }
+        }
+        if (i < length && (text[i] == 'e' || text[i] == 'E')) {
+            final int start;
+
+            i++;
+            if (i < length && (text[i] == '+' || text[i] == '-')) {
+                i++;
+            }
+            start = i;
+            i = skipDigits(text, i, length);
+            if (i == start) {
+                return false;
+            }
+        }
+        return i == length;
+    }
+
+    private static int skipDigits(final byte[] text, final int start, final int length) {
+        int i = start;
+
+        while (i < length && text[i] >= '0' && text[i] <= '9') {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Reads a string up to the closing quote, the opening quote having been
+     * consumed, and decodes escape sequences.
+     */
+    private String readString() throws IOException, LLSDException {
+        // Fast path: the whole string is in the buffer with no escapes.
+        for (int i = position; i < limit; i++) {
+            final byte current = buffer[i];
+
+            if (current == '"') {
+                final String value = new String(buffer, position, i - position, StandardCharsets.UTF_8);
+
+                position = i + 1;
+                return value;
+            } else if (current == '\\') {
+                break;
+            }
+        }
+
+        scratchLength = 0;
+        while (true) {
+            int current = read();
+
+            if (current == '"') {
+                return new String(scratch, 0, scratchLength, StandardCharsets.UTF_8);
+            } else if (current != '\\') {
+                appendScratch((byte) current);
+                continue;
+            }
+
+            current = read();
+            switch (current) {
+            case 'b':
+                current = '\b';
+                break;
+            case 'f':
+                current = '\f';
+                break;
+            case 'n':
+                current = '\n';
+                break;
+            case 'r':
+                current = '\r';
+                break;
+            case 't':
+                current = '\t';
+                break;
+            case 'u':
+                appendCodePoint(readEscapedCodePoint());
+                continue;
+            case '"':
+            case '\\':
+            case '/':
+                break;
+            default:
+                throw new LLSDException("Invalid escape '\\" + (char) current + "' in JSON LLSD.");
+            }
+            appendScratch((byte) current);
+        }
+    }
+
+    /**
+     * Reads the four hex digits of a \\u escape, and of the low surrogate
+     * escape following it if it is a high surrogate.
+     */
+    private int readEscapedCodePoint() throws IOException, LLSDException {
+        final char high = (char) readHex4();
+        final char low;
+
+        if (!Character.isSurrogate(high)) {
+            return high;
+        }
+        if (Character.isHighSurrogate(high) && peek() == '\\') {
+            position++;
+            expect('u', read());
+            low = (char) readHex4();
+            if (Character.isLowSurrogate(low)) {
+                return Character.toCodePoint(high, low);
+            }
+        }
+        throw new LLSDException("Unpaired surrogate escape in JSON LLSD.");
+    }
+
+    private int readHex4() throws IOException, LLSDException {
+        int value = 0;
+
+        for (int i = 0; i < 4; i++) {
+            final int digit = read();
+            final int digitValue = Character.digit(digit, 16);
+
+            if (digitValue < 0) {
+                throw new LLSDException("Invalid hex digit '" + (char) digit + "' in JSON LLSD.");
+            }
+            value = (value << 4) | digitValue;
+        }
+        return value;
+    }
+
+    /**
+     * Appends the UTF-8 encoding of a code point to the scratch buffer.
+     */
+    private void appendCodePoint(final int codePoint) {
+        if (codePoint < 0x80) {
+            appendScratch((byte) codePoint);
+        } else if (codePoint < 0x800) {
+            appendScratch((byte) (0xc0 | (codePoint >> 6)));
+            appendScratch((byte) (0x80 | (codePoint & 0x3f)));
+        } else if (codePoint < 0x10000) {
+            appendScratch((byte) (0xe0 | (codePoint >> 12)));
+            appendScratch((byte) (0x80 | ((codePoint >> 6) & 0x3f)));
+            appendScratch((byte) (0x80 | (codePoint & 0x3f)));
+        } else {
+            appendScratch((byte) (0xf0 | (codePoint >> 18)));
+            appendScratch((byte) (0x80 | ((codePoint >> 12) & 0x3f)));
+            appendScratch((byte) (0x80 | ((codePoint >> 6) & 0x3f)));
+            appendScratch((byte) (0x80 | (codePoint & 0x3f)));
+        }
+    }
+
+    /**
+     * Reads the rest of a literal such as "true".
+     */
+    private void expectWord(final String rest) throws IOException, LLSDException {
+        for (int i = 0; i < rest.length(); i++) {
+            expect(rest.charAt(i), read());
+        }
+    }
+
+    private void expect(final char expected, final int actual) throws LLSDException {
+        if (actual != expected) {
+            throw new LLSDException("Expected '" + expected + "' in JSON LLSD, found '"
+                + (char) actual + "'.");
+        }
+    }
+
+    /**
+     * Skips whitespace, returning the next character without consuming it,
+     * or -1 at the end of the input.
+     */
+    private int skipWhitespace() throws IOException {
+        int current = peek();
+
+        while (current == ' ' || current == '\t' || current == '\n' || current == '\r') {
+            position++;
+            current = peek();
+        }
+        return current;
+    }
+
+    private int peek() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position] & 0xff;
+    }
+
+    private int read() throws IOException, LLSDException {
+        if (position == limit && !fill()) {
+            throw new LLSDException("Unexpected end of JSON LLSD document.");
+        }
+        return buffer[position++] & 0xff;
+    }
+
+    /**
+     * Refills the input buffer.
+     *
+     * @return false if there is no more input.
+     */
+    private boolean fill() throws IOException {
+        final int count;
+
+        if (null != input) {
+            count = input.read(buffer, 0, buffer.length);
+        } else if (null != inputBuffer && inputBuffer.hasRemaining()) {
+            count = Math.min(buffer.length, inputBuffer.remaining());
+            inputBuffer.get(buffer, 0, count);
+        } else {
+            return false;
+        }
+
+        if (count <= 0) {
+            return false;
+        }
+        position = 0;
+        limit = count;
+        return true;
+    }
+
+    private void appendScratch(final byte value) {
+        if (scratchLength == scratch.length) {
+            scratch = Arrays.copyOf(scratch, scratch.length * 2);
+        }
+        scratch[scratchLength++] = value;
+    }
+
+    private void push(final byte container) {
+        if (depth == containers.length) {
+            containers = Arrays.copyOf(containers, depth * 2);
+        }
+        containers[depth++] = container;
+    }
+
+    private void requireToken(final LLSDToken expected) throws LLSDException {
+        if (token != expected) {
+            throw new LLSDException("Expected current token to be " + expected
+                + " but it is " + token + ".");
+        }
+    }
+
+    private void requireDefined(final LLSDToken expected) throws LLSDException {
+        requireToken(expected);
+        if (isUndefined) {
+            throw new LLSDException("The current " + expected + " value is undefined.");
+        }
+    }
+}
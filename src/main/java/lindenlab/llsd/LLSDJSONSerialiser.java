@@ -0,0 +1,406 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Writes LLSD content as JSON (application/llsd+json), following the usual
+ * LLSD-JSON mapping: maps are objects, arrays are arrays, booleans,
+ * integers and reals are JSON literals and numbers, undefined is null, and
+ * UUIDs, dates (ISO 8601), URIs and binary (base64) are strings. Reals are
+ * always written with a fraction or exponent, so that they are read back as
+ * reals. Output is UTF-8 with no whitespace between values.
+ *
+ * The plain mapping loses the types which JSON has no literal for: they come
+ * back as strings, and NaN and infinite reals, which JSON cannot hold, as
+ * null. A typed serialiser instead writes those values as objects with a
+ * single key naming the type, such as <code>{"$uuid":"67153d5b-..."}</code>,
+ * <code>{"$real":"nan"}</code> or <code>{"$undef":"integer"}</code> for an
+ * {@link LLSDUndefined}, and doubles the '$' of map keys which start with
+ * one, so that a typed {@link LLSDJSONParser} reads back exactly what was
+ * written.
+ *
+ * Instances are immutable and may be shared between threads.
+ */
+public class LLSDJSONSerialiser {
+    /**
+     * Prefix of the keys of typed values, and of map keys which must be
+     * escaped.
+     */
+    static final char TAG = '$';
+
+    private final boolean typed;
+
+    /**
+     * Creates a serialiser using the plain mapping.
+     */
+    public      LLSDJSONSerialiser() {
+        this(false);
+    }
+
+    /**
+     * @param typed if true, write UUIDs, dates, URIs, binary, special reals
+     * and typed undefined values as tagged objects, so that they keep their
+     * types when read by a typed {@link LLSDJSONParser}.
+     */
+    public      LLSDJSONSerialiser(final boolean typed) {
+        this.typed = typed;
+    }
+
+    /**
+     * Writes the given LLSD to an output stream.
+     *
+     * @throws IOException if there was a problem writing to the stream.
+     * @throws LLSDException if the content holds a type which cannot be
+     * serialised.
+     */
+    public void serialise(final LLSD llsd, final OutputStream output)
+        throws IOException, LLSDException {
+        final LLSDOutputBuffer buffer = LLSDOutputBuffer.forStream(output);
+
+        if (llsd instanceof LLSDFrozen) {
+            output.write(((LLSDFrozen) llsd).encodedBytes(format()));
+            return;
+        }
+        new Encoder(buffer, typed).writeContent(llsd.getContent());
+        buffer.flush();
+    }
+
+    /**
+     * Writes the given LLSD into a buffer, starting at its current position.
+     *
+     * @throws BufferOverflowException if the buffer does not have enough
+     * space remaining. The buffer's position is then undefined.
+     * @throws LLSDException if the content holds a type which cannot be
+     * serialised.
+     */
+    public void serialise(final LLSD llsd, final ByteBuffer target)
+        throws LLSDException {
+        if (llsd instanceof LLSDFrozen) {
+            target.put(((LLSDFrozen) llsd).encodedBytes(format()));
+            return;
+        }
+        try {
+            new Encoder(LLSDOutputBuffer.forBuffer(target), typed).writeContent(llsd.getContent());
+        } catch(IOException e) {
+            // Only possible when reading an InputStream binary value.
+            throw new LLSDException("Unable to read binary value.", e);
+        }
+    }
+
+    /**
+     * Writes the given LLSD into a new buffer.
+     *
+     * @return a heap buffer positioned at zero, with the encoded document
+     * between its position and limit.
+     */
+    public ByteBuffer serialise(final LLSD llsd)
+        throws LLSDException {
+        final LLSDOutputBuffer buffer = LLSDOutputBuffer.growable(256);
+
+        if (llsd instanceof LLSDFrozen) {
+            return ByteBuffer.wrap(((LLSDFrozen) llsd).encodedBytes(format()).clone());
+        }
+        try {
+            new Encoder(buffer, typed).writeContent(llsd.getContent());
+        } catch(IOException e) {
+            // Only possible when reading an InputStream binary value.
+            throw new LLSDException("Unable to read binary value.", e);
+        }
+        return buffer.toBuffer();
+    }
+
+    private LLSDFormat format() {
+        return typed
+            ? LLSDFormat.TYPED_JSON
+            : LLSDFormat.JSON;
+    }
+
+    /**
+     * Encodes the given content into a buffer.
+     */
+    static void write(final Object content, final LLSDOutputBuffer buffer, final boolean typed)
+        throws IOException, LLSDException {
+        new Encoder(buffer, typed).writeContent(content);
+    }
+
+    /**
+     * Encoding state for one document.
+     */
+    private static final class Encoder {
+        private final LLSDOutputBuffer buffer;
+        private final boolean typed;
+        private final LLSDFormat format;
+
+        Encoder(final LLSDOutputBuffer buffer, final boolean typed) {
+            this.buffer = buffer;
+            this.typed = typed;
+            this.format = typed ? LLSDFormat.TYPED_JSON : LLSDFormat.JSON;
+        }
+
+        void writeContent(final Object content) throws IOException, LLSDException {
+            if (null != content) {
+                writeElement(content);
+            }
+        }
+
+        private void writeElement(final Object toSerialise)
+            throws IOException, LLSDException {
+            assert null != toSerialise;
+
+            if (toSerialise instanceof LLSDFrozen.Node) {
+                final LLSDFrozen.Node node = (LLSDFrozen.Node) toSerialise;
+                final byte[] cached = node.cached(format);
+                final int start = buffer.size();
+
+                if (null != cached) {
+                    buffer.write(cached);
+                } else {
+                    writeElement(node.content());
+                    node.cache(format, buffer, start);
+                }
+            } else if (toSerialise instanceof Map) {
+                final Map<String, Object> serialiseMap = (Map<String, Object>)toSerialise;
+                boolean first = true;
+
+                buffer.put((byte) '{');
+                for (Map.Entry<String, Object> entry: serialiseMap.entrySet()) {
+                    if (!first) {
+                        buffer.put((byte) ',');
+                    }
+                    first = false;
+                    writeKey(entry.getKey());
+                    writeElement(entry.getValue());
+                }
+                buffer.put((byte) '}');
+            } else if (toSerialise instanceof List) {
+                boolean first = true;
+
+                buffer.put((byte) '[');
+                for (Object current: (List<Object>)toSerialise) {
+                    if (!first) {
+                        buffer.put((byte) ',');
+                    }
+                    first = false;
+                    writeElement(current);
+                }
+                buffer.put((byte) ']');
+            } else if (toSerialise instanceof Boolean) {
+                buffer.writeASCII(((Boolean) toSerialise) ? "true" : "false");
+            } else if (toSerialise instanceof Integer) {
+                buffer.writeDecimal((Integer) toSerialise);
+            } else if (toSerialise instanceof Double
+                || toSerialise instanceof Float) {
+                writeReal(((Number) toSerialise).doubleValue());
+            } else if (toSerialise instanceof String) {
+                writeString((String) toSerialise);
+            } else if (toSerialise instanceof UUID) {
+                startTyped("uuid");
+                buffer.put((byte) '"');
+                buffer.writeUUID((UUID) toSerialise);
+                buffer.put((byte) '"');
+                endTyped();
+            } else if (toSerialise instanceof Date) {
+                startTyped("date");
+                writeString(((Date) toSerialise).toInstant().toString());
+                endTyped();
+            } else if (toSerialise instanceof URI) {
+                startTyped("uri");
+                writeString(toSerialise.toString());
+                endTyped();
+            } else if (toSerialise instanceof byte[]) {
+                final byte[] binary = (byte[]) toSerialise;
+
+                startTyped("binary");
+                buffer.put((byte) '"');
+                buffer.writeBase64(binary, 0, binary.length);
+                buffer.put((byte) '"');
+                endTyped();
+            } else if (toSerialise instanceof ByteBuffer) {
+                startTyped("binary");
+                buffer.put((byte) '"');
+                buffer.writeBase64((ByteBuffer) toSerialise);
+                buffer.put((byte) '"');
+                endTyped();
+            } else if (toSerialise instanceof InputStream) {
+                startTyped("binary");
+                buffer.put((byte) '"');
+                buffer.writeBase64((InputStream) toSerialise);
+                buffer.put((byte) '"');
+                endTyped();
+            } else if (toSerialise instanceof LLSDValue) {
+                writeValue((LLSDValue) toSerialise);
+            } else if (toSerialise instanceof LLSDUndefined) {
+                if (typed) {
+                    startTyped("undef");
+                    writeString(((LLSDUndefined) toSerialise).name().toLowerCase());
+                    endTyped();
+                } else {
+                    buffer.writeASCII("null");
+                }
+            } else {
+                throw new LLSDException("Unable to serialise type \""
+                    + toSerialise.getClass().getName() + "\".");
+            }
+        }
+
+        private void writeValue(final LLSDValue value)
+            throws IOException, LLSDException {
+            if (value == LLSDUndef.UNDEF) {
+                buffer.writeASCII("null");
+                return;
+            } else if (value.isUndefined()) {
+                writeElement(value.toObject());
+                return;
+            }
+
+            switch (value.getType()) {
+            case MAP:
+                boolean firstEntry = true;
+
+                buffer.put((byte) '{');
+                for (Map.Entry<String, LLSDValue> entry: ((LLSDMap) value).entrySet()) {
+                    if (!firstEntry) {
+                        buffer.put((byte) ',');
+                    }
+                    firstEntry = false;
+                    writeKey(entry.getKey());
+                    writeValue(entry.getValue());
+                }
+                buffer.put((byte) '}');
+                break;
+            case ARRAY:
+                final LLSDArray array = (LLSDArray) value;
+
+                buffer.put((byte) '[');
+                for (int i = 0; i < array.size(); i++) {
+                    if (i > 0) {
+                        buffer.put((byte) ',');
+                    }
+                    if (array instanceof LLSDIntegerArray) {
+                        buffer.writeDecimal(((LLSDIntegerArray) array).getInteger(i));
+                    } else if (array instanceof LLSDRealArray) {
+                        writeReal(((LLSDRealArray) array).getReal(i));
+                    } else {
+                        writeValue(array.get(i));
+                    }
+                }
+                buffer.put((byte) ']');
+                break;
+            case BOOLEAN:
+                buffer.writeASCII(value.asBoolean() ? "true" : "false");
+                break;
+            case INTEGER:
+                buffer.writeDecimal(value.asInteger());
+                break;
+            case REAL:
+                writeReal(value.asReal());
+                break;
+            default:
+                // The remaining scalars hold their values as objects already.
+                writeElement(value.toObject());
+                break;
+            }
+        }
+
+        /**
+         * Writes a map key and the colon after it, doubling a leading '$'
+         * when typed.
+         */
+        private void writeKey(final String key) throws IOException {
+            if (typed && !key.isEmpty() && key.charAt(0) == TAG) {
+                writeString(TAG + key);
+            } else {
+                writeString(key);
+            }
+            buffer.put((byte) ':');
+        }
+
+        /**
+         * Starts a typed value, if typed; otherwise the value is written
+         * bare.
+         */
+        private void startTyped(final String type) throws IOException {
+            if (typed) {
+                buffer.writeASCII("{\"");
+                buffer.put((byte) TAG);
+                buffer.writeASCII(type);
+                buffer.writeASCII("\":");
+            }
+        }
+
+        private void endTyped() throws IOException {
+            if (typed) {
+                buffer.put((byte) '}');
+            }
+        }
+
+        private void writeReal(final double value) throws IOException {
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                if (typed) {
+                    startTyped("real");
+                    buffer.writeASCII(Double.isNaN(value) ? "\"nan\"" : value > 0 ? "\"inf\"" : "\"-inf\"");
+                    endTyped();
+                } else {
+                    buffer.writeASCII("null");
+                }
+            } else {
+                // Always has a fraction or exponent, as in "1.0" or "1.0E10".
+                buffer.writeASCII(Double.toString(value));
+            }
+        }
+
+        /**
+         * Writes a quoted string, escaping quotes, backslashes and control
+         * characters.
+         */
+        private void writeString(final String value) throws IOException {
+            final int length = value.length();
+            int start = 0;
+
+            buffer.put((byte) '"');
+            for (int i = 0; i < length; i++) {
+                final char current = value.charAt(i);
+
+                if (current == '"' || current == '\\') {
+                    buffer.writeUTF8(value, start, i);
+                    buffer.put((byte) '\\');
+                    buffer.put((byte) current);
+                    start = i + 1;
+                } else if (current < 0x20) {
+                    buffer.writeUTF8(value, start, i);
+                    switch (current) {
+                    case '\n':
+                        buffer.writeASCII("\\n");
+                        break;
+                    case '\r':
+                        buffer.writeASCII("\\r");
+                        break;
+                    case '\t':
+                        buffer.writeASCII("\\t");
+                        break;
+                    default:
+                        buffer.writeASCII("\\u00");
+                        buffer.put(LLSDOutputBuffer.HEX_DIGITS[current >> 4]);
+                        buffer.put(LLSDOutputBuffer.HEX_DIGITS[current & 0xf]);
+                        break;
+                    }
+                    start = i + 1;
+                }
+            }
+            buffer.writeUTF8(value, start, length);
+            buffer.put((byte) '"');
+        }
+    }
+}
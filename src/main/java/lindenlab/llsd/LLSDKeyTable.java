@@ -0,0 +1,67 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Symbol table of map keys, so that documents which repeat the same keys
+ * thousands of times hold one String for each rather than one per map.
+ * Keys are canonicalised with {@link String#intern()} when first seen, so
+ * they are also identical to the same keys written as literals in code,
+ * which lets {@link LLSDCompactMap} find them by reference.
+ *
+ * The table stops growing once it holds its maximum number of keys, after
+ * which new keys are returned as they are; a document with endless distinct
+ * keys cannot grow it without bound. Instances may be shared between
+ * threads.
+ */
+final class LLSDKeyTable {
+    static final int DEFAULT_MAX_SIZE = 4096;
+
+    private final ConcurrentMap<String, String> keys = new ConcurrentHashMap<String, String>();
+    private final int maxSize;
+
+    LLSDKeyTable() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    LLSDKeyTable(final int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return the canonical instance of the given key, or the key itself if
+     * the table is full.
+     */
+    String intern(final String key) {
+        final String existing;
+
+        if (null == key) {
+            return null;
+        }
+
+        existing = keys.get(key);
+        if (null != existing) {
+            return existing;
+        } else if (keys.size() >= maxSize) {
+            return key;
+        } else {
+            final String canonical = key.intern();
+            final String raced = keys.putIfAbsent(canonical, canonical);
+
+            return null == raced
+                ? canonical
+                : raced;
+        }
+    }
+
+    int size() {
+        return keys.size();
+    }
+}
@@ -0,0 +1,1186 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An XML LLSD document which is only converted where it is read. The raw
+ * UTF-8 bytes are kept, and {@link #get(String...)} walks down to the
+ * requested value by scanning them: maps and arrays on the path are indexed
+ * once, recording the byte offset of each entry, and everything else is
+ * skipped over without being converted or allocating anything. Only the
+ * value finally returned is converted, into an {@link LLSDValue}.
+ *
+ * This handles the XML which LLSD documents use in practice: elements,
+ * attributes, character and predefined entity references, CDATA sections,
+ * comments, processing instructions and a DOCTYPE without an internal
+ * subset. It checks structure only as far as it is read, so a malformed
+ * subtree which is never visited goes unreported.
+ *
+ * The document bytes must not be modified while the document is in use.
+ * Instances may be shared between threads.
+ */
+public class LLSDLazyDocument {
+    private static final byte[] LLSD = ascii("llsd");
+    private static final byte[] MAP = ascii("map");
+    private static final byte[] ARRAY = ascii("array");
+    private static final byte[] KEY = ascii("key");
+    private static final byte[] UNDEF = ascii("undef");
+    private static final byte[] BOOLEAN = ascii("boolean");
+    private static final byte[] INTEGER = ascii("integer");
+    private static final byte[] REAL = ascii("real");
+    private static final byte[] STRING = ascii("string");
+    private static final byte[] UUID = ascii("uuid");
+    private static final byte[] DATE = ascii("date");
+    private static final byte[] URI = ascii("uri");
+    private static final byte[] BINARY = ascii("binary");
+    private static final byte[] ENCODING = ascii("encoding");
+    private static final byte[] BASE64 = ascii("base64");
+    private static final byte[] COMMENT_START = ascii("<!--");
+    private static final byte[] COMMENT_END = ascii("-->");
+    private static final byte[] CDATA_START = ascii("<![CDATA[");
+    private static final byte[] CDATA_END = ascii("]]>");
+    private static final byte[] PI_END = ascii("?>");
+    private static final byte[] DOCTYPE = ascii("<!DOCTYPE");
+
+    private final byte[] data;
+    private final int begin;
+    private final int end;
+
+    /**
+     * Offset of the root value element, or -1 if the document is empty.
+     */
+    private final int root;
+
+    /**
+     * Indexes of the maps and arrays visited so far, by element offset.
+     */
+    private final ConcurrentMap<Integer, Index> indexes = new ConcurrentHashMap<Integer, Index>();
+
+    /**
+     * @param document UTF-8 encoded XML LLSD. The array is used directly,
+     * not copied.
+     * @throws LLSDException if the document does not start with an
+     * &lt;llsd&gt; element.
+     */
+    public      LLSDLazyDocument(final byte[] document)
+        throws LLSDException {
+        this(document, 0, document.length);
+    }
+
+    public      LLSDLazyDocument(final byte[] document, final int offset, final int length)
+        throws LLSDException {
+        this(document, offset, length, true);
+    }
+
+    /**
+     * @throws LLSDLimitException.Doctype if the document has a DOCTYPE and
+     * they are not allowed.
+     */
+    private     LLSDLazyDocument(final byte[] document, final int offset, final int length,
+            final boolean allowDoctype)
+        throws LLSDException {
+        this.data = document;
+        this.begin = offset;
+        this.end = offset + length;
+        if (!allowDoctype && hasDoctype(offset)) {
+            throw new LLSDLimitException.Doctype();
+        }
+        this.root = findRoot(offset);
+    }
+
+    /**
+     * Wraps the remaining bytes of the given buffer. Heap buffers are used
+     * directly; the contents of other buffers are copied. The buffer's
+     * position is not changed.
+     */
+    public      LLSDLazyDocument(final ByteBuffer document)
+        throws LLSDException {
+        this(document, LLSDLimits.DEFAULT);
+    }
+
+    /**
+     * Wraps the remaining bytes of the given buffer, refusing a DOCTYPE if
+     * the given limits do. The other limits are checked by
+     * {@link #getDocument(LLSDLimits)}.
+     */
+    LLSDLazyDocument(final ByteBuffer document, final LLSDLimits limits)
+        throws LLSDException {
+        this(document.hasArray() ? document.array() : copy(document),
+            document.hasArray() ? document.arrayOffset() + document.position() : 0,
+            document.remaining(), limits.allowsDoctype());
+    }
+
+    private static byte[] copy(final ByteBuffer document) {
+        final byte[] bytes = new byte[document.remaining()];
+
+        document.duplicate().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Returns the value at the given path, converting only that value.
+     * Each element of the path is a map key, or for an array the decimal
+     * index of an entry. With no path, the whole document is converted.
+     *
+     * @return the value, or null if there is nothing at that path.
+     * @throws LLSDException if the part of the document read is malformed,
+     * or the value cannot be converted.
+     */
+    public LLSDValue get(final String... path)
+        throws LLSDException {
+        final int position = find(path);
+
+        return position < 0
+            ? null
+            : convert(position, 1, LLSDLimits.DEFAULT.counter());
+    }
+
+    /**
+     * @return the number of items in the root array, after checking that
+     * &lt;llsd&gt; holds nothing after it, or -1 if the root is not an
+     * array.
+     */
+    int rootArraySize()
+        throws LLSDException {
+        final int position;
+
+        if (root < 0 || !nameIs(root, ARRAY)) {
+            return -1;
+        }
+        position = skipMisc(elementEnd(root));
+        if (position + 1 >= end || data[position + 1] != '/') {
+            throw new LLSDException("Expected only one subelement for element <llsd>.");
+        }
+        return index(root).count;
+    }
+
+    /**
+     * Converts one item of the root array, as {@link #getDocument(LLSDLimits)}
+     * would. Different items may be converted on different threads at once,
+     * each with its own counter.
+     */
+    LLSDValue convertRootItem(final int item, final LLSDLimits.Counter counter)
+        throws LLSDException {
+        return convert(index(root).values[item], 2, counter);
+    }
+
+    /**
+     * Converts the whole document, as {@link #get(String...)} with no path
+     * does, and also checks that &lt;llsd&gt; holds nothing after the root
+     * value. The whole document is first checked to be well-formed XML,
+     * and every element is visited, so the result is the same as the DOM
+     * parser's.
+     *
+     * @param limits limits checked as the document is converted. The size
+     * of the document and its DOCTYPE are left to the caller and the
+     * constructor.
+     * @return the root value, or null if the document is empty.
+     */
+    LLSDValue getDocument(final LLSDLimits limits)
+        throws LLSDException {
+        final LLSDValue value;
+        final int position;
+
+        checkWellFormed();
+        if (root < 0) {
+            return null;
+        }
+        value = convert(root, 1, limits.counter());
+        position = skipMisc(elementEnd(root));
+        if (position + 1 >= end || data[position + 1] != '/') {
+            throw new LLSDException("Expected only one subelement for element <llsd>.");
+        }
+        return value;
+    }
+
+    /**
+     * @return true if there is a value at the given path. Nothing is
+     * converted.
+     */
+    public boolean has(final String... path)
+        throws LLSDException {
+        return find(path) >= 0;
+    }
+
+    /**
+     * @return the type of the value at the given path, or null if there is
+     * none. Scalars are not converted, so an undefined value of a specific
+     * type reports that type.
+     */
+    public LLSDType getType(final String... path)
+        throws LLSDException {
+        final int position = find(path);
+
+        return position < 0
+            ? null
+            : typeOf(position);
+    }
+
+    /**
+     * @return the offset of the element at the given path, or -1.
+     */
+    private int find(final String[] path)
+        throws LLSDException {
+        int position = root;
+
+        for (int i = 0; i < path.length && position >= 0; i++) {
+            final Index index;
+
+            if (nameIs(position, MAP)) {
+                index = index(position);
+                position = index.find(this, path[i]);
+            } else if (nameIs(position, ARRAY)) {
+                final int entry = parseIndex(path[i]);
+
+                index = index(position);
+                position = entry >= 0 && entry < index.count
+                    ? index.values[entry]
+                    : -1;
+            } else {
+                position = -1;
+            }
+        }
+
+        return position;
+    }
+
+    private static int parseIndex(final String segment) {
+        if (segment.isEmpty() || segment.length() > 9) {
+            return -1;
+        }
+        for (int i = 0; i < segment.length(); i++) {
+            if (segment.charAt(i) < '0' || segment.charAt(i) > '9') {
+                return -1;
+            }
+        }
+        return Integer.parseInt(segment);
+    }
+
+    private Index index(final int position)
+        throws LLSDException {
+        Index index = indexes.get(position);
+
+        if (null == index) {
+            index = new Index(this, position);
+            indexes.putIfAbsent(position, index);
+        }
+        return index;
+    }
+
+    /**
+     * @return the index of the given container if it is on a path already
+     * looked up, or otherwise a new one which is not kept. Containers below
+     * the value being converted are visited only once, so caching them
+     * would only cost time and memory.
+     */
+    private Index uncachedIndex(final int position)
+        throws LLSDException {
+        final Index index = indexes.get(position);
+
+        return null == index
+            ? new Index(this, position)
+            : index;
+    }
+
+    private LLSDType typeOf(final int position)
+        throws LLSDException {
+        if (nameIs(position, MAP)) {
+            return LLSDType.MAP;
+        } else if (nameIs(position, ARRAY)) {
+            return LLSDType.ARRAY;
+        } else if (nameIs(position, UNDEF)) {
+            return LLSDType.UNDEF;
+        } else if (nameIs(position, BOOLEAN)) {
+            return LLSDType.BOOLEAN;
+        } else if (nameIs(position, INTEGER)) {
+            return LLSDType.INTEGER;
+        } else if (nameIs(position, REAL)) {
+            return LLSDType.REAL;
+        } else if (nameIs(position, STRING)) {
+            return LLSDType.STRING;
+        } else if (nameIs(position, UUID)) {
+            return LLSDType.UUID;
+        } else if (nameIs(position, DATE)) {
+            return LLSDType.DATE;
+        } else if (nameIs(position, URI)) {
+            return LLSDType.URI;
+        } else if (nameIs(position, BINARY)) {
+            return LLSDType.BINARY;
+        }
+        throw new LLSDException("Encountered unexpected element \""
+            + new String(data, position + 1, nameEnd(position) - position - 1, StandardCharsets.UTF_8)
+            + "\" at offset " + position + ".");
+    }
+
+    /**
+     * Converts the element at the given offset, which is at the given depth
+     * below the value being converted, counting it and everything within it
+     * against the limits of the given counter. Strings are checked once
+     * decoded, as they are no longer than their bytes in the document.
+     */
+    private LLSDValue convert(final int position, final int depth, final LLSDLimits.Counter counter)
+        throws LLSDException {
+        final LLSDType type = typeOf(position);
+        final String text;
+
+        counter.node(depth);
+        switch (type) {
+        case MAP:
+            final Index mapIndex = uncachedIndex(position);
+            final LLSDMap map = new LLSDMap(mapIndex.count);
+
+            for (int i = 0; i < mapIndex.count; i++) {
+                final String key = text(mapIndex.keys[i], false);
+
+                counter.limits.checkString(key.length());
+                map.put(key, convert(mapIndex.values[i], depth + 1, counter));
+            }
+            return map;
+        case ARRAY:
+            final Index arrayIndex = uncachedIndex(position);
+            final LLSDArrayBuilder builder = new LLSDArrayBuilder();
+
+            for (int i = 0; i < arrayIndex.count; i++) {
+                builder.add(convert(arrayIndex.values[i], depth + 1, counter));
+            }
+            return builder.build();
+        case UNDEF:
+            return LLSDUndef.UNDEF;
+        default:
+            break;
+        }
+
+        // Numbers, UUIDs, dates and binary are almost always plain text, and
+        // can be converted straight from the bytes.
+        if (type == LLSDType.INTEGER || type == LLSDType.REAL
+            || type == LLSDType.UUID || type == LLSDType.DATE || type == LLSDType.BINARY) {
+            final int start = tagEnd(position) + 1;
+            final int plainEnd = plainTextEnd(start);
+
+            if (plainEnd >= 0) {
+                switch (type) {
+                case INTEGER:
+                    return LLSDInteger.valueOf(LLSDScalars.parseInteger(data, start, plainEnd));
+                case REAL:
+                    return new LLSDReal(LLSDScalars.parseReal(data, start, plainEnd));
+                case UUID:
+                    return new LLSDUUID(LLSDScalars.parseUUID(data, start, plainEnd));
+                case DATE:
+                    return new LLSDDate(LLSDScalars.parseTime(data, start, plainEnd));
+                default:
+                    checkEncoding(position);
+                    counter.limits.checkBinary(LLSDBase64Decoder.decodedLength(data, start, plainEnd));
+                    return new LLSDBinary(LLSDScalars.parseBinary(data, start, plainEnd));
+                }
+            }
+        }
+
+        text = text(position, true);
+        if (null == text) {
+            return LLSDUndef.valueOf(LLSDUndefined.valueOf(type.name()));
+        }
+
+        switch (type) {
+        case BOOLEAN:
+            return LLSDBoolean.valueOf(LLSDScalars.parseBoolean(text));
+        case INTEGER:
+            return LLSDInteger.valueOf(LLSDScalars.parseInteger(text));
+        case REAL:
+            return new LLSDReal(LLSDScalars.parseReal(text));
+        case STRING:
+            counter.limits.checkString(text.length());
+            return new LLSDString(LLSDScalars.parseString(text));
+        case UUID:
+            return new LLSDUUID(LLSDScalars.parseUUID(text));
+        case DATE:
+            return new LLSDDate(LLSDScalars.parseDate(text));
+        case URI:
+            return new LLSDURI(LLSDScalars.parseURI(text));
+        default:
+            checkEncoding(position);
+            counter.limits.checkBinary(LLSDBase64Decoder.decodedLength(text, 0, text.length()));
+            return new LLSDBinary(LLSDScalars.parseBinary(text));
+        }
+    }
+
+    /**
+     * Decodes the binary value at the given path straight from the document
+     * bytes into the given stream, without holding the value in memory.
+     *
+     * @return the number of bytes written, or -1 if there is nothing at that
+     * path.
+     * @throws LLSDException if the value is not binary, is undefined, or is
+     * not valid base64.
+     */
+    public long getBinary(final OutputStream destination, final String... path)
+        throws IOException, LLSDException {
+        final int position = find(path);
+        final LLSDOutputBuffer output;
+        final LLSDBase64Decoder decoder;
+        final int start;
+        final int plainEnd;
+        final String text;
+        final long length;
+
+        if (position < 0) {
+            return -1;
+        }
+        if (typeOf(position) != LLSDType.BINARY) {
+            throw new LLSDException("Expected binary value, found " + typeOf(position) + ".");
+        }
+        checkEncoding(position);
+
+        output = LLSDOutputBuffer.forStream(destination);
+        decoder = new LLSDBase64Decoder(output);
+        start = tagEnd(position) + 1;
+        plainEnd = plainTextEnd(start);
+        if (plainEnd >= 0) {
+            decoder.decode(data, start, plainEnd);
+        } else {
+            text = text(position, true);
+            if (null == text) {
+                throw new LLSDException("The binary value is undefined.");
+            }
+            decoder.decode(text, 0, text.length());
+        }
+        length = decoder.finish();
+        output.flush();
+
+        return length;
+    }
+
+    private void checkEncoding(final int position)
+        throws LLSDException {
+        final int tagEnd = tagEnd(position);
+        int i = nameEnd(position);
+
+        while (i < tagEnd) {
+            if (regionMatches(i, ENCODING)) {
+                int quote = i + ENCODING.length;
+
+                while (quote < tagEnd && data[quote] != '"' && data[quote] != '\'') {
+                    quote++;
+                }
+                if (quote + 7 >= tagEnd || !regionMatches(quote + 1, BASE64)
+                    || data[quote + 7] != data[quote]) {
+                    throw new LLSDException("encoding other than base64 is not supported");
+                }
+                return;
+            }
+            i++;
+        }
+    }
+
+    /**
+     * Returns the text content of the element at the given offset, with
+     * entity references and CDATA sections resolved.
+     *
+     * @param allowUndefined if true, return null when the element contains
+     * an &lt;undef /&gt; element. Otherwise child elements are an error.
+     */
+    private String text(final int position, final boolean allowUndefined)
+        throws LLSDException {
+        final int tagEnd = tagEnd(position);
+        StringBuilder decoded = null;
+        boolean isUndefined = false;
+        int runStart;
+        int i;
+
+        if (data[tagEnd - 1] == '/') {
+            return "";
+        }
+
+        i = tagEnd + 1;
+        runStart = i;
+        while (true) {
+            if (i + 1 >= end) {
+                throw malformed(position, "Unterminated element");
+            }
+
+            final byte current = data[i];
+
+            if (current == '<') {
+                if (data[i + 1] == '/') {
+                    break;
+                }
+                if (null == decoded) {
+                    decoded = new StringBuilder();
+                }
+                decoded.append(decode(runStart, i));
+                if (regionMatches(i, CDATA_START)) {
+                    final int cdataEnd = indexOf(CDATA_END, i + CDATA_START.length);
+
+                    decoded.append(decode(i + CDATA_START.length, cdataEnd));
+                    i = cdataEnd + CDATA_END.length;
+                } else if (regionMatches(i, COMMENT_START) || data[i + 1] == '?') {
+                    i = skipMarkup(i);
+                } else if (allowUndefined && nameIs(i, UNDEF)) {
+                    isUndefined = true;
+                    i = elementEnd(i);
+                } else {
+                    throw malformed(i, "Unexpected element");
+                }
+                runStart = i;
+            } else if (current == '&') {
+                if (null == decoded) {
+                    decoded = new StringBuilder();
+                }
+                decoded.append(decode(runStart, i));
+                i = decodeEntity(i, decoded);
+                runStart = i;
+            } else {
+                i++;
+            }
+        }
+
+        if (isUndefined) {
+            return null;
+        }
+        if (null == decoded) {
+            return decode(runStart, i);
+        }
+        return decoded.append(decode(runStart, i)).toString();
+    }
+
+    /**
+     * Decodes the given run of text, converting each "\r\n" and lone '\r'
+     * to '\n' as an XML parser does. Line endings written as character
+     * references are decoded separately, and kept.
+     */
+    private String decode(final int from, final int to) {
+        final String text = new String(data, from, to - from, StandardCharsets.UTF_8);
+
+        return text.indexOf('\r') < 0
+            ? text
+            : text.replace("\r\n", "\n").replace('\r', '\n');
+    }
+
+    /**
+     * @return the offset of the end tag if the content starting at the
+     * given offset is plain text, without references, CDATA or other
+     * markup, or -1.
+     */
+    private int plainTextEnd(final int start) {
+        if (data[start - 2] == '/') {
+            return -1;
+        }
+        for (int i = start; i < end; i++) {
+            if (data[i] == '<') {
+                return i + 1 < end && data[i + 1] == '/' ? i : -1;
+            } else if (data[i] == '&') {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private int decodeEntity(final int position, final StringBuilder decoded)
+        throws LLSDException {
+        final int semicolon = indexOf((byte) ';', position + 1, Math.min(end, position + 12));
+        final String name;
+
+        if (semicolon < 0) {
+            throw malformed(position, "Unterminated entity reference");
+        }
+
+        name = new String(data, position + 1, semicolon - position - 1, StandardCharsets.US_ASCII);
+        switch (name) {
+        case "lt":
+            decoded.append('<');
+            break;
+        case "gt":
+            decoded.append('>');
+            break;
+        case "amp":
+            decoded.append('&');
+            break;
+        case "quot":
+            decoded.append('"');
+            break;
+        case "apos":
+            decoded.append('\'');
+            break;
+        default:
+            try {
+                if (name.startsWith("#x")) {
+                    decoded.appendCodePoint(Integer.parseInt(name.substring(2), 16));
+                } else if (name.startsWith("#")) {
+                    decoded.appendCodePoint(Integer.parseInt(name.substring(1)));
+                } else {
+                    throw malformed(position, "Unknown entity \"" + name + "\"");
+                }
+            } catch(IllegalArgumentException e) {
+                throw malformed(position, "Invalid character reference \"" + name + "\"");
+            }
+        }
+        return semicolon + 1;
+    }
+
+    /**
+     * Compares the text of the key element at the given offset with the
+     * UTF-8 bytes of a key, without allocating unless the key contains
+     * references, CDATA or a carriage return.
+     */
+    private boolean keyEquals(final int position, final byte[] key, final String keyText)
+        throws LLSDException {
+        final int start = tagEnd(position) + 1;
+        int i = start;
+
+        if (data[start - 2] == '/') {
+            return key.length == 0;
+        }
+
+        while (i < end && data[i] != '<' && data[i] != '&' && data[i] != '\r') {
+            i++;
+        }
+        if (i + 1 < end && data[i] == '<' && data[i + 1] == '/') {
+            if (i - start != key.length) {
+                return false;
+            }
+            for (int j = 0; j < key.length; j++) {
+                if (data[start + j] != key[j]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return keyText.equals(text(position, false));
+    }
+
+    private int findRoot(final int offset)
+        throws LLSDException {
+        int position = offset;
+
+        if (end - position >= 3 && data[position] == (byte) 0xef
+            && data[position + 1] == (byte) 0xbb && data[position + 2] == (byte) 0xbf) {
+            // UTF-8 byte order mark
+            position += 3;
+        }
+        position = skipMisc(position);
+
+        if (position >= end || !nameIs(position, LLSD)) {
+            throw new LLSDException("Outer-most tag for LLSD missing.");
+        }
+        if (data[tagEnd(position) - 1] == '/') {
+            return -1;
+        }
+
+        position = skipMisc(tagEnd(position) + 1);
+        if (position + 1 >= end) {
+            throw malformed(offset, "Unterminated <llsd> element");
+        }
+        return data[position + 1] == '/'
+            ? -1
+            : position;
+    }
+
+    /**
+     * Checks the whole document in one pass for what an XML parser would
+     * reject but the scanner would otherwise skip over: bytes which are not
+     * UTF-8 or not XML characters, unquoted attribute values, end tags with
+     * anything after the name, end tags not matching their start tags, and
+     * anything but whitespace, comments and processing instructions outside
+     * the root element.
+     */
+    private void checkWellFormed()
+        throws LLSDException {
+        int[] open = new int[16];
+        int depth = 0;
+        boolean isRootSeen = false;
+        int position = begin;
+
+        if (end - position >= 3 && data[position] == (byte) 0xef
+            && data[position + 1] == (byte) 0xbb && data[position + 2] == (byte) 0xbf) {
+            position += 3;
+        }
+
+        while (position < end) {
+            final byte current = data[position];
+
+            if (current != '<') {
+                if (depth == 0 && current != ' ' && current != '\t' && current != '\r' && current != '\n') {
+                    throw malformed(position, "Unexpected text");
+                }
+                position = checkCharacter(position);
+            } else if (position + 1 >= end) {
+                throw malformed(position, "Unterminated tag");
+            } else if (regionMatches(position, COMMENT_START) || data[position + 1] == '?'
+                || (depth > 0 && regionMatches(position, CDATA_START))
+                || (depth == 0 && !isRootSeen && regionMatches(position, DOCTYPE))) {
+                position = checkCharacters(position, skipMarkup(position));
+            } else if (data[position + 1] == '/') {
+                if (depth == 0 || !isEndOf(position, open[depth - 1])) {
+                    throw malformed(position, "Mismatched end tag");
+                }
+                position = skipWhitespace(nameEnd(position + 1));
+                if (position >= end || data[position] != '>') {
+                    throw malformed(position, "Malformed end tag");
+                }
+                position++;
+                if (--depth == 0) {
+                    isRootSeen = true;
+                }
+            } else if (depth == 0 && isRootSeen) {
+                throw malformed(position, "Unexpected element after the root element");
+            } else {
+                final int tagEnd = checkStartTag(position);
+
+                if (data[tagEnd - 1] == '/') {
+                    isRootSeen |= depth == 0;
+                } else {
+                    if (depth == open.length) {
+                        open = Arrays.copyOf(open, depth * 2);
+                    }
+                    open[depth++] = position;
+                }
+                position = tagEnd + 1;
+            }
+        }
+        if (depth > 0 || !isRootSeen) {
+            throw malformed(position, "Unterminated element");
+        }
+    }
+
+    /**
+     * Checks the start tag at the given offset: a name, then attributes each
+     * with a quoted value.
+     *
+     * @return the offset of the '&gt;' closing the tag.
+     */
+    private int checkStartTag(final int position)
+        throws LLSDException {
+        int i = checkName(position + 1);
+
+        while (true) {
+            final int next = skipWhitespace(i);
+
+            if (next >= end) {
+                throw malformed(position, "Unterminated tag");
+            } else if (data[next] == '>') {
+                return next;
+            } else if (data[next] == '/') {
+                if (next + 1 >= end || data[next + 1] != '>') {
+                    throw malformed(next, "Malformed tag");
+                }
+                return next + 1;
+            } else if (next == i) {
+                throw malformed(next, "Malformed tag");
+            }
+
+            i = skipWhitespace(checkName(next));
+            if (i >= end || data[i] != '=') {
+                throw malformed(i, "Attribute without a value");
+            }
+            i = skipWhitespace(i + 1);
+            if (i >= end || (data[i] != '"' && data[i] != '\'')) {
+                throw malformed(i, "Unquoted attribute value");
+            }
+
+            final byte quote = data[i];
+
+            i++;
+            while (i < end && data[i] != quote) {
+                if (data[i] == '<') {
+                    throw malformed(i, "Unexpected '<' in attribute value");
+                }
+                i = checkCharacter(i);
+            }
+            if (i >= end) {
+                throw malformed(position, "Unterminated tag");
+            }
+            i++;
+        }
+    }
+
+    /**
+     * @return the offset just past the element or attribute name starting
+     * at the given offset.
+     */
+    private int checkName(final int position)
+        throws LLSDException {
+        int i = position;
+
+        while (i < end) {
+            final byte current = data[i];
+
+            if (current == '>' || current == '/' || current == '=' || current == ' '
+                || current == '\t' || current == '\r' || current == '\n') {
+                break;
+            } else if (current == '<' || current == '&' || current == '"' || current == '\'') {
+                throw malformed(i, "Invalid character in name");
+            }
+            i = checkCharacter(i);
+        }
+        if (i == position) {
+            throw malformed(position, "Missing name");
+        }
+        return i;
+    }
+
+    private int skipWhitespace(int position) {
+        while (position < end && (data[position] == ' ' || data[position] == '\t'
+            || data[position] == '\r' || data[position] == '\n')) {
+            position++;
+        }
+        return position;
+    }
+
+    private int checkCharacters(int position, final int to)
+        throws LLSDException {
+        while (position < to) {
+            position = checkCharacter(position);
+        }
+        return to;
+    }
+
+    /**
+     * Checks that the bytes at the given offset are the shortest UTF-8
+     * encoding of a character allowed in XML.
+     *
+     * @return the offset of the next character.
+     */
+    private int checkCharacter(final int position)
+        throws LLSDException {
+        final int first = data[position] & 0xff;
+        final int length;
+        int codePoint;
+
+        if (first < 0x80) {
+            if (first < 0x20 && first != '\t' && first != '\n' && first != '\r') {
+                throw malformed(position, "Invalid XML character");
+            }
+            return position + 1;
+        } else if (first >= 0xc2 && first <= 0xdf) {
+            length = 2;
+            codePoint = first & 0x1f;
+        } else if (first >= 0xe0 && first <= 0xef) {
+            length = 3;
+            codePoint = first & 0x0f;
+        } else if (first >= 0xf0 && first <= 0xf4) {
+            length = 4;
+            codePoint = first & 0x07;
+        } else {
+            throw malformed(position, "Invalid UTF-8");
+        }
+
+        if (position + length > end) {
+            throw malformed(position, "Invalid UTF-8");
+        }
+        for (int i = 1; i < length; i++) {
+            final int next = data[position + i] & 0xff;
+
+            if ((next & 0xc0) != 0x80) {
+                throw malformed(position, "Invalid UTF-8");
+            }
+            codePoint = (codePoint << 6) | (next & 0x3f);
+        }
+        if ((length == 3 && codePoint < 0x800) || (length == 4 && codePoint < 0x10000)
+            || codePoint > 0x10ffff || (codePoint >= 0xd800 && codePoint <= 0xdfff)) {
+            throw malformed(position, "Invalid UTF-8");
+        }
+        if (codePoint == 0xfffe || codePoint == 0xffff) {
+            throw malformed(position, "Invalid XML character");
+        }
+        return position + length;
+    }
+
+    /**
+     * @return true if the prolog has a DOCTYPE declaration.
+     */
+    private boolean hasDoctype(final int offset)
+        throws LLSDException {
+        int position = offset;
+
+        while (position < end) {
+            final byte current = data[position];
+
+            if (current == '<') {
+                if (regionMatches(position, DOCTYPE)) {
+                    return true;
+                } else if (position + 1 < end && (data[position + 1] == '?' || data[position + 1] == '!')) {
+                    position = skipMarkup(position);
+                    continue;
+                }
+                return false;
+            }
+            position++;
+        }
+        return false;
+    }
+
+    /**
+     * Skips whitespace, comments, processing instructions and DOCTYPE
+     * declarations.
+     *
+     * @return the offset of the next element start or end tag, or the end
+     * of the document.
+     */
+    private int skipMisc(int position)
+        throws LLSDException {
+        while (position < end) {
+            final byte current = data[position];
+
+            if (current == '<') {
+                if (position + 1 < end && (data[position + 1] == '?' || data[position + 1] == '!')) {
+                    position = skipMarkup(position);
+                    continue;
+                }
+                return position;
+            } else if (current == ' ' || current == '\t' || current == '\r' || current == '\n') {
+                position++;
+            } else {
+                throw malformed(position, "Unexpected text");
+            }
+        }
+        return end;
+    }
+
+    /**
+     * @return the offset just past the comment, CDATA section, processing
+     * instruction or declaration starting at the given offset.
+     */
+    private int skipMarkup(final int position)
+        throws LLSDException {
+        if (regionMatches(position, COMMENT_START)) {
+            return indexOf(COMMENT_END, position + COMMENT_START.length) + COMMENT_END.length;
+        } else if (regionMatches(position, CDATA_START)) {
+            return indexOf(CDATA_END, position + CDATA_START.length) + CDATA_END.length;
+        } else if (data[position + 1] == '?') {
+            return indexOf(PI_END, position + 2) + PI_END.length;
+        }
+        return tagEnd(position) + 1;
+    }
+
+    /**
+     * @return the offset just past the end of the element starting at the
+     * given offset, found by scanning for tags without converting anything.
+     */
+    int elementEnd(final int position)
+        throws LLSDException {
+        int depth = 1;
+        int i = tagEnd(position);
+
+        if (data[i - 1] == '/') {
+            return i + 1;
+        }
+
+        while (true) {
+            i = indexOf((byte) '<', i + 1, end);
+            if (i < 0 || i + 1 >= end) {
+                throw malformed(position, "Unterminated element");
+            }
+
+            final byte next = data[i + 1];
+
+            if (next == '/') {
+                final int endTag = i;
+
+                i = tagEnd(i);
+                if (--depth == 0) {
+                    if (!isEndOf(endTag, position)) {
+                        throw malformed(endTag, "Mismatched end tag");
+                    }
+                    return i + 1;
+                }
+            } else if (next == '!' || next == '?') {
+                i = skipMarkup(i) - 1;
+            } else {
+                i = tagEnd(i);
+                if (data[i - 1] != '/') {
+                    depth++;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the offset of the '&gt;' closing the tag starting at the
+     * given offset, skipping over quoted attribute values.
+     */
+    private int tagEnd(final int position)
+        throws LLSDException {
+        byte quote = 0;
+
+        for (int i = position + 1; i < end; i++) {
+            final byte current = data[i];
+
+            if (quote != 0) {
+                if (current == quote) {
+                    quote = 0;
+                }
+            } else if (current == '"' || current == '\'') {
+                quote = current;
+            } else if (current == '>') {
+                return i;
+            }
+        }
+        throw malformed(position, "Unterminated tag");
+    }
+
+    private int nameEnd(final int position) {
+        int i = position + 1;
+
+        while (i < end) {
+            final byte current = data[i];
+
+            if (current == '>' || current == '/' || current == ' ' || current == '\t'
+                || current == '\r' || current == '\n') {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @return true if the end tag at the first offset closes the element
+     * starting at the second, matching case exactly as XML requires.
+     */
+    private boolean isEndOf(final int endTag, final int start) {
+        final int length = nameEnd(start) - start - 1;
+
+        if (nameEnd(endTag + 1) - endTag - 2 != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (data[endTag + 2 + i] != data[start + 1 + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the start tag at the given offset has the given name,
+     * ignoring case as the DOM parser does.
+     */
+    private boolean nameIs(final int position, final byte[] name) {
+        if (data[position] != '<' || nameEnd(position) - position - 1 != name.length) {
+            return false;
+        }
+        for (int i = 0; i < name.length; i++) {
+            if ((data[position + 1 + i] | 0x20) != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean regionMatches(final int position, final byte[] expected) {
+        if (position + expected.length > end) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (data[position + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int indexOf(final byte value, final int from, final int to) {
+        for (int i = from; i < to; i++) {
+            if (data[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int indexOf(final byte[] value, final int from)
+        throws LLSDException {
+        for (int i = indexOf(value[0], from, end); i >= 0; i = indexOf(value[0], i + 1, end)) {
+            if (regionMatches(i, value)) {
+                return i;
+            }
+        }
+        throw malformed(from, "Unterminated markup");
+    }
+
+    private static LLSDException malformed(final int position, final String problem) {
+        return new LLSDException(problem + " in LLSD document at offset " + position + ".");
+    }
+
+    private static byte[] ascii(final String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Offsets of the entries of one map or array. For a map, keys holds the
+     * offset of each &lt;key&gt; element and values that of the value
+     * following it.
+     */
+    private static final class Index {
+        final int count;
+        final int[] keys;
+        final int[] values;
+
+        Index(final LLSDLazyDocument document, final int position)
+            throws LLSDException {
+            final boolean isMap = document.nameIs(position, MAP);
+            int[] keyOffsets = new int[isMap ? 8 : 0];
+            int[] valueOffsets = new int[8];
+            int entries = 0;
+            int i = document.tagEnd(position);
+
+            if (document.data[i - 1] != '/') {
+                i = document.skipMisc(i + 1);
+                while (i + 1 < document.end && document.data[i + 1] != '/') {
+                    if (entries == valueOffsets.length) {
+                        valueOffsets = Arrays.copyOf(valueOffsets, entries * 2);
+                        if (isMap) {
+                            keyOffsets = Arrays.copyOf(keyOffsets, entries * 2);
+                        }
+                    }
+                    if (isMap) {
+                        if (!document.nameIs(i, KEY)) {
+                            throw malformed(i, "Expected <key> in map");
+                        }
+                        keyOffsets[entries] = i;
+                        i = document.skipMisc(document.elementEnd(i));
+                        if (i + 1 >= document.end || document.data[i + 1] == '/') {
+                            throw malformed(position, "Map key without a value");
+                        }
+                    }
+                    valueOffsets[entries++] = i;
+                    i = document.skipMisc(document.elementEnd(i));
+                }
+                if (i + 1 >= document.end) {
+                    throw malformed(position, "Unterminated element");
+                }
+            }
+
+            this.count = entries;
+            this.keys = keyOffsets;
+            this.values = valueOffsets;
+        }
+
+        /**
+         * @return the offset of the value for the given key, or -1. As with
+         * the other parsers, the last of duplicate keys wins.
+         */
+        int find(final LLSDLazyDocument document, final String key)
+            throws LLSDException {
+            final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+
+            for (int i = count - 1; i >= 0; i--) {
+                if (document.keyEquals(keys[i], keyBytes, key)) {
+                    return values[i];
+                }
+            }
+            return -1;
+        }
+    }
+}
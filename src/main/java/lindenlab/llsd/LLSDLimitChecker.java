@@ -0,0 +1,189 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.ext.DefaultHandler2;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Checks a document against {@link LLSDLimits} in a single SAX pass, before
+ * the DOM parser builds it, for documents which the byte scanner of
+ * {@link LLSDLazyDocument} does not read. Values are counted and text
+ * measured as they arrive, so a document which breaks a limit is stopped
+ * without holding more than the current element's text.
+ *
+ * Documents which are not well-formed are left for the DOM parser to
+ * report, as it would without the check.
+ */
+final class LLSDLimitChecker extends DefaultHandler2 {
+    private static final int OTHER = 0;
+    private static final int STRING = 1;
+    private static final int BINARY = 2;
+
+    /**
+     * Factory for the checking parsers. Only used while holding its own
+     * lock, as factories are not guaranteed to be thread-safe.
+     */
+    private static final SAXParserFactory FACTORY = SAXParserFactory.newInstance();
+
+    static {
+        try {
+            FACTORY.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            FACTORY.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+            FACTORY.setFeature("http://xml.org/sax/features/external-general-entities", false);
+            FACTORY.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+            FACTORY.setXIncludeAware(false);
+        } catch(ParserConfigurationException e) {
+            throw new IllegalStateException(e);
+        } catch(SAXException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private final LLSDLimits limits;
+    private final LLSDLimits.Counter counter;
+
+    /**
+     * Number of maps, arrays and the &lt;llsd&gt; element open.
+     */
+    private int containers = 0;
+
+    /**
+     * Elements open within the current scalar or key, including itself, or
+     * zero between values.
+     */
+    private int scalarLevel = 0;
+
+    private int textKind = OTHER;
+    private long textLength = 0;
+
+    private     LLSDLimitChecker(final LLSDLimits limits) {
+        this.limits = limits;
+        this.counter = limits.counter();
+    }
+
+    /**
+     * Checks the remaining bytes of the given buffer, leaving its position
+     * unchanged.
+     *
+     * @throws LLSDLimitException if the document breaks one of the limits.
+     */
+    static void check(final ByteBuffer document, final LLSDLimits limits)
+        throws IOException, LLSDException {
+        final LLSDLimitChecker checker = new LLSDLimitChecker(limits);
+        final XMLReader reader;
+
+        try {
+            synchronized (FACTORY) {
+                reader = FACTORY.newSAXParser().getXMLReader();
+            }
+            reader.setContentHandler(checker);
+            reader.setProperty("http://xml.org/sax/properties/lexical-handler", checker);
+        } catch(ParserConfigurationException e) {
+            throw new LLSDException("Unable to create an XML parser to check limits.", e);
+        } catch(SAXException e) {
+            throw new LLSDException("Unable to create an XML parser to check limits.", e);
+        }
+
+        try {
+            reader.parse(new InputSource(LLSDInput.limit(LLSDInput.stream(document), limits)));
+        } catch(LLSDInput.LimitExceeded e) {
+            throw e.getLimitException();
+        } catch(SAXException e) {
+            if (e.getException() instanceof LLSDLimitException) {
+                throw (LLSDLimitException) e.getException();
+            }
+            // Not well-formed; the DOM parser reports it.
+        }
+    }
+
+    @Override
+    public void startDTD(final String name, final String publicId, final String systemId)
+        throws SAXException {
+        if (!limits.allowsDoctype()) {
+            throw new SAXException(new LLSDLimitException.Doctype());
+        }
+    }
+
+    @Override
+    public void startElement(final String uri, final String localName, final String qName,
+            final Attributes attributes)
+        throws SAXException {
+        final String name = qName.toLowerCase();
+
+        if (scalarLevel > 0) {
+            scalarLevel++;
+            return;
+        } else if (containers == 0) {
+            // The <llsd> element, checked by the DOM parser.
+            containers++;
+            return;
+        } else if (name.equals("key")) {
+            startText(STRING);
+            return;
+        }
+
+        try {
+            counter.node(containers);
+        } catch(LLSDLimitException e) {
+            throw new SAXException(e);
+        }
+        if (name.equals("map") || name.equals("array")) {
+            containers++;
+        } else {
+            startText(name.equals("string") ? STRING : name.equals("binary") ? BINARY : OTHER);
+        }
+    }
+
+    private void startText(final int kind) {
+        scalarLevel = 1;
+        textKind = kind;
+        textLength = 0;
+    }
+
+    @Override
+    public void endElement(final String uri, final String localName, final String qName) {
+        if (scalarLevel > 0) {
+            scalarLevel--;
+        } else {
+            containers--;
+        }
+    }
+
+    @Override
+    public void characters(final char[] text, final int start, final int length)
+        throws SAXException {
+        if (scalarLevel != 1 || textKind == OTHER) {
+            return;
+        }
+
+        try {
+            if (textKind == STRING) {
+                textLength += length;
+                limits.checkString((int) Math.min(Integer.MAX_VALUE, textLength));
+            } else {
+                for (int i = start; i < start + length; i++) {
+                    if (LLSDBase64Decoder.isDigit(text[i])) {
+                        textLength++;
+                    }
+                }
+                limits.checkBinary((int) Math.min(Integer.MAX_VALUE, textLength * 3 / 4));
+            }
+        } catch(LLSDLimitException e) {
+            throw new SAXException(e);
+        }
+    }
+}
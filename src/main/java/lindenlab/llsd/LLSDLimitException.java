@@ -0,0 +1,98 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+/**
+ * Thrown when a document breaks one of the {@link LLSDLimits} of the parser
+ * reading it. Each limit has its own subclass, so that callers can tell a
+ * document which is too deep from one which is too large.
+ */
+public class LLSDLimitException extends LLSDException {
+    private final long limit;
+    private final long value;
+
+    public  LLSDLimitException(final String message, final long limit, final long value) {
+        super(message);
+        this.limit = limit;
+        this.value = value;
+    }
+
+    /**
+     * @return the limit broken.
+     */
+    public long getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return the value found which breaks the limit. A document read from
+     * a stream is reported as the number of bytes read when it was
+     * stopped, rather than its full size.
+     */
+    public long getValue() {
+        return value;
+    }
+
+    private static String describe(final String problem, final long limit, final long value) {
+        return problem + " (" + value + ", limit " + limit + ").";
+    }
+
+    /**
+     * Thrown when values are nested too deeply.
+     */
+    public static class Depth extends LLSDLimitException {
+        public  Depth(final long limit, final long value) {
+            super(describe("Values are nested too deeply", limit, value), limit, value);
+        }
+    }
+
+    /**
+     * Thrown when a document holds too many values.
+     */
+    public static class Nodes extends LLSDLimitException {
+        public  Nodes(final long limit, final long value) {
+            super(describe("Document holds too many values", limit, value), limit, value);
+        }
+    }
+
+    /**
+     * Thrown when a string or map key is too long.
+     */
+    public static class StringLength extends LLSDLimitException {
+        public  StringLength(final long limit, final long value) {
+            super(describe("String is too long", limit, value), limit, value);
+        }
+    }
+
+    /**
+     * Thrown when a binary value is too long.
+     */
+    public static class BinaryLength extends LLSDLimitException {
+        public  BinaryLength(final long limit, final long value) {
+            super(describe("Binary value is too long", limit, value), limit, value);
+        }
+    }
+
+    /**
+     * Thrown when a document is too large.
+     */
+    public static class DocumentSize extends LLSDLimitException {
+        public  DocumentSize(final long limit, final long value) {
+            super(describe("Document is too large", limit, value), limit, value);
+        }
+    }
+
+    /**
+     * Thrown when a document has a DOCTYPE declaration and they are not
+     * allowed. The limit is zero and the value one.
+     */
+    public static class Doctype extends LLSDLimitException {
+        public  Doctype() {
+            super("DOCTYPE declarations are not allowed.", 0, 1);
+        }
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+/**
+ * Limits on the XML documents an {@link LLSDParser} accepts, so that a
+ * document from an untrusted source cannot exhaust memory or the stack.
+ * Each limit is checked as the document is read, before the value which
+ * breaks it is built, and breaking it throws the matching subclass of
+ * {@link LLSDLimitException}.
+ *
+ * {@link #DEFAULT} only limits nesting, deeply enough for any real
+ * document, so that a hostile one fails cleanly rather than overflowing the
+ * stack. {@link #UNTRUSTED} adds limits suited to documents from clients.
+ * External DTDs and entities are never loaded, whatever the limits.
+ *
+ * Instances are immutable; the with methods return a copy with one limit
+ * changed.
+ */
+public final class LLSDLimits {
+    /**
+     * Value of a limit which is not checked.
+     */
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    /**
+     * Nesting up to 1000 values deep, with everything else unlimited and a
+     * DOCTYPE allowed. This is what parsers use unless told otherwise.
+     */
+    public static final LLSDLimits DEFAULT = new LLSDLimits(1000, UNLIMITED, UNLIMITED, UNLIMITED,
+        Long.MAX_VALUE, true);
+
+    /**
+     * Nesting up to 64 values deep, 100,000 values, strings of up to a
+     * million characters, binary values of up to 16 MiB, documents of up to
+     * 64 MiB and no DOCTYPE.
+     */
+    public static final LLSDLimits UNTRUSTED = new LLSDLimits(64, 100000, 1 << 20, 16 << 20,
+        64L << 20, false);
+
+    private final int maxDepth;
+    private final int maxNodes;
+    private final int maxStringLength;
+    private final int maxBinaryLength;
+    private final long maxDocumentBytes;
+    private final boolean allowDoctype;
+
+    private     LLSDLimits(final int maxDepth, final int maxNodes, final int maxStringLength,
+            final int maxBinaryLength, final long maxDocumentBytes, final boolean allowDoctype) {
+        this.maxDepth = maxDepth;
+        this.maxNodes = maxNodes;
+        this.maxStringLength = maxStringLength;
+        this.maxBinaryLength = maxBinaryLength;
+        this.maxDocumentBytes = maxDocumentBytes;
+        this.allowDoctype = allowDoctype;
+    }
+
+    /**
+     * @return the deepest nesting of values allowed, where a lone scalar is
+     * 1 and a map of scalars is 2.
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * @return the number of values allowed in a document, including maps
+     * and arrays.
+     */
+    public int getMaxNodes() {
+        return maxNodes;
+    }
+
+    /**
+     * @return the length allowed of a string or map key, in characters.
+     */
+    public int getMaxStringLength() {
+        return maxStringLength;
+    }
+
+    /**
+     * @return the length allowed of a binary value, in decoded bytes.
+     */
+    public int getMaxBinaryLength() {
+        return maxBinaryLength;
+    }
+
+    /**
+     * @return the size allowed of a document, in bytes.
+     */
+    public long getMaxDocumentBytes() {
+        return maxDocumentBytes;
+    }
+
+    /**
+     * @return true if a document may have a DOCTYPE declaration.
+     */
+    public boolean allowsDoctype() {
+        return allowDoctype;
+    }
+
+    public LLSDLimits withMaxDepth(final int maxDepth) {
+        return new LLSDLimits(positive(maxDepth), maxNodes, maxStringLength, maxBinaryLength,
+            maxDocumentBytes, allowDoctype);
+    }
+
+    public LLSDLimits withMaxNodes(final int maxNodes) {
+        return new LLSDLimits(maxDepth, positive(maxNodes), maxStringLength, maxBinaryLength,
+            maxDocumentBytes, allowDoctype);
+    }
+
+    public LLSDLimits withMaxStringLength(final int maxStringLength) {
+        return new LLSDLimits(maxDepth, maxNodes, positive(maxStringLength), maxBinaryLength,
+            maxDocumentBytes, allowDoctype);
+    }
+
+    public LLSDLimits withMaxBinaryLength(final int maxBinaryLength) {
+        return new LLSDLimits(maxDepth, maxNodes, maxStringLength, positive(maxBinaryLength),
+            maxDocumentBytes, allowDoctype);
+    }
+
+    /**
+     * @param maxDocumentBytes the size allowed, or Long.MAX_VALUE for no
+     * limit.
+     */
+    public LLSDLimits withMaxDocumentBytes(final long maxDocumentBytes) {
+        if (maxDocumentBytes <= 0) {
+            throw new IllegalArgumentException("Limit must be positive: " + maxDocumentBytes);
+        }
+        return new LLSDLimits(maxDepth, maxNodes, maxStringLength, maxBinaryLength,
+            maxDocumentBytes, allowDoctype);
+    }
+
+    public LLSDLimits withDoctype(final boolean allowDoctype) {
+        return new LLSDLimits(maxDepth, maxNodes, maxStringLength, maxBinaryLength,
+            maxDocumentBytes, allowDoctype);
+    }
+
+    @Override
+    public String toString() {
+        return "depth " + maxDepth + ", nodes " + maxNodes + ", string " + maxStringLength
+            + ", binary " + maxBinaryLength + ", document " + maxDocumentBytes
+            + (allowDoctype ? "" : ", no DOCTYPE");
+    }
+
+    private static int positive(final int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be positive: " + limit);
+        }
+        return limit;
+    }
+
+    /**
+     * @return true if anything is limited beyond the nesting depth allowed
+     * by {@link #DEFAULT}, so that documents must be checked as they are
+     * read rather than once a DOM of them has been built.
+     */
+    boolean isLimited() {
+        return maxDepth < DEFAULT.maxDepth || maxNodes != UNLIMITED || maxStringLength != UNLIMITED
+            || maxBinaryLength != UNLIMITED || maxDocumentBytes != Long.MAX_VALUE || !allowDoctype;
+    }
+
+    /**
+     * Throws if a document of the given size is too large.
+     */
+    void checkDocument(final long bytes)
+        throws LLSDLimitException {
+        if (bytes > maxDocumentBytes) {
+            throw new LLSDLimitException.DocumentSize(maxDocumentBytes, bytes);
+        }
+    }
+
+    void checkString(final int length)
+        throws LLSDLimitException {
+        if (length > maxStringLength) {
+            throw new LLSDLimitException.StringLength(maxStringLength, length);
+        }
+    }
+
+    void checkBinary(final int length)
+        throws LLSDLimitException {
+        if (length > maxBinaryLength) {
+            throw new LLSDLimitException.BinaryLength(maxBinaryLength, length);
+        }
+    }
+
+    /**
+     * @return a counter of the values in one document.
+     */
+    Counter counter() {
+        return new Counter(this);
+    }
+
+    /**
+     * Counts the values of one document as they are read, checking the
+     * depth and number of values.
+     */
+    static final class Counter {
+        final LLSDLimits limits;
+        private int nodes = 0;
+
+        private     Counter(final LLSDLimits limits) {
+            this.limits = limits;
+        }
+
+        /**
+         * Counts a value at the given depth, where the root is 1.
+         */
+        void node(final int depth)
+            throws LLSDLimitException {
+            if (depth > limits.maxDepth) {
+                throw new LLSDLimitException.Depth(limits.maxDepth, depth);
+            }
+            if (++nodes > limits.maxNodes) {
+                throw new LLSDLimitException.Nodes(limits.maxNodes, nodes);
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+import java.util.*;
+
+/**
+ * An LLSD map of string keys to values. Entries are kept in insertion
+ * order, which for parsed maps is document order.
+ */
+public final class LLSDMap extends LLSDValue {
+    private final Map<String, LLSDValue> entries;
+
+    public      LLSDMap() {
+        this.entries = new LinkedHashMap<String, LLSDValue>();
+    }
+
+    public      LLSDMap(final int expectedSize) {
+        this.entries = new LinkedHashMap<String, LLSDValue>(Math.max(4, expectedSize * 4 / 3 + 1));
+    }
+
+    public LLSDType getType() {
+        return LLSDType.MAP;
+    }
+
+    public LLSDMap asMap() {
+        return this;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public boolean containsKey(final String key) {
+        return entries.containsKey(key);
+    }
+
+    /**
+     * @return the value for the given key, or null if there is none.
+     */
+    public LLSDValue get(final String key) {
+        return entries.get(key);
+    }
+
+    /**
+     * @return the previous value for the key, or null if there was none.
+     */
+    public LLSDValue put(final String key, final LLSDValue value) {
+        if (null == value) {
+            throw new NullPointerException("value");
+        }
+        return entries.put(key, value);
+    }
+
+    public LLSDValue remove(final String key) {
+        return entries.remove(key);
+    }
+
+    public Set<String> keySet() {
+        return entries.keySet();
+    }
+
+    public Set<Map.Entry<String, LLSDValue>> entrySet() {
+        return entries.entrySet();
+    }
+
+    public Object toObject() {
+        final Map<String, Object> value = new HashMap<String, Object>(Math.max(4, entries.size() * 4 / 3 + 1));
+
+        for (Map.Entry<String, LLSDValue> entry: entries.entrySet()) {
+            value.put(entry.getKey(), entry.getValue().toObject());
+        }
+        return value;
+    }
+
+    public boolean equals(final Object other) {
+        return other instanceof LLSDMap
+            && ((LLSDMap) other).entries.equals(entries);
+    }
+
+    public int hashCode() {
+        return entries.hashCode();
+    }
+}
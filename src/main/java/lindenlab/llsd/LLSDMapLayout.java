@@ -0,0 +1,119 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The keys of an {@link LLSDCompactMap}, in order, shared between every map
+ * with the same keys. Layouts form a tree from an empty root: adding a key
+ * to a layout leads to the layout with that key appended, created the first
+ * time it is needed, so maps built from the same schema end up sharing one
+ * layout without their keys being compared as a whole.
+ *
+ * Each tree is limited in the number of keys per layout and the number of
+ * layouts, so that documents with unusual maps fall back to plain maps
+ * rather than growing it without bound. Instances may be shared between
+ * threads.
+ */
+final class LLSDMapLayout {
+    /**
+     * Most keys in a compact map. Lookups are linear, so larger maps are
+     * better off hashed.
+     */
+    static final int MAX_KEYS = 32;
+
+    /**
+     * Most layouts in one tree.
+     */
+    static final int MAX_LAYOUTS = 4096;
+
+    final String[] keys;
+    private final int[] hashes;
+    private final AtomicInteger layoutCount;
+    private final ConcurrentMap<String, LLSDMapLayout> transitions = new ConcurrentHashMap<String, LLSDMapLayout>();
+
+    private     LLSDMapLayout(final String[] keys, final AtomicInteger layoutCount) {
+        this.keys = keys;
+        this.hashes = new int[keys.length];
+        this.layoutCount = layoutCount;
+        for (int i = 0; i < keys.length; i++) {
+            hashes[i] = keys[i].hashCode();
+        }
+    }
+
+    /**
+     * @return the empty layout at the root of a new tree.
+     */
+    static LLSDMapLayout root() {
+        return new LLSDMapLayout(new String[0], new AtomicInteger(1));
+    }
+
+    int size() {
+        return keys.length;
+    }
+
+    /**
+     * @return the index of the given key, or -1. Keys are compared by
+     * reference first, which finds interned keys and literals without
+     * looking at their characters.
+     */
+    int indexOf(final Object key) {
+        final int hash;
+
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == key) {
+                return i;
+            }
+        }
+        if (!(key instanceof String)) {
+            return -1;
+        }
+
+        hash = key.hashCode();
+        for (int i = 0; i < keys.length; i++) {
+            if (hashes[i] == hash && keys[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the layout with the given key appended, or null if that would
+     * exceed the limits of the tree. The key must not already be present.
+     */
+    LLSDMapLayout with(final String key) {
+        final LLSDMapLayout existing = transitions.get(key);
+        final LLSDMapLayout created;
+        final LLSDMapLayout raced;
+
+        if (null != existing) {
+            return existing;
+        } else if (keys.length >= MAX_KEYS || layoutCount.get() >= MAX_LAYOUTS) {
+            return null;
+        }
+
+        created = new LLSDMapLayout(append(keys, key), layoutCount);
+        raced = transitions.putIfAbsent(key, created);
+        if (null != raced) {
+            return raced;
+        }
+        layoutCount.incrementAndGet();
+        return created;
+    }
+
+    private static String[] append(final String[] keys, final String key) {
+        final String[] appended = Arrays.copyOf(keys, keys.length + 1);
+
+        appended[keys.length] = key;
+        return appended;
+    }
+}
@@ -0,0 +1,993 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Reads LLSD documents straight into Java objects, and writes objects as
+ * LLSD, without building the map and list content in between. Values are
+ * read from an {@link LLSDReader}'s tokens into the objects' properties and
+ * written through an {@link LLSDXMLWriter}:
+ *
+ * <pre>
+ * RegionStats stats = mapper.read(input, RegionStats.class);
+ * mapper.write(stats, output);
+ * </pre>
+ *
+ * LLSD maps are bound to beans, which are read through a no-argument
+ * constructor and their setters and written through their getters, and to
+ * records, which are read through their canonical constructor. Public
+ * fields are bound as bean properties. Each property is read from the map
+ * key of its name, or that given by {@link LLSDProperty}. Keys with no
+ * property are skipped unconverted; properties with no key keep their
+ * default. Properties holding null are not written.
+ *
+ * Property types may be boolean, int, double and float, their wrappers,
+ * String, UUID, Date, URI, byte[], enums (as strings), {@link LLSDValue}s,
+ * other beans and records, arrays, Lists, Sets and Maps with String keys
+ * of any of these, or Object for plain LLSD content. Undefined values read
+ * as null, or zero or false for primitives.
+ *
+ * The properties of each class are found once, on first use, and kept as
+ * method handles shared by all mappers. Instances may be shared between
+ * threads.
+ */
+public class LLSDMapper {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final MethodType GETTER = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER = MethodType.methodType(void.class, Object.class, Object.class);
+    private static final MethodType CREATE = MethodType.methodType(Object.class);
+
+    /**
+     * Class.getRecordComponents() and RecordComponent.getName(), found by
+     * name as records are newer than the Java version this library is built
+     * for. Null on runtimes without records.
+     */
+    private static final Method GET_RECORD_COMPONENTS = findMethod(Class.class, "getRecordComponents");
+    private static final Method GET_COMPONENT_NAME = null == GET_RECORD_COMPONENTS
+        ? null
+        : findMethod(GET_RECORD_COMPONENTS.getReturnType().getComponentType(), "getName");
+
+    /**
+     * Reads and writes plain LLSD content, choosing the binding of each
+     * value written by its class.
+     */
+    private static final Binding CONTENT = new Binding() {
+        @Override
+        Object read(final LLSDReader reader) throws IOException, LLSDException {
+            return reader.readValue();
+        }
+
+        @Override
+        void write(final LLSDXMLWriter writer, final Object value) throws IOException, LLSDException {
+            BINDINGS.get(value.getClass()).write(writer, value);
+        }
+    };
+
+    /**
+     * Reads plain LLSD content and writes values the serialiser handles
+     * itself, such as streamed binary values.
+     */
+    private static final Binding PLAIN = new Binding() {
+        @Override
+        Object read(final LLSDReader reader) throws IOException, LLSDException {
+            return reader.readValue();
+        }
+
+        @Override
+        void write(final LLSDXMLWriter writer, final Object value) throws IOException, LLSDException {
+            writer.value(value);
+        }
+    };
+
+    private static final ClassValue<Binding> BINDINGS = new ClassValue<Binding>() {
+        @Override
+        protected Binding computeValue(final Class<?> type) {
+            return bind(type);
+        }
+    };
+
+    private final LLSDStaxParser parser;
+    private final LLSDXMLSerialiser serialiser;
+
+    public      LLSDMapper() {
+        this(new LLSDStaxParser(), new LLSDXMLSerialiser());
+    }
+
+    /**
+     * @param parser the parser XML documents are read with.
+     * @param serialiser the serialiser XML documents are written with, whose
+     * layout they use.
+     */
+    public      LLSDMapper(final LLSDStaxParser parser, final LLSDXMLSerialiser serialiser) {
+        this.parser = parser;
+        this.serialiser = serialiser;
+    }
+
+    /**
+     * Reads an LLSD XML document from the given input stream as the given
+     * type.
+     *
+     * @return the document's root value, or null if the document is empty.
+     * @throws IOException if there was a problem reading from the input
+     * stream.
+     * @throws LLSDException if the document is malformed, or holds a value
+     * which cannot be read as the type of its property.
+     */
+    public <T> T read(final InputStream xmlFile, final Class<T> type)
+        throws IOException, LLSDException {
+        try (LLSDReader reader = parser.reader(xmlFile)) {
+            return read(reader, type);
+        }
+    }
+
+    /**
+     * Reads an LLSD XML document from the remaining bytes of the buffer as
+     * the given type. See {@link #read(InputStream, Class)}.
+     */
+    public <T> T read(final ByteBuffer xmlFile, final Class<T> type)
+        throws IOException, LLSDException {
+        try (LLSDReader reader = parser.reader(xmlFile)) {
+            return read(reader, type);
+        }
+    }
+
+    /**
+     * Reads a whole document from the start as the given type, from a reader
+     * of any format.
+     *
+     * @return the document's root value, or null if the document is empty.
+     */
+    public <T> T read(final LLSDReader reader, final Class<T> type)
+        throws IOException, LLSDException {
+        final T value;
+
+        if (reader.next() == LLSDToken.END_DOCUMENT) {
+            return null;
+        }
+
+        value = readValue(reader, type);
+        reader.next();
+
+        return value;
+    }
+
+    /**
+     * Reads the reader's current value as the given type, leaving the reader
+     * on the last token of the value, as {@link LLSDReader#readValue()}
+     * does.
+     */
+    public <T> T readValue(final LLSDReader reader, final Class<T> type)
+        throws IOException, LLSDException {
+        return (T) BINDINGS.get(type).read(reader);
+    }
+
+    /**
+     * Writes the given value as an LLSD XML document to the output stream.
+     *
+     * @throws LLSDException if the value, or a value within it, is of a type
+     * which cannot be bound.
+     */
+    public void write(final Object value, final OutputStream output)
+        throws IOException, LLSDException {
+        try (LLSDXMLWriter writer = serialiser.writer(output)) {
+            write(value, writer);
+        }
+    }
+
+    /**
+     * Writes the given value at the writer's current position, so that
+     * objects can be written within a larger document.
+     */
+    public void write(final Object value, final LLSDXMLWriter writer)
+        throws IOException, LLSDException {
+        writeValue(writer, CONTENT, value);
+    }
+
+    private static void writeValue(final LLSDXMLWriter writer, final Binding binding, final Object value)
+        throws IOException, LLSDException {
+        if (null == value) {
+            writer.value(LLSDUndef.UNDEF);
+        } else {
+            binding.write(writer, value);
+        }
+    }
+
+    private static boolean isUndefined(final LLSDReader reader) {
+        final LLSDToken token = reader.getToken();
+
+        return token == LLSDToken.UNDEF || (token.isScalar() && reader.isUndefined());
+    }
+
+    private static LLSDException mismatch(final LLSDReader reader, final Type type) {
+        return new LLSDException("Unable to read " + reader.getToken() + " as " + type.getTypeName() + ".");
+    }
+
+    /**
+     * Chooses the binding for a class, when it is first used.
+     */
+    private static Binding bind(final Class<?> type) {
+        if (type == boolean.class || type == Boolean.class) {
+            return new Scalar(type, LLSDToken.BOOLEAN, type == boolean.class ? Boolean.FALSE : null);
+        } else if (type == int.class || type == Integer.class) {
+            return new Scalar(type, LLSDToken.INTEGER, type == int.class ? Integer.valueOf(0) : null);
+        } else if (type == double.class || type == Double.class) {
+            return new Scalar(type, LLSDToken.REAL, type == double.class ? Double.valueOf(0) : null);
+        } else if (type == float.class || type == Float.class) {
+            return new Scalar(type, LLSDToken.REAL, type == float.class ? Float.valueOf(0) : null);
+        } else if (type == String.class) {
+            return new Scalar(type, LLSDToken.STRING, null);
+        } else if (type == UUID.class) {
+            return new Scalar(type, LLSDToken.UUID, null);
+        } else if (type == Date.class) {
+            return new Scalar(type, LLSDToken.DATE, null);
+        } else if (type == URI.class) {
+            return new Scalar(type, LLSDToken.URI, null);
+        } else if (type == byte[].class) {
+            return new Scalar(type, LLSDToken.BINARY, null);
+        } else if (type == Object.class) {
+            return CONTENT;
+        } else if (LLSDValue.class.isAssignableFrom(type)) {
+            return new Tree(type);
+        } else if (type == LLSDUndefined.class
+            || ByteBuffer.class.isAssignableFrom(type)
+            || InputStream.class.isAssignableFrom(type)) {
+            return PLAIN;
+        } else if (Enum.class.isAssignableFrom(type)) {
+            // Constants with bodies are subclasses of their enum.
+            return new EnumBinding(type.isEnum() ? type : type.getSuperclass());
+        } else if (type.isArray()) {
+            return new ArrayBinding(type.getComponentType(), BINDINGS.get(type.getComponentType()));
+        } else if (Collection.class.isAssignableFrom(type)) {
+            return new CollectionBinding(type, CONTENT);
+        } else if (Map.class.isAssignableFrom(type)) {
+            return new MapBinding(type, CONTENT);
+        } else if (type.isPrimitive() || type.isInterface() || Modifier.isAbstract(type.getModifiers())
+            || type.getName().startsWith("java")) {
+            return new Unsupported("Unable to bind " + type.getName()
+                + ", which is neither an LLSD type nor a bean or record.");
+        } else if (isRecord(type)) {
+            return new RecordBinding(type);
+        }
+        return new BeanBinding(type);
+    }
+
+    /**
+     * Chooses the binding for a declared property type, which may carry
+     * the element types of a collection.
+     */
+    private static Binding bind(final Type type) {
+        if (type instanceof Class) {
+            return BINDINGS.get((Class<?>) type);
+        } else if (type instanceof ParameterizedType) {
+            final Class<?> raw = (Class<?>) ((ParameterizedType) type).getRawType();
+            final Type[] arguments = ((ParameterizedType) type).getActualTypeArguments();
+
+            if (Collection.class.isAssignableFrom(raw) && arguments.length == 1) {
+                return new CollectionBinding(raw, bind(arguments[0]));
+            } else if (Map.class.isAssignableFrom(raw) && arguments.length == 2) {
+                if (rawClass(arguments[0]) != String.class) {
+                    return new Unsupported("Unable to bind " + type.getTypeName() + ", as LLSD map keys are strings.");
+                }
+                return new MapBinding(raw, bind(arguments[1]));
+            }
+            return BINDINGS.get(raw);
+        } else if (type instanceof GenericArrayType) {
+            final Type component = ((GenericArrayType) type).getGenericComponentType();
+
+            return new ArrayBinding(rawClass(component), bind(component));
+        } else if (type instanceof WildcardType) {
+            return bind(((WildcardType) type).getUpperBounds()[0]);
+        } else if (type instanceof TypeVariable) {
+            return bind(((TypeVariable<?>) type).getBounds()[0]);
+        }
+        return CONTENT;
+    }
+
+    private static Class<?> rawClass(final Type type) {
+        if (type instanceof Class) {
+            return (Class<?>) type;
+        } else if (type instanceof ParameterizedType) {
+            return (Class<?>) ((ParameterizedType) type).getRawType();
+        } else if (type instanceof GenericArrayType) {
+            return Array.newInstance(rawClass(((GenericArrayType) type).getGenericComponentType()), 0).getClass();
+        }
+        return Object.class;
+    }
+
+    private static boolean isRecord(final Class<?> type) {
+        try {
+            return null != GET_RECORD_COMPONENTS && null != GET_RECORD_COMPONENTS.invoke(type);
+        } catch(ReflectiveOperationException e) {
+            return false;
+        }
+    }
+
+    private static Method findMethod(final Class<?> type, final String name, final Class<?>... parameterTypes) {
+        try {
+            return type.getMethod(name, parameterTypes);
+        } catch(NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static Field findField(final Class<?> type, final String name) {
+        for (Class<?> owner = type; null != owner; owner = owner.getSuperclass()) {
+            try {
+                return owner.getDeclaredField(name);
+            } catch(NoSuchFieldException e) {
+                // Try the superclass
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the key given by the first of the elements with an
+     * {@link LLSDProperty}, or the property name if none has one.
+     */
+    private static String key(final String name, final AnnotatedElement... elements) {
+        for (AnnotatedElement element: elements) {
+            final LLSDProperty property = null == element ? null : element.getAnnotation(LLSDProperty.class);
+
+            if (null != property) {
+                return property.value();
+            }
+        }
+        return name;
+    }
+
+    /**
+     * Makes a member of a class which is not public, or which is not itself
+     * public, usable through a method handle.
+     */
+    private static <T extends AccessibleObject & Member> T accessible(final T member) throws LLSDException {
+        if (!Modifier.isPublic(member.getModifiers()) || !Modifier.isPublic(member.getDeclaringClass().getModifiers())) {
+            try {
+                member.setAccessible(true);
+            } catch(RuntimeException e) {
+                throw new LLSDException("Unable to access " + member + ".", e);
+            }
+        }
+        return member;
+    }
+
+    /**
+     * Returns an exception for a failure thrown through a method handle,
+     * rethrowing unchecked exceptions as they are.
+     */
+    private static LLSDException invocationFailure(final String message, final Throwable cause) {
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new LLSDException(message, cause);
+    }
+
+    /**
+     * Reads and writes values of one Java type.
+     */
+    private abstract static class Binding {
+        /**
+         * Reads the reader's current value, leaving the reader on its last
+         * token.
+         */
+        abstract Object read(LLSDReader reader) throws IOException, LLSDException;
+
+        /**
+         * Writes a value, which is never null.
+         */
+        abstract void write(LLSDXMLWriter writer, Object value) throws IOException, LLSDException;
+
+        /**
+         * @return the value of a record component whose key is missing.
+         */
+        Object empty() {
+            return null;
+        }
+    }
+
+    private static final class Unsupported extends Binding {
+        private final String message;
+
+        Unsupported(final String message) {
+            this.message = message;
+        }
+
+        @Override
+        Object read(final LLSDReader reader) throws LLSDException {
+            throw new LLSDException(message);
+        }
+
+        @Override
+        void write(final LLSDXMLWriter writer, final Object value) throws LLSDException {
+            throw new LLSDException(message);
+        }
+    }
+
+    private static final class Scalar extends Binding {
+        private final Class<?> type;
+        private final LLSDToken token;
+        private final Object empty;
+
+        Scalar(final Class<?> type, final LLSDToken token, final Object empty) {
+            this.type = type;
+            this.token = token;
+            this.empty = empty;
+        }
+
+        @Override
+        Object read(final LLSDReader reader) throws LLSDException {
+            final LLSDToken found = reader.getToken();
+
+            if (isUndefined(reader)) {
+                return empty;
+            } else if (found == token) {
+                switch (token) {
+                case BOOLEAN:
+                    return reader.getBoolean();
+                case INTEGER:
+                    return reader.getInteger();
+                case REAL:
+                    return real(reader.getReal());
+                default:
+                    return reader.getValue();
+                }
+            } else if (token == LLSDToken.REAL && found == LLSDToken.INTEGER) {
+                // Every integer is exact as a real.
+                return real(reader.getInteger());
+            }
+            throw mismatch(reader, type);
+        }
+
+        private Object real(final double value) {
+            if (type == float.class || type == Float.class) {
+                return (float) value;
+            }
+            return value;
+        }
+
+        @Override
+        void write(final LLSDXMLWriter writer, final Object value) throws IOException, LLSDException {
+            switch (token) {
+            case BOOLEAN:
+                writer.value(((Boolean) value).booleanValue());
+                break;
+            case INTEGER:
+                writer.value(((Integer) value).intValue());
+                break;
+            case REAL:
+                writer.value(((Number) value).doubleValue());
+                break;
+            default:
+                writer.value(value);
+                break;
+            }
+        }
+
+        @Override
+        Object empty() {
+            return empty;
+        }
+    }
+
+    private static final class EnumBinding extends Binding {
+        private final Class<?> type;
+        private final Map<String, Object> constants = new HashMap<String, Object>();
+
+        EnumBinding(final Class<?> type) {
+            this.type = type;
+            for (Object constant: type.getEnumConstants()) {
+                constants.put(((Enum<?>) constant).name(), constant);
+            }
+        }
+
+        @Override
+        Object read(final LLSDReader reader) throws LLSDException {
+            final Object constant;
+
+            if (isUndefined(reader)) {
+                return null;
+            } else if (reader.getToken() != LLSDToken.STRING) {
+                throw mismatch(reader, type);
+            }
+
+            constant = constants.get(reader.getString());
+            if (null == constant) {
+                throw new LLSDException("Unable to read \"" + reader.getString() + "\" as " + type.getName() + ".");
+            }
+            return constant;
+        }
+
+        @Override
+        void write(final LLSDXMLWriter writer, final Object value) throws IOException, LLSDException {
+            writer.value(((Enum<?>) value).name());
+        }
+    }
+
+    private static final class Tree extends Binding {
+        private final Class<?> type;
+
+        Tree(final Class<?> type) {
+            this.type = type;
+        }
+
+        @Override
+        Object read(final LLSDReader reader) throws IOException, LLSDException {
+            final LLSDValue value = reader.readTree();
+
+            if (!type.isInstance(value)) {
+                throw new LLSDException("Unable to read " + value.getClass().getSimpleName() + " as "
+                    + type.getName() + ".");
+            }
+            return value;
+        }
+
+        @Override
+        void write(final LLSDXMLWriter writer, final Object value) throws IOException, LLSDException {
+            writer.value(value);
+        }
+    }
+
+    private static final class ArrayBinding extends Binding {
+        private final Class<?> type;
+        private final Class<?> component;
+        private final Binding element;
+
+        ArrayBinding(final Class<?> component, final Binding element) {
+            this.type = Array.newInstance(component, 0).getClass();
+            this.component = component;
+            this.element = element;
+        }
+
+        @Override
+        Object read(final LLSDReader reader) throws IOException, LLSDException {
+            final List<Object> items = new ArrayList<Object>();
+            final Object array;
+
+            if (isUndefined(reader)) {
+                return null;
+            } else if (reader.getToken() != LLSDToken.START_ARRAY) {
+                throw mismatch(reader, type);
+            }
+
+            while (reader.next() != LLSDToken.END_ARRAY) {
+                items.add(element.read(reader));
+            }
+            array = Array.newInstance(component, items.size());
+            for (int i = 0; i < items.size(); i++) {
+                Array.set(array, i, items.get(i));
+            }
+            return array;
+        }
+
+        @Override
+        void write(final LLSDXMLWriter writer, final Object value) throws IOException, LLSDException {
+            final int length = Array.getLength(value);
+
+            writer.beginArray();
+            for (int i = 0; i < length; i++) {
+                writeValue(writer, element, Array.get(value, i));
+            }
+            writer.endArray();
+        }
+    }
+
+    private static final class CollectionBinding extends Binding {
+        private final Class<?> type;
+        private final Binding element;
+
+        CollectionBinding(final Class<?> type, final Binding element) {
+            this.type = type;
+            this.element = element;
+        }
+
+        @Override
+        Object read(final LLSDReader reader) throws IOException, LLSDException {
+            final Collection<Object> collection;
+
+            if (isUndefined(reader)) {
+                return null;
+            } else if (reader.getToken() != LLSDToken.START_ARRAY) {
+                throw mismatch(reader, type);
+            }
+
+            if (type.isAssignableFrom(ArrayList.class)) {
+                collection = new ArrayList<Object>();
+            } else if (type.isAssignableFrom(LinkedHashSet.class)) {
+                collection = new LinkedHashSet<Object>();
+            } else {
+                throw new LLSDException("Unable to create " + type.getName() + ", declare it as a List or Set.");
+            }
+            while (reader.next() != LLSDToken.END_ARRAY) {
+                collection.add(element.read(reader));
+            }
+            return collection;
+        }
+
+        @Override
+        void write(final LLSDXMLWriter writer, final Object value) throws IOException, LLSDException {
+            writer.beginArray();
+            for (Object item: (Collection<?>) value) {
+                writeValue(writer, element, item);
+            }
+            writer.endArray();
+        }
+    }
+
+    private static final class MapBinding extends Binding {
+        private final Class<?> type;
+        private final Binding element;
+
+        MapBinding(final Class<?> type, final Binding element) {
+            this.type = type;
+            this.element = element;
+        }
+
+        @Override
+        Object read(final LLSDReader reader) throws IOException, LLSDException {
+            final Map<String, Object> map;
+
+            if (isUndefined(reader)) {
+                return null;
+            } else if (reader.getToken() != LLSDToken.START_MAP) {
+                throw mismatch(reader, type);
+            } else if (!type.isAssignableFrom(LinkedHashMap.class)) {
+                throw new LLSDException("Unable to create " + type.getName() + ", declare it as a Map.");
+            }
+
+            map = new LinkedHashMap<String, Object>();
+            while (reader.next() != LLSDToken.END_MAP) {
+                final String key = reader.getKey();
+
+                reader.next();
+                map.put(key, element.read(reader));
+            }
+            return map;
+        }
+
+        @Override
+        void write(final LLSDXMLWriter writer, final Object value) throws IOException, LLSDException {
+            writer.beginMap();
+            for (Map.Entry<?, ?> entry: ((Map<?, ?>) value).entrySet()) {
+                if (!(entry.getKey() instanceof String)) {
+                    throw new LLSDException("Unable to write map key " + entry.getKey() + ", as LLSD map keys are strings.");
+                }
+                writer.key((String) entry.getKey());
+                writeValue(writer, element, entry.getValue());
+            }
+            writer.endMap();
+        }
+    }
+
+    /**
+     * A property of a bean or record, read and written through method
+     * handles adapted to take and return Object.
+     */
+    private static final class Property {
+        private final String key;
+        private final Binding binding;
+        private final MethodHandle getter;
+
+        /**
+         * Null for record components and read-only bean properties.
+         */
+        private final MethodHandle setter;
+
+        /**
+         * Position of a record component in the canonical constructor.
+         */
+        private final int index;
+
+        Property(final String key, final Type type, final MethodHandle getter, final MethodHandle setter,
+            final int index) {
+            this.key = key;
+            this.binding = bind(type);
+            this.getter = getter;
+            this.setter = setter;
+            this.index = index;
+        }
+
+        Object get(final Object owner) throws LLSDException {
+            try {
+                return (Object) getter.invokeExact(owner);
+            } catch(Throwable e) {
+                throw invocationFailure("Unable to get " + key + " from " + owner.getClass().getName() + ".", e);
+            }
+        }
+
+        void set(final Object owner, final Object value) throws LLSDException {
+            try {
+                setter.invokeExact(owner, value);
+            } catch(Throwable e) {
+                throw invocationFailure("Unable to set " + key + " on " + owner.getClass().getName() + ".", e);
+            }
+        }
+    }
+
+    /**
+     * The properties of a bean or record class, found on first use.
+     */
+    private static final class Shape {
+        /**
+         * Properties in the order they are written.
+         */
+        private final Property[] properties;
+        private final Map<String, Property> keys;
+
+        /**
+         * Creates an instance; takes no arguments for a bean, and an Object[]
+         * of the component values for a record. Null if a bean has no
+         * no-argument constructor, so can only be written.
+         */
+        private final MethodHandle create;
+
+        /**
+         * The value of each record component whose key is missing.
+         */
+        private final Object[] defaults;
+
+        Shape(final Collection<Property> properties, final MethodHandle create, final Object[] defaults)
+            throws LLSDException {
+            this.properties = properties.toArray(new Property[properties.size()]);
+            this.keys = new HashMap<String, Property>();
+            this.create = create;
+            this.defaults = defaults;
+            for (Property property: properties) {
+                if (null != keys.put(property.key, property)) {
+                    throw new LLSDException("Two properties have the key \"" + property.key + "\".");
+                }
+            }
+        }
+    }
+
+    private abstract static class ObjectBinding extends Binding {
+        final Class<?> type;
+        private volatile Shape shape;
+
+        ObjectBinding(final Class<?> type) {
+            this.type = type;
+        }
+
+        abstract Shape resolve() throws IllegalAccessException, LLSDException;
+
+        /**
+         * Finds the properties on first use rather than when the class is
+         * bound, so that a class may hold values of its own type. Threads
+         * racing to do so find the same properties.
+         */
+        final Shape shape() throws LLSDException {
+            Shape resolved = shape;
+
+            if (null == resolved) {
+                try {
+                    resolved = resolve();
+                } catch(IllegalAccessException e) {
+                    throw new LLSDException("Unable to access the properties of " + type.getName() + ".", e);
+                }
+                shape = resolved;
+            }
+            return resolved;
+        }
+
+        /**
+         * Checks the reader is on a map, before it is read.
+         *
+         * @return false if the value is undefined.
+         */
+        final boolean startMap(final LLSDReader reader) throws LLSDException {
+            if (isUndefined(reader)) {
+                return false;
+            } else if (reader.getToken() != LLSDToken.START_MAP) {
+                throw mismatch(reader, type);
+            }
+            return true;
+        }
+
+        @Override
+        final void write(final LLSDXMLWriter writer, final Object value) throws IOException, LLSDException {
+            writer.beginMap();
+            for (Property property: shape().properties) {
+                final Object propertyValue = property.get(value);
+
+                if (null != propertyValue) {
+                    writer.key(property.key);
+                    property.binding.write(writer, propertyValue);
+                }
+            }
+            writer.endMap();
+        }
+    }
+
+    private static final class BeanBinding extends ObjectBinding {
+        BeanBinding(final Class<?> type) {
+            super(type);
+        }
+
+        @Override
+        Shape resolve() throws IllegalAccessException, LLSDException {
+            final Map<String, Property> properties = new TreeMap<String, Property>();
+            final Set<String> names = new HashSet<String>();
+            MethodHandle create = null;
+
+            for (Method getter: type.getMethods()) {
+                final String name = propertyName(getter);
+
+                if (null != name) {
+                    final String suffix = getter.getName().substring(getter.getName().startsWith("is") ? 2 : 3);
+                    final Method setter = findMethod(type, "set" + suffix, getter.getReturnType());
+                    final Property property = new Property(key(name, getter, setter, findField(type, name)),
+                        getter.getGenericReturnType(), LOOKUP.unreflect(accessible(getter)).asType(GETTER),
+                        null == setter ? null : LOOKUP.unreflect(accessible(setter)).asType(SETTER), 0);
+
+                    names.add(name);
+                    properties.put(property.key, property);
+                }
+            }
+            for (Field field: type.getFields()) {
+                final int modifiers = field.getModifiers();
+
+                if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers) && names.add(field.getName())) {
+                    final Property property = new Property(key(field.getName(), field), field.getGenericType(),
+                        LOOKUP.unreflectGetter(accessible(field)).asType(GETTER),
+                        Modifier.isFinal(modifiers) ? null : LOOKUP.unreflectSetter(field).asType(SETTER), 0);
+
+                    properties.put(property.key, property);
+                }
+            }
+            try {
+                create = LOOKUP.unreflectConstructor(accessible(type.getDeclaredConstructor())).asType(CREATE);
+            } catch(NoSuchMethodException e) {
+                // Can only be written
+            }
+
+            return new Shape(properties.values(), create, null);
+        }
+
+        /**
+         * @return the property name of a getter, or null if the method is
+         * not one.
+         */
+        private static String propertyName(final Method method) {
+            final String name = method.getName();
+            final int prefix;
+
+            if (Modifier.isStatic(method.getModifiers()) || method.getParameterTypes().length != 0
+                || method.isBridge() || method.getDeclaringClass() == Object.class) {
+                return null;
+            } else if (name.startsWith("get") && name.length() > 3 && method.getReturnType() != void.class) {
+                prefix = 3;
+            } else if (name.startsWith("is") && name.length() > 2 && method.getReturnType() == boolean.class) {
+                prefix = 2;
+            } else {
+                return null;
+            }
+
+            // As java.beans.Introspector.decapitalize: getURL is the URL property.
+            if (name.length() > prefix + 1 && Character.isUpperCase(name.charAt(prefix + 1))) {
+                return name.substring(prefix);
+            }
+            return Character.toLowerCase(name.charAt(prefix)) + name.substring(prefix + 1);
+        }
+
+        @Override
+        Object read(final LLSDReader reader) throws IOException, LLSDException {
+            final Shape shape = shape();
+            final Object bean;
+
+            if (!startMap(reader)) {
+                return null;
+            } else if (null == shape.create) {
+                throw new LLSDException("Unable to create " + type.getName() + ", as it has no no-argument constructor.");
+            }
+
+            try {
+                bean = (Object) shape.create.invokeExact();
+            } catch(Throwable e) {
+                throw invocationFailure("Unable to create " + type.getName() + ".", e);
+            }
+            while (reader.next() != LLSDToken.END_MAP) {
+                final Property property = shape.keys.get(reader.getKey());
+
+                reader.next();
+                if (null == property || null == property.setter) {
+                    reader.skipValue();
+                } else {
+                    property.set(bean, property.binding.read(reader));
+                }
+            }
+            return bean;
+        }
+    }
+
+    private static final class RecordBinding extends ObjectBinding {
+        RecordBinding(final Class<?> type) {
+            super(type);
+        }
+
+        @Override
+        Shape resolve() throws IllegalAccessException, LLSDException {
+            final List<Property> properties = new ArrayList<Property>();
+            final Object[] components;
+            final Class<?>[] componentTypes;
+            final Object[] empty;
+            final MethodHandle create;
+
+            try {
+                components = (Object[]) GET_RECORD_COMPONENTS.invoke(type);
+                componentTypes = new Class<?>[components.length];
+                empty = new Object[components.length];
+                for (int i = 0; i < components.length; i++) {
+                    final String name = (String) GET_COMPONENT_NAME.invoke(components[i]);
+                    final Method accessor = type.getDeclaredMethod(name);
+                    final Property property = new Property(key(name, accessor, findField(type, name)),
+                        accessor.getGenericReturnType(), LOOKUP.unreflect(accessible(accessor)).asType(GETTER), null, i);
+
+                    componentTypes[i] = accessor.getReturnType();
+                    empty[i] = property.binding.empty();
+                    properties.add(property);
+                }
+                create = LOOKUP.unreflectConstructor(accessible(type.getDeclaredConstructor(componentTypes)))
+                    .asType(MethodType.genericMethodType(components.length))
+                    .asSpreader(Object[].class, components.length);
+            } catch(ReflectiveOperationException e) {
+                throw new LLSDException("Unable to find the components of " + type.getName() + ".", e);
+            }
+
+            return new Shape(properties, create, empty);
+        }
+
+        @Override
+        Object read(final LLSDReader reader) throws IOException, LLSDException {
+            final Shape shape = shape();
+            final Object[] arguments;
+
+            if (!startMap(reader)) {
+                return null;
+            }
+
+            arguments = shape.defaults.clone();
+            while (reader.next() != LLSDToken.END_MAP) {
+                final Property property = shape.keys.get(reader.getKey());
+
+                reader.next();
+                if (null == property) {
+                    reader.skipValue();
+                } else {
+                    arguments[property.index] = property.binding.read(reader);
+                }
+            }
+            try {
+                return (Object) shape.create.invokeExact(arguments);
+            } catch(Throwable e) {
+                throw invocationFailure("Unable to create " + type.getName() + ".", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * Measures one document being parsed or serialised, for an
+ * {@link LLSDMetrics} listener. Callers start one only when a listener is
+ * set, so that nothing is measured otherwise.
+ */
+final class LLSDMeasurement {
+    private final LLSDMetrics metrics;
+    private final LLSDMetrics.Operation operation;
+    private final long start = System.nanoTime();
+    private long conversionStart = -1;
+    private long bytes = -1;
+
+    private     LLSDMeasurement(final LLSDMetrics metrics, final LLSDMetrics.Operation operation) {
+        this.metrics = metrics;
+        this.operation = operation;
+    }
+
+    /**
+     * @return a measurement reporting to the given listener, or null if
+     * there is none.
+     */
+    static LLSDMeasurement start(final LLSDMetrics metrics, final LLSDMetrics.Operation operation) {
+        return null == metrics
+            ? null
+            : new LLSDMeasurement(metrics, operation);
+    }
+
+    void setBytes(final long bytes) {
+        this.bytes = bytes;
+    }
+
+    /**
+     * @return the given stream, counting the bytes read from it as the size
+     * of the document.
+     */
+    InputStream count(final InputStream input) {
+        bytes = 0;
+        return new FilterInputStream(input) {
+            @Override
+            public int read() throws IOException {
+                final int b = super.read();
+
+                if (b >= 0) {
+                    bytes++;
+                }
+                return b;
+            }
+
+            @Override
+            public int read(final byte[] b, final int off, final int len) throws IOException {
+                final int read = super.read(b, off, len);
+
+                if (read > 0) {
+                    bytes += read;
+                }
+                return read;
+            }
+        };
+    }
+
+    /**
+     * @return the given stream, counting the bytes written to it as the size
+     * of the document.
+     */
+    OutputStream count(final OutputStream output) {
+        bytes = 0;
+        return new FilterOutputStream(output) {
+            @Override
+            public void write(final int b) throws IOException {
+                out.write(b);
+                bytes++;
+            }
+
+            @Override
+            public void write(final byte[] b, final int off, final int len) throws IOException {
+                out.write(b, off, len);
+                bytes += len;
+            }
+        };
+    }
+
+    /**
+     * @return the given writer, counting the characters written to it as
+     * the size of the document.
+     */
+    Writer count(final Writer writer) {
+        bytes = 0;
+        return new FilterWriter(writer) {
+            @Override
+            public void write(final int c) throws IOException {
+                out.write(c);
+                bytes++;
+            }
+
+            @Override
+            public void write(final char[] cbuf, final int off, final int len) throws IOException {
+                out.write(cbuf, off, len);
+                bytes += len;
+            }
+
+            @Override
+            public void write(final String str, final int off, final int len) throws IOException {
+                out.write(str, off, len);
+                bytes += len;
+            }
+        };
+    }
+
+    /**
+     * Marks the end of building the DOM or typed tree, and the start of
+     * converting it into content.
+     */
+    void converting() {
+        conversionStart = System.nanoTime();
+    }
+
+    /**
+     * Reports the document as parsed or serialised, counting its content.
+     */
+    void completed(final Object content) {
+        final long end = System.nanoTime();
+
+        metrics.completed(operation, new LLSDDocumentStats(content, bytes, end - start,
+            conversionStart < 0 ? 0 : end - conversionStart));
+    }
+
+    /**
+     * Reports the given error.
+     *
+     * @return the error, to be thrown.
+     */
+    <E extends Exception> E failed(final E error) {
+        metrics.failed(operation, LLSDMetrics.ErrorCategory.of(operation, error), error,
+            System.nanoTime() - start);
+        return error;
+    }
+}
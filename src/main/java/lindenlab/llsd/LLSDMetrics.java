@@ -0,0 +1,103 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+
+/**
+ * Listener told about each document parsed or serialised, for feeding a
+ * metrics system. Set one with {@link LLSDParser#setMetrics(LLSDMetrics)},
+ * {@link LLSDXMLSerialiser#LLSDXMLSerialiser(LLSDXMLOptions, LLSDMetrics)}
+ * or {@link LLSD#setMetrics(LLSDMetrics)}; without one, nothing is measured
+ * and nothing is counted. {@link LLSDMetricsHistogram} keeps the figures in
+ * memory.
+ *
+ * Listeners are called on the thread which parsed or serialised the
+ * document, so must be thread safe and should be quick. An exception thrown
+ * by a listener is thrown to the caller in place of the result.
+ */
+public interface LLSDMetrics {
+    enum Operation {
+        PARSE,
+        SERIALISE
+    }
+
+    /**
+     * What went wrong with a document which could not be parsed or
+     * serialised.
+     */
+    enum ErrorCategory {
+        /**
+         * The document is not well-formed XML, as reported by the XML
+         * parser.
+         */
+        SYNTAX,
+
+        /**
+         * The document is XML, but not LLSD: an unknown element, a map with
+         * a key missing, or more than one root value.
+         */
+        STRUCTURE,
+
+        /**
+         * A scalar could not be read as its type, such as a real which is
+         * not a number or a date in the wrong format.
+         */
+        VALUE,
+
+        /**
+         * The content holds a type which cannot be serialised.
+         */
+        UNSUPPORTED_TYPE,
+
+        /**
+         * Reading or writing the document failed.
+         */
+        IO,
+
+        /**
+         * The document breaks one of the parser's {@link LLSDLimits}.
+         */
+        LIMIT;
+
+        /**
+         * @return the category of an exception thrown by the given
+         * operation.
+         */
+        public static ErrorCategory of(final Operation operation, final Exception error) {
+            final Throwable cause = error.getCause();
+
+            if (error instanceof LLSDLimitException) {
+                return LIMIT;
+            } else if (error instanceof SAXException || cause instanceof SAXException) {
+                return SYNTAX;
+            } else if (error instanceof IOException || cause instanceof IOException) {
+                return IO;
+            } else if (error instanceof LLSDValueException) {
+                return VALUE;
+            }
+            return operation == Operation.PARSE
+                ? STRUCTURE
+                : UNSUPPORTED_TYPE;
+        }
+    }
+
+    /**
+     * Called after each document is parsed or serialised.
+     */
+    void completed(Operation operation, LLSDDocumentStats stats);
+
+    /**
+     * Called when a document cannot be parsed or serialised, before the
+     * error is thrown to the caller.
+     *
+     * @param elapsedNanos the time taken before the error.
+     */
+    void failed(Operation operation, ErrorCategory category, Exception error, long elapsedNanos);
+}
@@ -0,0 +1,206 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@link LLSDMetrics} which keeps running totals and histograms in memory,
+ * for a metrics system to read periodically. For each operation it keeps
+ * the number of documents, histograms of their times, sizes, node counts
+ * and depths, the number of values of each type, and the number of errors
+ * in each category.
+ *
+ * Histograms have a bucket for each power of two, so percentiles are upper
+ * bounds within a factor of two. Recording takes no locks; instances may be
+ * shared between threads and read while being recorded to, though a read
+ * may then see one document counted in some figures and not yet others.
+ */
+public class LLSDMetricsHistogram implements LLSDMetrics {
+    private volatile Figures[] figures = newFigures();
+
+    public      LLSDMetricsHistogram() {
+    }
+
+    public void completed(final Operation operation, final LLSDDocumentStats stats) {
+        final Figures recorded = figures[operation.ordinal()];
+
+        recorded.documents.incrementAndGet();
+        recorded.elapsedNanos.record(stats.getElapsedNanos());
+        recorded.conversionNanos.record(stats.getConversionNanos());
+        if (stats.getBytes() >= 0) {
+            recorded.bytes.record(stats.getBytes());
+        }
+        recorded.nodes.record(stats.getNodes());
+        recorded.depth.record(stats.getMaxDepth());
+        for (LLSDType type: LLSDType.values()) {
+            if (stats.getCount(type) > 0) {
+                recorded.types.addAndGet(type.ordinal(), stats.getCount(type));
+            }
+        }
+    }
+
+    public void failed(final Operation operation, final ErrorCategory category, final Exception error,
+            final long elapsedNanos) {
+        figures[operation.ordinal()].errors.incrementAndGet(category.ordinal());
+    }
+
+    /**
+     * @return the number of documents for which the operation completed.
+     */
+    public long getDocuments(final Operation operation) {
+        return figures[operation.ordinal()].documents.get();
+    }
+
+    /**
+     * @return the number of documents for which the operation failed with
+     * an error in the given category.
+     */
+    public long getErrors(final Operation operation, final ErrorCategory category) {
+        return figures[operation.ordinal()].errors.get(category.ordinal());
+    }
+
+    /**
+     * @return the number of values of the given type in all documents.
+     */
+    public long getValues(final Operation operation, final LLSDType type) {
+        return figures[operation.ordinal()].types.get(type.ordinal());
+    }
+
+    public Histogram getElapsedNanos(final Operation operation) {
+        return figures[operation.ordinal()].elapsedNanos;
+    }
+
+    public Histogram getConversionNanos(final Operation operation) {
+        return figures[operation.ordinal()].conversionNanos;
+    }
+
+    /**
+     * @return the histogram of document sizes, for documents whose size is
+     * known.
+     */
+    public Histogram getBytes(final Operation operation) {
+        return figures[operation.ordinal()].bytes;
+    }
+
+    public Histogram getNodes(final Operation operation) {
+        return figures[operation.ordinal()].nodes;
+    }
+
+    public Histogram getDepth(final Operation operation) {
+        return figures[operation.ordinal()].depth;
+    }
+
+    /**
+     * Clears every figure.
+     */
+    public void reset() {
+        figures = newFigures();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder text = new StringBuilder();
+
+        for (Operation operation: Operation.values()) {
+            final Figures recorded = figures[operation.ordinal()];
+
+            text.append(operation.name().toLowerCase()).append(": ").append(recorded.documents.get())
+                .append(" documents, median ").append(recorded.elapsedNanos.percentile(0.5))
+                .append(" ns, 99th percentile ").append(recorded.elapsedNanos.percentile(0.99)).append(" ns");
+            for (ErrorCategory category: ErrorCategory.values()) {
+                if (recorded.errors.get(category.ordinal()) > 0) {
+                    text.append(", ").append(category.name().toLowerCase()).append(" errors ")
+                        .append(recorded.errors.get(category.ordinal()));
+                }
+            }
+            text.append('\n');
+        }
+        return text.toString();
+    }
+
+    /**
+     * Counts of values in buckets of powers of two: zero, one, two to three,
+     * four to seven and so on.
+     */
+    public static final class Histogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(65);
+        private final AtomicLongArray totals = new AtomicLongArray(2);
+
+        void record(final long value) {
+            final long positive = Math.max(0, value);
+
+            buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(positive));
+            totals.incrementAndGet(0);
+            totals.addAndGet(1, positive);
+        }
+
+        /**
+         * @return the number of values recorded.
+         */
+        public long getCount() {
+            return totals.get(0);
+        }
+
+        /**
+         * @return the sum of the values recorded.
+         */
+        public long getSum() {
+            return totals.get(1);
+        }
+
+        /**
+         * @return the number of values recorded in the given bucket, which
+         * holds values of 2<sup>bucket - 1</sup> up to 2<sup>bucket</sup> - 1;
+         * bucket zero holds zero.
+         */
+        public long getBucket(final int bucket) {
+            return buckets.get(bucket);
+        }
+
+        /**
+         * @return an upper bound of the given fraction of the values
+         * recorded, or 0 if none have been.
+         */
+        public long percentile(final double fraction) {
+            final long count = getCount();
+            final long rank = (long) Math.ceil(Math.max(0, Math.min(1, fraction)) * count);
+            long seen = 0;
+
+            for (int i = 0; i < buckets.length(); i++) {
+                seen += buckets.get(i);
+                if (seen >= rank && seen > 0) {
+                    return i == 0
+                        ? 0
+                        : i == 64 ? Long.MAX_VALUE : (1L << i) - 1;
+                }
+            }
+            return 0;
+        }
+    }
+
+    private static Figures[] newFigures() {
+        final Figures[] figures = new Figures[Operation.values().length];
+
+        for (int i = 0; i < figures.length; i++) {
+            figures[i] = new Figures();
+        }
+        return figures;
+    }
+
+    private static final class Figures {
+        final AtomicLong documents = new AtomicLong();
+        final AtomicLongArray errors = new AtomicLongArray(ErrorCategory.values().length);
+        final AtomicLongArray types = new AtomicLongArray(LLSDType.values().length);
+        final Histogram elapsedNanos = new Histogram();
+        final Histogram conversionNanos = new Histogram();
+        final Histogram bytes = new Histogram();
+        final Histogram nodes = new Histogram();
+        final Histogram depth = new Histogram();
+    }
+}
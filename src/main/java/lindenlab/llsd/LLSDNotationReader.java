@@ -0,0 +1,722 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * {@link LLSDReader} over a notation (application/llsd+notation) LLSD
+ * document, for example <code>{'key':i42,'id':u67153d5b-3659-afb4-8510-adda2c034649,'data':b64"aGVsbG8="}</code>.
+ * Works in a single pass directly over the UTF-8 bytes. Lengths given in
+ * the document are checked against the bytes left and the {@link LLSDLimits}
+ * given before anything is allocated for them, and stream input is read
+ * into memory only as it arrives.
+ *
+ * Obtain instances from {@link LLSDNotationParser}. Closing the reader does
+ * not close the underlying input stream.
+ */
+public class LLSDNotationReader implements LLSDReader {
+    private static final byte ARRAY_START = 0;
+    private static final byte ARRAY_NEXT = 1;
+    private static final byte MAP_START = 2;
+    private static final byte MAP_NEXT = 3;
+    private static final byte MAP_VALUE = 4;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final InputStream input;
+    private final LLSDLimits limits;
+
+    /**
+     * Counts the values read, checking their depth and number against the
+     * limits so that the recursive default methods of {@link LLSDReader}
+     * cannot overflow the stack.
+     */
+    private final LLSDLimits.Counter counter;
+
+    /**
+     * True to read the '?' extension for typed undefined values.
+     */
+    private final boolean typedUndefined;
+    private final ByteBuffer inputBuffer;
+    private byte[] buffer;
+    private int position;
+    private int limit;
+
+    /**
+     * Bytes of the current string value, where it cannot be decoded in
+     * place.
+     */
+    private byte[] scratch = new byte[256];
+    private int scratchLength;
+
+    private byte[] containers = new byte[16];
+    private int depth = 0;
+
+    private LLSDToken token = null;
+    private boolean isUndefined = false;
+    private boolean booleanValue;
+    private int integerValue;
+    private double realValue;
+    private String stringValue;
+    private byte[] binaryValue;
+
+    LLSDNotationReader(final InputStream input, final LLSDLimits limits, final boolean typedUndefined) {
+        this.input = input;
+        this.limits = limits;
+        this.counter = limits.counter();
+        this.typedUndefined = typedUndefined;
+        this.inputBuffer = null;
+        this.buffer = new byte[BUFFER_SIZE];
+    }
+
+    LLSDNotationReader(final ByteBuffer input, final LLSDLimits limits, final boolean typedUndefined) {
+        final ByteBuffer view = input.slice();
+
+        this.input = null;
+        this.limits = limits;
+        this.counter = limits.counter();
+        this.typedUndefined = typedUndefined;
+        if (view.hasArray()) {
+            this.inputBuffer = null;
+            this.buffer = view.array();
+            this.position = view.arrayOffset();
+            this.limit = view.arrayOffset() + view.limit();
+        } else {
+            this.inputBuffer = view;
+            this.buffer = new byte[BUFFER_SIZE];
+        }
+    }
+
+    public LLSDToken next() throws IOException, LLSDException {
+        if (token == LLSDToken.END_DOCUMENT) {
+            return token;
+        }
+
+        isUndefined = false;
+        stringValue = null;
+        binaryValue = null;
+        if (depth == 0) {
+            if (null != token || skipWhitespace() < 0) {
+                return token = LLSDToken.END_DOCUMENT;
+            }
+            return token = readValue(read());
+        }
+
+        final int current = depth - 1;
+        int marker = skipWhitespace();
+
+        switch (containers[current]) {
+        case ARRAY_START:
+            if (marker == ']') {
+                position++;
+                depth--;
+                return token = LLSDToken.END_ARRAY;
+            }
+            containers[current] = ARRAY_NEXT;
+            return token = readValue(read());
+        case ARRAY_NEXT:
+            marker = read();
+            if (marker == ']') {
+                depth--;
+                return token = LLSDToken.END_ARRAY;
+            }
+            expect(',', marker);
+            skipWhitespace();
+            return token = readValue(read());
+        case MAP_VALUE:
+            expect(':', read());
+            skipWhitespace();
+            containers[current] = MAP_NEXT;
+            return token = readValue(read());
+        case MAP_NEXT:
+            marker = read();
+            if (marker == '}') {
+                depth--;
+                return token = LLSDToken.END_MAP;
+            }
+            expect(',', marker);
+            skipWhitespace();
+            break;
+        default:
+            if (marker == '}') {
+                position++;
+                depth--;
+                return token = LLSDToken.END_MAP;
+            }
+            break;
+        }
+
+        containers[current] = MAP_VALUE;
+        stringValue = readKey();
+        return token = LLSDToken.KEY;
+    }
+
+    public LLSDToken getToken() {
+        return token;
+    }
+
+    public String getKey() throws LLSDException {
+        requireToken(LLSDToken.KEY);
+        return stringValue;
+    }
+
+    public boolean isUndefined() {
+        return isUndefined;
+    }
+
+    public boolean getBoolean() throws LLSDException {
+        requireDefined(LLSDToken.BOOLEAN);
+        return booleanValue;
+    }
+
+    public int getInteger() throws LLSDException {
+        requireDefined(LLSDToken.INTEGER);
+        return integerValue;
+    }
+
+    public double getReal() throws LLSDException {
+        requireDefined(LLSDToken.REAL);
+        return realValue;
+    }
+
+    public String getString() throws LLSDException {
+        requireDefined(LLSDToken.STRING);
+        return stringValue;
+    }
+
+    public UUID getUUID() throws LLSDException {
+        requireDefined(LLSDToken.UUID);
+        return LLSDScalars.parseUUID(scratch, 0, scratchLength);
+    }
+
+    public Date getDate() throws LLSDException {
+        requireDefined(LLSDToken.DATE);
+        return LLSDScalars.parseDate(stringValue);
+    }
+
+    public URI getURI() throws LLSDException {
+        requireDefined(LLSDToken.URI);
+        return LLSDScalars.parseURI(stringValue);
+    }
+
+    public byte[] getBinary() throws LLSDException {
+        requireDefined(LLSDToken.BINARY);
+        return binaryValue;
+    }
+
+    public Object getValue() throws LLSDException {
+        if (null == token) {
+            throw new LLSDException("No current token, call next() first.");
+        }
+
+        switch (token) {
+        case UNDEF:
+            return "";
+        case BOOLEAN:
+            return isUndefined
+                    ? LLSDUndefined.BOOLEAN
+                    : Boolean.valueOf(booleanValue);
+        case DATE:
+            return isUndefined
+                    ? LLSDUndefined.DATE
+                    : getDate();
+        case INTEGER:
+            return isUndefined
+                    ? LLSDUndefined.INTEGER
+                    : Integer.valueOf(integerValue);
+        case REAL:
+            return isUndefined
+                    ? LLSDUndefined.REAL
+                    : Double.valueOf(realValue);
+        case STRING:
+            return isUndefined
+                    ? LLSDUndefined.STRING
+                    : stringValue;
+        case URI:
+            return isUndefined
+                    ? LLSDUndefined.URI
+                    : getURI();
+        case UUID:
+            return isUndefined
+                    ? LLSDUndefined.UUID
+                    : getUUID();
+        case BINARY:
+            return isUndefined
+                    ? LLSDUndefined.BINARY
+                    : binaryValue;
+        default:
+            throw new LLSDException("Current token " + token + " is not a scalar value.");
+        }
+    }
+
+    public void close() throws IOException {
+        // Nothing to release; the underlying input belongs to the caller.
+    }
+
+    private LLSDToken readValue(final int marker)
+        throws IOException, LLSDException {
+        counter.node(depth + 1);
+        switch (marker) {
+        case '{':
+            push(MAP_START);
+            return LLSDToken.START_MAP;
+        case '[':
+            push(ARRAY_START);
+            return LLSDToken.START_ARRAY;
+        case '!':
+            return LLSDToken.UNDEF;
+        case '1':
+            booleanValue = true;
+            return LLSDToken.BOOLEAN;
+        case '0':
+            booleanValue = false;
+            return LLSDToken.BOOLEAN;
+        case 't':
+        case 'T':
+            skipOptional("rue");
+            booleanValue = true;
+            return LLSDToken.BOOLEAN;
+        case 'f':
+        case 'F':
+            skipOptional("alse");
+            booleanValue = false;
+            return LLSDToken.BOOLEAN;
+        case 'i':
+            integerValue = readInteger();
+            return LLSDToken.INTEGER;
+        case 'r':
+            realValue = readReal();
+            return LLSDToken.REAL;
+        case 'u':
+            readUUIDText();
+            return LLSDToken.UUID;
+        case '"':
+        case '\'':
+            stringValue = readQuoted(marker);
+            limits.checkString(stringValue.length());
+            return LLSDToken.STRING;
+        case 's':
+            stringValue = readSizedString();
+            return LLSDToken.STRING;
+        case 'l':
+            stringValue = readQuoted(read());
+            return LLSDToken.URI;
+        case 'd':
+            stringValue = readQuoted(read());
+            return LLSDToken.DATE;
+        case 'b':
+            binaryValue = readBinary();
+            return LLSDToken.BINARY;
+        case '?':
+            if (!typedUndefined) {
+                throw new LLSDException("Unexpected character '?' in notation LLSD; typed undefined"
+                    + " values are an extension which is not enabled.");
+            }
+            isUndefined = true;
+            return undefinedType(read());
+        default:
+            throw new LLSDException("Unexpected character '" + (char) marker
+                + "' in notation LLSD.");
+        }
+    }
+
+    private LLSDToken undefinedType(final int marker) throws LLSDException {
+        final LLSDUndefined undefined = LLSDUndefined.forMarker(marker);
+
+        if (null == undefined) {
+            throw new LLSDException("Unexpected undefined type marker '" + (char) marker
+                + "' in notation LLSD.");
+        }
+        return undefined.token();
+    }
+
+    private String readKey() throws IOException, LLSDException {
+        final int marker = read();
+
+        if (marker == '"' || marker == '\'') {
+            final String key = readQuoted(marker);
+
+            limits.checkString(key.length());
+            return key;
+        } else if (marker == 's') {
+            return readSizedString();
+        }
+        throw new LLSDException("Expected map key in notation LLSD, found '"
+            + (char) marker + "'.");
+    }
+
+    private int readInteger() throws IOException, LLSDException {
+        boolean negative = false;
+        long value = 0;
+        int digits = 0;
+        int current = peek();
+
+        if (current == '-' || current == '+') {
+            negative = current == '-';
+            position++;
+            current = peek();
+        }
+
+        while (current >= '0' && current <= '9') {
+            value = value * 10 + (current - '0');
+            if (value > 1L + Integer.MAX_VALUE) {
+                throw new LLSDException("LLSD integer value is out of range.");
+            }
+            digits++;
+            position++;
+            current = peek();
+        }
+
+        if (negative) {
+            value = -value;
+        }
+        if (digits == 0 || value > Integer.MAX_VALUE) {
+            throw new LLSDException("Unable to parse LLSD integer value in notation LLSD.");
+        }
+        return (int) value;
+    }
+
+    private double readReal() throws IOException, LLSDException {
+        int current = peek();
+
+        scratchLength = 0;
+        while ((current >= '0' && current <= '9') || (current >= 'a' && current <= 'z')
+            || (current >= 'A' && current <= 'Z')
+            || current == '.' || current == '-' || current == '+') {
+            appendScratch((byte) current);
+            position++;
+            current = peek();
+        }
+
+        return LLSDScalars.parseReal(scratch, 0, scratchLength);
+    }
+
+    /**
+     * Reads the 36 characters of a UUID into the scratch buffer, where
+     * getUUID() converts them.
+     */
+    private void readUUIDText() throws IOException, LLSDException {
+        scratchLength = 0;
+        for (int i = 0; i < 36; i++) {
+            appendScratch((byte) read());
+        }
+    }
+
+    /**
+     * Reads a string up to the closing quote, the opening quote having been
+     * consumed, and decodes escape sequences.
+     */
+    private String readQuoted(final int quote) throws IOException, LLSDException {
+        if (quote != '"' && quote != '\'') {
+            throw new LLSDException("Expected quoted string in notation LLSD, found '"
+                + (char) quote + "'.");
+        }
+
+        // Fast path: the whole string is in the buffer with no escapes.
+        for (int i = position; i < limit; i++) {
+            final byte current = buffer[i];
+
+            if (current == quote) {
+                final String value = new String(buffer, position, i - position, StandardCharsets.UTF_8);
+
+                position = i + 1;
+                return value;
+            } else if (current == '\\') {
+                break;
+            }
+        }
+
+        scratchLength = 0;
+        while (true) {
+            int current = read();
+
+            if (current == quote) {
+                return new String(scratch, 0, scratchLength, StandardCharsets.UTF_8);
+            } else if (current == '\\') {
+                current = read();
+                switch (current) {
+                case 'a':
+                    current = 0x07;
+                    break;
+                case 'b':
+                    current = '\b';
+                    break;
+                case 'f':
+                    current = '\f';
+                    break;
+                case 'n':
+                    current = '\n';
+                    break;
+                case 'r':
+                    current = '\r';
+                    break;
+                case 't':
+                    current = '\t';
+                    break;
+                case 'v':
+                    current = 0x0b;
+                    break;
+                case 'x':
+                    current = (hexValue(read()) << 4) | hexValue(read());
+                    break;
+                default:
+                    break;
+                }
+            }
+            appendScratch((byte) current);
+        }
+    }
+
+    /**
+     * Reads a length-prefixed string, <code>s(length)"bytes"</code>. A UTF-8
+     * byte encodes at most one UTF-16 character, and three at least one, so
+     * the length in bytes bounds the string's before it is read.
+     */
+    private String readSizedString() throws IOException, LLSDException {
+        final String value;
+
+        readSized(false);
+        value = new String(scratch, 0, scratchLength, StandardCharsets.UTF_8);
+        limits.checkString(value.length());
+        return value;
+    }
+
+    /**
+     * Reads a length-prefixed raw value, <code>(length)"bytes"</code>, into
+     * the scratch buffer. The scratch buffer grows as the bytes are read,
+     * so a false length costs no more memory than the input really holds.
+     *
+     * @param isBinary true if the value is binary rather than a string, for
+     * checking its length against the limits.
+     */
+    private void readSized(final boolean isBinary) throws IOException, LLSDException {
+        final int length;
+        final int quote;
+
+        expect('(', read());
+        length = readInteger();
+        expect(')', read());
+        if (length < 0) {
+            throw new LLSDException("Negative length in notation LLSD.");
+        } else if (isBinary) {
+            limits.checkBinary(length);
+        } else if (length > limits.getMaxStringLength() * 3L) {
+            throw new LLSDLimitException.StringLength(limits.getMaxStringLength(), length);
+        }
+        if (null == input && length > remaining()) {
+            throw new LLSDException("Length " + length + " in notation LLSD is more than the "
+                + remaining() + " bytes left.");
+        }
+
+        quote = read();
+        if (quote != '"' && quote != '\'') {
+            throw new LLSDException("Expected quoted raw value in notation LLSD.");
+        }
+
+        scratchLength = 0;
+        while (scratchLength < length) {
+            if (position == limit && !fill()) {
+                throw new LLSDException("Unexpected end of notation LLSD document.");
+            }
+            final int count = Math.min(length - scratchLength, limit - position);
+
+            ensureScratch(count);
+            System.arraycopy(buffer, position, scratch, scratchLength, count);
+            position += count;
+            scratchLength += count;
+        }
+        expect((char) quote, read());
+    }
+
+    private byte[] readBinary() throws IOException, LLSDException {
+        final int encoding = read();
+
+        if (encoding == '(') {
+            position--;
+            readSized(true);
+            return Arrays.copyOf(scratch, scratchLength);
+        }
+
+        if (encoding == '6') {
+            expect('4', read());
+            readQuotedBytes();
+            limits.checkBinary((int) (scratchLength * 3L / 4));
+            try {
+                return Base64.getDecoder().decode(Arrays.copyOf(scratch, scratchLength));
+            } catch(IllegalArgumentException e) {
+                throw new LLSDException("Unable to parse LLSD binary value. Contents omitted in exception.");
+            }
+        }
+
+        if (encoding == '1') {
+            final byte[] value;
+
+            expect('6', read());
+            readQuotedBytes();
+            if ((scratchLength % 2) != 0) {
+                throw new LLSDException("Unable to parse LLSD binary value. Contents omitted in exception.");
+            }
+            limits.checkBinary(scratchLength / 2);
+            value = new byte[scratchLength / 2];
+            for (int i = 0; i < value.length; i++) {
+                value[i] = (byte) ((hexValue(scratch[i * 2]) << 4) | hexValue(scratch[i * 2 + 1]));
+            }
+            return value;
+        }
+
+        throw new LLSDException("Unexpected binary encoding in notation LLSD.");
+    }
+
+    /**
+     * Reads the raw bytes of a quoted value into the scratch buffer.
+     */
+    private void readQuotedBytes() throws IOException, LLSDException {
+        final int quote = read();
+
+        if (quote != '"' && quote != '\'') {
+            throw new LLSDException("Expected quoted value in notation LLSD.");
+        }
+
+        scratchLength = 0;
+        for (int current = read(); current != quote; current = read()) {
+            appendScratch((byte) current);
+        }
+    }
+
+    private int hexValue(final int digit) throws LLSDException {
+        final int value = Character.digit(digit, 16);
+
+        if (value < 0) {
+            throw new LLSDException("Invalid hex digit '" + (char) digit + "' in notation LLSD.");
+        }
+        return value;
+    }
+
+    /**
+     * Skips the rest of a keyword such as "true", in either case, if
+     * present.
+     */
+    private void skipOptional(final String rest) throws IOException {
+        for (int i = 0; i < rest.length(); i++) {
+            final int current = peek();
+
+            if (current < 0 || Character.toLowerCase((char) current) != rest.charAt(i)) {
+                return;
+            }
+            position++;
+        }
+    }
+
+    private void expect(final char expected, final int actual) throws LLSDException {
+        if (actual != expected) {
+            throw new LLSDException("Expected '" + expected + "' in notation LLSD, found '"
+                + (char) actual + "'.");
+        }
+    }
+
+    /**
+     * Skips whitespace, returning the next character without consuming it,
+     * or -1 at the end of the input.
+     */
+    private int skipWhitespace() throws IOException {
+        int current = peek();
+
+        while (current == ' ' || current == '\t' || current == '\n' || current == '\r') {
+            position++;
+            current = peek();
+        }
+        return current;
+    }
+
+    private int peek() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position] & 0xff;
+    }
+
+    private int read() throws IOException, LLSDException {
+        if (position == limit && !fill()) {
+            throw new LLSDException("Unexpected end of notation LLSD document.");
+        }
+        return buffer[position++] & 0xff;
+    }
+
+    /**
+     * Refills the input buffer.
+     *
+     * @return false if there is no more input.
+     */
+    private boolean fill() throws IOException {
+        final int count;
+
+        if (null != input) {
+            count = input.read(buffer, 0, buffer.length);
+        } else if (null != inputBuffer && inputBuffer.hasRemaining()) {
+            count = Math.min(buffer.length, inputBuffer.remaining());
+            inputBuffer.get(buffer, 0, count);
+        } else {
+            return false;
+        }
+
+        if (count <= 0) {
+            return false;
+        }
+        position = 0;
+        limit = count;
+        return true;
+    }
+
+    /**
+     * @return the number of bytes of buffered input left, which is all of
+     * it when not reading a stream.
+     */
+    private long remaining() {
+        return limit - position + (null == inputBuffer ? 0 : inputBuffer.remaining());
+    }
+
+    private void appendScratch(final byte value) {
+        ensureScratch(1);
+        scratch[scratchLength++] = value;
+    }
+
+    private void ensureScratch(final int length) {
+        if (scratchLength + length > scratch.length) {
+            scratch = Arrays.copyOf(scratch, Math.max(scratch.length * 2, scratchLength + length));
+        }
+    }
+
+    private void push(final byte container) {
+        if (depth == containers.length) {
+            containers = Arrays.copyOf(containers, depth * 2);
+        }
+        containers[depth++] = container;
+    }
+
+    private void requireToken(final LLSDToken expected) throws LLSDException {
+        if (token != expected) {
+            throw new LLSDException("Expected current token to be " + expected
+                + " but it is " + token + ".");
+        }
+    }
+
+    private void requireDefined(final LLSDToken expected) throws LLSDException {
+        requireToken(expected);
+        if (isUndefined) {
+            throw new LLSDException("The current " + expected + " value is undefined.");
+        }
+    }
+}
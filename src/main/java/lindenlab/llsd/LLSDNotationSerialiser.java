@@ -0,0 +1,340 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Writes LLSD content in the notation (application/llsd+notation) format,
+ * for example <code>{'key':i42,'id':u67153d5b-3659-afb4-8510-adda2c034649,'data':b64"aGVsbG8="}</code>.
+ * Output is UTF-8 with no whitespace between values.
+ *
+ * Notation has no typed undefined value, so {@link LLSDUndefined} values are
+ * written as '!' and read back as plain undefined values. A serialiser
+ * created with typed undefined values enabled writes them instead as '?'
+ * followed by the marker of their type ('1' for boolean), as
+ * {@link LLSDBinarySerialiser} does, which only an {@link LLSDNotationParser}
+ * with the same option reads. Frozen documents are then encoded afresh
+ * rather than from their cached encoding, which is always standard.
+ *
+ * Instances hold no state and may be shared between threads.
+ */
+public class LLSDNotationSerialiser {
+    private final boolean typedUndefined;
+
+    public      LLSDNotationSerialiser() {
+        this(false);
+    }
+
+    /**
+     * @param typedUndefined true to write {@link LLSDUndefined} values with
+     * the '?' extension, for reading by this library only.
+     */
+    public      LLSDNotationSerialiser(final boolean typedUndefined) {
+        this.typedUndefined = typedUndefined;
+    }
+
+    public boolean isTypedUndefined() {
+        return typedUndefined;
+    }
+
+    /**
+     * Writes the given LLSD to an output stream.
+     *
+     * @throws IOException if there was a problem writing to the stream.
+     * @throws LLSDException if the content holds a type which cannot be
+     * serialised.
+     */
+    public void serialise(final LLSD llsd, final OutputStream output)
+        throws IOException, LLSDException {
+        final LLSDOutputBuffer buffer = LLSDOutputBuffer.forStream(output);
+
+        if (llsd instanceof LLSDFrozen && !typedUndefined) {
+            output.write(((LLSDFrozen) llsd).encodedBytes(LLSDFormat.NOTATION));
+            return;
+        }
+        new Encoder(buffer, typedUndefined).writeContent(llsd.getContent());
+        buffer.flush();
+    }
+
+    /**
+     * Writes the given LLSD into a buffer, starting at its current position.
+     *
+     * @throws BufferOverflowException if the buffer does not have enough
+     * space remaining. The buffer's position is then undefined.
+     * @throws LLSDException if the content holds a type which cannot be
+     * serialised.
+     */
+    public void serialise(final LLSD llsd, final ByteBuffer target)
+        throws LLSDException {
+        if (llsd instanceof LLSDFrozen && !typedUndefined) {
+            target.put(((LLSDFrozen) llsd).encodedBytes(LLSDFormat.NOTATION));
+            return;
+        }
+        try {
+            new Encoder(LLSDOutputBuffer.forBuffer(target), typedUndefined).writeContent(llsd.getContent());
+        } catch(IOException e) {
+            // Only possible when reading an InputStream binary value.
+            throw new LLSDException("Unable to read binary value.", e);
+        }
+    }
+
+    /**
+     * Writes the given LLSD into a new buffer.
+     *
+     * @return a heap buffer positioned at zero, with the encoded document
+     * between its position and limit.
+     */
+    public ByteBuffer serialise(final LLSD llsd)
+        throws LLSDException {
+        final LLSDOutputBuffer buffer = LLSDOutputBuffer.growable(256);
+
+        if (llsd instanceof LLSDFrozen && !typedUndefined) {
+            return ByteBuffer.wrap(((LLSDFrozen) llsd).encodedBytes(LLSDFormat.NOTATION).clone());
+        }
+        try {
+            new Encoder(buffer, typedUndefined).writeContent(llsd.getContent());
+        } catch(IOException e) {
+            // Only possible when reading an InputStream binary value.
+            throw new LLSDException("Unable to read binary value.", e);
+        }
+        return buffer.toBuffer();
+    }
+
+    /**
+     * Encodes the given content into a buffer.
+     */
+    static void write(final Object content, final LLSDOutputBuffer buffer)
+        throws IOException, LLSDException {
+        new Encoder(buffer, false).writeContent(content);
+    }
+
+    /**
+     * Encoding state for one document.
+     */
+    private static final class Encoder {
+        private final LLSDOutputBuffer buffer;
+        private final boolean typedUndefined;
+
+        Encoder(final LLSDOutputBuffer buffer, final boolean typedUndefined) {
+            this.buffer = buffer;
+            this.typedUndefined = typedUndefined;
+        }
+
+        void writeContent(final Object content) throws IOException, LLSDException {
+            if (null != content) {
+                writeElement(content);
+            }
+        }
+
+        private void writeElement(final Object toSerialise)
+            throws IOException, LLSDException {
+            assert null != toSerialise;
+
+            if (toSerialise instanceof LLSDFrozen.Node) {
+                final LLSDFrozen.Node node = (LLSDFrozen.Node) toSerialise;
+                final byte[] cached = node.cached(LLSDFormat.NOTATION);
+                final int start = buffer.size();
+
+                if (typedUndefined) {
+                    // The cache only holds standard encodings.
+                    writeElement(node.content());
+                } else if (null != cached) {
+                    buffer.write(cached);
+                } else {
+                    writeElement(node.content());
+                    node.cache(LLSDFormat.NOTATION, buffer, start);
+                }
+            } else if (toSerialise instanceof Map) {
+                final Map<String, Object> serialiseMap = (Map<String, Object>)toSerialise;
+                boolean first = true;
+
+                buffer.put((byte) '{');
+                for (Map.Entry<String, Object> entry: serialiseMap.entrySet()) {
+                    if (!first) {
+                        buffer.put((byte) ',');
+                    }
+                    first = false;
+                    writeQuoted('\'', entry.getKey());
+                    buffer.put((byte) ':');
+                    writeElement(entry.getValue());
+                }
+                buffer.put((byte) '}');
+            } else if (toSerialise instanceof List) {
+                boolean first = true;
+
+                buffer.put((byte) '[');
+                for (Object current: (List<Object>)toSerialise) {
+                    if (!first) {
+                        buffer.put((byte) ',');
+                    }
+                    first = false;
+                    writeElement(current);
+                }
+                buffer.put((byte) ']');
+            } else if (toSerialise instanceof Boolean) {
+                buffer.put(((Boolean) toSerialise) ? (byte) '1' : (byte) '0');
+            } else if (toSerialise instanceof Integer) {
+                buffer.put((byte) 'i');
+                buffer.writeDecimal((Integer) toSerialise);
+            } else if (toSerialise instanceof Double
+                || toSerialise instanceof Float) {
+                buffer.put((byte) 'r');
+                writeReal(((Number) toSerialise).doubleValue());
+            } else if (toSerialise instanceof UUID) {
+                buffer.put((byte) 'u');
+                buffer.writeUUID((UUID) toSerialise);
+            } else if (toSerialise instanceof String) {
+                writeQuoted('\'', (String) toSerialise);
+            } else if (toSerialise instanceof Date) {
+                buffer.put((byte) 'd');
+                writeQuoted('"', ((Date) toSerialise).toInstant().toString());
+            } else if (toSerialise instanceof URI) {
+                buffer.put((byte) 'l');
+                writeQuoted('"', toSerialise.toString());
+            } else if (toSerialise instanceof byte[]) {
+                final byte[] binary = (byte[]) toSerialise;
+
+                buffer.writeASCII("b64\"");
+                buffer.writeBase64(binary, 0, binary.length);
+                buffer.put((byte) '"');
+            } else if (toSerialise instanceof ByteBuffer) {
+                buffer.writeASCII("b64\"");
+                buffer.writeBase64((ByteBuffer) toSerialise);
+                buffer.put((byte) '"');
+            } else if (toSerialise instanceof InputStream) {
+                buffer.writeASCII("b64\"");
+                buffer.writeBase64((InputStream) toSerialise);
+                buffer.put((byte) '"');
+            } else if (toSerialise instanceof LLSDValue) {
+                writeValue((LLSDValue) toSerialise);
+            } else if (toSerialise instanceof LLSDUndefined) {
+                if (typedUndefined) {
+                    buffer.put((byte) '?');
+                    buffer.put(((LLSDUndefined) toSerialise).marker());
+                } else {
+                    buffer.put((byte) '!');
+                }
+            } else {
+                throw new LLSDException("Unable to serialise type \""
+                    + toSerialise.getClass().getName() + "\".");
+            }
+        }
+
+        private void writeValue(final LLSDValue value)
+            throws IOException, LLSDException {
+            if (value == LLSDUndef.UNDEF) {
+                buffer.put((byte) '!');
+                return;
+            } else if (value.isUndefined()) {
+                writeElement(value.toObject());
+                return;
+            }
+
+            switch (value.getType()) {
+            case MAP:
+                boolean firstEntry = true;
+
+                buffer.put((byte) '{');
+                for (Map.Entry<String, LLSDValue> entry: ((LLSDMap) value).entrySet()) {
+                    if (!firstEntry) {
+                        buffer.put((byte) ',');
+                    }
+                    firstEntry = false;
+                    writeQuoted('\'', entry.getKey());
+                    buffer.put((byte) ':');
+                    writeValue(entry.getValue());
+                }
+                buffer.put((byte) '}');
+                break;
+            case ARRAY:
+                final LLSDArray array = (LLSDArray) value;
+
+                buffer.put((byte) '[');
+                for (int i = 0; i < array.size(); i++) {
+                    if (i > 0) {
+                        buffer.put((byte) ',');
+                    }
+                    if (array instanceof LLSDIntegerArray) {
+                        buffer.put((byte) 'i');
+                        buffer.writeDecimal(((LLSDIntegerArray) array).getInteger(i));
+                    } else if (array instanceof LLSDRealArray) {
+                        buffer.put((byte) 'r');
+                        writeReal(((LLSDRealArray) array).getReal(i));
+                    } else {
+                        writeValue(array.get(i));
+                    }
+                }
+                buffer.put((byte) ']');
+                break;
+            case BOOLEAN:
+                buffer.put(value.asBoolean() ? (byte) '1' : (byte) '0');
+                break;
+            case INTEGER:
+                buffer.put((byte) 'i');
+                buffer.writeDecimal(value.asInteger());
+                break;
+            case REAL:
+                buffer.put((byte) 'r');
+                writeReal(value.asReal());
+                break;
+            default:
+                // The remaining scalars hold their values as objects already.
+                writeElement(value.toObject());
+                break;
+            }
+        }
+
+        private void writeReal(final double value) throws IOException {
+            if (Double.isNaN(value)) {
+                buffer.writeASCII("nan");
+            } else if (Double.isInfinite(value)) {
+                buffer.writeASCII(value > 0 ? "inf" : "-inf");
+            } else {
+                buffer.writeASCII(Double.toString(value));
+            }
+        }
+
+        /**
+         * Writes a quoted string, escaping backslashes, the quote character
+         * and control characters.
+         */
+        private void writeQuoted(final char quote, final String value)
+            throws IOException {
+            final int length = value.length();
+            int start = 0;
+
+            buffer.put((byte) quote);
+            for (int i = 0; i < length; i++) {
+                final char current = value.charAt(i);
+
+                if (current == quote || current == '\\') {
+                    buffer.writeUTF8(value, start, i);
+                    buffer.put((byte) '\\');
+                    buffer.put((byte) current);
+                    start = i + 1;
+                } else if (current < 0x20 || current == 0x7f) {
+                    buffer.writeUTF8(value, start, i);
+                    buffer.put((byte) '\\');
+                    buffer.put((byte) 'x');
+                    buffer.put(LLSDOutputBuffer.HEX_DIGITS[current >> 4]);
+                    buffer.put(LLSDOutputBuffer.HEX_DIGITS[current & 0xf]);
+                    start = i + 1;
+                }
+            }
+            buffer.writeUTF8(value, start, length);
+            buffer.put((byte) quote);
+        }
+
+    }
+}
@@ -0,0 +1,530 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.IllegalBlockingModeException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Byte output used by the serialisers. Writes go into a ByteBuffer which is
+ * either flushed to an output stream or channel when full, grown when full,
+ * or is the caller's own buffer, in which case running out of space throws
+ * {@link BufferOverflowException}.
+ */
+final class LLSDOutputBuffer {
+    /**
+     * Size of the staging buffer used when writing to an output stream.
+     */
+    static final int STREAM_BUFFER_SIZE = 8192;
+
+    /**
+     * Number of characters encoded to UTF-8 per check for buffer space.
+     */
+    private static final int UTF8_CHUNK = 1024;
+
+    /**
+     * Number of three byte groups base64 encoded per check for buffer
+     * space.
+     */
+    private static final int BASE64_CHUNK = 1024;
+
+    private static final byte[] BASE64_DIGITS =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"
+            .getBytes(StandardCharsets.US_ASCII);
+
+    static final byte[] HEX_DIGITS = {
+        '0', '1', '2', '3', '4', '5', '6', '7',
+        '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'
+    };
+
+    private ByteBuffer buffer;
+    private final OutputStream output;
+    private final WritableByteChannel channel;
+    private final boolean growable;
+
+    private     LLSDOutputBuffer(final ByteBuffer buffer, final OutputStream output,
+            final WritableByteChannel channel, final boolean growable) {
+        this.buffer = buffer;
+        this.output = output;
+        this.channel = channel;
+        this.growable = growable;
+    }
+
+    /**
+     * Buffers writes to the given stream. Remember to {@link #flush()}.
+     */
+    static LLSDOutputBuffer forStream(final OutputStream output) {
+        return forStream(output, ByteBuffer.allocate(STREAM_BUFFER_SIZE));
+    }
+
+    /**
+     * Buffers writes to the given stream through a caller-owned heap buffer,
+     * which is cleared first.
+     */
+    static LLSDOutputBuffer forStream(final OutputStream output, final ByteBuffer staging) {
+        staging.clear();
+        return new LLSDOutputBuffer(staging, output, null, false);
+    }
+
+    /**
+     * Buffers writes to the given channel, which must be in blocking mode.
+     * Each flush blocks until the channel has taken every buffered byte, so
+     * a slow consumer holds the writer back rather than letting output
+     * accumulate. Remember to {@link #flush()}.
+     *
+     * @throws IllegalBlockingModeException if the channel is selectable and
+     * in non-blocking mode.
+     */
+    static LLSDOutputBuffer forChannel(final WritableByteChannel channel, final int bufferSize) {
+        if (channel instanceof SelectableChannel
+            && !((SelectableChannel) channel).isBlocking()) {
+            throw new IllegalBlockingModeException();
+        }
+        return new LLSDOutputBuffer(ByteBuffer.allocate(bufferSize), null, channel, false);
+    }
+
+    /**
+     * Writes directly into the given buffer, from its current position. The
+     * buffer is switched to big-endian order.
+     */
+    static LLSDOutputBuffer forBuffer(final ByteBuffer target) {
+        return new LLSDOutputBuffer(target.order(ByteOrder.BIG_ENDIAN), null, null, false);
+    }
+
+    /**
+     * Writes into a heap buffer which grows as needed; see
+     * {@link #toBuffer()}.
+     */
+    static LLSDOutputBuffer growable(final int initialSize) {
+        return new LLSDOutputBuffer(ByteBuffer.allocate(initialSize), null, null, true);
+    }
+
+    void put(final byte value) throws IOException {
+        ensure(1);
+        buffer.put(value);
+    }
+
+    void putInt(final int value) throws IOException {
+        ensure(4);
+        buffer.putInt(value);
+    }
+
+    /**
+     * Overwrites four bytes already written, at the given position as
+     * returned by {@link #size()}, which must still be in the buffer.
+     */
+    void putInt(final int position, final int value) {
+        buffer.putInt(position, value);
+    }
+
+    void putLong(final long value) throws IOException {
+        ensure(8);
+        buffer.putLong(value);
+    }
+
+    void putDouble(final double value) throws IOException {
+        ensure(8);
+        buffer.putDouble(value);
+    }
+
+    void write(final byte[] value) throws IOException {
+        write(value, 0, value.length);
+    }
+
+    void write(final byte[] value, final int offset, final int length) throws IOException {
+        if (null != output && length > buffer.capacity()) {
+            flush();
+            output.write(value, offset, length);
+            return;
+        } else if (null != channel && length > buffer.capacity()) {
+            flush();
+            writeFully(ByteBuffer.wrap(value, offset, length));
+            return;
+        }
+        ensure(length);
+        buffer.put(value, offset, length);
+    }
+
+    /**
+     * Writes the characters of an ASCII-only string, one byte each.
+     */
+    void writeASCII(final String value) throws IOException {
+        final int length = value.length();
+
+        ensure(length);
+        for (int i = 0; i < length; i++) {
+            buffer.put((byte) value.charAt(i));
+        }
+    }
+
+    /**
+     * Writes the decimal representation of a number, as
+     * {@link Long#toString(long)} would, without creating a String.
+     */
+    void writeDecimal(long value) throws IOException {
+        final int end;
+        int digits = 1;
+
+        ensure(20);
+        if (value < 0) {
+            if (value == Long.MIN_VALUE) {
+                writeASCII(Long.toString(value));
+                return;
+            }
+            buffer.put((byte) '-');
+            value = -value;
+        }
+
+        for (long remainder = value; remainder >= 10; remainder /= 10) {
+            digits++;
+        }
+        end = buffer.position() + digits;
+        for (int i = end - 1; i >= end - digits; i--) {
+            buffer.put(i, (byte) ('0' + (value % 10)));
+            value /= 10;
+        }
+        buffer.position(end);
+    }
+
+    /**
+     * Writes a UUID in the same form as {@link UUID#toString()}.
+     */
+    void writeUUID(final UUID uuid) throws IOException {
+        final long high = uuid.getMostSignificantBits();
+        final long low = uuid.getLeastSignificantBits();
+
+        ensure(36);
+        putHex(high >>> 32, 8);
+        buffer.put((byte) '-');
+        putHex(high >>> 16, 4);
+        buffer.put((byte) '-');
+        putHex(high, 4);
+        buffer.put((byte) '-');
+        putHex(low >>> 48, 4);
+        buffer.put((byte) '-');
+        putHex(low, 12);
+    }
+
+    private void putHex(final long value, final int digits) {
+        for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+            buffer.put(HEX_DIGITS[(int) (value >>> shift) & 0xf]);
+        }
+    }
+
+    /**
+     * Writes characters start (inclusive) to end (exclusive) of the given
+     * text as UTF-8. Unpaired surrogates are written as '?', as
+     * {@link String#getBytes(java.nio.charset.Charset)} does.
+     */
+    void writeUTF8(final CharSequence text, int start, final int end) throws IOException {
+        while (start < end) {
+            int chunkEnd = Math.min(end, start + UTF8_CHUNK);
+
+            if (chunkEnd < end && Character.isHighSurrogate(text.charAt(chunkEnd - 1))) {
+                chunkEnd++;
+            }
+            ensure((chunkEnd - start) * 3);
+            for (int i = start; i < chunkEnd; i++) {
+                final char current = text.charAt(i);
+
+                if (current < 0x80) {
+                    buffer.put((byte) current);
+                } else if (current < 0x800) {
+                    buffer.put((byte) (0xc0 | (current >> 6)));
+                    buffer.put((byte) (0x80 | (current & 0x3f)));
+                } else if (Character.isSurrogate(current)) {
+                    if (Character.isHighSurrogate(current) && i + 1 < chunkEnd
+                        && Character.isLowSurrogate(text.charAt(i + 1))) {
+                        final int codePoint = Character.toCodePoint(current, text.charAt(++i));
+
+                        buffer.put((byte) (0xf0 | (codePoint >> 18)));
+                        buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3f)));
+                        buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3f)));
+                        buffer.put((byte) (0x80 | (codePoint & 0x3f)));
+                    } else {
+                        buffer.put((byte) '?');
+                    }
+                } else {
+                    buffer.put((byte) (0xe0 | (current >> 12)));
+                    buffer.put((byte) (0x80 | ((current >> 6) & 0x3f)));
+                    buffer.put((byte) (0x80 | (current & 0x3f)));
+                }
+            }
+            start = chunkEnd;
+        }
+    }
+
+    /**
+     * Writes the standard base64 encoding of the given bytes, with padding
+     * and no line breaks, without building the encoded form first.
+     */
+    void writeBase64(final byte[] value, final int offset, final int length) throws IOException {
+        final int end = offset + length;
+        int i = offset;
+
+        while (end - i >= 3) {
+            final int chunkEnd = i + Math.min((end - i) / 3, BASE64_CHUNK) * 3;
+
+            ensure((chunkEnd - i) / 3 * 4);
+            for (; i < chunkEnd; i += 3) {
+                final int bits = ((value[i] & 0xff) << 16) | ((value[i + 1] & 0xff) << 8)
+                    | (value[i + 2] & 0xff);
+
+                buffer.put(BASE64_DIGITS[bits >>> 18]);
+                buffer.put(BASE64_DIGITS[(bits >>> 12) & 0x3f]);
+                buffer.put(BASE64_DIGITS[(bits >>> 6) & 0x3f]);
+                buffer.put(BASE64_DIGITS[bits & 0x3f]);
+            }
+        }
+
+        if (i < end) {
+            final int bits = ((value[i] & 0xff) << 16)
+                | ((i + 1 < end ? value[i + 1] & 0xff : 0) << 8);
+
+            ensure(4);
+            buffer.put(BASE64_DIGITS[bits >>> 18]);
+            buffer.put(BASE64_DIGITS[(bits >>> 12) & 0x3f]);
+            buffer.put(i + 1 < end ? BASE64_DIGITS[(bits >>> 6) & 0x3f] : (byte) '=');
+            buffer.put((byte) '=');
+        }
+    }
+
+    /**
+     * Writes the base64 encoding of the remaining bytes of the given buffer,
+     * leaving its position unchanged.
+     */
+    void writeBase64(final ByteBuffer value) throws IOException {
+        final ByteBuffer source;
+        final byte[] chunk;
+
+        if (value.hasArray()) {
+            writeBase64(value.array(), value.arrayOffset() + value.position(), value.remaining());
+            return;
+        }
+
+        source = value.duplicate();
+        chunk = new byte[Math.min(source.remaining(), BASE64_CHUNK * 3)];
+        while (source.hasRemaining()) {
+            final int length = Math.min(source.remaining(), chunk.length);
+
+            source.get(chunk, 0, length);
+            writeBase64(chunk, 0, length);
+        }
+    }
+
+    /**
+     * Reads the given stream to its end, writing the base64 encoding of its
+     * bytes. The stream is not closed.
+     *
+     * @return the number of bytes read.
+     */
+    long writeBase64(final InputStream value) throws IOException {
+        final byte[] chunk = new byte[BASE64_CHUNK * 3];
+        long total = 0;
+        int length;
+
+        // Only the last chunk may be short, as base64 groups are three bytes.
+        do {
+            length = readFully(value, chunk);
+            writeBase64(chunk, 0, length);
+            total += length;
+        } while (length == chunk.length);
+
+        return total;
+    }
+
+    /**
+     * Writes the remaining bytes of the given buffer, leaving its position
+     * unchanged.
+     */
+    void write(final ByteBuffer value) throws IOException {
+        final ByteBuffer source;
+        final byte[] chunk;
+
+        if (value.hasArray()) {
+            write(value.array(), value.arrayOffset() + value.position(), value.remaining());
+            return;
+        }
+
+        source = value.duplicate();
+        chunk = new byte[Math.min(source.remaining(), STREAM_BUFFER_SIZE)];
+        while (source.hasRemaining()) {
+            final int length = Math.min(source.remaining(), chunk.length);
+
+            source.get(chunk, 0, length);
+            write(chunk, 0, length);
+        }
+    }
+
+    /**
+     * Reads into the whole of the given array unless the stream ends first.
+     *
+     * @return the number of bytes read.
+     */
+    static int readFully(final InputStream input, final byte[] target) throws IOException {
+        int length = 0;
+
+        while (length < target.length) {
+            final int read = input.read(target, length, target.length - length);
+
+            if (read < 0) {
+                break;
+            }
+            length += read;
+        }
+        return length;
+    }
+
+    /**
+     * Writes any buffered bytes to the output stream or channel, if there is
+     * one.
+     */
+    void flush() throws IOException {
+        if (buffer.position() == 0) {
+            return;
+        }
+        if (null != output) {
+            output.write(buffer.array(), buffer.arrayOffset(), buffer.position());
+            buffer.clear();
+        } else if (null != channel) {
+            buffer.flip();
+            writeFully(buffer);
+            buffer.clear();
+        }
+    }
+
+    private void writeFully(final ByteBuffer source) throws IOException {
+        while (source.hasRemaining()) {
+            channel.write(source);
+        }
+    }
+
+    /**
+     * @return the number of bytes written to the buffer and not yet flushed
+     * or drained.
+     */
+    int size() {
+        return buffer.position();
+    }
+
+    /**
+     * @return true if bytes written stay in the buffer until drained, as
+     * they do unless the buffer writes to a stream or channel.
+     */
+    boolean retainsOutput() {
+        return null == output && null == channel;
+    }
+
+    /**
+     * @return a copy of the bytes between the given positions, as returned
+     * by {@link #size()}, which must still be in the buffer.
+     */
+    byte[] copy(final int start, final int end) {
+        final byte[] bytes = new byte[end - start];
+        final ByteBuffer source = buffer.duplicate();
+
+        source.position(start);
+        source.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Moves as many buffered bytes as fit into the given buffer, keeping the
+     * rest for the next call.
+     *
+     * @return the number of bytes moved.
+     */
+    int drainTo(final ByteBuffer target) {
+        final int length = Math.min(buffer.position(), target.remaining());
+
+        buffer.flip();
+        if (length == buffer.remaining()) {
+            target.put(buffer);
+        } else {
+            final ByteBuffer part = buffer.duplicate();
+
+            part.limit(part.position() + length);
+            target.put(part);
+            buffer.position(length);
+        }
+        buffer.compact();
+        return length;
+    }
+
+    /**
+     * Discards the bytes written after the given position, as returned by
+     * {@link #size()}, which must still be in the buffer.
+     */
+    void truncate(final int size) {
+        buffer.position(size);
+    }
+
+    /**
+     * Writes the buffered bytes of a growable buffer to the given stream and
+     * empties the buffer.
+     */
+    void writeTo(final OutputStream target) throws IOException {
+        target.write(buffer.array(), buffer.arrayOffset(), buffer.position());
+        buffer.clear();
+    }
+
+    /**
+     * Writes the buffered bytes of a growable buffer to the given channel,
+     * blocking until it has taken them all, and empties the buffer.
+     */
+    void writeTo(final WritableByteChannel target) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * @return the bytes written to a growable buffer, between the returned
+     * buffer's position and limit.
+     */
+    ByteBuffer toBuffer() {
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Makes room for the given number of bytes in the buffer, flushing or
+     * growing it as needed.
+     */
+    void ensure(final int length) throws IOException {
+        if (buffer.remaining() >= length) {
+            return;
+        }
+
+        if (null != output || null != channel) {
+            flush();
+            if (buffer.capacity() < length) {
+                buffer = ByteBuffer.allocate(length);
+            }
+        } else if (growable) {
+            final ByteBuffer grown = ByteBuffer.allocate(
+                Math.max(buffer.capacity() * 2, buffer.position() + length));
+
+            buffer.flip();
+            grown.put(buffer);
+            buffer = grown;
+        } else {
+            throw new BufferOverflowException();
+        }
+    }
+}
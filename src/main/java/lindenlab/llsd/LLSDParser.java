@@ -10,35 +10,203 @@ import org.w3c.dom.Document;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import org.xml.sax.ErrorHandler;
 import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
 
+import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URI;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.*;
 
 /**
  * LLSD parser in Java. See <a href="http://wiki.secondlife.com/wiki/LLSD">http://wiki.secondlife.com/wiki/LLSD</a>
  * for more information on LLSD.
+ *
+ * Documents given as a file, buffer or channel are parsed straight from
+ * their bytes when they are UTF-8, which LLSD documents almost always are,
+ * using the same scanner as {@link LLSDLazyDocument}; other encodings are
+ * parsed with the DOM parser.
+ *
+ * Documents are checked against the parser's {@link LLSDLimits} as they
+ * are read; external DTDs and entities are never loaded.
+ *
+ * Instances may be shared between threads. DocumentBuilder is not
+ * thread-safe, so each thread which uses the parser is given its own,
+ * created on first use and reset after every document.
  */
 public class LLSDParser {
-    private final DateFormat iso9601Format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+    /**
+     * Error handler for documents the scanner rejected, which leaves fatal
+     * errors to be reported through the scanner's exception rather than
+     * printed.
+     */
+    private static final ErrorHandler QUIET = new ErrorHandler() {
+        @Override
+        public void warning(final SAXParseException e) {
+        }
+
+        @Override
+        public void error(final SAXParseException e) {
+        }
+
+        @Override
+        public void fatalError(final SAXParseException e) throws SAXException {
+            throw e;
+        }
+    };
+
+    private static final byte[] XML_DECLARATION = "<?xml".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Factory for the per-thread document builders. Only used while holding
+     * its own lock, as factories are not guaranteed to be thread-safe.
+     */
+    private final DocumentBuilderFactory factory;
+
+    /**
+     * Document builder used to parse the replies, one per thread.
+     */
+    private final ThreadLocal<DocumentBuilder> documentBuilder = new ThreadLocal<DocumentBuilder>();
+
+    /**
+     * Symbol table for map keys, or null if keys are not interned.
+     */
+    private volatile LLSDKeyTable keyTable = null;
 
     /**
-     * Document builder used to parse the replies
+     * Root of the layouts shared by compact maps, or null if maps are
+     * parsed as HashMaps.
      */
-    private final DocumentBuilder documentBuilder;
+    private volatile LLSDMapLayout mapLayouts = null;
+
+    /**
+     * Whether maps are LinkedHashMaps, keeping the order of the document.
+     */
+    private volatile boolean orderedMaps = false;
+
+    /**
+     * Listener told about each document, or null.
+     */
+    private volatile LLSDMetrics metrics = null;
+
+    /**
+     * Limits checked as documents are read.
+     */
+    private volatile LLSDLimits limits = LLSDLimits.DEFAULT;
 
     public      LLSDParser()
         throws ParserConfigurationException {
-        final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        this.factory = DocumentBuilderFactory.newInstance();
+        this.factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        this.factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+        this.factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
+        this.factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+        this.factory.setXIncludeAware(false);
+
+        // Fail here, rather than on first parse, if no builder can be made.
+        this.documentBuilder.set(this.factory.newDocumentBuilder());
+    }
+
+    private DocumentBuilder getDocumentBuilder()
+        throws LLSDException {
+        DocumentBuilder builder = this.documentBuilder.get();
+
+        if (null == builder) {
+            try {
+                synchronized (this.factory) {
+                    builder = this.factory.newDocumentBuilder();
+                }
+            } catch(ParserConfigurationException e) {
+                throw new LLSDException("Unable to create XML document builder.", e);
+            }
+            this.documentBuilder.set(builder);
+        }
+
+        return builder;
+    }
+
+    /**
+     * Sets whether map keys are interned, so that a document which repeats
+     * the same keys in thousands of maps holds one String for each key
+     * rather than one per map. Keys are kept in a table of limited size,
+     * shared by every document this parser reads, and are identical to the
+     * same keys written as literals. Off by default; set it before sharing
+     * the parser between threads.
+     */
+    public void setInternKeys(final boolean internKeys) {
+        this.keyTable = internKeys
+            ? new LLSDKeyTable()
+            : null;
+        if (!internKeys) {
+            this.mapLayouts = null;
+        }
+    }
+
+    /**
+     * Sets whether maps are parsed into a compact form, for documents made
+     * of many small maps with the same keys. Maps of up to 32 keys share
+     * their keys with every other map with the same keys, in the same
+     * order, and hold their values in a flat array; there are no entries
+     * or hash table, and interned keys are found by reference. They remain
+     * mutable Maps, iterating in document order, so callers of
+     * {@link LLSD#getContent()} see no difference other than the order.
+     * Turning this on also interns keys. Off by default; set it before
+     * sharing the parser between threads.
+     */
+    public void setCompactMaps(final boolean compactMaps) {
+        if (compactMaps) {
+            if (null == this.keyTable) {
+                this.keyTable = new LLSDKeyTable();
+            }
+            this.mapLayouts = LLSDMapLayout.root();
+        } else {
+            this.mapLayouts = null;
+        }
+    }
+
+    /**
+     * Sets whether maps keep the order of their keys in the document, as
+     * LinkedHashMaps, so that a document parsed and serialised again comes
+     * out in the same order. Compact maps always keep it. Off by default;
+     * set it before sharing the parser between threads.
+     */
+    public void setOrderedMaps(final boolean orderedMaps) {
+        this.orderedMaps = orderedMaps;
+    }
+
+    /**
+     * Sets the listener told about each document parsed, or null for none,
+     * which is the default. Documents are only measured while a listener is
+     * set. Documents given as a file or channel are reported as the buffer
+     * they are read into.
+     */
+    public void setMetrics(final LLSDMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets the limits checked as documents are read, {@link LLSDLimits#DEFAULT}
+     * unless set. Use {@link LLSDLimits#UNTRUSTED} or tighter for documents
+     * from clients. Set it before sharing the parser between threads.
+     */
+    public void setLimits(final LLSDLimits limits) {
+        if (null == limits) {
+            throw new NullPointerException("limits");
+        }
+        this.limits = limits;
+    }
 
-        this.documentBuilder = factory.newDocumentBuilder();
+    LLSDLimits getLimits() {
+        return limits;
     }
 
     private List<Node> extractElements(final NodeList nodes) {
@@ -59,7 +227,10 @@ public class LLSDParser {
     }
 
     /**
-     * Parses an LLSD document from the given input stream.
+     * Parses an LLSD document from the given input stream. If the parser's
+     * limits restrict more than the nesting depth, the stream is read up to
+     * the document size limit and scanned as for {@link #parse(ByteBuffer)},
+     * so that no DOM is built of a document which breaks them.
      *
      * @param xmlFile the XML input stream to read and parse as LLSD.
      * @throws IOException if there was a problem reading from the input
@@ -71,11 +242,374 @@ public class LLSDParser {
      */
     public LLSD parse(final InputStream xmlFile)
         throws IOException, LLSDException, SAXException {
-        final Document document = this.documentBuilder.parse(xmlFile);
+        if (limits.isLimited()) {
+            // Read up to the size limit, then check the rest while scanning.
+            return parse(readLimited(xmlFile, limits));
+        }
+        return parseDOM(xmlFile);
+    }
+
+    /**
+     * Parses a document with the DOM parser. Limits other than on the
+     * nesting depth must already have been checked.
+     */
+    private LLSD parseDOM(final InputStream xmlFile)
+        throws IOException, LLSDException, SAXException {
+        final LLSDMeasurement measurement = LLSDMeasurement.start(metrics, LLSDMetrics.Operation.PARSE);
+        final LLSDLimits limits = this.limits;
+        final Node rootNode;
+        final Object content;
+
+        if (null == measurement) {
+            rootNode = parseRoot(xmlFile, limits);
+            if (null == rootNode) {
+                // XXX: Warn?
+                return new LLSD(null);
+            }
+
+            return new LLSD(parseNode(rootNode, 1, limits.counter()));
+        }
+
+        try {
+            rootNode = parseRoot(measurement.count(xmlFile), limits);
+            measurement.converting();
+            content = null == rootNode ? null : parseNode(rootNode, 1, limits.counter());
+        } catch(IOException e) {
+            throw measurement.failed(e);
+        } catch(LLSDException e) {
+            throw measurement.failed(e);
+        } catch(SAXException e) {
+            throw measurement.failed(e);
+        }
+        measurement.completed(content);
+        return new LLSD(content);
+    }
+
+    /**
+     * Parses an LLSD document from the given input stream into a typed tree.
+     * Integers and reals are converted without boxing, and arrays holding
+     * only integers or only reals are built as primitive arrays.
+     *
+     * @param xmlFile the XML input stream to read and parse as LLSD.
+     * @return the root value, or null if the document is empty.
+     * @throws IOException if there was a problem reading from the input
+     * stream.
+     * @throws LLSDException if the document is valid XML, but invalid LLSD,
+     * for example if a date cannot be parsed.
+     * @throws SAXException if there was a problem parsing the XML structure of
+     * the document.
+     */
+    public LLSDValue parseValue(final InputStream xmlFile)
+        throws IOException, LLSDException, SAXException {
+        if (limits.isLimited()) {
+            return parseValue(readLimited(xmlFile, limits));
+        }
+        return parseValueDOM(xmlFile);
+    }
+
+    /**
+     * Parses a document into a typed tree with the DOM parser, as for
+     * {@link #parseDOM(InputStream)}.
+     */
+    private LLSDValue parseValueDOM(final InputStream xmlFile)
+        throws IOException, LLSDException, SAXException {
+        final LLSDMeasurement measurement = LLSDMeasurement.start(metrics, LLSDMetrics.Operation.PARSE);
+        final LLSDLimits limits = this.limits;
+        final Node rootNode;
+        final LLSDValue value;
+
+        if (null == measurement) {
+            rootNode = parseRoot(xmlFile, limits);
+            if (null == rootNode) {
+                return null;
+            }
+
+            return parseValueNode(rootNode, 1, limits.counter());
+        }
+
+        try {
+            rootNode = parseRoot(measurement.count(xmlFile), limits);
+            value = null == rootNode ? null : parseValueNode(rootNode, 1, limits.counter());
+        } catch(IOException e) {
+            throw measurement.failed(e);
+        } catch(LLSDException e) {
+            throw measurement.failed(e);
+        } catch(SAXException e) {
+            throw measurement.failed(e);
+        }
+        measurement.completed(value);
+        return value;
+    }
+
+    /**
+     * Parses an LLSD document from the remaining bytes of the given buffer.
+     * The buffer's position is not changed. A direct buffer holding a UTF-8
+     * document is copied to the heap before it is scanned. Documents which
+     * the scanner does not read are read by the DOM parser instead, so this
+     * accepts whatever {@link #parse(InputStream)} does.
+     *
+     * @throws LLSDException if the document is invalid LLSD, or if it is
+     * UTF-8 and is not well-formed XML.
+     * @throws SAXException if the document is not UTF-8 and there was a
+     * problem parsing its XML structure.
+     */
+    public LLSD parse(final ByteBuffer xmlFile)
+        throws IOException, LLSDException, SAXException {
+        final LLSDLimits limits = this.limits;
+        final LLSDMeasurement measurement;
+        final LLSDValue value;
+        final Object content;
+
+        if (!isUTF8(xmlFile)) {
+            checkLimits(xmlFile, limits);
+            return parseDOM(LLSDInput.stream(xmlFile));
+        }
+
+        measurement = LLSDMeasurement.start(metrics, LLSDMetrics.Operation.PARSE);
+        if (null == measurement) {
+            return new LLSD(toContent(parseLazy(xmlFile, limits)));
+        }
+
+        measurement.setBytes(xmlFile.remaining());
+        try {
+            value = parseLazy(xmlFile, limits);
+        } catch(LLSDException e) {
+            throw measurement.failed(e);
+        }
+        measurement.converting();
+        content = toContent(value);
+        measurement.completed(content);
+        return new LLSD(content);
+    }
+
+    /**
+     * Parses an LLSD document from the given file, which is memory-mapped
+     * rather than read through a stream. Files too large to map whole are
+     * streamed a window at a time; see also
+     * {@link LLSDStaxParser#reader(Path)} and {@link LLSDLazyDocument}.
+     *
+     * @throws IOException if the file cannot be read.
+     * @throws LLSDException if the document is invalid LLSD.
+     * @throws SAXException if there was a problem parsing the XML structure of
+     * the document.
+     */
+    public LLSD parse(final Path xmlFile)
+        throws IOException, LLSDException, SAXException {
+        final long size = LLSDInput.size(xmlFile);
+
+        limits.checkDocument(size);
+        if (size > Integer.MAX_VALUE) {
+            return parse(LLSDInput.stream(xmlFile));
+        }
+        return parse(LLSDInput.map(xmlFile));
+    }
+
+    /**
+     * Parses an LLSD document read from the given channel to its end. The
+     * channel is not closed.
+     *
+     * @throws IOException if there was a problem reading from the channel.
+     * @throws LLSDException if the document is invalid LLSD.
+     * @throws SAXException if there was a problem parsing the XML structure of
+     * the document.
+     */
+    public LLSD parse(final ReadableByteChannel xmlFile)
+        throws IOException, LLSDException, SAXException {
+        return parse(LLSDInput.readFully(xmlFile, limits));
+    }
+
+    /**
+     * Parses an LLSD document from the remaining bytes of the given buffer
+     * into a typed tree, as {@link #parseValue(InputStream)} does. The
+     * buffer's position is not changed.
+     *
+     * @return the root value, or null if the document is empty.
+     * @throws LLSDException if the document is invalid LLSD, or if it is
+     * UTF-8 and is not well-formed XML.
+     * @throws SAXException if the document is not UTF-8 and there was a
+     * problem parsing its XML structure.
+     */
+    public LLSDValue parseValue(final ByteBuffer xmlFile)
+        throws IOException, LLSDException, SAXException {
+        final LLSDLimits limits = this.limits;
+        final LLSDMeasurement measurement;
+        final LLSDValue value;
+
+        if (!isUTF8(xmlFile)) {
+            checkLimits(xmlFile, limits);
+            return parseValueDOM(LLSDInput.stream(xmlFile));
+        }
+
+        measurement = LLSDMeasurement.start(metrics, LLSDMetrics.Operation.PARSE);
+        if (null == measurement) {
+            return parseLazy(xmlFile, limits);
+        }
+
+        measurement.setBytes(xmlFile.remaining());
+        try {
+            value = parseLazy(xmlFile, limits);
+        } catch(LLSDException e) {
+            throw measurement.failed(e);
+        }
+        measurement.completed(value);
+        return value;
+    }
+
+    /**
+     * Parses an LLSD document from the given file into a typed tree. The
+     * file is memory-mapped as for {@link #parse(Path)}.
+     *
+     * @return the root value, or null if the document is empty.
+     */
+    public LLSDValue parseValue(final Path xmlFile)
+        throws IOException, LLSDException, SAXException {
+        final long size = LLSDInput.size(xmlFile);
+
+        limits.checkDocument(size);
+        if (size > Integer.MAX_VALUE) {
+            return parseValue(LLSDInput.stream(xmlFile));
+        }
+        return parseValue(LLSDInput.map(xmlFile));
+    }
+
+    /**
+     * Parses an LLSD document read from the given channel to its end into a
+     * typed tree. The channel is not closed.
+     *
+     * @return the root value, or null if the document is empty.
+     */
+    public LLSDValue parseValue(final ReadableByteChannel xmlFile)
+        throws IOException, LLSDException, SAXException {
+        return parseValue(LLSDInput.readFully(xmlFile, limits));
+    }
+
+    /**
+     * Reads the given stream to its end, up to the document size limit, so
+     * that the rest of the limits are checked as it is scanned.
+     */
+    private ByteBuffer readLimited(final InputStream xmlFile, final LLSDLimits limits)
+        throws IOException, LLSDLimitException {
+        try {
+            return LLSDInput.readFully(Channels.newChannel(xmlFile), limits);
+        } catch(LLSDLimitException e) {
+            final LLSDMeasurement measurement = LLSDMeasurement.start(metrics, LLSDMetrics.Operation.PARSE);
+
+            throw null == measurement ? e : measurement.failed(e);
+        }
+    }
+
+    /**
+     * Checks a document which is not UTF-8 against the given limits before
+     * the DOM parser builds it, if anything beyond its depth is limited.
+     */
+    private static void checkLimits(final ByteBuffer xmlFile, final LLSDLimits limits)
+        throws IOException, LLSDException {
+        if (limits.isLimited()) {
+            limits.checkDocument(xmlFile.remaining());
+            LLSDLimitChecker.check(xmlFile, limits);
+        }
+    }
+
+    /**
+     * Converts a UTF-8 document with the scanner of {@link LLSDLazyDocument}.
+     * The scanner only reads the XML which LLSD documents use in practice,
+     * so a document it rejects, for example for text between elements or a
+     * DOCTYPE with an internal subset, is read again by the DOM parser, as
+     * {@link #parse(InputStream)} would read it. If that fails too the
+     * scanner's error is reported, unless the document is well-formed and
+     * only the DOM parser's LLSD error can describe it.
+     */
+    private LLSDValue parseLazy(final ByteBuffer xmlFile, final LLSDLimits limits)
+        throws IOException, LLSDException {
+        final Node rootNode;
+
+        limits.checkDocument(xmlFile.remaining());
+        try {
+            return new LLSDLazyDocument(xmlFile, limits).getDocument(limits);
+        } catch(LLSDLimitException e) {
+            throw e;
+        } catch(LLSDException e) {
+            checkLimits(xmlFile, limits);
+            try {
+                getDocumentBuilder().setErrorHandler(QUIET);
+                rootNode = parseRoot(LLSDInput.stream(xmlFile), limits);
+            } catch(SAXException notWellFormed) {
+                throw e;
+            }
+            return null == rootNode ? null : parseValueNode(rootNode, 1, limits.counter());
+        }
+    }
+
+    /**
+     * @return true if the document is UTF-8, going by its byte order mark
+     * and XML declaration. Documents with neither are UTF-8 by default.
+     * Anything else, including UTF-16, is left to the DOM parser.
+     */
+    static boolean isUTF8(final ByteBuffer document) {
+        final int start = document.position();
+        final int limit = document.limit();
+        final StringBuilder declaration = new StringBuilder();
+        final String text;
+        int i;
+
+        if (limit - start >= 3 && document.get(start) == (byte) 0xef
+            && document.get(start + 1) == (byte) 0xbb && document.get(start + 2) == (byte) 0xbf) {
+            return true;
+        }
+        if (limit - start < 2) {
+            return true;
+        }
+        if (document.get(start) == 0 || document.get(start + 1) == 0
+            || (document.get(start) & 0xfe) == 0xfe) {
+            // UTF-16 or UTF-32, with or without a byte order mark.
+            return false;
+        }
+        for (i = 0; i < XML_DECLARATION.length; i++) {
+            if (start + i >= limit || document.get(start + i) != XML_DECLARATION[i]) {
+                return true;
+            }
+        }
+        for (; start + i < limit && document.get(start + i) != '>'; i++) {
+            declaration.append((char) (document.get(start + i) & 0xff));
+        }
+
+        text = declaration.toString();
+        i = text.indexOf("encoding");
+        if (i < 0) {
+            return true;
+        }
+        i += "encoding".length();
+        while (i < text.length() && "= \t\r\n\"'".indexOf(text.charAt(i)) >= 0) {
+            i++;
+        }
+        return text.regionMatches(true, i, "UTF-8", 0, 5)
+            || text.regionMatches(true, i, "UTF8", 0, 4)
+            || text.regionMatches(true, i, "US-ASCII", 0, 8);
+    }
+
+    /**
+     * @return the single element within &lt;llsd&gt;, or null if there is
+     * none.
+     */
+    private Node parseRoot(final InputStream xmlFile, final LLSDLimits limits)
+        throws IOException, LLSDException, SAXException {
+        final DocumentBuilder builder = getDocumentBuilder();
+        final Document document;
         final List<Node> childNodesTrimmed;
-        final Node llsdNode = document.getDocumentElement();
-        final Object llsdContents;
+        final Node llsdNode;
 
+        try {
+            document = builder.parse(LLSDInput.limit(xmlFile, limits));
+        } catch(LLSDInput.LimitExceeded e) {
+            throw e.getLimitException();
+        } finally {
+            builder.reset();
+        }
+        if (null != document.getDoctype() && !limits.allowsDoctype()) {
+            // Only reached for encodings which the input does not scan.
+            throw new LLSDLimitException.Doctype();
+        }
+        llsdNode = document.getDocumentElement();
         if (null == llsdNode) {
             throw new LLSDException("Outer-most tag for LLSD missing.");
         }
@@ -87,20 +621,17 @@ public class LLSDParser {
 
         childNodesTrimmed = extractElements(llsdNode.getChildNodes());
         if (childNodesTrimmed.size() == 0) {
-            // XXX: Warn?
-            return new LLSD(null);
+            return null;
         }
 
         if (childNodesTrimmed.size() > 1) {
             throw new LLSDException("Expected only one subelement for element <llsd>.");
         }
 
-        llsdContents = parseNode(childNodesTrimmed.get(0));
-
-        return new LLSD(llsdContents);
+        return childNodesTrimmed.get(0);
     }
 
-    private List<Object> parseArray(final NodeList nodeList)
+    private List<Object> parseArray(final NodeList nodeList, final int depth, final LLSDLimits.Counter counter)
         throws LLSDException {
         final List<Object> value = new ArrayList<Object>();
 
@@ -108,117 +639,139 @@ public class LLSDParser {
             final Node node = nodeList.item(nodeIdx);
 
             if (node.getNodeType() == Node.ELEMENT_NODE) {
-                value.add(parseNode(node));
+                value.add(parseNode(node, depth + 1, counter));
             }
         }
 
         return value;
     }
 
-    private Boolean parseBoolean(final String elementContents)
+    private Map<String, Object> parseMap(final NodeList nodeList, final int depth, final LLSDLimits.Counter counter)
         throws LLSDException {
-        if (elementContents.equals("1") ||
-            elementContents.equalsIgnoreCase("true")) {
-            return Boolean.TRUE;
+        final List<Node> trimmedNodes = extractElements(nodeList);
+        final int count = trimmedNodes.size() / 2;
+        final String[] keys = new String[count];
+        final Object[] values = new Object[count];
+
+        if ((trimmedNodes.size() % 2) != 0) {
+            throw new LLSDException("Unable to parse LLSD map as it has odd number of nodes: "
+                + nodeList.toString());
         }
 
-        return Boolean.FALSE;
-    }
+        for (int entryIdx = 0; entryIdx < count; entryIdx++) {
+            keys[entryIdx] = parseKey(trimmedNodes.get(entryIdx * 2), counter.limits);
+            values[entryIdx] = parseNode(trimmedNodes.get(entryIdx * 2 + 1), depth + 1, counter);
+            assert null != values[entryIdx];
+        }
 
-    private Date parseDate(final String elementContents)
-        throws LLSDException {
-        final Date value;
+        return buildMap(keys, values, count);
+    }
 
-        if (elementContents.length() == 0) {
-            return new Date(0);
+    /**
+     * @return the content of the given typed value, as
+     * {@link LLSDValue#toObject()} gives but with maps built as
+     * {@link #parseMap(NodeList, int, LLSDLimits.Counter)} builds them, or null for a null value.
+     */
+    Object toContent(final LLSDValue value) {
+        if (null == value) {
+            return null;
+        } else if (null == keyTable && !orderedMaps) {
+            return value.toObject();
         }
+        return buildContent(value);
+    }
 
-        try {
-            value = this.iso9601Format.parse(elementContents);
-        } catch(java.text.ParseException e) {
-            throw new LLSDException("Unable to parse LLSD date value, received \""
-                + elementContents + "\".", e);
-        }
+    private Object buildContent(final LLSDValue value) {
+        if (value instanceof LLSDMap) {
+            final LLSDMap map = (LLSDMap) value;
+            final String[] keys = new String[map.size()];
+            final Object[] values = new Object[map.size()];
+            int count = 0;
+
+            for (Map.Entry<String, LLSDValue> entry: map.entrySet()) {
+                keys[count] = entry.getKey();
+                values[count] = buildContent(entry.getValue());
+                count++;
+            }
+            return buildMap(keys, values, count);
+        } else if (value instanceof LLSDValueArray) {
+            final LLSDArray array = (LLSDArray) value;
+            final List<Object> list = new ArrayList<Object>(array.size());
 
-        return value;
+            for (int i = 0; i < array.size(); i++) {
+                list.add(buildContent(array.get(i)));
+            }
+            return list;
+        }
+        // Primitive arrays hold no maps.
+        return value.toObject();
     }
 
-    private Integer parseInteger(final String elementContents)
-        throws LLSDException {
-        final Integer value;
-
-        if (elementContents.length() == 0) {
-            return 0;
+    /**
+     * Builds a map of the given entries: a compact map if they are enabled
+     * and the keys fit, otherwise a HashMap, or a LinkedHashMap if maps are
+     * ordered. Keys are interned first if interning is enabled.
+     */
+    private Map<String, Object> buildMap(final String[] keys, final Object[] values, final int count) {
+        final LLSDKeyTable keyTable = this.keyTable;
+        final LLSDMapLayout mapLayouts = this.mapLayouts;
+        final Map<String, Object> valueMap;
+
+        if (null != keyTable) {
+            for (int i = 0; i < count; i++) {
+                keys[i] = keyTable.intern(keys[i]);
+            }
         }
+        if (null != mapLayouts) {
+            final Map<String, Object> compact = LLSDCompactMap.build(mapLayouts, keys, values, count);
 
-        try {
-            // XXX: Don't just assume the default parser is okay for SSLD, check
-            value = new Integer(elementContents);
-        } catch(NumberFormatException e) {
-            throw new LLSDException("Unable to parse LLSD integer value, received \""
-                + elementContents + "\".", e);
+            if (null != compact) {
+                return compact;
+            }
         }
 
-        return value;
+        valueMap = orderedMaps
+            ? new LinkedHashMap<String, Object>()
+            : new HashMap<String, Object>();
+        for (int i = 0; i < count; i++) {
+            valueMap.put(keys[i], values[i]);
+        }
+        return valueMap;
     }
 
-    private Map<String, Object> parseMap(final NodeList nodeList)
+    private String parseKey(final Node keyNode, final LLSDLimits limits)
         throws LLSDException {
-        final List<Node> trimmedNodes = extractElements(nodeList);
-        final Map<String, Object> valueMap = new HashMap<String, Object>();
+        final NodeList keyChildren = keyNode.getChildNodes();
+        String key = null;
 
-        if ((trimmedNodes.size() % 2) != 0) {
-            throw new LLSDException("Unable to parse LLSD map as it has odd number of nodes: "
-                + nodeList.toString());
+        if (!keyNode.getNodeName().equalsIgnoreCase("key")) {
+            throw new LLSDException("Expected <key> in map, found \""
+                + keyNode.getNodeName() + "\".");
         }
-
-        for (int nodeIdx = 0; nodeIdx < trimmedNodes.size(); nodeIdx = nodeIdx + 2) {
-            final NodeList keyChildren;
-            final Node keyNode = trimmedNodes.get(nodeIdx);
-            final Node valueNode = trimmedNodes.get(nodeIdx + 1);
-            String key = null;
-            final Object value;
-
-            keyChildren = keyNode.getChildNodes();
-            for (int keyNodeIdx = 0; keyNodeIdx < keyChildren.getLength(); keyNodeIdx++) {
-                final Node textNode = keyChildren.item(keyNodeIdx);
-                switch (textNode.getNodeType()) {
-                case Node.TEXT_NODE:
-                    key = textNode.getNodeValue();
-                    break;
-                default:
-                    throw new LLSDException("Unexpected node \""
-                        + textNode.getNodeName() + "\" found while parsing key for map.");
-                }
+        for (int keyNodeIdx = 0; keyNodeIdx < keyChildren.getLength(); keyNodeIdx++) {
+            final Node textNode = keyChildren.item(keyNodeIdx);
+            switch (textNode.getNodeType()) {
+            case Node.TEXT_NODE:
+                key = textNode.getNodeValue();
+                limits.checkString(key.length());
+                break;
+            default:
+                throw new LLSDException("Unexpected node \""
+                    + textNode.getNodeName() + "\" found while parsing key for map.");
             }
-
-            value = parseNode(valueNode);
-            assert null != value;
-
-            valueMap.put(key, value);
         }
 
-        return valueMap;
+        return key;
     }
 
-    private Object parseNode(final Node node)
-        throws LLSDException {
+    /**
+     * Appends the text content of a scalar element to the given builder.
+     *
+     * @return true if the element contains &lt;undef /&gt;.
+     */
+    private static boolean appendText(final NodeList childNodes, final StringBuilder nodeText) {
         boolean isUndefined = false;
-        final NodeList childNodes;
-        final String nodeName = node.getNodeName().toLowerCase();
-        final StringBuilder nodeText;
-
-        childNodes = node.getChildNodes();
-
-        // Handle compound types (array and map) and stupid decisions by Linden
-        // Labs (binary).
-        if (nodeName.equals("array")) {
-            return parseArray(childNodes);
-        } else if (nodeName.equals("map")) {
-            return parseMap(childNodes);
-        }
 
-        nodeText = new StringBuilder();
         for (int nodeIdx = 0; nodeIdx < childNodes.getLength(); nodeIdx++) {
             final Node childNode = childNodes.item(nodeIdx);
 
@@ -236,44 +789,136 @@ public class LLSDParser {
             }
         }
 
+        return isUndefined;
+    }
+
+    private LLSDValue parseValueNode(final Node node, final int depth, final LLSDLimits.Counter counter)
+        throws LLSDException {
+        final String nodeName = node.getNodeName().toLowerCase();
+        final NodeList childNodes = node.getChildNodes();
+
+        counter.node(depth);
+        switch (nodeName) {
+        case "array":
+            final LLSDArrayBuilder builder = new LLSDArrayBuilder();
+
+            for (Node child: extractElements(childNodes)) {
+                final String childName = child.getNodeName().toLowerCase();
+
+                if (childName.equals("integer") || childName.equals("real")) {
+                    final StringBuilder nodeText = new StringBuilder();
+
+                    if (!appendText(child.getChildNodes(), nodeText)) {
+                        counter.node(depth + 1);
+                        if (childName.equals("integer")) {
+                            builder.addInteger(LLSDScalars.parseInteger(nodeText, 0, nodeText.length()));
+                        } else {
+                            builder.addReal(LLSDScalars.parseReal(nodeText, 0, nodeText.length()));
+                        }
+                        continue;
+                    }
+                }
+                builder.add(parseValueNode(child, depth + 1, counter));
+            }
+            return builder.build();
+        case "map":
+            final List<Node> trimmedNodes = extractElements(childNodes);
+            final LLSDMap map = new LLSDMap(trimmedNodes.size() / 2);
+
+            if ((trimmedNodes.size() % 2) != 0) {
+                throw new LLSDException("Unable to parse LLSD map as it has odd number of nodes: "
+                    + childNodes.toString());
+            }
+
+            for (int nodeIdx = 0; nodeIdx < trimmedNodes.size(); nodeIdx = nodeIdx + 2) {
+                map.put(parseKey(trimmedNodes.get(nodeIdx), counter.limits),
+                    parseValueNode(trimmedNodes.get(nodeIdx + 1), depth + 1, counter));
+            }
+            return map;
+        case "boolean":
+        case "integer":
+        case "real":
+            final StringBuilder nodeText = new StringBuilder();
+
+            if (appendText(childNodes, nodeText)) {
+                return LLSDValue.fromObject(parseScalar(node, nodeName, counter.limits));
+            } else if (nodeName.equals("boolean")) {
+                return LLSDBoolean.valueOf(LLSDScalars.parseBoolean(nodeText.toString()));
+            } else if (nodeName.equals("integer")) {
+                return LLSDInteger.valueOf(LLSDScalars.parseInteger(nodeText, 0, nodeText.length()));
+            }
+            return new LLSDReal(LLSDScalars.parseReal(nodeText, 0, nodeText.length()));
+        case "undef":
+            return LLSDUndef.UNDEF;
+        default:
+            // The remaining scalars are objects either way.
+            return LLSDValue.fromObject(parseScalar(node, nodeName, counter.limits));
+        }
+    }
+
+    private Object parseNode(final Node node, final int depth, final LLSDLimits.Counter counter)
+        throws LLSDException {
+        final String nodeName = node.getNodeName().toLowerCase();
+
+        counter.node(depth);
+
+        // Handle compound types (array and map) and stupid decisions by Linden
+        // Labs (binary).
+        if (nodeName.equals("array")) {
+            return parseArray(node.getChildNodes(), depth, counter);
+        } else if (nodeName.equals("map")) {
+            return parseMap(node.getChildNodes(), depth, counter);
+        }
+        return parseScalar(node, nodeName, counter.limits);
+    }
+
+    private Object parseScalar(final Node node, final String nodeName, final LLSDLimits limits)
+        throws LLSDException {
+        final StringBuilder nodeText = new StringBuilder();
+        final boolean isUndefined = appendText(node.getChildNodes(), nodeText);
+
         switch(nodeName) {
             case "undef":
                 return "";
             case "boolean":
                 return isUndefined
                         ? LLSDUndefined.BOOLEAN
-                        : parseBoolean(nodeText.toString());
+                        : LLSDScalars.parseBoolean(nodeText.toString());
             case "date":
                 return isUndefined
                         ? LLSDUndefined.DATE
-                        : parseDate(nodeText.toString());
+                        : new Date(LLSDScalars.parseTime(nodeText, 0, nodeText.length()));
             case "integer":
                 return isUndefined
                         ? LLSDUndefined.INTEGER
-                        : parseInteger(nodeText.toString());
+                        : LLSDScalars.parseInteger(nodeText, 0, nodeText.length());
             case "real":
                 return isUndefined
                         ? LLSDUndefined.REAL
-                        : parseReal(nodeText.toString());
+                        : LLSDScalars.parseReal(nodeText, 0, nodeText.length());
             case "string":
-                return isUndefined
-                        ? LLSDUndefined.STRING
-                        : parseString(nodeText.toString());
+                if (isUndefined) {
+                    return LLSDUndefined.STRING;
+                }
+                limits.checkString(nodeText.length());
+                return LLSDScalars.parseString(nodeText.toString());
             case "uri":
                 return isUndefined
                         ? LLSDUndefined.URI
-                        : parseURI(nodeText.toString());
+                        : LLSDScalars.parseURI(nodeText.toString());
             case "uuid":
                 return isUndefined
                         ? LLSDUndefined.UUID
-                        : parseUUID(nodeText.toString());
+                        : LLSDScalars.parseUUID(nodeText, 0, nodeText.length());
             case "binary":
                 NamedNodeMap attrs = node.getAttributes();
                 switch (attrs.getNamedItem("encoding").getNodeValue()) {
                     case "base64":
-                        return isUndefined
-                                ? LLSDUndefined.BINARY
-                                : parseBinary(nodeText.toString());
+                        if (isUndefined) {
+                            return LLSDUndefined.BINARY;
+                        }
+                        limits.checkBinary(LLSDBase64Decoder.decodedLength(nodeText, 0, nodeText.length()));
+                        return LLSDScalars.parseBinary(nodeText, 0, nodeText.length());
                     default:
                         throw new LLSDException("encoding other than base64 is not supported");
                 }
@@ -282,75 +927,4 @@ public class LLSDParser {
                         + node.getNodeName() + "\".");
         }
     }
-
-    private Double parseReal(final String elementContents)
-        throws LLSDException {
-        final Double value;
-
-        if (elementContents.length() == 0) {
-            return 0.0;
-        }
-
-        if (elementContents.equals("nan")) {
-            return Double.NaN;
-        }
-
-        try {
-            // XXX: Don't just assume the default parser is okay for SSLD, check
-            value = new Double(elementContents);
-        } catch(NumberFormatException e) {
-            throw new LLSDException("Unable to parse LLSD real value, received \""
-                + elementContents + "\".", e);
-        }
-
-        return value;
-    }
-
-    private String parseString(final String elementContents)
-        throws LLSDException {
-        return elementContents;
-    }
-
-    private URI parseURI(final String elementContents)
-        throws LLSDException {
-        final URI value;
-
-        try {
-            value = new URI(elementContents);
-        } catch(java.net.URISyntaxException e) {
-            throw new LLSDException("Unable to parse LLSD URI value, received \""
-                + elementContents + "\".", e);
-        }
-
-        return value;
-    }
-
-    private UUID parseUUID(final String elementContents)
-        throws LLSDException {
-        final UUID value;
-
-        if (elementContents.length() == 0) {
-            return new UUID(0L, 0L);
-        }
-
-        try {
-            value = UUID.fromString(elementContents);
-        } catch(IllegalArgumentException e) {
-            throw new LLSDException("Unable to parse LLSD UUID value, received \""
-                + elementContents + "\".", e);
-        }
-
-        return value;
-    }
-
-    private byte[] parseBinary(final String elementContents) throws LLSDException {
-        if (elementContents.length() == 0) {
-            return new byte[]{};
-        }
-        try {
-            return Base64.getDecoder().decode(elementContents.getBytes());
-        } catch (IllegalArgumentException e) {
-            throw new LLSDException("Unable to parse LLSD binary value. Contents omitted in exception.");
-        }
-    }
 }
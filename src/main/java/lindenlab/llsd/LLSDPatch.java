@@ -0,0 +1,445 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+import java.util.*;
+
+/**
+ * The differences between two LLSD content trees, as held by
+ * {@link LLSD#getContent()}, for sending the changes to a document rather
+ * than the whole of it:
+ *
+ * <pre>
+ * LLSDPatch patch = LLSDPatch.diff(previous.getContent(), current.getContent());
+ * serialiser.serialise(new LLSD(patch.getContent()), output);
+ * ...
+ * state = new LLSDPatch(parser.parse(input).getContent()).apply(state);
+ * </pre>
+ *
+ * A patch is itself LLSD content, so it can be written in any format. It is
+ * a map holding at most one of:
+ * <ul>
+ * <li>"v": the value which replaces the old one.</li>
+ * <li>"m": a map from each changed or added key to its patch, and "d": an
+ * array of the keys removed.</li>
+ * <li>"i": a map from the index of each changed array item, as a string, to
+ * its patch, and "s": an array of the index at which to remove items, the
+ * number to remove, and an array of the items to insert there.</li>
+ * </ul>
+ * An empty map is an empty patch.
+ *
+ * Maps are compared by key. Arrays are compared by index after the items
+ * they start and end with in common are set aside, so that an item inserted
+ * into or removed from an array is sent alone rather than as a change to
+ * every item after it. Subtrees which are the same object, such as those
+ * shared by a frozen document and one made from it by
+ * {@link LLSDFrozen#with(String, Object)}, are not compared. Frozen
+ * subtrees are otherwise compared value by value like any other, as their
+ * cached encodings may round reals and dates.
+ *
+ * Values in a patch are those of the new tree, and are inserted by
+ * {@link #apply(Object)} as they are rather than copied.
+ */
+public final class LLSDPatch {
+    private static final String VALUE = "v";
+    private static final String MAP = "m";
+    private static final String DELETE = "d";
+    private static final String INDEX = "i";
+    private static final String SPLICE = "s";
+
+    private final Map<String, Object> content;
+
+    /**
+     * @param content a patch as returned by {@link #getContent()}, for
+     * example as parsed from a document.
+     * @throws LLSDException if the content is not a map. The rest of the
+     * patch is checked as it is applied.
+     */
+    public      LLSDPatch(final Object content) throws LLSDException {
+        this.content = patchMap(content);
+    }
+
+    /**
+     * Computes the patch which turns one content tree into another.
+     */
+    public static LLSDPatch diff(final Object from, final Object to) {
+        final Map<String, Object> patch = diffValue(from, to);
+
+        return new LLSDPatch(null == patch
+            ? Collections.<String, Object>emptyMap()
+            : patch);
+    }
+
+    private     LLSDPatch(final Map<String, Object> content) {
+        this.content = content;
+    }
+
+    /**
+     * @return the patch as LLSD content, to be serialised. Do not modify it.
+     */
+    public Map<String, Object> getContent() {
+        return content;
+    }
+
+    /**
+     * @return true if the patch changes nothing.
+     */
+    public boolean isEmpty() {
+        return content.isEmpty();
+    }
+
+    /**
+     * Applies the patch to the given tree, changing its maps and lists in
+     * place.
+     *
+     * @return the patched tree, which is the given tree unless the patch
+     * replaces its root.
+     * @throws LLSDException if the patch is malformed, does not fit the
+     * tree, or the tree cannot be modified, as with frozen content; use
+     * {@link #applyCopy(Object)} for that.
+     */
+    public Object apply(final Object target) throws LLSDException {
+        return applyPatch(target, content, false);
+    }
+
+    /**
+     * Applies the patch to a copy of the given tree, which is not changed.
+     * Only the maps and lists on the path to each change are copied; the
+     * rest are shared with the given tree.
+     *
+     * @return the patched tree.
+     * @throws LLSDException if the patch is malformed or does not fit the
+     * tree.
+     */
+    public Object applyCopy(final Object target) throws LLSDException {
+        return applyPatch(target, content, true);
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        return other instanceof LLSDPatch && content.equals(((LLSDPatch) other).content);
+    }
+
+    @Override
+    public int hashCode() {
+        return content.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return new LLSD(content).toString();
+    }
+
+    /**
+     * @return the patch turning one value into another, or null if they are
+     * equal.
+     */
+    private static Map<String, Object> diffValue(final Object from, final Object to) {
+        if (from == to) {
+            return null;
+        } else if (from instanceof Map && to instanceof Map) {
+            return diffMap((Map<?, ?>) from, (Map<?, ?>) to);
+        } else if (from instanceof List && to instanceof List) {
+            return diffList((List<?>) from, (List<?>) to);
+        } else if (isEqualScalar(from, to)) {
+            return null;
+        }
+        return replace(to);
+    }
+
+    private static Map<String, Object> diffMap(final Map<?, ?> from, final Map<?, ?> to) {
+        final Map<String, Object> changes = new LinkedHashMap<String, Object>();
+        final List<Object> removed = new ArrayList<Object>();
+        final Map<String, Object> patch = new LinkedHashMap<String, Object>();
+        int replaced = 0;
+
+        for (Map.Entry<?, ?> entry: to.entrySet()) {
+            final Object old = from.get(entry.getKey());
+            final Map<String, Object> change = null == old && !from.containsKey(entry.getKey())
+                ? replace(entry.getValue())
+                : diffValue(old, entry.getValue());
+
+            if (null != change) {
+                changes.put((String) entry.getKey(), change);
+                if (change.containsKey(VALUE)) {
+                    replaced++;
+                }
+            }
+        }
+        if (from.size() + changes.size() > to.size()) {
+            for (Object key: from.keySet()) {
+                if (!to.containsKey(key)) {
+                    removed.add(key);
+                }
+            }
+        }
+
+        if (changes.isEmpty() && removed.isEmpty()) {
+            return null;
+        } else if (replaced == to.size()) {
+            // Every entry is replaced, so the new map is no larger.
+            return replace(to);
+        }
+        if (!changes.isEmpty()) {
+            patch.put(MAP, changes);
+        }
+        if (!removed.isEmpty()) {
+            patch.put(DELETE, removed);
+        }
+        return patch;
+    }
+
+    private static Map<String, Object> diffList(final List<?> from, final List<?> to) {
+        final int fromSize = from.size();
+        final int toSize = to.size();
+        final Map<String, Object> changes = new LinkedHashMap<String, Object>();
+        final Map<String, Object> patch = new LinkedHashMap<String, Object>();
+        final int paired;
+        int replaced = 0;
+        int start = 0;
+        int fromEnd = fromSize;
+        int toEnd = toSize;
+
+        // Equal items are trimmed from each end with a plain comparison, so
+        // that each item left is only diffed once below.
+        while (start < fromEnd && start < toEnd && isEqual(from.get(start), to.get(start))) {
+            start++;
+        }
+        while (fromEnd > start && toEnd > start && isEqual(from.get(fromEnd - 1), to.get(toEnd - 1))) {
+            fromEnd--;
+            toEnd--;
+        }
+        if (start == fromEnd && start == toEnd) {
+            return null;
+        }
+
+        // Items left in the middle are compared by index, and those of the
+        // longer side beyond the shorter spliced in or out after them.
+        paired = Math.min(fromEnd, toEnd) - start;
+        for (int i = start; i < start + paired; i++) {
+            final Map<String, Object> change = diffValue(from.get(i), to.get(i));
+
+            if (null != change) {
+                changes.put(Integer.toString(i), change);
+                if (change.containsKey(VALUE)) {
+                    replaced++;
+                }
+            }
+        }
+        if (replaced + Math.max(toEnd - fromEnd, 0) == toSize) {
+            return replace(to);
+        }
+        if (!changes.isEmpty()) {
+            patch.put(INDEX, changes);
+        }
+        if (fromEnd - start != toEnd - start) {
+            patch.put(SPLICE, Arrays.asList((Object) (start + paired), fromEnd - start - paired,
+                new ArrayList<Object>(to.subList(start + paired, toEnd))));
+        }
+        return patch;
+    }
+
+    private static Map<String, Object> replace(final Object value) {
+        return Collections.singletonMap(VALUE, value);
+    }
+
+    /**
+     * @return true if the two values are equal, as {@link #diffValue} would
+     * find them, without building any patch.
+     */
+    private static boolean isEqual(final Object from, final Object to) {
+        if (from == to) {
+            return true;
+        } else if (from instanceof Map && to instanceof Map) {
+            final Map<?, ?> fromMap = (Map<?, ?>) from;
+            final Map<?, ?> toMap = (Map<?, ?>) to;
+
+            if (fromMap.size() != toMap.size()) {
+                return false;
+            }
+            for (Map.Entry<?, ?> entry: toMap.entrySet()) {
+                final Object old = fromMap.get(entry.getKey());
+
+                if ((null == old && !fromMap.containsKey(entry.getKey())) || !isEqual(old, entry.getValue())) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (from instanceof List && to instanceof List) {
+            final List<?> fromList = (List<?>) from;
+            final List<?> toList = (List<?>) to;
+
+            if (fromList.size() != toList.size()) {
+                return false;
+            }
+            for (int i = 0; i < fromList.size(); i++) {
+                if (!isEqual(fromList.get(i), toList.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return isEqualScalar(from, to);
+    }
+
+    private static boolean isEqualScalar(final Object from, final Object to) {
+        if (from instanceof byte[] && to instanceof byte[]) {
+            return Arrays.equals((byte[]) from, (byte[]) to);
+        }
+        return null != from && from.equals(to);
+    }
+
+    private static Object applyPatch(final Object target, final Map<String, Object> patch, final boolean copy)
+        throws LLSDException {
+        if (patch.containsKey(VALUE)) {
+            return patch.get(VALUE);
+        } else if (patch.containsKey(MAP) || patch.containsKey(DELETE)) {
+            return applyMap(target, patch, copy);
+        } else if (patch.containsKey(INDEX) || patch.containsKey(SPLICE)) {
+            return applyList(target, patch, copy);
+        } else if (!patch.isEmpty()) {
+            throw new LLSDException("Malformed patch, unknown operation " + patch.keySet() + ".");
+        }
+        return target;
+    }
+
+    private static Object applyMap(final Object target, final Map<String, Object> patch, final boolean copy)
+        throws LLSDException {
+        final Map<String, Object> map;
+
+        if (!(target instanceof Map)) {
+            throw new LLSDException("Unable to apply a map patch to " + describe(target) + ".");
+        }
+        map = copy
+            ? new LinkedHashMap<String, Object>(contentMap(target))
+            : contentMap(target);
+
+        try {
+            if (patch.containsKey(MAP)) {
+                for (Map.Entry<String, Object> change: patchMap(patch.get(MAP)).entrySet()) {
+                    final Map<String, Object> entryPatch = patchMap(change.getValue());
+                    final Object old = map.get(change.getKey());
+                    final Object value;
+
+                    if (!entryPatch.containsKey(VALUE) && null == old) {
+                        throw new LLSDException("Unable to apply a patch to missing key " + change.getKey() + ".");
+                    }
+                    value = applyPatch(old, entryPatch, copy);
+                    if (value != old || copy) {
+                        map.put(change.getKey(), value);
+                    }
+                }
+            }
+            if (patch.containsKey(DELETE)) {
+                for (Object key: patchList(patch.get(DELETE))) {
+                    map.remove(key);
+                }
+            }
+        } catch(UnsupportedOperationException e) {
+            throw new LLSDException("Unable to modify a map in place, apply a copy instead.", e);
+        }
+        return map;
+    }
+
+    private static Object applyList(final Object target, final Map<String, Object> patch, final boolean copy)
+        throws LLSDException {
+        final List<Object> list;
+
+        if (!(target instanceof List)) {
+            throw new LLSDException("Unable to apply an array patch to " + describe(target) + ".");
+        }
+        list = copy
+            ? new ArrayList<Object>(contentList(target))
+            : contentList(target);
+
+        try {
+            if (patch.containsKey(INDEX)) {
+                for (Map.Entry<String, Object> change: patchMap(patch.get(INDEX)).entrySet()) {
+                    final int index = index(change.getKey(), list.size());
+                    final Object old = list.get(index);
+                    final Object value = applyPatch(old, patchMap(change.getValue()), copy);
+
+                    if (value != old || copy) {
+                        list.set(index, value);
+                    }
+                }
+            }
+            if (patch.containsKey(SPLICE)) {
+                final List<Object> splice = patchList(patch.get(SPLICE));
+                final int start;
+                final int count;
+
+                if (splice.size() != 3 || !(splice.get(0) instanceof Integer) || !(splice.get(1) instanceof Integer)) {
+                    throw new LLSDException("Malformed patch, a splice is an index, a count and an array.");
+                }
+                start = (Integer) splice.get(0);
+                count = (Integer) splice.get(1);
+                if (start < 0 || count < 0 || start + count > list.size()) {
+                    throw new LLSDException("Unable to splice " + count + " items at " + start
+                        + " of an array of " + list.size() + ".");
+                }
+                list.subList(start, start + count).clear();
+                list.addAll(start, patchList(splice.get(2)));
+            }
+        } catch(UnsupportedOperationException e) {
+            throw new LLSDException("Unable to modify an array in place, apply a copy instead.", e);
+        }
+        return list;
+    }
+
+    private static int index(final String key, final int size) throws LLSDException {
+        final int index;
+
+        try {
+            index = Integer.parseInt(key);
+        } catch(NumberFormatException e) {
+            throw new LLSDException("Malformed patch, array index " + key + " is not a number.", e);
+        }
+        if (index < 0 || index >= size) {
+            throw new LLSDException("Unable to patch index " + index + " of an array of " + size + ".");
+        }
+        return index;
+    }
+
+    private static Map<String, Object> patchMap(final Object value) throws LLSDException {
+        if (!(value instanceof Map)) {
+            throw new LLSDException("Malformed patch, expected a map but found " + describe(value) + ".");
+        }
+        return contentMap(value);
+    }
+
+    private static List<Object> patchList(final Object value) throws LLSDException {
+        if (!(value instanceof List)) {
+            throw new LLSDException("Malformed patch, expected an array but found " + describe(value) + ".");
+        }
+        return contentList(value);
+    }
+
+    /**
+     * LLSD maps always have string keys, so content maps and patches are
+     * used as maps of strings to values.
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> contentMap(final Object value) {
+        return (Map<String, Object>) value;
+    }
+
+    /**
+     * LLSD arrays hold any values, so content lists and patches are used as
+     * lists of objects.
+     */
+    @SuppressWarnings("unchecked")
+    private static List<Object> contentList(final Object value) {
+        return (List<Object>) value;
+    }
+
+    private static String describe(final Object value) {
+        return null == value
+            ? "nothing"
+            : value.getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Gives the map key a property is read from and written to by
+ * {@link LLSDMapper}, where it differs from the property name, for example
+ * "region_id" or "sim fps". Place it on a bean's getter, setter or field,
+ * or on a record component.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.METHOD})
+public @interface LLSDProperty {
+    /**
+     * @return the map key.
+     */
+    String value();
+}
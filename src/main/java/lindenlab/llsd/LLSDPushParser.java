@@ -0,0 +1,157 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Parses an LLSD XML document which arrives in pieces, for non-blocking
+ * servers which are handed a request body a chunk at a time. Chunks are
+ * copied as they arrive, without blocking or parsing; once the last has
+ * been given, the document is parsed as {@link LLSDParser#parse(ByteBuffer)}
+ * does and the result completes {@link #result()}.
+ *
+ * <pre>
+ * LLSDPushParser body = new LLSDPushParser(parser, workers);
+ * // for each chunk as it is received:
+ * body.accept(chunk);
+ * // at the end of the body:
+ * body.complete();
+ * body.result().thenAccept(llsd -&gt; ...);
+ * </pre>
+ *
+ * The parser's document size limit is checked as each chunk arrives. Once
+ * it is exceeded, the result fails with
+ * {@link LLSDLimitException.DocumentSize} at once, and the rest of the
+ * document is discarded as it arrives rather than buffered.
+ *
+ * Without an executor the document is parsed on the thread which calls
+ * {@link #complete()}. Parsing takes time in proportion to the document, so
+ * give an executor to keep it off an event loop thread. The methods which
+ * feed the parser should be called by one thread at a time, as a connection
+ * normally is.
+ */
+public class LLSDPushParser {
+    private final LLSDParser parser;
+    private final Executor executor;
+    private final CompletableFuture<LLSD> result = new CompletableFuture<LLSD>();
+
+    private LLSDOutputBuffer body = LLSDOutputBuffer.growable(LLSDOutputBuffer.STREAM_BUFFER_SIZE);
+
+    /**
+     * True once the document has exceeded the size limit, after which
+     * chunks are discarded.
+     */
+    private boolean isTooLarge = false;
+
+    /**
+     * Parses on the thread which calls {@link #complete()}.
+     */
+    public      LLSDPushParser(final LLSDParser parser) {
+        this(parser, null);
+    }
+
+    /**
+     * Parses on the given executor.
+     */
+    public      LLSDPushParser(final LLSDParser parser, final Executor executor) {
+        this.parser = parser;
+        this.executor = executor;
+    }
+
+    /**
+     * Adds the remaining bytes of the given chunk to the document. The
+     * chunk is copied, and its position moved to its limit, so the caller
+     * may reuse it as soon as this returns. If the document is now larger
+     * than the parser's limit, the result fails and this and later chunks
+     * are discarded.
+     *
+     * @throws IllegalStateException if the document has already been
+     * completed or has failed.
+     */
+    public void accept(final ByteBuffer chunk) {
+        if (isTooLarge) {
+            chunk.position(chunk.limit());
+            return;
+        } else if (null == body) {
+            throw new IllegalStateException("The document has already been completed.");
+        }
+        try {
+            parser.getLimits().checkDocument((long) body.size() + chunk.remaining());
+            body.write(chunk);
+        } catch(LLSDLimitException e) {
+            isTooLarge = true;
+            fail(e);
+        } catch(IOException e) {
+            // Only possible when writing to a stream.
+            throw new IllegalStateException(e);
+        }
+        chunk.position(chunk.limit());
+    }
+
+    /**
+     * Marks the end of the document, and parses it.
+     *
+     * @return the result, as for {@link #result()}.
+     */
+    public CompletableFuture<LLSD> complete() {
+        final ByteBuffer document;
+
+        if (isTooLarge) {
+            return result;
+        } else if (null == body) {
+            throw new IllegalStateException("The document has already been completed.");
+        }
+        document = body.toBuffer();
+        body = null;
+
+        if (null == executor) {
+            parse(document);
+        } else {
+            try {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        parse(document);
+                    }
+                });
+            } catch(RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Abandons the document, for example when the connection is lost, and
+     * completes the result with the given exception. The bytes received are
+     * discarded.
+     */
+    public void fail(final Throwable cause) {
+        body = null;
+        result.completeExceptionally(cause);
+    }
+
+    /**
+     * @return the parsed document. It completes exceptionally with the
+     * parser's {@link LLSDException}, SAXException or IOException if the
+     * document is invalid, or with the cause given to {@link #fail(Throwable)}.
+     */
+    public CompletableFuture<LLSD> result() {
+        return result;
+    }
+
+    private void parse(final ByteBuffer document) {
+        try {
+            result.complete(parser.parse(document));
+        } catch(Exception e) {
+            result.completeExceptionally(e);
+        }
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Pull-style reader over an LLSD document. Each call to {@link #next()}
+ * advances to the next token; the accessors then describe the current
+ * token. Only the current token is held in memory, so arbitrarily large
+ * documents can be processed as long as the caller does not keep values.
+ *
+ * Scalar values are converted on demand by the accessors, using the same
+ * conversions as {@link LLSDParser}, so values which are skipped are never
+ * converted. Conversion errors are therefore reported by the accessor rather
+ * than by {@link #next()}.
+ */
+public interface LLSDReader extends Closeable {
+    /**
+     * Advances to the next token in the document.
+     *
+     * @return the new current token. Once the end of the document is
+     * reached, {@link LLSDToken#END_DOCUMENT} is returned on every call.
+     * @throws IOException if there was a problem reading the underlying
+     * input.
+     * @throws LLSDException if the document is malformed.
+     */
+    LLSDToken next() throws IOException, LLSDException;
+
+    /**
+     * @return the current token, or null if {@link #next()} has not been
+     * called yet.
+     */
+    LLSDToken getToken();
+
+    /**
+     * @return the map key, if the current token is {@link LLSDToken#KEY}.
+     */
+    String getKey() throws LLSDException;
+
+    /**
+     * @return true if the current token is a scalar type holding an
+     * undefined value, for example &lt;integer&gt;&lt;undef /&gt;&lt;/integer&gt;.
+     */
+    boolean isUndefined();
+
+    boolean getBoolean() throws LLSDException;
+
+    int getInteger() throws LLSDException;
+
+    double getReal() throws LLSDException;
+
+    String getString() throws LLSDException;
+
+    UUID getUUID() throws LLSDException;
+
+    Date getDate() throws LLSDException;
+
+    URI getURI() throws LLSDException;
+
+    byte[] getBinary() throws LLSDException;
+
+    /**
+     * Writes the current binary value to the given stream. The XML reader
+     * decodes the value as it reads the document, so that it is never held
+     * whole, after which it cannot be read again; other readers write the
+     * value they already hold.
+     *
+     * @return the number of bytes written.
+     */
+    default long getBinary(final OutputStream destination) throws IOException, LLSDException {
+        final byte[] value = getBinary();
+
+        destination.write(value);
+        return value.length;
+    }
+
+    /**
+     * Writes the current binary value into the given buffer, from its
+     * position, as {@link #getBinary(OutputStream)} does.
+     *
+     * @return the number of bytes written.
+     * @throws java.nio.BufferOverflowException if the value does not fit.
+     */
+    default int getBinary(final ByteBuffer destination) throws IOException, LLSDException {
+        final byte[] value = getBinary();
+
+        destination.put(value);
+        return value.length;
+    }
+
+    /**
+     * Returns the current scalar value as the same object
+     * {@link LLSD#getContent()} would hold for it, including the
+     * {@link LLSDUndefined} values and "" for a bare &lt;undef /&gt;.
+     */
+    Object getValue() throws LLSDException;
+
+    /**
+     * Reads a whole document from the start, as the parsers do.
+     *
+     * @return the document, with null content if it is empty.
+     */
+    default LLSD readDocument() throws IOException, LLSDException {
+        final Object llsdContents;
+
+        if (next() == LLSDToken.END_DOCUMENT) {
+            // XXX: Warn?
+            return new LLSD(null);
+        }
+
+        llsdContents = readValue();
+        next();
+
+        return new LLSD(llsdContents);
+    }
+
+    /**
+     * Materialises the current value, including the whole of a map or array
+     * if positioned on its start token, leaving the reader on the last token
+     * of the value.
+     *
+     * @return the value as {@link LLSD#getContent()} would hold it.
+     */
+    default Object readValue() throws IOException, LLSDException {
+        switch (getToken()) {
+        case START_MAP:
+            final Map<String, Object> valueMap = new HashMap<String, Object>();
+
+            while (next() != LLSDToken.END_MAP) {
+                final String key = getKey();
+
+                next();
+                valueMap.put(key, readValue());
+            }
+            return valueMap;
+        case START_ARRAY:
+            final List<Object> value = new ArrayList<Object>();
+
+            while (next() != LLSDToken.END_ARRAY) {
+                value.add(readValue());
+            }
+            return value;
+        default:
+            return getValue();
+        }
+    }
+
+    /**
+     * Reads a whole document from the start as a typed tree.
+     *
+     * @return the root value, or null if the document is empty.
+     */
+    default LLSDValue readDocumentTree() throws IOException, LLSDException {
+        final LLSDValue root;
+
+        if (next() == LLSDToken.END_DOCUMENT) {
+            return null;
+        }
+
+        root = readTree();
+        next();
+
+        return root;
+    }
+
+    /**
+     * Materialises the current value as a typed tree, as
+     * {@link #readValue()} does for the Object form. Integers and reals are
+     * read without boxing, and arrays holding only one of them are built as
+     * primitive arrays.
+     */
+    default LLSDValue readTree() throws IOException, LLSDException {
+        final LLSDToken token = getToken();
+
+        switch (token) {
+        case START_MAP:
+            final LLSDMap map = new LLSDMap();
+
+            while (next() != LLSDToken.END_MAP) {
+                final String key = getKey();
+
+                next();
+                map.put(key, readTree());
+            }
+            return map;
+        case START_ARRAY:
+            final LLSDArrayBuilder builder = new LLSDArrayBuilder();
+
+            while (next() != LLSDToken.END_ARRAY) {
+                if (getToken() == LLSDToken.INTEGER && !isUndefined()) {
+                    builder.addInteger(getInteger());
+                } else if (getToken() == LLSDToken.REAL && !isUndefined()) {
+                    builder.addReal(getReal());
+                } else {
+                    builder.add(readTree());
+                }
+            }
+            return builder.build();
+        case UNDEF:
+            return LLSDUndef.UNDEF;
+        default:
+            break;
+        }
+
+        if (!token.isScalar()) {
+            throw new LLSDException("Current token " + token + " is not the start of a value.");
+        }
+        if (isUndefined()) {
+            return LLSDUndef.valueOf(LLSDUndefined.valueOf(token.name()));
+        }
+
+        switch (token) {
+        case BOOLEAN:
+            return LLSDBoolean.valueOf(getBoolean());
+        case INTEGER:
+            return LLSDInteger.valueOf(getInteger());
+        case REAL:
+            return new LLSDReal(getReal());
+        case STRING:
+            return new LLSDString(getString());
+        case UUID:
+            return new LLSDUUID(getUUID());
+        case DATE:
+            return new LLSDDate(getDate());
+        case URI:
+            return new LLSDURI(getURI());
+        default:
+            return new LLSDBinary(getBinary());
+        }
+    }
+
+    /**
+     * Skips the current value, leaving the reader on its last token. For a
+     * scalar this does nothing; for a map or array the reader is moved to the
+     * matching end token without converting anything within it.
+     */
+    default void skipValue() throws IOException, LLSDException {
+        int depth = 0;
+
+        while (true) {
+            switch (getToken()) {
+            case START_MAP:
+            case START_ARRAY:
+                depth++;
+                break;
+            case END_MAP:
+            case END_ARRAY:
+                depth--;
+                break;
+            case END_DOCUMENT:
+                throw new LLSDException("Unexpected end of document while skipping value.");
+            default:
+                break;
+            }
+
+            if (depth == 0) {
+                return;
+            }
+            next();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+/**
+ * An LLSD real, held as a primitive double. Equality follows
+ * {@link Double#equals(Object)}, so NaN equals NaN.
+ */
+public final class LLSDReal extends LLSDValue {
+    private final double value;
+
+    public      LLSDReal(final double value) {
+        this.value = value;
+    }
+
+    public LLSDType getType() {
+        return LLSDType.REAL;
+    }
+
+    public double asReal() {
+        return value;
+    }
+
+    public Object toObject() {
+        return Double.valueOf(value);
+    }
+
+    public boolean equals(final Object other) {
+        return other instanceof LLSDReal
+            && Double.doubleToLongBits(((LLSDReal) other).value) == Double.doubleToLongBits(value);
+    }
+
+    public int hashCode() {
+        return Double.hashCode(value);
+    }
+
+    public String toString() {
+        return Double.toString(value);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+import java.util.Arrays;
+
+/**
+ * An LLSD array of defined reals, stored in a primitive double[].
+ */
+public final class LLSDRealArray extends LLSDArray {
+    private double[] values;
+    private int size;
+
+    public      LLSDRealArray() {
+        this.values = new double[8];
+    }
+
+    /**
+     * Creates an array holding a copy of the given values.
+     */
+    public      LLSDRealArray(final double[] values) {
+        this.values = values.clone();
+        this.size = values.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public LLSDValue get(final int index) {
+        checkIndex(index);
+        return new LLSDReal(values[index]);
+    }
+
+    public double getReal(final int index) {
+        checkIndex(index);
+        return values[index];
+    }
+
+    public void add(final double value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, Math.max(8, size * 2));
+        }
+        values[size++] = value;
+    }
+
+    /**
+     * @return a copy of the values.
+     */
+    public double[] toRealArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    public boolean equals(final Object object) {
+        final LLSDRealArray other;
+
+        if (!(object instanceof LLSDRealArray)) {
+            return super.equals(object);
+        }
+
+        other = (LLSDRealArray) object;
+        if (other.size != size) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (Double.doubleToLongBits(other.values[i]) != Double.doubleToLongBits(values[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int hashCode() {
+        int hash = 1;
+
+        for (int i = 0; i < size; i++) {
+            hash = 31 * hash + Double.hashCode(values[i]);
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,408 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+
+/**
+ * Formats reals for LLSD XML exactly as <code>new DecimalFormat("#0.0#")</code>
+ * does in an English locale: the exact binary value rounded half-even to at
+ * most two decimal places, with at least one. Unlike DecimalFormat this is
+ * thread-safe, and the common case allocates nothing.
+ */
+final class LLSDRealFormat {
+    /**
+     * Size of the buffer needed by {@link #formatFast(double, byte[])}.
+     */
+    static final int MAX_FAST_LENGTH = 24;
+
+    /**
+     * Largest magnitude handled by the fast path, chosen so that the value
+     * scaled by 100 is still accurate to well under one unit.
+     */
+    private static final double FAST_LIMIT = 1e13;
+
+    private static final BigDecimal HALF_HUNDREDTH = new BigDecimal("0.005");
+    private static final BigDecimal HALF = new BigDecimal("0.5");
+
+    /**
+     * Powers of ten which are exact as doubles.
+     */
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private static final long[] FIVES = new long[POWERS_OF_TEN.length];
+
+    static {
+        FIVES[0] = 1;
+        for (int i = 1; i < FIVES.length; i++) {
+            FIVES[i] = FIVES[i - 1] * 5;
+        }
+    }
+
+    /**
+     * Largest integer below which all integers are exact as doubles.
+     */
+    private static final double EXACT_INTEGERS = 9007199254740992.0;
+
+    private LLSDRealFormat() {
+    }
+
+    /**
+     * Formats a real into the given buffer, if that can be done without
+     * exact decimal arithmetic.
+     *
+     * @param dest buffer of at least {@link #MAX_FAST_LENGTH} bytes.
+     * @return the number of ASCII bytes written, or -1 if the value must be
+     * formatted with {@link #format(double)} instead.
+     */
+    static int formatFast(final double value, final byte[] dest) {
+        final double magnitude = Math.abs(value);
+        final double scaled;
+        final double floor;
+        final double fraction;
+        long hundredths;
+        int position = 0;
+
+        if (!(magnitude < FAST_LIMIT)) {
+            return -1;
+        }
+
+        scaled = magnitude * 100.0;
+        floor = Math.floor(scaled);
+        fraction = scaled - floor;
+        if (Math.abs(fraction - 0.5) <= Math.ulp(scaled)) {
+            // Too close to call; the rounding depends on the exact value.
+            return -1;
+        }
+
+        hundredths = (long) floor;
+        if (fraction > 0.5) {
+            hundredths++;
+        }
+
+        if (value < 0 || (value == 0 && 1 / value < 0)) {
+            dest[position++] = '-';
+        }
+        position = writeDigits(hundredths / 100, dest, position);
+        dest[position++] = '.';
+        dest[position++] = (byte) ('0' + (hundredths % 100) / 10);
+        if ((hundredths % 10) != 0) {
+            dest[position++] = (byte) ('0' + hundredths % 10);
+        }
+
+        return position;
+    }
+
+    /**
+     * Formats any real, including those {@link #formatFast(double, byte[])}
+     * declines. As in DecimalFormat, the digits are those of
+     * {@link Double#toString(double)}; the exact binary value only decides
+     * ties. Infinities come out as DecimalFormat writes them.
+     */
+    static String format(final double value) {
+        final boolean negative = value < 0 || (value == 0 && 1 / value < 0);
+        final String digits;
+
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+
+        if (Double.isInfinite(value)) {
+            digits = "\u221E";
+        } else {
+            final double magnitude = Math.abs(value);
+            BigDecimal decimal = new BigDecimal(Double.toString(magnitude));
+
+            if (decimal.scale() > 2) {
+                final BigDecimal tie = decimal.setScale(2, RoundingMode.DOWN)
+                    .add(HALF_HUNDREDTH);
+
+                decimal = decimal.compareTo(tie) == 0
+                    ? new BigDecimal(magnitude).setScale(2, RoundingMode.HALF_EVEN)
+                    : decimal.setScale(2, RoundingMode.HALF_EVEN);
+            } else if (decimal.scale() < 1) {
+                decimal = decimal.setScale(1);
+            }
+
+            final String rounded = decimal.toPlainString();
+
+            digits = decimal.scale() == 2 && rounded.endsWith("0")
+                ? rounded.substring(0, rounded.length() - 1)
+                : rounded;
+        }
+
+        return negative
+            ? "-" + digits
+            : digits;
+    }
+
+    /**
+     * Formats a real for the canonical form, losslessly: the value rounded
+     * to nearest at the fewest significant digits which read back as the
+     * same value. This is decided with exact arithmetic, so unlike
+     * {@link Double#toString(double)} it does not vary between JDKs.
+     * Magnitudes from 1e-7 up to 1e21 are written in plain notation, others
+     * with an exponent. Negative zero is written as zero, and the special
+     * values as nan, inf and -inf.
+     */
+    static String formatCanonical(final double value) {
+        final BigDecimal shortest;
+        final int exponent;
+
+        if (Double.isNaN(value)) {
+            return "nan";
+        } else if (Double.isInfinite(value)) {
+            return value > 0 ? "inf" : "-inf";
+        } else if (value == 0) {
+            return "0.0";
+        } else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value) + ".0";
+        }
+
+        if (Math.abs(value) >= 1e-7 && Math.abs(value) < 1e15) {
+            final String text = formatCanonicalFast(value);
+
+            if (null != text) {
+                return text;
+            }
+        }
+
+        shortest = shortestDecimal(value).stripTrailingZeros();
+
+        exponent = shortest.precision() - shortest.scale() - 1;
+        if (exponent >= -7 && exponent < 21) {
+            final String plain = shortest.toPlainString();
+
+            return plain.indexOf('.') < 0
+                ? plain + ".0"
+                : plain;
+        } else {
+            final String digits = shortest.unscaledValue().abs().toString();
+            final StringBuilder text = new StringBuilder(digits.length() + 8);
+
+            if (value < 0) {
+                text.append('-');
+            }
+            text.append(digits.charAt(0)).append('.');
+            if (digits.length() > 1) {
+                text.append(digits, 1, digits.length());
+            } else {
+                text.append('0');
+            }
+            return text.append('e').append(exponent).toString();
+        }
+    }
+
+    /**
+     * @return the value rounded to nearest at the fewest significant digits
+     * which read back as the value.
+     */
+    private static BigDecimal shortestDecimal(final double value) {
+        final BigDecimal exact = new BigDecimal(value);
+        final long bits = Double.doubleToRawLongBits(value);
+        final BigDecimal lower;
+        final BigDecimal upper;
+        final boolean even;
+        BigDecimal shortest;
+        int digits;
+
+        if ((bits & 0x000fffffffffffffL) == 0 || Math.abs(value) == Double.MAX_VALUE) {
+            // Powers of two are closer to their lower neighbour than their
+            // upper one, so a shorter decimal may read back when a longer
+            // one does not; try every length.
+            for (digits = 1; digits < 17; digits++) {
+                shortest = exact.round(new MathContext(digits, RoundingMode.HALF_EVEN));
+                if (shortest.doubleValue() == value) {
+                    return shortest;
+                }
+            }
+            return exact.round(new MathContext(17, RoundingMode.HALF_EVEN));
+        }
+
+        // Otherwise a decimal reads back if it lies within half a unit in
+        // the last place either side, and if the nearest decimal of one
+        // length does so does that of every longer one. Double.toString
+        // reads back, so its length is where to start looking.
+        lower = exact.add(new BigDecimal(Math.nextDown(value))).multiply(HALF);
+        upper = exact.add(new BigDecimal(Math.nextUp(value))).multiply(HALF);
+        even = (bits & 1) == 0;
+        digits = new BigDecimal(Double.toString(value)).stripTrailingZeros().precision();
+        shortest = exact.round(new MathContext(digits, RoundingMode.HALF_EVEN));
+        while (digits > 1) {
+            final BigDecimal shorter = exact.round(new MathContext(digits - 1, RoundingMode.HALF_EVEN));
+            final int below = shorter.compareTo(lower);
+            final int above = shorter.compareTo(upper);
+
+            if (below < 0 || above > 0 || (!even && (below == 0 || above == 0))) {
+                break;
+            }
+            shortest = shorter;
+            digits--;
+        }
+        return shortest;
+    }
+
+    /**
+     * Finds the canonical form of a non-integral real in plain notation,
+     * from the value scaled and rounded exactly in integer arithmetic. Up to
+     * 2^53, the integer and power of ten are exact doubles and division is
+     * correctly rounded, so the quotient equals the value exactly when the
+     * decimal reads back as the value; beyond that, seventeen digits always
+     * do.
+     *
+     * @return the text, or null if the value is too small.
+     */
+    private static String formatCanonicalFast(final double value) {
+        final double magnitude = Math.abs(value);
+        int low = 1;
+        int high = POWERS_OF_TEN.length - 1;
+
+        if ((Double.doubleToRawLongBits(value) & 0x000fffffffffffffL) == 0) {
+            // See shortestDecimal(double): try every length.
+            for (int places = 1; places < POWERS_OF_TEN.length; places++) {
+                if (readsBack(magnitude, places)) {
+                    return plain(value < 0, scaleExact(magnitude, places), places);
+                }
+            }
+            return null;
+        }
+
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+
+            if (readsBack(magnitude, middle)) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        // Only very small values need more places than there are exact
+        // powers of ten.
+        return readsBack(magnitude, low)
+            ? plain(value < 0, scaleExact(magnitude, low), low)
+            : null;
+    }
+
+    /**
+     * @return whether the magnitude rounded to the given number of decimal
+     * places reads back as the magnitude.
+     */
+    private static boolean readsBack(final double magnitude, final int places) {
+        final long rounded = scaleExact(magnitude, places);
+
+        if (rounded < 0 || rounded >= 10000000000000000L) {
+            // Seventeen digits or more.
+            return true;
+        } else if (rounded < EXACT_INTEGERS) {
+            return rounded / POWERS_OF_TEN[places] == magnitude;
+        }
+        return Double.parseDouble(plain(false, rounded, places)) == magnitude;
+    }
+
+    /**
+     * @return the given magnitude times ten to the given power, rounded half
+     * even, or -1 if that is 2^62 or more, and so has at least nineteen
+     * digits.
+     */
+    private static long scaleExact(final double magnitude, final int places) {
+        final long bits = Double.doubleToRawLongBits(magnitude);
+        final int biased = (int) (bits >>> 52) & 0x7ff;
+        final long mantissa = biased == 0
+            ? bits & 0x000fffffffffffffL
+            : (bits & 0x000fffffffffffffL) | 0x0010000000000000L;
+        // The value is mantissa * 2^exponent, so the scaled value is
+        // mantissa * 5^places * 2^(exponent + places).
+        final int shift = 1075 - Math.max(biased, 1) - places;
+        final long five = FIVES[places];
+        final long mantissaHigh = mantissa >>> 32;
+        final long mantissaLow = mantissa & 0xffffffffL;
+        final long fiveHigh = five >>> 32;
+        final long fiveLow = five & 0xffffffffL;
+        final long lowLow = mantissaLow * fiveLow;
+        final long middle = mantissaHigh * fiveLow + mantissaLow * fiveHigh;
+        final long low = lowLow + (middle << 32);
+        final long high = mantissaHigh * fiveHigh + (middle >>> 32)
+            + (Long.compareUnsigned(low, lowLow) < 0 ? 1 : 0);
+        final long quotient;
+        final boolean half;
+        final boolean sticky;
+
+        if (shift <= 0) {
+            if (shift < -62 || high != 0 || low >>> (62 + shift) != 0) {
+                return -1;
+            }
+            return low << -shift;
+        } else if (shift >= 64) {
+            // Only reached for tiny values at few places, which round to zero
+            // or need more places than exact doubles allow.
+            if (shift > 127 || (high >>> (shift - 64)) >= (1L << 62)) {
+                return shift > 127 ? 0 : -1;
+            }
+            quotient = high >>> (shift - 64);
+            half = shift == 64
+                ? low < 0
+                : ((high >>> (shift - 65)) & 1) != 0;
+            sticky = shift == 64
+                ? (low << 1) != 0
+                : low != 0 || (high & ((1L << (shift - 65)) - 1)) != 0;
+        } else {
+            if ((high >>> shift) != 0 || (((high << (64 - shift)) | (low >>> shift)) >>> 62) != 0) {
+                return -1;
+            }
+            quotient = (high << (64 - shift)) | (low >>> shift);
+            half = ((low >>> (shift - 1)) & 1) != 0;
+            sticky = (low & ((1L << (shift - 1)) - 1)) != 0;
+        }
+
+        return half && (sticky || (quotient & 1) != 0)
+            ? quotient + 1
+            : quotient;
+    }
+
+    /**
+     * @return the given number of hundredths, thousandths and so on as a
+     * plain decimal.
+     */
+    private static String plain(final boolean negative, final long scaled, final int places) {
+        final String digits = Long.toString(scaled);
+        final StringBuilder text = new StringBuilder(places + 8);
+
+        if (negative) {
+            text.append('-');
+        }
+        if (digits.length() <= places) {
+            text.append("0.");
+            for (int i = digits.length(); i < places; i++) {
+                text.append('0');
+            }
+            text.append(digits);
+        } else {
+            text.append(digits, 0, digits.length() - places)
+                .append('.')
+                .append(digits, digits.length() - places, digits.length());
+        }
+        return text.toString();
+    }
+
+    private static int writeDigits(long value, final byte[] dest, final int position) {
+        int digits = 1;
+
+        for (long remainder = value; remainder >= 10; remainder /= 10) {
+            digits++;
+        }
+        for (int i = position + digits - 1; i >= position; i--) {
+            dest[i] = (byte) ('0' + (value % 10));
+            value /= 10;
+        }
+        return position + digits;
+    }
+}
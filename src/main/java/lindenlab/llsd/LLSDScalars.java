@@ -0,0 +1,788 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * Conversions from the text content of LLSD scalar elements into their Java
+ * values. Shared between the parser backends so that they all agree on what
+ * a given element means.
+ *
+ * Everything here is immutable, so it may be used from any thread.
+ */
+final class LLSDScalars {
+    /**
+     * Format used when writing dates in XML. Dates are always written in
+     * UTC, so the 'Z' suffix is accurate.
+     */
+    private static final DateTimeFormatter ISO8601_FORMAT =
+        DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss'Z'").withZone(ZoneOffset.UTC);
+
+    /**
+     * Powers of ten which are exactly representable as doubles.
+     */
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     * Value of each Latin-1 hexadecimal digit, or -1.
+     */
+    private static final byte[] HEX_VALUES = new byte[256];
+
+    static {
+        Arrays.fill(HEX_VALUES, (byte) -1);
+        for (int i = 0; i < 10; i++) {
+            HEX_VALUES['0' + i] = (byte) i;
+        }
+        for (int i = 0; i < 6; i++) {
+            HEX_VALUES['a' + i] = (byte) (10 + i);
+            HEX_VALUES['A' + i] = (byte) (10 + i);
+        }
+    }
+
+    private LLSDScalars() {
+    }
+
+    static boolean parseBoolean(final String elementContents)
+        throws LLSDException {
+        return elementContents.equals("1")
+            || elementContents.equalsIgnoreCase("true");
+    }
+
+    /**
+     * Parses an ISO 8601 date in UTC, with optional fractional seconds.
+     */
+    static Date parseDate(final String elementContents)
+        throws LLSDException {
+        return new Date(parseTime(elementContents, 0, elementContents.length()));
+    }
+
+    /**
+     * Parses a date of the form "2006-02-01T14:29:53.43Z", the only form
+     * the LLSD specification allows: UTC, with zero to nine digits of
+     * fractional seconds, which are truncated to milliseconds. Surrounding
+     * XML whitespace is ignored. An empty range is the epoch.
+     *
+     * @return milliseconds since the epoch.
+     */
+    static long parseTime(final CharSequence text, final int start, final int end)
+        throws LLSDException {
+        final int from = skipWhitespace(text, start, end);
+
+        return scanTime(text, from, trimWhitespace(text, from, end));
+    }
+
+    private static long scanTime(final CharSequence text, final int start, final int end)
+        throws LLSDException {
+        final int length = end - start;
+        final int year;
+        final int month;
+        final int day;
+        final int hour;
+        final int minute;
+        final int second;
+        int millis = 0;
+
+        if (length == 0) {
+            return 0L;
+        }
+        if (length < 20 || text.charAt(start + 4) != '-' || text.charAt(start + 7) != '-'
+            || text.charAt(start + 10) != 'T' || text.charAt(start + 13) != ':'
+            || text.charAt(start + 16) != ':' || text.charAt(end - 1) != 'Z') {
+            throw invalid("date", text, start, end);
+        }
+
+        year = digits(text, start, 4);
+        month = digits(text, start + 5, 2);
+        day = digits(text, start + 8, 2);
+        hour = digits(text, start + 11, 2);
+        minute = digits(text, start + 14, 2);
+        second = digits(text, start + 17, 2);
+
+        if (length > 20) {
+            final int fractionDigits = length - 21;
+
+            if (text.charAt(start + 19) != '.' || fractionDigits < 1 || fractionDigits > 9) {
+                throw invalid("date", text, start, end);
+            }
+            for (int i = 0; i < fractionDigits; i++) {
+                final int digit = digit(text.charAt(start + 20 + i));
+
+                if (digit < 0) {
+                    throw invalid("date", text, start, end);
+                }
+                if (i < 3) {
+                    millis = millis * 10 + digit;
+                }
+            }
+            for (int i = fractionDigits; i < 3; i++) {
+                millis *= 10;
+            }
+        }
+
+        if (!isValidTime(year, month, day, hour, minute, second)) {
+            throw invalid("date", text, start, end);
+        }
+        return toTime(year, month, day, hour, minute, second, millis);
+    }
+
+    static long parseTime(final byte[] text, final int start, final int end)
+        throws LLSDException {
+        final int from = skipWhitespace(text, start, end);
+
+        return scanTime(text, from, trimWhitespace(text, from, end));
+    }
+
+    private static long scanTime(final byte[] text, final int start, final int end)
+        throws LLSDException {
+        final int length = end - start;
+        final int year;
+        final int month;
+        final int day;
+        final int hour;
+        final int minute;
+        final int second;
+        int millis = 0;
+
+        if (length == 0) {
+            return 0L;
+        }
+        if (length < 20 || text[start + 4] != '-' || text[start + 7] != '-'
+            || text[start + 10] != 'T' || text[start + 13] != ':'
+            || text[start + 16] != ':' || text[end - 1] != 'Z') {
+            throw invalid("date", text, start, end);
+        }
+
+        year = digits(text, start, 4);
+        month = digits(text, start + 5, 2);
+        day = digits(text, start + 8, 2);
+        hour = digits(text, start + 11, 2);
+        minute = digits(text, start + 14, 2);
+        second = digits(text, start + 17, 2);
+
+        if (length > 20) {
+            final int fractionDigits = length - 21;
+
+            if (text[start + 19] != '.' || fractionDigits < 1 || fractionDigits > 9) {
+                throw invalid("date", text, start, end);
+            }
+            for (int i = 0; i < fractionDigits; i++) {
+                final int digit = digit(text[start + 20 + i]);
+
+                if (digit < 0) {
+                    throw invalid("date", text, start, end);
+                }
+                if (i < 3) {
+                    millis = millis * 10 + digit;
+                }
+            }
+            for (int i = fractionDigits; i < 3; i++) {
+                millis *= 10;
+            }
+        }
+
+        if (!isValidTime(year, month, day, hour, minute, second)) {
+            throw invalid("date", text, start, end);
+        }
+        return toTime(year, month, day, hour, minute, second, millis);
+    }
+
+    /**
+     * @return true if the fields of a date are in range. Seconds may be 60
+     * only for a leap second, at 23:59.
+     */
+    private static boolean isValidTime(final int year, final int month, final int day,
+        final int hour, final int minute, final int second) {
+        return year >= 0 && month >= 1 && month <= 12 && day >= 1 && day <= daysInMonth(year, month)
+            && hour >= 0 && hour <= 23 && minute >= 0 && minute <= 59
+            && second >= 0 && (second <= 59 || (second == 60 && hour == 23 && minute == 59));
+    }
+
+    /**
+     * @return milliseconds since the epoch. A leap second is read as
+     * 23:59:59, as Instant.parse does.
+     */
+    private static long toTime(final int year, final int month, final int day,
+        final int hour, final int minute, final int second, final int millis) {
+        return ((daysFromCivil(year, month, day) * 24L + hour) * 60L + minute) * 60000L
+            + Math.min(second, 59) * 1000L + millis;
+    }
+
+    private static int daysInMonth(final int year, final int month) {
+        switch (month) {
+        case 2:
+            return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+        case 4:
+        case 6:
+        case 9:
+        case 11:
+            return 30;
+        default:
+            return 31;
+        }
+    }
+
+    /**
+     * @return days since 1970-01-01 in the proleptic Gregorian calendar.
+     */
+    private static long daysFromCivil(final int year, final int month, final int day) {
+        final int shiftedYear = month <= 2 ? year - 1 : year;
+        final int era = (shiftedYear >= 0 ? shiftedYear : shiftedYear - 399) / 400;
+        final int yearOfEra = shiftedYear - era * 400;
+        final int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        final int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+
+        return era * 146097L + dayOfEra - 719468L;
+    }
+
+    /**
+     * @return the value of a run of decimal digits, or -1 if any is not one.
+     */
+    private static int digits(final CharSequence text, final int start, final int count) {
+        int value = 0;
+
+        for (int i = start; i < start + count; i++) {
+            final int digit = digit(text.charAt(i));
+
+            if (digit < 0) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static int digits(final byte[] text, final int start, final int count) {
+        int value = 0;
+
+        for (int i = start; i < start + count; i++) {
+            final int digit = digit(text[i]);
+
+            if (digit < 0) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static int digit(final int character) {
+        return character >= '0' && character <= '9'
+            ? character - '0'
+            : -1;
+    }
+
+    static String formatDate(final Date value) {
+        return ISO8601_FORMAT.format(value.toInstant());
+    }
+
+    static int parseInteger(final String elementContents)
+        throws LLSDException {
+        return parseInteger(elementContents, 0, elementContents.length());
+    }
+
+    /**
+     * Parses a 32-bit signed decimal integer: an optional sign followed by
+     * ASCII digits, nothing else. An empty range is zero.
+     */
+    static int parseInteger(final CharSequence text, final int start, final int end)
+        throws LLSDException {
+        final boolean negative = end > start && text.charAt(start) == '-';
+        int i = (negative || (end > start && text.charAt(start) == '+')) ? start + 1 : start;
+        long value = 0;
+
+        if (end == start) {
+            return 0;
+        }
+        if (i == end || end - i > 10) {
+            throw invalid("integer", text, start, end);
+        }
+
+        for (; i < end; i++) {
+            final int digit = digit(text.charAt(i));
+
+            if (digit < 0) {
+                throw invalid("integer", text, start, end);
+            }
+            value = value * 10 + digit;
+        }
+
+        value = negative ? -value : value;
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw invalid("integer", text, start, end);
+        }
+        return (int) value;
+    }
+
+    static int parseInteger(final byte[] text, final int start, final int end)
+        throws LLSDException {
+        final boolean negative = end > start && text[start] == '-';
+        int i = (negative || (end > start && text[start] == '+')) ? start + 1 : start;
+        long value = 0;
+
+        if (end == start) {
+            return 0;
+        }
+        if (i == end || end - i > 10) {
+            throw invalid("integer", text, start, end);
+        }
+
+        for (; i < end; i++) {
+            final int digit = digit(text[i]);
+
+            if (digit < 0) {
+                throw invalid("integer", text, start, end);
+            }
+            value = value * 10 + digit;
+        }
+
+        value = negative ? -value : value;
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw invalid("integer", text, start, end);
+        }
+        return (int) value;
+    }
+
+    static double parseReal(final String elementContents)
+        throws LLSDException {
+        return parseReal(elementContents, 0, elementContents.length());
+    }
+
+    /**
+     * Parses a real: an optional sign, decimal digits with an optional
+     * fraction, and an optional exponent, or one of the special values nan,
+     * inf and -inf (also accepted as Java writes them). Hexadecimal and
+     * type suffixes, which Double.parseDouble would allow, are rejected.
+     * Surrounding XML whitespace is ignored. An empty range is zero.
+     *
+     * Values with at most 15 significant digits and a small exponent are
+     * converted exactly with a single multiplication or division (Clinger's
+     * fast path); anything else falls back to Double.parseDouble.
+     */
+    static double parseReal(final CharSequence text, final int start, final int end)
+        throws LLSDException {
+        final int from = skipWhitespace(text, start, end);
+
+        return scanReal(text, from, trimWhitespace(text, from, end));
+    }
+
+    private static double scanReal(final CharSequence text, final int start, final int end)
+        throws LLSDException {
+        final boolean negative = end > start && text.charAt(start) == '-';
+        int i = (negative || (end > start && text.charAt(start) == '+')) ? start + 1 : start;
+        long mantissa = 0;
+        int significantDigits = 0;
+        int digits = 0;
+        int exponent = 0;
+        int current;
+
+        if (end == start) {
+            return 0.0;
+        }
+
+        current = i < end ? text.charAt(i) : -1;
+        if (current == 'n' || current == 'N' || current == 'i' || current == 'I') {
+            return special(text.subSequence(start, end).toString(), i - start, negative);
+        }
+
+        while (i < end && (current = digit(text.charAt(i))) >= 0) {
+            if (significantDigits < 19) {
+                mantissa = mantissa * 10 + current;
+                if (mantissa != 0) {
+                    significantDigits++;
+                }
+            } else {
+                exponent++;
+                significantDigits++;
+            }
+            digits++;
+            i++;
+        }
+        if (i < end && text.charAt(i) == '.') {
+            i++;
+            while (i < end && (current = digit(text.charAt(i))) >= 0) {
+                if (significantDigits < 19) {
+                    mantissa = mantissa * 10 + current;
+                    if (mantissa != 0) {
+                        significantDigits++;
+                    }
+                    exponent--;
+                } else {
+                    significantDigits++;
+                }
+                digits++;
+                i++;
+            }
+        }
+        if (digits == 0) {
+            throw invalid("real", text, start, end);
+        }
+        if (i < end && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+            final boolean negativeExponent = i + 1 < end && text.charAt(i + 1) == '-';
+            int exponentDigits = 0;
+            int explicit = 0;
+
+            i += (negativeExponent || (i + 1 < end && text.charAt(i + 1) == '+')) ? 2 : 1;
+            while (i < end && (current = digit(text.charAt(i))) >= 0) {
+                if (explicit < 100000) {
+                    explicit = explicit * 10 + current;
+                }
+                exponentDigits++;
+                i++;
+            }
+            if (exponentDigits == 0) {
+                throw invalid("real", text, start, end);
+            }
+            exponent += negativeExponent ? -explicit : explicit;
+        }
+        if (i != end) {
+            throw invalid("real", text, start, end);
+        }
+
+        if (significantDigits <= 15 && exponent >= -22 && exponent <= 22) {
+            final double value = exponent < 0
+                ? mantissa / POWERS_OF_TEN[-exponent]
+                : mantissa * POWERS_OF_TEN[exponent];
+
+            return negative ? -value : value;
+        }
+        return Double.parseDouble(text.subSequence(start, end).toString());
+    }
+
+    static double parseReal(final byte[] text, final int start, final int end)
+        throws LLSDException {
+        final int from = skipWhitespace(text, start, end);
+
+        return scanReal(text, from, trimWhitespace(text, from, end));
+    }
+
+    private static double scanReal(final byte[] text, final int start, final int end)
+        throws LLSDException {
+        final boolean negative = end > start && text[start] == '-';
+        int i = (negative || (end > start && text[start] == '+')) ? start + 1 : start;
+        long mantissa = 0;
+        int significantDigits = 0;
+        int digits = 0;
+        int exponent = 0;
+        int current;
+
+        if (end == start) {
+            return 0.0;
+        }
+
+        current = i < end ? text[i] : -1;
+        if (current == 'n' || current == 'N' || current == 'i' || current == 'I') {
+            return special(new String(text, start, end - start, StandardCharsets.UTF_8), i - start, negative);
+        }
+
+        while (i < end && (current = digit(text[i])) >= 0) {
+            if (significantDigits < 19) {
+                mantissa = mantissa * 10 + current;
+                if (mantissa != 0) {
+                    significantDigits++;
+                }
+            } else {
+                exponent++;
+                significantDigits++;
+            }
+            digits++;
+            i++;
+        }
+        if (i < end && text[i] == '.') {
+            i++;
+            while (i < end && (current = digit(text[i])) >= 0) {
+                if (significantDigits < 19) {
+                    mantissa = mantissa * 10 + current;
+                    if (mantissa != 0) {
+                        significantDigits++;
+                    }
+                    exponent--;
+                } else {
+                    significantDigits++;
+                }
+                digits++;
+                i++;
+            }
+        }
+        if (digits == 0) {
+            throw invalid("real", text, start, end);
+        }
+        if (i < end && (text[i] == 'e' || text[i] == 'E')) {
+            final boolean negativeExponent = i + 1 < end && text[i + 1] == '-';
+            int exponentDigits = 0;
+            int explicit = 0;
+
+            i += (negativeExponent || (i + 1 < end && text[i + 1] == '+')) ? 2 : 1;
+            while (i < end && (current = digit(text[i])) >= 0) {
+                if (explicit < 100000) {
+                    explicit = explicit * 10 + current;
+                }
+                exponentDigits++;
+                i++;
+            }
+            if (exponentDigits == 0) {
+                throw invalid("real", text, start, end);
+            }
+            exponent += negativeExponent ? -explicit : explicit;
+        }
+        if (i != end) {
+            throw invalid("real", text, start, end);
+        }
+
+        if (significantDigits <= 15 && exponent >= -22 && exponent <= 22) {
+            final double value = exponent < 0
+                ? mantissa / POWERS_OF_TEN[-exponent]
+                : mantissa * POWERS_OF_TEN[exponent];
+
+            return negative ? -value : value;
+        }
+        return Double.parseDouble(new String(text, start, end - start, StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * @param text the whole real.
+     * @param nameStart the offset of the special value's name, after any
+     * sign.
+     */
+    private static double special(final String text, final int nameStart, final boolean negative)
+        throws LLSDException {
+        switch (text.substring(nameStart)) {
+        case "nan":
+        case "NaN":
+            return Double.NaN;
+        case "inf":
+        case "Infinity":
+            return negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+        default:
+            throw invalid("real", text, 0, text.length());
+        }
+    }
+
+    static String parseString(final String elementContents)
+        throws LLSDException {
+        return elementContents;
+    }
+
+    static URI parseURI(final String elementContents)
+        throws LLSDException {
+        final URI value;
+
+        try {
+            value = new URI(elementContents);
+        } catch(java.net.URISyntaxException e) {
+            throw new LLSDValueException("Unable to parse LLSD URI value, received \""
+                + elementContents + "\".", e);
+        }
+
+        return value;
+    }
+
+    static UUID parseUUID(final String elementContents)
+        throws LLSDException {
+        return parseUUID(elementContents, 0, elementContents.length());
+    }
+
+    /**
+     * Parses a UUID in its canonical 8-4-4-4-12 hexadecimal form, in either
+     * case. UUID.fromString also accepts shortened groups, which LLSD does
+     * not. An empty range is the null UUID.
+     */
+    static UUID parseUUID(final CharSequence text, final int start, final int end)
+        throws LLSDException {
+        final long mostSignificant;
+        final long leastSignificant;
+        final long check;
+
+        if (end == start) {
+            return new UUID(0L, 0L);
+        }
+        if (end - start != 36 || text.charAt(start + 8) != '-' || text.charAt(start + 13) != '-'
+            || text.charAt(start + 18) != '-' || text.charAt(start + 23) != '-') {
+            throw invalid("UUID", text, start, end);
+        }
+
+        final long quad1 = hex4(text, start);
+        final long quad2 = hex4(text, start + 4);
+        final long quad3 = hex4(text, start + 9);
+        final long quad4 = hex4(text, start + 14);
+        final long quad5 = hex4(text, start + 19);
+        final long quad6 = hex4(text, start + 24);
+        final long quad7 = hex4(text, start + 28);
+        final long quad8 = hex4(text, start + 32);
+
+        check = quad1 | quad2 | quad3 | quad4 | quad5 | quad6 | quad7 | quad8;
+        if (check < 0) {
+            throw invalid("UUID", text, start, end);
+        }
+        mostSignificant = quad1 << 48 | quad2 << 32 | quad3 << 16 | quad4;
+        leastSignificant = quad5 << 48 | quad6 << 32 | quad7 << 16 | quad8;
+
+        return new UUID(mostSignificant, leastSignificant);
+    }
+
+    static UUID parseUUID(final byte[] text, final int start, final int end)
+        throws LLSDException {
+        final long mostSignificant;
+        final long leastSignificant;
+        final long check;
+
+        if (end == start) {
+            return new UUID(0L, 0L);
+        }
+        if (end - start != 36 || text[start + 8] != '-' || text[start + 13] != '-'
+            || text[start + 18] != '-' || text[start + 23] != '-') {
+            throw invalid("UUID", text, start, end);
+        }
+
+        final long quad1 = hex4(text, start);
+        final long quad2 = hex4(text, start + 4);
+        final long quad3 = hex4(text, start + 9);
+        final long quad4 = hex4(text, start + 14);
+        final long quad5 = hex4(text, start + 19);
+        final long quad6 = hex4(text, start + 24);
+        final long quad7 = hex4(text, start + 28);
+        final long quad8 = hex4(text, start + 32);
+
+        check = quad1 | quad2 | quad3 | quad4 | quad5 | quad6 | quad7 | quad8;
+        if (check < 0) {
+            throw invalid("UUID", text, start, end);
+        }
+        mostSignificant = quad1 << 48 | quad2 << 32 | quad3 << 16 | quad4;
+        leastSignificant = quad5 << 48 | quad6 << 32 | quad7 << 16 | quad8;
+
+        return new UUID(mostSignificant, leastSignificant);
+    }
+
+    /**
+     * @return the value of four hexadecimal digits, or a negative number if
+     * any is not one. There are no branches per digit: a bad digit's -1
+     * from the table makes the whole result negative.
+     */
+    private static long hex4(final CharSequence text, final int start) {
+        final char c1 = text.charAt(start);
+        final char c2 = text.charAt(start + 1);
+        final char c3 = text.charAt(start + 2);
+        final char c4 = text.charAt(start + 3);
+
+        if ((c1 | c2 | c3 | c4) > 0xff) {
+            return -1;
+        }
+        return HEX_VALUES[c1] << 12 | HEX_VALUES[c2] << 8 | HEX_VALUES[c3] << 4 | HEX_VALUES[c4];
+    }
+
+    private static long hex4(final byte[] text, final int start) {
+        return HEX_VALUES[text[start] & 0xff] << 12 | HEX_VALUES[text[start + 1] & 0xff] << 8
+            | HEX_VALUES[text[start + 2] & 0xff] << 4 | HEX_VALUES[text[start + 3] & 0xff];
+    }
+
+    /**
+     * @return the offset of the first character of the range which is not
+     * XML whitespace, or the end of the range.
+     */
+    private static int skipWhitespace(final CharSequence text, final int start, final int end) {
+        int i = start;
+
+        while (i < end && isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int skipWhitespace(final byte[] text, final int start, final int end) {
+        int i = start;
+
+        while (i < end && isWhitespace(text[i])) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @return the end of the range without trailing XML whitespace.
+     */
+    private static int trimWhitespace(final CharSequence text, final int start, final int end) {
+        int i = end;
+
+        while (i > start && isWhitespace(text.charAt(i - 1))) {
+            i--;
+        }
+        return i;
+    }
+
+    private static int trimWhitespace(final byte[] text, final int start, final int end) {
+        int i = end;
+
+        while (i > start && isWhitespace(text[i - 1])) {
+            i--;
+        }
+        return i;
+    }
+
+    private static boolean isWhitespace(final int character) {
+        return character == ' ' || character == '\t' || character == '\n' || character == '\r';
+    }
+
+    private static LLSDException invalid(final String type, final CharSequence text, final int start, final int end) {
+        return new LLSDValueException("Unable to parse LLSD " + type + " value, received \""
+            + text.subSequence(start, end) + "\".");
+    }
+
+    private static LLSDException invalid(final String type, final byte[] text, final int start, final int end) {
+        return invalid(type, new String(text, start, end - start, StandardCharsets.UTF_8), 0, end - start);
+    }
+
+    static byte[] parseBinary(final String elementContents) throws LLSDException {
+        return parseBinary(elementContents, 0, elementContents.length());
+    }
+
+    /**
+     * Decodes base64 text straight into an array of exactly the right
+     * length, ignoring whitespace.
+     */
+    static byte[] parseBinary(final CharSequence text, final int start, final int end)
+        throws LLSDException {
+        final byte[] value = new byte[LLSDBase64Decoder.decodedLength(text, start, end)];
+        final LLSDBase64Decoder decoder = new LLSDBase64Decoder(LLSDOutputBuffer.forBuffer(ByteBuffer.wrap(value)),
+            value.length);
+
+        try {
+            decoder.decode(text, start, end);
+            decoder.finish();
+        } catch(IOException e) {
+            // Not possible when writing to a buffer.
+            throw new LLSDException("Unable to parse LLSD binary value.", e);
+        }
+        return value;
+    }
+
+    static byte[] parseBinary(final byte[] text, final int start, final int end)
+        throws LLSDException {
+        final byte[] value = new byte[LLSDBase64Decoder.decodedLength(text, start, end)];
+        final LLSDBase64Decoder decoder = new LLSDBase64Decoder(LLSDOutputBuffer.forBuffer(ByteBuffer.wrap(value)),
+            value.length);
+
+        try {
+            decoder.decode(text, start, end);
+            decoder.finish();
+        } catch(IOException e) {
+            // Not possible when writing to a buffer.
+            throw new LLSDException("Unable to parse LLSD binary value.", e);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+
+/**
+ * LLSD parser built on the StAX pull API. Unlike {@link LLSDParser} this
+ * never builds a DOM; the LLSD content is constructed directly from the
+ * parser events, so only the resulting map/list tree is held in memory.
+ *
+ * Produces the same content as {@link LLSDParser#parse(InputStream)} for
+ * well-formed LLSD documents, and checks the same {@link LLSDLimits} as
+ * documents are read. Instances may be shared between threads;
+ * each thread creates its stream readers from its own input factory, as
+ * XMLInputFactory is not guaranteed to be thread-safe.
+ */
+public class LLSDStaxParser {
+    /**
+     * Factory used to create a stream reader for each document, one per
+     * thread.
+     */
+    private static final ThreadLocal<XMLInputFactory> INPUT_FACTORY = new ThreadLocal<XMLInputFactory>() {
+        @Override
+        protected XMLInputFactory initialValue() {
+            final XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+
+            inputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+            inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+            return inputFactory;
+        }
+    };
+
+    private volatile LLSDLimits limits = LLSDLimits.DEFAULT;
+
+    public      LLSDStaxParser() {
+    }
+
+    /**
+     * Sets the limits checked as documents are read, as for
+     * {@link LLSDParser#setLimits(LLSDLimits)}.
+     */
+    public void setLimits(final LLSDLimits limits) {
+        if (null == limits) {
+            throw new NullPointerException("limits");
+        }
+        this.limits = limits;
+    }
+
+    /**
+     * Parses an LLSD document from the given input stream.
+     *
+     * @param xmlFile the XML input stream to read and parse as LLSD.
+     * @throws IOException if there was a problem reading from the input
+     * stream.
+     * @throws LLSDException if the document is not well-formed XML, or is
+     * valid XML but invalid LLSD, for example if a date cannot be parsed.
+     */
+    public LLSD parse(final InputStream xmlFile)
+        throws IOException, LLSDException {
+        try (LLSDReader reader = reader(xmlFile)) {
+            return reader.readDocument();
+        }
+    }
+
+    /**
+     * Parses an LLSD document from the given input stream into a typed tree,
+     * as {@link LLSDParser#parseValue(InputStream)} does.
+     *
+     * @return the root value, or null if the document is empty.
+     * @throws IOException if there was a problem reading from the input
+     * stream.
+     * @throws LLSDException if the document is not well-formed XML, or is
+     * valid XML but invalid LLSD.
+     */
+    public LLSDValue parseValue(final InputStream xmlFile)
+        throws IOException, LLSDException {
+        try (LLSDReader reader = reader(xmlFile)) {
+            return reader.readDocumentTree();
+        }
+    }
+
+    /**
+     * Opens a streaming reader over the LLSD document in the given input
+     * stream, for processing documents without materialising them.
+     *
+     * @param xmlFile the XML input stream to read as LLSD.
+     * @throws LLSDException if the stream reader cannot be created.
+     */
+    public LLSDXMLReader reader(final InputStream xmlFile)
+        throws IOException, LLSDException {
+        final LLSDLimits limits = this.limits;
+
+        try {
+            return new LLSDXMLReader(INPUT_FACTORY.get().createXMLStreamReader(LLSDInput.limit(xmlFile, limits)),
+                limits);
+        } catch(XMLStreamException e) {
+            throw LLSDXMLReader.wrap(e);
+        }
+    }
+
+    /**
+     * Opens a streaming reader over the LLSD document in the remaining bytes
+     * of the given buffer. The buffer's position is not changed.
+     */
+    public LLSDXMLReader reader(final ByteBuffer xmlFile)
+        throws IOException, LLSDException {
+        return reader(LLSDInput.stream(xmlFile));
+    }
+
+    /**
+     * Opens a streaming reader over the LLSD document in the given file. The
+     * file is memory-mapped a window at a time rather than read into the
+     * heap, so files of any size can be read with memory bounded as
+     * described for {@link LLSDXMLReader}.
+     *
+     * @throws IOException if the file cannot be read.
+     */
+    public LLSDXMLReader reader(final Path xmlFile)
+        throws IOException, LLSDException {
+        return reader(LLSDInput.stream(xmlFile));
+    }
+
+    /**
+     * Opens a streaming reader over the LLSD document in the given channel,
+     * which must be in blocking mode. Closing the reader does not close the
+     * channel.
+     */
+    public LLSDXMLReader reader(final ReadableByteChannel xmlFile)
+        throws IOException, LLSDException {
+        return reader(Channels.newInputStream(xmlFile));
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+/**
+ * An LLSD string.
+ */
+public final class LLSDString extends LLSDValue {
+    private final String value;
+
+    public      LLSDString(final String value) {
+        if (null == value) {
+            throw new NullPointerException("value");
+        }
+        this.value = value;
+    }
+
+    public LLSDType getType() {
+        return LLSDType.STRING;
+    }
+
+    public String asString() {
+        return value;
+    }
+
+    public Object toObject() {
+        return value;
+    }
+
+    public boolean equals(final Object other) {
+        return other instanceof LLSDString
+            && ((LLSDString) other).value.equals(value);
+    }
+
+    public int hashCode() {
+        return value.hashCode();
+    }
+
+    public String toString() {
+        return value;
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+/**
+ * Tokens returned by {@link LLSDReader#next()}. Scalar tokens correspond
+ * directly to the LLSD element of the same name; a scalar element holding
+ * &lt;undef /&gt; is reported under its own type, with
+ * {@link LLSDReader#isUndefined()} returning true.
+ */
+public enum LLSDToken {
+    START_MAP,
+    KEY,
+    END_MAP,
+    START_ARRAY,
+    END_ARRAY,
+    UNDEF,
+    BOOLEAN,
+    INTEGER,
+    REAL,
+    STRING,
+    UUID,
+    DATE,
+    URI,
+    BINARY,
+    END_DOCUMENT;
+
+    /**
+     * @return true if this token is a complete value on its own, rather than
+     * the start or end of a map or array, or a map key.
+     */
+    public boolean isScalar() {
+        return ordinal() >= UNDEF.ordinal() && ordinal() <= BINARY.ordinal();
+    }
+}
@@ -0,0 +1,26 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+/**
+ * Types of {@link LLSDValue}, one for each LLSD element. An undefined value
+ * of a specific type, such as &lt;integer&gt;&lt;undef /&gt;&lt;/integer&gt;,
+ * reports that type; only a bare &lt;undef /&gt; is {@link #UNDEF}.
+ */
+public enum LLSDType {
+    UNDEF,
+    BOOLEAN,
+    INTEGER,
+    REAL,
+    STRING,
+    UUID,
+    DATE,
+    URI,
+    BINARY,
+    ARRAY,
+    MAP
+}
@@ -0,0 +1,44 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+import java.net.URI;
+
+/**
+ * An LLSD URI.
+ */
+public final class LLSDURI extends LLSDValue {
+    private final URI value;
+
+    public      LLSDURI(final URI value) {
+        if (null == value) {
+            throw new NullPointerException("value");
+        }
+        this.value = value;
+    }
+
+    public LLSDType getType() {
+        return LLSDType.URI;
+    }
+
+    public URI asURI() {
+        return value;
+    }
+
+    public Object toObject() {
+        return value;
+    }
+
+    public boolean equals(final Object other) {
+        return other instanceof LLSDURI
+            && ((LLSDURI) other).value.equals(value);
+    }
+
+    public int hashCode() {
+        return value.hashCode();
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+import java.util.UUID;
+
+/**
+ * An LLSD UUID.
+ */
+public final class LLSDUUID extends LLSDValue {
+    private final UUID value;
+
+    public      LLSDUUID(final UUID value) {
+        if (null == value) {
+            throw new NullPointerException("value");
+        }
+        this.value = value;
+    }
+
+    public LLSDType getType() {
+        return LLSDType.UUID;
+    }
+
+    public UUID asUUID() {
+        return value;
+    }
+
+    public Object toObject() {
+        return value;
+    }
+
+    public boolean equals(final Object other) {
+        return other instanceof LLSDUUID
+            && ((LLSDUUID) other).value.equals(value);
+    }
+
+    public int hashCode() {
+        return value.hashCode();
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+/**
+ * An undefined LLSD value: either a bare &lt;undef /&gt;, or an undefined
+ * value of a specific type. There is one instance of each; use
+ * {@link #UNDEF} and {@link #valueOf(LLSDUndefined)}.
+ */
+public final class LLSDUndef extends LLSDValue {
+    public static final LLSDUndef UNDEF = new LLSDUndef(null, LLSDType.UNDEF);
+
+    private static final LLSDUndef[] TYPED = new LLSDUndef[LLSDUndefined.values().length];
+
+    static {
+        for (LLSDUndefined undefined: LLSDUndefined.values()) {
+            TYPED[undefined.ordinal()] = new LLSDUndef(undefined, LLSDType.valueOf(undefined.name()));
+        }
+    }
+
+    private final LLSDUndefined undefined;
+    private final LLSDType type;
+
+    private     LLSDUndef(final LLSDUndefined undefined, final LLSDType type) {
+        this.undefined = undefined;
+        this.type = type;
+    }
+
+    public static LLSDUndef valueOf(final LLSDUndefined undefined) {
+        return TYPED[undefined.ordinal()];
+    }
+
+    public LLSDType getType() {
+        return type;
+    }
+
+    public boolean isUndefined() {
+        return true;
+    }
+
+    /**
+     * @return the type of this undefined value, or null for a bare
+     * &lt;undef /&gt;.
+     */
+    public LLSDUndefined getUndefined() {
+        return undefined;
+    }
+
+    /**
+     * @return the matching {@link LLSDUndefined}, or "" for a bare
+     * &lt;undef /&gt;, as the parsers produce.
+     */
+    public Object toObject() {
+        return null == undefined
+            ? ""
+            : undefined;
+    }
+
+    public String toString() {
+        return null == undefined
+            ? "undef"
+            : type + " undef";
+    }
+}
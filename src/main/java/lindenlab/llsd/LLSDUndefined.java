@@ -15,12 +15,45 @@ package lindenlab.llsd;
  * for more information.
  */
 public enum LLSDUndefined {
-    BOOLEAN,
-    BINARY,
-    DATE,
-    INTEGER,
-    REAL,
-    STRING,
-    URI,
-    UUID
+    BOOLEAN('1', LLSDToken.BOOLEAN),
+    BINARY('b', LLSDToken.BINARY),
+    DATE('d', LLSDToken.DATE),
+    INTEGER('i', LLSDToken.INTEGER),
+    REAL('r', LLSDToken.REAL),
+    STRING('s', LLSDToken.STRING),
+    URI('l', LLSDToken.URI),
+    UUID('u', LLSDToken.UUID);
+
+    /**
+     * Marker of the type in the binary and notation formats, used to write
+     * typed undefined values there as '?' followed by this marker.
+     */
+    private final byte marker;
+    private final LLSDToken token;
+
+    LLSDUndefined(final char marker, final LLSDToken token) {
+        this.marker = (byte) marker;
+        this.token = token;
+    }
+
+    byte marker() {
+        return marker;
+    }
+
+    LLSDToken token() {
+        return token;
+    }
+
+    /**
+     * @return the undefined value whose type has the given binary/notation
+     * marker, or null if there is none.
+     */
+    static LLSDUndefined forMarker(final int marker) {
+        for (LLSDUndefined undefined: values()) {
+            if (undefined.marker == marker) {
+                return undefined;
+            }
+        }
+        return null;
+    }
 }
@@ -0,0 +1,153 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+import java.net.URI;
+import java.util.*;
+
+/**
+ * A node in a typed LLSD tree, as an alternative to the boxed Object content
+ * of {@link LLSD#getContent()}. Integers, reals and booleans are held as
+ * primitives, and arrays made up entirely of integers or of reals are held
+ * as {@link LLSDIntegerArray} and {@link LLSDRealArray}, which store their
+ * values in primitive arrays.
+ *
+ * Each typed accessor returns the value if this node is of that type, and
+ * throws {@link LLSDException} otherwise, or if the value is undefined.
+ * An {@link LLSD} may hold an LLSDValue as its content, and is then
+ * serialised directly from the tree.
+ */
+public abstract class LLSDValue {
+    LLSDValue() {
+    }
+
+    public abstract LLSDType getType();
+
+    /**
+     * @return true for a bare &lt;undef /&gt; and for undefined values of a
+     * specific type.
+     */
+    public boolean isUndefined() {
+        return false;
+    }
+
+    public boolean asBoolean() throws LLSDException {
+        throw wrongType(LLSDType.BOOLEAN);
+    }
+
+    public int asInteger() throws LLSDException {
+        throw wrongType(LLSDType.INTEGER);
+    }
+
+    public double asReal() throws LLSDException {
+        throw wrongType(LLSDType.REAL);
+    }
+
+    public String asString() throws LLSDException {
+        throw wrongType(LLSDType.STRING);
+    }
+
+    public UUID asUUID() throws LLSDException {
+        throw wrongType(LLSDType.UUID);
+    }
+
+    public Date asDate() throws LLSDException {
+        throw wrongType(LLSDType.DATE);
+    }
+
+    public URI asURI() throws LLSDException {
+        throw wrongType(LLSDType.URI);
+    }
+
+    /**
+     * @return the binary value itself, not a copy.
+     */
+    public byte[] asBinary() throws LLSDException {
+        throw wrongType(LLSDType.BINARY);
+    }
+
+    public LLSDArray asArray() throws LLSDException {
+        throw wrongType(LLSDType.ARRAY);
+    }
+
+    public LLSDMap asMap() throws LLSDException {
+        throw wrongType(LLSDType.MAP);
+    }
+
+    /**
+     * Converts this value into the Object form held by
+     * {@link LLSD#getContent()}: maps become HashMaps, arrays ArrayLists and
+     * numbers and booleans are boxed.
+     */
+    public abstract Object toObject();
+
+    public String toString() {
+        return String.valueOf(toObject());
+    }
+
+    /**
+     * Converts content in the Object form held by {@link LLSD#getContent()}
+     * into a typed tree. Lists consisting entirely of Integers, or entirely
+     * of Doubles and Floats, become primitive arrays.
+     *
+     * @throws LLSDException if the content holds a type which is not valid
+     * in LLSD.
+     */
+    public static LLSDValue fromObject(final Object content)
+        throws LLSDException {
+        if (content instanceof LLSDValue) {
+            return (LLSDValue) content;
+        } else if (content instanceof Map) {
+            final LLSDMap map = new LLSDMap();
+
+            for (Map.Entry<String, Object> entry: ((Map<String, Object>) content).entrySet()) {
+                map.put(entry.getKey(), fromObject(entry.getValue()));
+            }
+            return map;
+        } else if (content instanceof List) {
+            final LLSDArrayBuilder builder = new LLSDArrayBuilder();
+
+            for (Object current: (List<Object>) content) {
+                builder.add(fromObject(current));
+            }
+            return builder.build();
+        } else if (content instanceof Boolean) {
+            return LLSDBoolean.valueOf((Boolean) content);
+        } else if (content instanceof Integer) {
+            return LLSDInteger.valueOf((Integer) content);
+        } else if (content instanceof Double
+            || content instanceof Float) {
+            return new LLSDReal(((Number) content).doubleValue());
+        } else if (content instanceof String) {
+            // A bare <undef /> is held as "" in the Object form.
+            return new LLSDString((String) content);
+        } else if (content instanceof UUID) {
+            return new LLSDUUID((UUID) content);
+        } else if (content instanceof Date) {
+            return new LLSDDate((Date) content);
+        } else if (content instanceof URI) {
+            return new LLSDURI((URI) content);
+        } else if (content instanceof byte[]) {
+            return new LLSDBinary((byte[]) content);
+        } else if (content instanceof LLSDUndefined) {
+            return LLSDUndef.valueOf((LLSDUndefined) content);
+        } else if (null == content) {
+            return LLSDUndef.UNDEF;
+        }
+
+        throw new LLSDException("Unable to convert type \""
+            + content.getClass().getName() + "\" to LLSD.");
+    }
+
+    LLSDException wrongType(final LLSDType expected) {
+        if (isUndefined() && getType() == expected) {
+            return new LLSDException("The " + expected + " value is undefined.");
+        }
+        return new LLSDException("Expected a " + expected + " value but it is "
+            + getType() + ".");
+    }
+}
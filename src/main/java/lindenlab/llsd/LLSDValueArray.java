@@ -0,0 +1,40 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An LLSD array which may hold values of any type.
+ */
+public final class LLSDValueArray extends LLSDArray {
+    private final List<LLSDValue> values;
+
+    public      LLSDValueArray() {
+        this.values = new ArrayList<LLSDValue>();
+    }
+
+    public      LLSDValueArray(final int expectedSize) {
+        this.values = new ArrayList<LLSDValue>(expectedSize);
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    public LLSDValue get(final int index) {
+        return values.get(index);
+    }
+
+    public void add(final LLSDValue value) {
+        if (null == value) {
+            throw new NullPointerException("value");
+        }
+        values.add(value);
+    }
+}
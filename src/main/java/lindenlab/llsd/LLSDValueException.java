@@ -0,0 +1,21 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+/**
+ * Thrown when the text of a scalar cannot be read as its type, such as an
+ * integer out of range or binary which is not base64.
+ */
+public class LLSDValueException extends LLSDException {
+    public  LLSDValueException(final String message) {
+        super(message);
+    }
+
+    public  LLSDValueException(final String message, final Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serialises LLSD as XML on demand: each read encodes only as much of the
+ * content as is needed to fill roughly one chunk, so that a response can be
+ * handed to a non-blocking server which pulls data as the connection can
+ * take it. Nothing blocks; the content is already in memory, and the
+ * encoded document is never held whole. The bytes read are identical to
+ * those {@link LLSDXMLSerialiser} writes.
+ *
+ * Obtain instances from {@link LLSDXMLSerialiser#channel(LLSD)}. The content
+ * must not be modified until the channel has been read to its end. An
+ * InputStream binary value is read whole when it is reached. Instances are
+ * not thread safe.
+ */
+public class LLSDXMLChannel implements ReadableByteChannel {
+    private static final byte MAP = 0;
+    private static final byte LIST = 1;
+    private static final byte ARRAY = 2;
+
+    private final int chunkSize;
+    private final LLSDOutputBuffer buffer;
+    private final LLSDXMLWriter writer;
+
+    /**
+     * Content still to be written, or null once it has been started.
+     */
+    private Object content;
+
+    /**
+     * Each open map and array, innermost last. Maps and lists are walked by
+     * iterator, and LLSDArrays by index so that primitive arrays need not
+     * box their values.
+     */
+    private byte[] containers = new byte[16];
+    private Object[] iterators = new Object[16];
+    private int[] indexes = new int[16];
+    private int depth = 0;
+
+    private boolean isFinished = false;
+    private boolean isOpen = true;
+
+    LLSDXMLChannel(final Object content, final int chunkSize, final LLSDXMLSerialiser.Syntax syntax)
+        throws IOException {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive, not " + chunkSize + ".");
+        }
+        this.content = content;
+        this.chunkSize = chunkSize;
+        this.buffer = LLSDOutputBuffer.growable(chunkSize + 256);
+        this.writer = new LLSDXMLWriter(buffer, syntax);
+    }
+
+    /**
+     * Encodes more of the document into the given buffer.
+     *
+     * @return the number of bytes read, or -1 at the end of the document.
+     * @throws IOException if the content cannot be serialised, with the
+     * {@link LLSDException} as its cause.
+     */
+    @Override
+    public int read(final ByteBuffer target) throws IOException {
+        if (!isOpen) {
+            throw new ClosedChannelException();
+        }
+
+        try {
+            fill(Math.max(1, Math.min(target.remaining(), chunkSize)));
+        } catch(LLSDException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+
+        if (buffer.size() == 0 && isFinished) {
+            return -1;
+        }
+        return buffer.drainTo(target);
+    }
+
+    /**
+     * @return the next chunk of the document, of up to the chunk size the
+     * channel was created with, or null at the end of the document. Each
+     * chunk is a new buffer, which the caller may keep.
+     * @throws LLSDException if the content cannot be serialised.
+     */
+    public ByteBuffer nextChunk() throws IOException, LLSDException {
+        final ByteBuffer chunk;
+
+        if (!isOpen) {
+            throw new ClosedChannelException();
+        }
+        fill(chunkSize);
+        if (buffer.size() == 0) {
+            return null;
+        }
+
+        chunk = ByteBuffer.allocate(Math.min(buffer.size(), chunkSize));
+        buffer.drainTo(chunk);
+        chunk.flip();
+        return chunk;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return isOpen;
+    }
+
+    /**
+     * Stops serialising. Anything not yet read is discarded.
+     */
+    @Override
+    public void close() {
+        isOpen = false;
+    }
+
+    /**
+     * Encodes values until at least the given number of bytes are buffered,
+     * or the document is finished.
+     */
+    private void fill(final int wanted) throws IOException, LLSDException {
+        while (buffer.size() < wanted && !isFinished) {
+            step();
+        }
+    }
+
+    /**
+     * Writes the next value, or the end of the innermost container.
+     */
+    private void step() throws IOException, LLSDException {
+        final Object iterator;
+
+        if (depth == 0) {
+            if (null != content) {
+                final Object root = content;
+
+                content = null;
+                write(root);
+                if (depth > 0) {
+                    return;
+                }
+            }
+            writer.close();
+            isFinished = true;
+            return;
+        }
+
+        iterator = iterators[depth - 1];
+        switch (containers[depth - 1]) {
+        case ARRAY:
+            final LLSDArray array = (LLSDArray) iterator;
+            final int index = indexes[depth - 1]++;
+
+            if (index == array.size()) {
+                pop();
+                writer.endArray();
+            } else if (array instanceof LLSDIntegerArray) {
+                writer.value(((LLSDIntegerArray) array).getInteger(index));
+            } else if (array instanceof LLSDRealArray) {
+                writer.value(((LLSDRealArray) array).getReal(index));
+            } else {
+                write(array.get(index));
+            }
+            break;
+        case LIST:
+            if (((Iterator<?>) iterator).hasNext()) {
+                write(((Iterator<?>) iterator).next());
+            } else {
+                pop();
+                writer.endArray();
+            }
+            break;
+        default:
+            if (((Iterator<?>) iterator).hasNext()) {
+                final Map.Entry<String, ?> entry = (Map.Entry<String, ?>) ((Iterator<?>) iterator).next();
+
+                writer.key(entry.getKey());
+                write(entry.getValue());
+            } else {
+                pop();
+                writer.endMap();
+            }
+            break;
+        }
+    }
+
+    /**
+     * Writes a scalar whole, or starts a map or array to be continued by
+     * later steps.
+     */
+    private void write(final Object value) throws IOException, LLSDException {
+        if (value instanceof Map) {
+            writer.beginMap();
+            push(MAP, ((Map<String, ?>) value).entrySet().iterator());
+        } else if (value instanceof List) {
+            writer.beginArray();
+            push(LIST, ((List<?>) value).iterator());
+        } else if (value instanceof LLSDMap) {
+            writer.beginMap();
+            push(MAP, ((LLSDMap) value).entrySet().iterator());
+        } else if (value instanceof LLSDArray) {
+            writer.beginArray();
+            push(ARRAY, value);
+        } else {
+            writer.value(value);
+        }
+    }
+
+    private void push(final byte container, final Object iterator) {
+        if (depth == containers.length) {
+            containers = Arrays.copyOf(containers, depth * 2);
+            iterators = Arrays.copyOf(iterators, depth * 2);
+            indexes = Arrays.copyOf(indexes, depth * 2);
+        }
+        containers[depth] = container;
+        iterators[depth] = iterator;
+        indexes[depth] = 0;
+        depth++;
+    }
+
+    private void pop() {
+        iterators[--depth] = null;
+    }
+}
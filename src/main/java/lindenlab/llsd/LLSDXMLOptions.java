@@ -0,0 +1,97 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+/**
+ * How {@link LLSDXMLSerialiser} lays out the XML it writes. Three layouts
+ * are offered, each with or without the XML prolog:
+ *
+ * <ul>
+ * <li>{@link #DEFAULT}: a line break after every element and a tab before
+ * each key and value, whatever the depth, as
+ * {@link LLSD#serialise(java.io.Writer, String)} writes.</li>
+ * <li>{@link #COMPACT}: no whitespace between elements. This is the smallest
+ * and fastest to write, and what should go over the wire.</li>
+ * <li>{@link #PRETTY}: a line break after every element and one tab per
+ * level of nesting, for reading.</li>
+ * </ul>
+ *
+ * All three read back to the same content. Instances are immutable.
+ */
+public final class LLSDXMLOptions {
+    public static final LLSDXMLOptions DEFAULT = new LLSDXMLOptions(Layout.DEFAULT, true);
+    public static final LLSDXMLOptions COMPACT = new LLSDXMLOptions(Layout.COMPACT, true);
+    public static final LLSDXMLOptions PRETTY = new LLSDXMLOptions(Layout.PRETTY, true);
+
+    private static final LLSDXMLOptions DEFAULT_NO_PROLOG = new LLSDXMLOptions(Layout.DEFAULT, false);
+    private static final LLSDXMLOptions COMPACT_NO_PROLOG = new LLSDXMLOptions(Layout.COMPACT, false);
+    private static final LLSDXMLOptions PRETTY_NO_PROLOG = new LLSDXMLOptions(Layout.PRETTY, false);
+
+    private enum Layout {
+        DEFAULT, COMPACT, PRETTY
+    }
+
+    private final Layout layout;
+    private final boolean prolog;
+
+    /**
+     * The markup written with these options.
+     */
+    final LLSDXMLSerialiser.Syntax syntax;
+
+    private     LLSDXMLOptions(final Layout layout, final boolean prolog) {
+        this.layout = layout;
+        this.prolog = prolog;
+        switch (layout) {
+        case COMPACT:
+            this.syntax = LLSDXMLSerialiser.Syntax.compact(prolog);
+            break;
+        case PRETTY:
+            this.syntax = LLSDXMLSerialiser.Syntax.pretty(prolog);
+            break;
+        default:
+            this.syntax = LLSDXMLSerialiser.Syntax.standard(prolog);
+            break;
+        }
+    }
+
+    /**
+     * @return these options, with or without the
+     * {@code <?xml version="1.0" encoding="UTF-8"?>} prolog before the
+     * {@code <llsd>} element. It is written by default.
+     */
+    public LLSDXMLOptions withProlog(final boolean prolog) {
+        if (prolog == this.prolog) {
+            return this;
+        }
+        switch (layout) {
+        case COMPACT:
+            return prolog ? COMPACT : COMPACT_NO_PROLOG;
+        case PRETTY:
+            return prolog ? PRETTY : PRETTY_NO_PROLOG;
+        default:
+            return prolog ? DEFAULT : DEFAULT_NO_PROLOG;
+        }
+    }
+
+    public boolean isCompact() {
+        return layout == Layout.COMPACT;
+    }
+
+    public boolean isPretty() {
+        return layout == Layout.PRETTY;
+    }
+
+    public boolean hasProlog() {
+        return prolog;
+    }
+
+    @Override
+    public String toString() {
+        return layout.name().toLowerCase() + (prolog ? "" : " without prolog");
+    }
+}
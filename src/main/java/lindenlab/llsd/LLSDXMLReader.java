@@ -0,0 +1,636 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * {@link LLSDReader} over an LLSD XML document, driven by a StAX stream
+ * reader. Memory use is bounded by the nesting depth of the document and the
+ * size of the largest single scalar value. Values are counted and their
+ * text measured against the {@link LLSDLimits} given as it is read.
+ *
+ * Obtain instances from {@link LLSDStaxParser#reader(java.io.InputStream)}.
+ * Closing the reader does not close the underlying input stream.
+ */
+public class LLSDXMLReader implements LLSDReader {
+    private static final byte TOP = 0;
+    private static final byte ARRAY = 1;
+    private static final byte MAP_KEY = 2;
+    private static final byte MAP_VALUE = 3;
+
+    private final XMLStreamReader reader;
+    private final LLSDLimits limits;
+    private final LLSDLimits.Counter counter;
+
+    /**
+     * Text content of the current scalar element.
+     */
+    private final StringBuilder nodeText = new StringBuilder();
+
+    /**
+     * What the reader is expecting next within each enclosing container,
+     * innermost last.
+     */
+    private byte[] containers = new byte[16];
+    private int depth = 0;
+
+    private LLSDToken token = null;
+    private String key = null;
+    private boolean isUndefined = false;
+    private boolean hasRootValue = false;
+
+    /**
+     * True if the current token is binary and only the start of its text
+     * has been read. The rest is either decoded as it is read by
+     * getBinary(OutputStream) or getBinary(ByteBuffer), or collected into
+     * nodeText when first needed.
+     */
+    private boolean isPendingBinary = false;
+
+    /**
+     * True if the current binary value has been decoded to a caller's
+     * stream or buffer, and so is no longer available.
+     */
+    private boolean isBinaryStreamed = false;
+
+    /**
+     * Base64 digits read so far of the current binary value.
+     */
+    private long binaryDigits = 0;
+
+    public      LLSDXMLReader(final XMLStreamReader reader) {
+        this(reader, LLSDLimits.DEFAULT);
+    }
+
+    LLSDXMLReader(final XMLStreamReader reader, final LLSDLimits limits) {
+        this.reader = reader;
+        this.limits = limits;
+        this.counter = limits.counter();
+    }
+
+    public LLSDToken next() throws IOException, LLSDException {
+        if (token == LLSDToken.END_DOCUMENT) {
+            return token;
+        }
+
+        try {
+            if (null == token) {
+                readRoot();
+            }
+            if (isPendingBinary) {
+                skipElement();
+            }
+
+            isUndefined = false;
+            isPendingBinary = false;
+            isBinaryStreamed = false;
+            key = null;
+            if (!nextElement()) {
+                switch (containers[--depth]) {
+                case ARRAY:
+                    return token = LLSDToken.END_ARRAY;
+                case MAP_KEY:
+                    return token = LLSDToken.END_MAP;
+                case MAP_VALUE:
+                    throw new LLSDException("Unable to parse LLSD map as it has odd number of nodes.");
+                default:
+                    return token = LLSDToken.END_DOCUMENT;
+                }
+            }
+
+            switch (containers[depth - 1]) {
+            case MAP_KEY:
+                if (!reader.getLocalName().equals("key")) {
+                    throw new LLSDException("Expected <key> in map, found \""
+                        + reader.getLocalName() + "\".");
+                }
+                containers[depth - 1] = MAP_VALUE;
+                key = readKey();
+                return token = LLSDToken.KEY;
+            case MAP_VALUE:
+                containers[depth - 1] = MAP_KEY;
+                break;
+            case TOP:
+                if (hasRootValue) {
+                    throw new LLSDException("Expected only one subelement for element <llsd>.");
+                }
+                hasRootValue = true;
+                break;
+            default:
+                break;
+            }
+
+            counter.node(depth);
+            return token = readElement();
+        } catch(XMLStreamException e) {
+            throw wrap(e);
+        }
+    }
+
+    public LLSDToken getToken() {
+        return token;
+    }
+
+    public String getKey() throws LLSDException {
+        requireToken(LLSDToken.KEY);
+        return key;
+    }
+
+    public boolean isUndefined() {
+        return isUndefined;
+    }
+
+    public boolean getBoolean() throws LLSDException {
+        requireDefined(LLSDToken.BOOLEAN);
+        return LLSDScalars.parseBoolean(nodeText.toString());
+    }
+
+    public int getInteger() throws LLSDException {
+        requireDefined(LLSDToken.INTEGER);
+        return LLSDScalars.parseInteger(nodeText, 0, nodeText.length());
+    }
+
+    public double getReal() throws LLSDException {
+        requireDefined(LLSDToken.REAL);
+        return LLSDScalars.parseReal(nodeText, 0, nodeText.length());
+    }
+
+    public String getString() throws LLSDException {
+        requireDefined(LLSDToken.STRING);
+        return LLSDScalars.parseString(nodeText.toString());
+    }
+
+    public UUID getUUID() throws LLSDException {
+        requireDefined(LLSDToken.UUID);
+        return LLSDScalars.parseUUID(nodeText, 0, nodeText.length());
+    }
+
+    public Date getDate() throws LLSDException {
+        requireDefined(LLSDToken.DATE);
+        return new Date(LLSDScalars.parseTime(nodeText, 0, nodeText.length()));
+    }
+
+    public URI getURI() throws LLSDException {
+        requireDefined(LLSDToken.URI);
+        return LLSDScalars.parseURI(nodeText.toString());
+    }
+
+    public byte[] getBinary() throws LLSDException {
+        requireBinaryText();
+        return LLSDScalars.parseBinary(nodeText, 0, nodeText.length());
+    }
+
+    /**
+     * Decodes the current binary value into the given stream as its text is
+     * read, so that it is never held whole. Afterwards the value cannot be
+     * read again.
+     */
+    public long getBinary(final OutputStream destination) throws IOException, LLSDException {
+        final LLSDOutputBuffer output = LLSDOutputBuffer.forStream(destination);
+        final long length = decodeBinary(output);
+
+        output.flush();
+        return length;
+    }
+
+    /**
+     * Decodes the current binary value into the given buffer as its text is
+     * read. Afterwards the value cannot be read again.
+     *
+     * @throws java.nio.BufferOverflowException if the value does not fit.
+     */
+    public int getBinary(final ByteBuffer destination) throws IOException, LLSDException {
+        return (int) decodeBinary(LLSDOutputBuffer.forBuffer(destination));
+    }
+
+    private long decodeBinary(final LLSDOutputBuffer output) throws IOException, LLSDException {
+        final LLSDBase64Decoder decoder = new LLSDBase64Decoder(output);
+
+        requireDefined(LLSDToken.BINARY);
+        if (isBinaryStreamed) {
+            throw new LLSDException("The current binary value has already been read.");
+        }
+
+        decoder.decode(nodeText, 0, nodeText.length());
+        if (isPendingBinary) {
+            isPendingBinary = false;
+            isBinaryStreamed = true;
+            nodeText.setLength(0);
+            try {
+                for (int level = 0; level >= 0; ) {
+                    switch (reader.next()) {
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        if (level == 0) {
+                            final int start = reader.getTextStart();
+                            final int end = start + reader.getTextLength();
+
+                            countDigits(reader.getTextCharacters(), start, end);
+                            decoder.decode(reader.getTextCharacters(), start, end);
+                        }
+                        break;
+                    case XMLStreamConstants.START_ELEMENT:
+                        level++;
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        level--;
+                        break;
+                    default:
+                        break;
+                    }
+                }
+            } catch(XMLStreamException e) {
+                throw wrap(e);
+            }
+        }
+
+        return decoder.finish();
+    }
+
+    /**
+     * Makes sure the whole text of the current binary value is in nodeText.
+     */
+    private void requireBinaryText() throws LLSDException {
+        requireDefined(LLSDToken.BINARY);
+        if (isBinaryStreamed) {
+            throw new LLSDException("The current binary value has already been read.");
+        }
+        if (isPendingBinary) {
+            isPendingBinary = false;
+            try {
+                appendText(0, LLSDToken.BINARY);
+            } catch(XMLStreamException e) {
+                throw new LLSDException("Unable to parse LLSD XML: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    public Object getValue() throws LLSDException {
+        if (null == token) {
+            throw new LLSDException("No current token, call next() first.");
+        }
+
+        switch (token) {
+        case UNDEF:
+            return "";
+        case BOOLEAN:
+            return isUndefined
+                    ? LLSDUndefined.BOOLEAN
+                    : LLSDScalars.parseBoolean(nodeText.toString());
+        case DATE:
+            return isUndefined
+                    ? LLSDUndefined.DATE
+                    : new Date(LLSDScalars.parseTime(nodeText, 0, nodeText.length()));
+        case INTEGER:
+            return isUndefined
+                    ? LLSDUndefined.INTEGER
+                    : LLSDScalars.parseInteger(nodeText, 0, nodeText.length());
+        case REAL:
+            return isUndefined
+                    ? LLSDUndefined.REAL
+                    : LLSDScalars.parseReal(nodeText, 0, nodeText.length());
+        case STRING:
+            return isUndefined
+                    ? LLSDUndefined.STRING
+                    : LLSDScalars.parseString(nodeText.toString());
+        case URI:
+            return isUndefined
+                    ? LLSDUndefined.URI
+                    : LLSDScalars.parseURI(nodeText.toString());
+        case UUID:
+            return isUndefined
+                    ? LLSDUndefined.UUID
+                    : LLSDScalars.parseUUID(nodeText, 0, nodeText.length());
+        case BINARY:
+            return isUndefined
+                    ? LLSDUndefined.BINARY
+                    : getBinary();
+        default:
+            throw new LLSDException("Current token " + token + " is not a scalar value.");
+        }
+    }
+
+    /**
+     * Skips the current map or array directly over the XML events, without
+     * collecting any text.
+     */
+    public void skipValue() throws IOException, LLSDException {
+        final LLSDToken endToken;
+
+        if (token == LLSDToken.START_MAP) {
+            endToken = LLSDToken.END_MAP;
+        } else if (token == LLSDToken.START_ARRAY) {
+            endToken = LLSDToken.END_ARRAY;
+        } else {
+            LLSDReader.super.skipValue();
+            return;
+        }
+
+        try {
+            skipElement();
+        } catch(XMLStreamException e) {
+            throw wrap(e);
+        }
+        depth--;
+        token = endToken;
+    }
+
+    public void close() throws IOException {
+        try {
+            reader.close();
+        } catch(XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private void readRoot() throws LLSDException, XMLStreamException {
+        if (!nextElement()) {
+            throw new LLSDException("Outer-most tag for LLSD missing.");
+        }
+
+        if (!reader.getLocalName().equalsIgnoreCase("llsd")) {
+            throw new LLSDException("Outer-most tag for LLSD is \""
+                + reader.getLocalName() + "\" instead of \"llsd\".");
+        }
+
+        push(TOP);
+    }
+
+    /**
+     * Advances the stream reader to the next start element within the current
+     * element.
+     *
+     * @return true if positioned on a start element, false if the end of the
+     * enclosing element (or document) was reached instead.
+     */
+    private boolean nextElement() throws LLSDException, XMLStreamException {
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+            case XMLStreamConstants.START_ELEMENT:
+                return true;
+            case XMLStreamConstants.DTD:
+                if (!limits.allowsDoctype()) {
+                    throw new LLSDLimitException.Doctype();
+                }
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+            case XMLStreamConstants.END_DOCUMENT:
+                return false;
+            default:
+                break;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Moves the stream reader to the end element matching the current start
+     * element.
+     */
+    private void skipElement() throws XMLStreamException {
+        for (int level = 0; level >= 0; ) {
+            switch (reader.next()) {
+            case XMLStreamConstants.START_ELEMENT:
+                level++;
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                level--;
+                break;
+            default:
+                break;
+            }
+        }
+    }
+
+    private String readKey() throws LLSDException, XMLStreamException {
+        boolean hasText = false;
+
+        nodeText.setLength(0);
+        while (true) {
+            switch (reader.next()) {
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE:
+                appendCharacters(LLSDToken.KEY);
+                hasText = true;
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                return hasText
+                    ? nodeText.toString()
+                    : null;
+            case XMLStreamConstants.START_ELEMENT:
+                throw new LLSDException("Unexpected node \""
+                    + reader.getLocalName() + "\" found while parsing key for map.");
+            default:
+                break;
+            }
+        }
+    }
+
+    /**
+     * Reads the value element the stream reader is positioned on. Scalars are
+     * consumed up to their end element; maps and arrays are entered.
+     */
+    private LLSDToken readElement() throws LLSDException, XMLStreamException {
+        final String nodeName = reader.getLocalName().toLowerCase();
+        final LLSDToken elementToken;
+
+        switch (nodeName) {
+        case "map":
+            push(MAP_KEY);
+            return LLSDToken.START_MAP;
+        case "array":
+            push(ARRAY);
+            return LLSDToken.START_ARRAY;
+        case "undef":
+            skipElement();
+            return LLSDToken.UNDEF;
+        case "boolean":
+            elementToken = LLSDToken.BOOLEAN;
+            break;
+        case "date":
+            elementToken = LLSDToken.DATE;
+            break;
+        case "integer":
+            elementToken = LLSDToken.INTEGER;
+            break;
+        case "real":
+            elementToken = LLSDToken.REAL;
+            break;
+        case "string":
+            elementToken = LLSDToken.STRING;
+            break;
+        case "uri":
+            elementToken = LLSDToken.URI;
+            break;
+        case "uuid":
+            elementToken = LLSDToken.UUID;
+            break;
+        case "binary":
+            final String encoding = reader.getAttributeValue(null, "encoding");
+
+            if (null != encoding && !encoding.equals("base64")) {
+                throw new LLSDException("encoding other than base64 is not supported");
+            }
+            readBinaryStart();
+            return LLSDToken.BINARY;
+        default:
+            throw new LLSDException("Encountered unexpected node \""
+                    + reader.getLocalName() + "\".");
+        }
+
+        readText(elementToken);
+        return elementToken;
+    }
+
+    /**
+     * Collects the direct text content of the current element into
+     * nodeText, noting any &lt;undef /&gt; child.
+     */
+    private void readText(final LLSDToken kind) throws LLSDException, XMLStreamException {
+        nodeText.setLength(0);
+        appendText(0, kind);
+    }
+
+    /**
+     * Reads up to the first text of a binary element which is not just
+     * whitespace, leaving the rest of the element to be read when the value
+     * is. Anything else is read as readText() does.
+     */
+    private void readBinaryStart() throws LLSDException, XMLStreamException {
+        nodeText.setLength(0);
+        binaryDigits = 0;
+        while (true) {
+            switch (reader.next()) {
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE:
+                appendCharacters(LLSDToken.BINARY);
+                if (!reader.isWhiteSpace()) {
+                    isPendingBinary = true;
+                    return;
+                }
+                break;
+            case XMLStreamConstants.START_ELEMENT:
+                if (reader.getLocalName().equals("undef")) {
+                    isUndefined = true;
+                }
+                appendText(1, LLSDToken.BINARY);
+                return;
+            case XMLStreamConstants.END_ELEMENT:
+                return;
+            default:
+                break;
+            }
+        }
+    }
+
+    /**
+     * Appends the direct text content of the current element to nodeText,
+     * up to the end of the element, starting the given number of child
+     * elements deep.
+     *
+     * @param kind the token being read, for checking the length of its text.
+     */
+    private void appendText(final int startLevel, final LLSDToken kind)
+        throws LLSDException, XMLStreamException {
+        for (int level = startLevel; level >= 0; ) {
+            switch (reader.next()) {
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE:
+                if (level == 0) {
+                    appendCharacters(kind);
+                }
+                break;
+            case XMLStreamConstants.START_ELEMENT:
+                if (level == 0 && reader.getLocalName().equals("undef")) {
+                    isUndefined = true;
+                }
+                level++;
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                level--;
+                break;
+            default:
+                break;
+            }
+        }
+    }
+
+    /**
+     * Appends the current text event to nodeText, checking the length of
+     * strings, keys and binary values against the limits.
+     */
+    private void appendCharacters(final LLSDToken kind) throws LLSDLimitException {
+        final char[] text = reader.getTextCharacters();
+        final int start = reader.getTextStart();
+        final int end = start + reader.getTextLength();
+
+        nodeText.append(text, start, end - start);
+        if (kind == LLSDToken.STRING || kind == LLSDToken.KEY) {
+            limits.checkString(nodeText.length());
+        } else if (kind == LLSDToken.BINARY) {
+            countDigits(text, start, end);
+        }
+    }
+
+    private void countDigits(final char[] text, final int start, final int end)
+        throws LLSDLimitException {
+        for (int i = start; i < end; i++) {
+            if (LLSDBase64Decoder.isDigit(text[i])) {
+                binaryDigits++;
+            }
+        }
+        limits.checkBinary((int) Math.min(Integer.MAX_VALUE, binaryDigits * 3 / 4));
+    }
+
+    private void push(final byte container) {
+        if (depth == containers.length) {
+            containers = Arrays.copyOf(containers, depth * 2);
+        }
+        containers[depth++] = container;
+    }
+
+    private void requireToken(final LLSDToken expected) throws LLSDException {
+        if (token != expected) {
+            throw new LLSDException("Expected current token to be " + expected
+                + " but it is " + token + ".");
+        }
+    }
+
+    private void requireDefined(final LLSDToken expected) throws LLSDException {
+        requireToken(expected);
+        if (isUndefined) {
+            throw new LLSDException("The current " + expected + " value is undefined.");
+        }
+    }
+
+    /**
+     * Converts a StAX failure into the exception reported to callers.
+     */
+    static LLSDException wrap(final XMLStreamException e) throws IOException {
+        if (e.getNestedException() instanceof LLSDInput.LimitExceeded) {
+            return ((LLSDInput.LimitExceeded) e.getNestedException()).getLimitException();
+        } else if (e.getNestedException() instanceof IOException) {
+            throw (IOException)e.getNestedException();
+        }
+        return new LLSDException("Unable to parse LLSD XML: " + e.getMessage(), e);
+    }
+}
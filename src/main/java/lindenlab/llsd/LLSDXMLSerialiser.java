@@ -0,0 +1,803 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Writes LLSD as UTF-8 encoded XML straight into bytes, without building any
+ * intermediate Strings or going through a {@link java.io.Writer}. By default
+ * the output is byte-for-byte identical to
+ * {@link LLSD#serialise(java.io.Writer, String)} with a UTF-8 writer and
+ * charset "UTF-8"; construct it with {@link LLSDXMLOptions#COMPACT} to write
+ * no whitespace, or with other {@link LLSDXMLOptions}.
+ *
+ * {@link #serialiseCanonical(LLSD)} writes a canonical form instead, in
+ * which equal content is always written identically, and
+ * {@link #hash(LLSD)} hashes that form without building it.
+ *
+ * Instances hold no state and may be shared between threads. The staging
+ * buffer used for output streams is kept per thread and reused between
+ * documents.
+ */
+public class LLSDXMLSerialiser {
+    private static final byte[] INTEGER_START = ascii("<integer>");
+    private static final byte[] REAL_START = ascii("<real>");
+    private static final byte[] UUID_START = ascii("<uuid>");
+    private static final byte[] STRING_START = ascii("<string>");
+    private static final byte[] DATE_START = ascii("<date>");
+    private static final byte[] DATE_END = ascii("</date>");
+    private static final byte[] URI_START = ascii("<uri>");
+    private static final byte[] URI_END = ascii("</uri>");
+    private static final byte[] BINARY_START = ascii("<binary encoding=\"base64\">");
+    private static final byte[] BINARY_END = ascii("</binary>");
+    private static final byte[] NULL_TEXT = ascii("null");
+    private static final byte[] ESCAPED_LT = ascii("&lt;");
+    private static final byte[] ESCAPED_GT = ascii("&gt;");
+    private static final byte[] ESCAPED_AMP = ascii("&amp;");
+    private static final byte[] ESCAPED_QUOT = ascii("&quot;");
+    private static final byte[] ESCAPED_HYPHEN = ascii("&#45;");
+    private static final byte[] TABS = ascii("\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t\t");
+
+    /**
+     * Order of map keys in the canonical form. A null key, which only a
+     * plain map can hold, sorts first.
+     */
+    private static final Comparator<String> KEY_ORDER = new Comparator<String>() {
+        public int compare(final String a, final String b) {
+            if (null == a || null == b) {
+                return null == a ? (null == b ? 0 : -1) : 1;
+            }
+            return a.compareTo(b);
+        }
+    };
+
+    private static final ThreadLocal<ByteBuffer> STAGING = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocate(LLSDOutputBuffer.STREAM_BUFFER_SIZE);
+        }
+    };
+
+    private final Syntax syntax;
+    private final LLSDMetrics metrics;
+
+    public      LLSDXMLSerialiser() {
+        this(LLSDXMLOptions.DEFAULT);
+    }
+
+    /**
+     * @param options the layout of the documents written. Canonical output
+     * is laid out the same whatever the options.
+     */
+    public      LLSDXMLSerialiser(final LLSDXMLOptions options) {
+        this(options, null);
+    }
+
+    /**
+     * @param metrics listener told about each document written by the
+     * {@code serialise} methods, or null. Documents are only measured when
+     * there is one.
+     */
+    public      LLSDXMLSerialiser(final LLSDXMLOptions options, final LLSDMetrics metrics) {
+        this.syntax = options.syntax;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Writes the given LLSD as an XML document to an output stream.
+     *
+     * @throws IOException if there was a problem writing to the stream.
+     * @throws LLSDException if the content holds a type which cannot be
+     * serialised.
+     */
+    public void serialise(final LLSD llsd, final OutputStream output)
+        throws IOException, LLSDException {
+        final LLSDMeasurement measurement = LLSDMeasurement.start(metrics, LLSDMetrics.Operation.SERIALISE);
+
+        if (null == measurement) {
+            write(llsd, output);
+            return;
+        }
+
+        try {
+            write(llsd, measurement.count(output));
+        } catch(IOException e) {
+            throw measurement.failed(e);
+        } catch(LLSDException e) {
+            throw measurement.failed(e);
+        }
+        measurement.completed(llsd.getContent());
+    }
+
+    private void write(final LLSD llsd, final OutputStream output)
+        throws IOException, LLSDException {
+        final LLSDOutputBuffer buffer = LLSDOutputBuffer.forStream(output, STAGING.get());
+
+        if (llsd instanceof LLSDFrozen && null != syntax.documentFormat) {
+            output.write(((LLSDFrozen) llsd).encodedBytes(syntax.documentFormat));
+            return;
+        }
+        new Encoder(buffer, syntax).writeDocument(llsd.getContent());
+        buffer.flush();
+    }
+
+    /**
+     * Writes the given LLSD as an XML document into a buffer, starting at its
+     * current position.
+     *
+     * @throws BufferOverflowException if the buffer does not have enough
+     * space remaining. The buffer's position is then undefined.
+     * @throws LLSDException if the content holds a type which cannot be
+     * serialised.
+     */
+    public void serialise(final LLSD llsd, final ByteBuffer target)
+        throws LLSDException {
+        final LLSDMeasurement measurement = LLSDMeasurement.start(metrics, LLSDMetrics.Operation.SERIALISE);
+        final int start = target.position();
+
+        if (null == measurement) {
+            write(llsd, target);
+            return;
+        }
+
+        try {
+            write(llsd, target);
+        } catch(LLSDException e) {
+            throw measurement.failed(e);
+        }
+        measurement.setBytes(target.position() - start);
+        measurement.completed(llsd.getContent());
+    }
+
+    private void write(final LLSD llsd, final ByteBuffer target)
+        throws LLSDException {
+        if (llsd instanceof LLSDFrozen && null != syntax.documentFormat) {
+            target.put(((LLSDFrozen) llsd).encodedBytes(syntax.documentFormat));
+            return;
+        }
+        try {
+            new Encoder(LLSDOutputBuffer.forBuffer(target), syntax).writeDocument(llsd.getContent());
+        } catch(IOException e) {
+            // Only possible when reading an InputStream binary value.
+            throw new LLSDException("Unable to read binary value.", e);
+        }
+    }
+
+    /**
+     * Writes the given LLSD as an XML document into a new buffer.
+     *
+     * @return a heap buffer positioned at zero, with the encoded document
+     * between its position and limit.
+     */
+    public ByteBuffer serialise(final LLSD llsd)
+        throws LLSDException {
+        final LLSDMeasurement measurement = LLSDMeasurement.start(metrics, LLSDMetrics.Operation.SERIALISE);
+        final ByteBuffer encoded;
+
+        if (null == measurement) {
+            return write(llsd);
+        }
+
+        try {
+            encoded = write(llsd);
+        } catch(LLSDException e) {
+            throw measurement.failed(e);
+        }
+        measurement.setBytes(encoded.remaining());
+        measurement.completed(llsd.getContent());
+        return encoded;
+    }
+
+    private ByteBuffer write(final LLSD llsd)
+        throws LLSDException {
+        final LLSDOutputBuffer buffer = LLSDOutputBuffer.growable(256);
+
+        if (llsd instanceof LLSDFrozen && null != syntax.documentFormat) {
+            return ByteBuffer.wrap(((LLSDFrozen) llsd).encodedBytes(syntax.documentFormat).clone());
+        }
+        try {
+            new Encoder(buffer, syntax).writeDocument(llsd.getContent());
+        } catch(IOException e) {
+            // Only possible when reading an InputStream binary value.
+            throw new LLSDException("Unable to read binary value.", e);
+        }
+        return buffer.toBuffer();
+    }
+
+    /**
+     * Writes the given LLSD in canonical form to an output stream. The
+     * canonical form is XML, but map keys are sorted, reals are written
+     * losslessly in a single normalised notation, and there is no
+     * whitespace between elements, so documents with equal content are
+     * written identically however their maps were built. Binary values
+     * given as an InputStream are read as for {@link #serialise(LLSD, OutputStream)}.
+     *
+     * @throws IOException if there was a problem writing to the stream.
+     * @throws LLSDException if the content holds a type which cannot be
+     * serialised.
+     */
+    public void serialiseCanonical(final LLSD llsd, final OutputStream output)
+        throws IOException, LLSDException {
+        final LLSDOutputBuffer buffer = LLSDOutputBuffer.forStream(output, STAGING.get());
+
+        if (llsd instanceof LLSDFrozen) {
+            output.write(((LLSDFrozen) llsd).encodedBytes(LLSDFormat.CANONICAL_XML));
+            return;
+        }
+        new Encoder(buffer, Syntax.CANONICAL).writeDocument(llsd.getContent());
+        buffer.flush();
+    }
+
+    /**
+     * Writes the given LLSD in canonical form into a new buffer. See
+     * {@link #serialiseCanonical(LLSD, OutputStream)}.
+     *
+     * @return a heap buffer positioned at zero, with the encoded document
+     * between its position and limit.
+     */
+    public ByteBuffer serialiseCanonical(final LLSD llsd)
+        throws LLSDException {
+        final LLSDOutputBuffer buffer = LLSDOutputBuffer.growable(256);
+
+        if (llsd instanceof LLSDFrozen) {
+            return ByteBuffer.wrap(((LLSDFrozen) llsd).encodedBytes(LLSDFormat.CANONICAL_XML).clone());
+        }
+        try {
+            new Encoder(buffer, Syntax.CANONICAL).writeDocument(llsd.getContent());
+        } catch(IOException e) {
+            // Only possible when reading an InputStream binary value.
+            throw new LLSDException("Unable to read binary value.", e);
+        }
+        return buffer.toBuffer();
+    }
+
+    /**
+     * Hashes the canonical form of the given LLSD, as it is encoded, without
+     * holding the text. Documents with equal content have equal hashes, so
+     * the hash can key a cache of serialised documents.
+     *
+     * @throws LLSDException if the content holds a type which cannot be
+     * serialised.
+     */
+    public LLSDHash hash(final LLSD llsd)
+        throws LLSDException {
+        final LLSDHasher hasher = new LLSDHasher();
+        final LLSDOutputBuffer buffer = LLSDOutputBuffer.forStream(hasher, STAGING.get());
+
+        if (llsd instanceof LLSDFrozen) {
+            final byte[] encoding = ((LLSDFrozen) llsd).encodedBytes(LLSDFormat.CANONICAL_XML);
+
+            hasher.write(encoding, 0, encoding.length);
+            return hasher.finish();
+        }
+        try {
+            new Encoder(buffer, Syntax.CANONICAL).writeDocument(llsd.getContent());
+            buffer.flush();
+        } catch(IOException e) {
+            // Only possible when reading an InputStream binary value.
+            throw new LLSDException("Unable to read binary value.", e);
+        }
+        return hasher.finish();
+    }
+
+    /**
+     * @return the 64-bit form of {@link #hash(LLSD)}.
+     */
+    public long hash64(final LLSD llsd)
+        throws LLSDException {
+        return hash(llsd).asLong();
+    }
+
+    /**
+     * Starts an XML document on the given channel, to be written a piece at
+     * a time. Output is written to the channel in blocks of at most
+     * {@value LLSDOutputBuffer#STREAM_BUFFER_SIZE} bytes as the buffer fills.
+     *
+     * @param channel a channel in blocking mode. Each write waits until the
+     * channel has accepted the whole block.
+     * @throws IOException if there was a problem writing the prolog.
+     * @throws java.nio.channels.IllegalBlockingModeException if the channel
+     * is in non-blocking mode.
+     */
+    public LLSDXMLWriter writer(final WritableByteChannel channel)
+        throws IOException {
+        return new LLSDXMLWriter(LLSDOutputBuffer.forChannel(channel,
+            LLSDOutputBuffer.STREAM_BUFFER_SIZE), syntax);
+    }
+
+    /**
+     * Starts an XML document on the given stream, to be written a piece at a
+     * time. See {@link #writer(WritableByteChannel)}.
+     */
+    public LLSDXMLWriter writer(final OutputStream output)
+        throws IOException {
+        return new LLSDXMLWriter(LLSDOutputBuffer.forStream(output), syntax);
+    }
+
+    /**
+     * Returns a channel which serialises the given LLSD as an XML document
+     * as it is read, in chunks of about
+     * {@value LLSDOutputBuffer#STREAM_BUFFER_SIZE} bytes.
+     */
+    public LLSDXMLChannel channel(final LLSD llsd) {
+        return channel(llsd, LLSDOutputBuffer.STREAM_BUFFER_SIZE);
+    }
+
+    /**
+     * Returns a channel which serialises the given LLSD as an XML document
+     * as it is read, in chunks of about the given size. Single values larger
+     * than a chunk are encoded whole.
+     */
+    public LLSDXMLChannel channel(final LLSD llsd, final int chunkSize) {
+        try {
+            return new LLSDXMLChannel(llsd.getContent(), chunkSize, syntax);
+        } catch(IOException e) {
+            // Only possible when writing to a stream.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The markup which surrounds values: with the line breaks and tabs of
+     * {@link LLSD#serialise(java.io.Writer, String)}, with no whitespace at
+     * all for the compact and canonical forms, or with line breaks alone for
+     * pretty output, whose indents the encoder writes by depth.
+     */
+    static final class Syntax {
+        static final Syntax DEFAULT = new Syntax("\n", "\t", true, false, false, LLSDFormat.XML);
+        static final Syntax CANONICAL = new Syntax("", "", true, false, true, LLSDFormat.CANONICAL_XML);
+
+        final byte[] prolog;
+        final byte[] epilog;
+        final byte[] mapStart;
+        final byte[] mapEnd;
+        final byte[] keyStart;
+        final byte[] keyEnd;
+        final byte[] arrayStart;
+        final byte[] arrayItem;
+        final byte[] arrayEnd;
+        final byte[] booleanTrue;
+        final byte[] booleanFalse;
+        final byte[] integerEnd;
+        final byte[] realEnd;
+        final byte[] realNaN;
+        final byte[] uuidEnd;
+        final byte[] stringEnd;
+        final byte[] undef;
+        final byte[][] undefined = new byte[LLSDUndefined.values().length][];
+
+        /**
+         * Whether keys, array items and closing tags are indented by depth.
+         */
+        final boolean pretty;
+
+        /**
+         * Whether map keys are sorted and reals written losslessly.
+         */
+        final boolean canonical;
+
+        /**
+         * The format whose cached encodings of frozen maps and arrays this
+         * writes, or null if their encoding depends on where they are.
+         */
+        final LLSDFormat format;
+
+        /**
+         * The format whose cached encodings of whole frozen documents this
+         * writes, or null.
+         */
+        final LLSDFormat documentFormat;
+
+        private     Syntax(final String newline, final String indent, final boolean prolog,
+                final boolean pretty, final boolean canonical, final LLSDFormat format) {
+            this.prolog = ascii((prolog ? "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + newline : "")
+                + "<llsd>" + newline);
+            this.epilog = ascii("</llsd>" + newline);
+            this.mapStart = ascii("<map>" + newline);
+            this.mapEnd = ascii("</map>" + newline);
+            this.keyStart = ascii(indent + "<key>");
+            this.keyEnd = ascii("</key>" + newline + indent);
+            this.arrayStart = ascii("<array>" + newline);
+            this.arrayItem = ascii(indent);
+            this.arrayEnd = ascii("</array>" + newline);
+            this.booleanTrue = ascii("<boolean>true</boolean>" + newline);
+            this.booleanFalse = ascii("<boolean>false</boolean>" + newline);
+            this.integerEnd = ascii("</integer>" + newline);
+            this.realEnd = ascii("</real>" + newline);
+            this.realNaN = ascii("<real>nan</real>" + newline);
+            this.uuidEnd = ascii("</uuid>" + newline);
+            this.stringEnd = ascii("</string>" + newline);
+            this.undef = ascii("<undef />" + newline);
+            this.pretty = pretty;
+            this.canonical = canonical;
+            this.format = pretty ? null : format;
+            this.documentFormat = prolog ? this.format : null;
+            for (LLSDUndefined value: LLSDUndefined.values()) {
+                final String tag = value.name().toLowerCase();
+
+                undefined[value.ordinal()] = ascii("<" + tag + "><undef /></" + tag + ">" + newline);
+            }
+        }
+
+        static Syntax standard(final boolean prolog) {
+            return prolog
+                ? DEFAULT
+                : new Syntax("\n", "\t", false, false, false, LLSDFormat.XML);
+        }
+
+        static Syntax compact(final boolean prolog) {
+            return new Syntax("", "", prolog, false, false, LLSDFormat.COMPACT_XML);
+        }
+
+        static Syntax pretty(final boolean prolog) {
+            return new Syntax("\n", "", prolog, true, false, LLSDFormat.XML);
+        }
+    }
+
+    /**
+     * Encoding state for one document. {@link LLSDXMLWriter} drives the
+     * container methods directly.
+     */
+    static final class Encoder {
+        private final LLSDOutputBuffer buffer;
+        private final Syntax syntax;
+        private final byte[] realText = new byte[LLSDRealFormat.MAX_FAST_LENGTH];
+
+        /**
+         * Number of maps and arrays open, which pretty output indents by.
+         */
+        private int depth = 0;
+
+        Encoder(final LLSDOutputBuffer buffer) {
+            this(buffer, Syntax.DEFAULT);
+        }
+
+        Encoder(final LLSDOutputBuffer buffer, final Syntax syntax) {
+            this.buffer = buffer;
+            this.syntax = syntax;
+        }
+
+        void writeDocument(final Object content)
+            throws IOException, LLSDException {
+            writeProlog();
+            if (null != content) {
+                writeElement(content);
+            }
+            writeEpilog();
+        }
+
+        void writeProlog() throws IOException {
+            buffer.write(syntax.prolog);
+        }
+
+        void writeEpilog() throws IOException {
+            buffer.write(syntax.epilog);
+        }
+
+        void writeMapStart() throws IOException {
+            buffer.write(syntax.mapStart);
+            depth++;
+        }
+
+        /**
+         * Writes a map key, and the indent before its value.
+         */
+        void writeKey(final String key) throws IOException {
+            if (syntax.pretty) {
+                writeIndent();
+            }
+            buffer.write(syntax.keyStart);
+            writeEscaped(key);
+            buffer.write(syntax.keyEnd);
+            if (syntax.pretty) {
+                writeIndent();
+            }
+        }
+
+        void writeMapEnd() throws IOException {
+            depth--;
+            if (syntax.pretty) {
+                writeIndent();
+            }
+            buffer.write(syntax.mapEnd);
+        }
+
+        void writeArrayStart() throws IOException {
+            buffer.write(syntax.arrayStart);
+            depth++;
+        }
+
+        /**
+         * Writes the indent before each array item.
+         */
+        void writeArrayItem() throws IOException {
+            if (syntax.pretty) {
+                writeIndent();
+            } else {
+                buffer.write(syntax.arrayItem);
+            }
+        }
+
+        void writeArrayEnd() throws IOException {
+            depth--;
+            if (syntax.pretty) {
+                writeIndent();
+            }
+            buffer.write(syntax.arrayEnd);
+        }
+
+        private void writeIndent() throws IOException {
+            for (int remaining = depth; remaining > 0; remaining -= TABS.length) {
+                buffer.write(TABS, 0, Math.min(remaining, TABS.length));
+            }
+        }
+
+        void writeElement(final Object toSerialise)
+            throws IOException, LLSDException {
+            assert null != toSerialise;
+
+            if (toSerialise instanceof LLSDFrozen.Node) {
+                writeFrozen((LLSDFrozen.Node) toSerialise);
+            } else if (toSerialise instanceof Map) {
+                final Map<String, Object> serialiseMap = (Map<String, Object>)toSerialise;
+
+                writeMapStart();
+                if (syntax.canonical) {
+                    for (String key: sortedKeys(serialiseMap.keySet())) {
+                        writeKey(key);
+                        writeElement(serialiseMap.get(key));
+                    }
+                } else {
+                    for (Map.Entry<String, Object> entry: serialiseMap.entrySet()) {
+                        writeKey(entry.getKey());
+                        writeElement(entry.getValue());
+                    }
+                }
+                writeMapEnd();
+            } else if (toSerialise instanceof List) {
+                writeArrayStart();
+                for (Object current: (List<Object>)toSerialise) {
+                    writeArrayItem();
+                    writeElement(current);
+                }
+                writeArrayEnd();
+            } else if (toSerialise instanceof Boolean) {
+                writeBoolean((Boolean) toSerialise);
+            } else if (toSerialise instanceof Integer) {
+                writeInteger((Integer) toSerialise);
+            } else if (toSerialise instanceof Double
+                || toSerialise instanceof Float) {
+                writeReal(((Number) toSerialise).doubleValue());
+            } else if (toSerialise instanceof UUID) {
+                buffer.write(UUID_START);
+                buffer.writeUUID((UUID) toSerialise);
+                buffer.write(syntax.uuidEnd);
+            } else if (toSerialise instanceof String) {
+                buffer.write(STRING_START);
+                writeEscaped((String) toSerialise);
+                buffer.write(syntax.stringEnd);
+            } else if (toSerialise instanceof Date) {
+                buffer.write(DATE_START);
+                buffer.writeASCII(LLSDScalars.formatDate((Date) toSerialise));
+                buffer.write(DATE_END);
+            } else if (toSerialise instanceof URI) {
+                buffer.write(URI_START);
+                writeEscaped(toSerialise.toString());
+                buffer.write(URI_END);
+            } else if (toSerialise instanceof byte[]) {
+                final byte[] binary = (byte[]) toSerialise;
+
+                buffer.write(BINARY_START);
+                buffer.writeBase64(binary, 0, binary.length);
+                buffer.write(BINARY_END);
+            } else if (toSerialise instanceof ByteBuffer) {
+                buffer.write(BINARY_START);
+                buffer.writeBase64((ByteBuffer) toSerialise);
+                buffer.write(BINARY_END);
+            } else if (toSerialise instanceof InputStream) {
+                buffer.write(BINARY_START);
+                buffer.writeBase64((InputStream) toSerialise);
+                buffer.write(BINARY_END);
+            } else if (toSerialise instanceof LLSDValue) {
+                writeValue((LLSDValue) toSerialise);
+            } else if (toSerialise instanceof LLSDUndefined) {
+                buffer.write(syntax.undefined[((LLSDUndefined) toSerialise).ordinal()]);
+            } else {
+                throw new LLSDException("Unable to serialise type \""
+                    + toSerialise.getClass().getName() + "\".");
+            }
+        }
+
+        /**
+         * Writes a frozen map or array from its cached encoding, or encodes
+         * it and offers the encoding to the cache.
+         */
+        private void writeFrozen(final LLSDFrozen.Node node)
+            throws IOException, LLSDException {
+            final byte[] cached = null == syntax.format ? null : node.cached(syntax.format);
+            final int start = buffer.size();
+
+            if (null == syntax.format) {
+                // Pretty output indents by depth, so is not cached.
+                writeElement(node.content());
+                return;
+            } else if (null != cached) {
+                buffer.write(cached);
+                return;
+            }
+            writeElement(node.content());
+            node.cache(syntax.format, buffer, start);
+        }
+
+        private void writeValue(final LLSDValue value)
+            throws IOException, LLSDException {
+            if (value == LLSDUndef.UNDEF) {
+                buffer.write(syntax.undef);
+                return;
+            } else if (value.isUndefined()) {
+                writeElement(value.toObject());
+                return;
+            }
+
+            switch (value.getType()) {
+            case MAP:
+                final LLSDMap map = (LLSDMap) value;
+
+                writeMapStart();
+                if (syntax.canonical) {
+                    for (String key: sortedKeys(map.keySet())) {
+                        writeKey(key);
+                        writeValue(map.get(key));
+                    }
+                } else {
+                    for (Map.Entry<String, LLSDValue> entry: map.entrySet()) {
+                        writeKey(entry.getKey());
+                        writeValue(entry.getValue());
+                    }
+                }
+                writeMapEnd();
+                break;
+            case ARRAY:
+                final LLSDArray array = (LLSDArray) value;
+
+                writeArrayStart();
+                for (int i = 0; i < array.size(); i++) {
+                    writeArrayItem();
+                    if (array instanceof LLSDIntegerArray) {
+                        writeInteger(((LLSDIntegerArray) array).getInteger(i));
+                    } else if (array instanceof LLSDRealArray) {
+                        writeReal(((LLSDRealArray) array).getReal(i));
+                    } else {
+                        writeValue(array.get(i));
+                    }
+                }
+                writeArrayEnd();
+                break;
+            case BOOLEAN:
+                writeBoolean(value.asBoolean());
+                break;
+            case INTEGER:
+                writeInteger(value.asInteger());
+                break;
+            case REAL:
+                writeReal(value.asReal());
+                break;
+            default:
+                // The remaining scalars hold their values as objects already.
+                writeElement(value.toObject());
+                break;
+            }
+        }
+
+        void writeBoolean(final boolean value)
+            throws IOException {
+            buffer.write(value ? syntax.booleanTrue : syntax.booleanFalse);
+        }
+
+        void writeInteger(final int value)
+            throws IOException {
+            buffer.write(INTEGER_START);
+            buffer.writeDecimal(value);
+            buffer.write(syntax.integerEnd);
+        }
+
+        void writeReal(final double value)
+            throws IOException {
+            final int length;
+
+            if (Double.isNaN(value)) {
+                buffer.write(syntax.realNaN);
+                return;
+            }
+
+            buffer.write(REAL_START);
+            if (syntax.canonical) {
+                final String text = LLSDRealFormat.formatCanonical(value);
+
+                buffer.writeASCII(text);
+                buffer.write(syntax.realEnd);
+                return;
+            }
+            length = LLSDRealFormat.formatFast(value, realText);
+            if (length >= 0) {
+                buffer.write(realText, 0, length);
+            } else {
+                final String text = LLSDRealFormat.format(value);
+
+                buffer.writeUTF8(text, 0, text.length());
+            }
+            buffer.write(syntax.realEnd);
+        }
+
+        /**
+         * @return the given keys in canonical order.
+         */
+        private static String[] sortedKeys(final Set<String> keys) {
+            final String[] sorted = keys.toArray(new String[keys.size()]);
+
+            Arrays.sort(sorted, KEY_ORDER);
+            return sorted;
+        }
+
+        /**
+         * Writes text escaped as {@link LLSD#encodeXML(String)} does.
+         */
+        private void writeEscaped(final String text)
+            throws IOException {
+            final int length;
+            int start = 0;
+
+            if (null == text) {
+                buffer.write(NULL_TEXT);
+                return;
+            }
+
+            length = text.length();
+            for (int i = 0; i < length; i++) {
+                final byte[] escaped;
+
+                switch (text.charAt(i)) {
+                case '<':
+                    escaped = ESCAPED_LT;
+                    break;
+                case '>':
+                    escaped = ESCAPED_GT;
+                    break;
+                case '&':
+                    escaped = ESCAPED_AMP;
+                    break;
+                case '"':
+                    escaped = ESCAPED_QUOT;
+                    break;
+                case '-':
+                    escaped = ESCAPED_HYPHEN;
+                    break;
+                default:
+                    continue;
+                }
+
+                buffer.writeUTF8(text, start, i);
+                buffer.write(escaped);
+                start = i + 1;
+            }
+            buffer.writeUTF8(text, start, length);
+        }
+    }
+
+    private static byte[] ascii(final String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
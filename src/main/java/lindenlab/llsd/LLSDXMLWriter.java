@@ -0,0 +1,254 @@
+/*
+ * LLSDJ - LLSD in Java example
+ *
+ * Copyright(C) 2008 University of St. Andrews
+ */
+
+package lindenlab.llsd;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Writes an LLSD XML document a piece at a time, so that documents far larger
+ * than memory can be produced as their content is generated. Output goes
+ * through a fixed size buffer which is written out whenever it fills, so
+ * memory use is bounded by the nesting depth and the size of the largest
+ * single value passed to {@link #value(Object)}, however long the document.
+ *
+ * The bytes written are identical to those the {@link LLSDXMLSerialiser}
+ * it came from produces for the same content:
+ *
+ * <pre>
+ * try (LLSDXMLWriter writer = new LLSDXMLSerialiser().writer(channel)) {
+ *     writer.beginMap().key("items").beginArray();
+ *     writer.values(inventory.stream());
+ *     writer.endArray().endMap();
+ * }
+ * </pre>
+ *
+ * Obtain instances from {@link LLSDXMLSerialiser#writer(java.nio.channels.WritableByteChannel)}
+ * or {@link LLSDXMLSerialiser#writer(java.io.OutputStream)}. Closing the
+ * writer ends the document and flushes it, but does not close the underlying
+ * channel or stream. Instances are not thread safe.
+ */
+public class LLSDXMLWriter implements Closeable, Flushable {
+    private static final byte ARRAY = 1;
+    private static final byte MAP_KEY = 2;
+    private static final byte MAP_VALUE = 3;
+
+    private final LLSDOutputBuffer buffer;
+    private final LLSDXMLSerialiser.Encoder encoder;
+
+    /**
+     * What the writer is expecting next within each enclosing container,
+     * innermost last.
+     */
+    private byte[] containers = new byte[16];
+    private int depth = 0;
+
+    private boolean hasRootValue = false;
+    private boolean isClosed = false;
+
+    LLSDXMLWriter(final LLSDOutputBuffer buffer, final LLSDXMLSerialiser.Syntax syntax)
+        throws IOException {
+        this.buffer = buffer;
+        this.encoder = new LLSDXMLSerialiser.Encoder(buffer, syntax);
+        encoder.writeProlog();
+    }
+
+    /**
+     * Starts a map. Follow with pairs of {@link #key(String)} and a value,
+     * then {@link #endMap()}.
+     */
+    public LLSDXMLWriter beginMap() throws IOException, LLSDException {
+        beforeValue();
+        encoder.writeMapStart();
+        push(MAP_KEY);
+        return this;
+    }
+
+    /**
+     * Writes the key of the next map entry.
+     */
+    public LLSDXMLWriter key(final String key) throws IOException, LLSDException {
+        checkOpen();
+        if (depth == 0 || containers[depth - 1] != MAP_KEY) {
+            throw new LLSDException("A key can only be written inside a map, before each value.");
+        }
+        encoder.writeKey(key);
+        containers[depth - 1] = MAP_VALUE;
+        return this;
+    }
+
+    public LLSDXMLWriter endMap() throws IOException, LLSDException {
+        checkOpen();
+        if (depth == 0 || containers[depth - 1] == ARRAY) {
+            throw new LLSDException("No map to end.");
+        } else if (containers[depth - 1] == MAP_VALUE) {
+            throw new LLSDException("Unable to end map as its last key has no value.");
+        }
+        depth--;
+        encoder.writeMapEnd();
+        return this;
+    }
+
+    /**
+     * Starts an array. Follow with its items, then {@link #endArray()}.
+     */
+    public LLSDXMLWriter beginArray() throws IOException, LLSDException {
+        beforeValue();
+        encoder.writeArrayStart();
+        push(ARRAY);
+        return this;
+    }
+
+    public LLSDXMLWriter endArray() throws IOException, LLSDException {
+        checkOpen();
+        if (depth == 0 || containers[depth - 1] != ARRAY) {
+            throw new LLSDException("No array to end.");
+        }
+        depth--;
+        encoder.writeArrayEnd();
+        return this;
+    }
+
+    /**
+     * Writes a whole value, which may be any content accepted by
+     * {@link LLSD#LLSD(Object)}, including complete maps, lists and
+     * {@link LLSDValue} trees.
+     *
+     * @throws LLSDException if the value is null, is of a type which cannot
+     * be serialised, or is not expected here.
+     */
+    public LLSDXMLWriter value(final Object value) throws IOException, LLSDException {
+        if (null == value) {
+            throw new LLSDException("Unable to serialise null, use LLSDUndef.UNDEF for no value.");
+        }
+        beforeValue();
+        encoder.writeElement(value);
+        return this;
+    }
+
+    public LLSDXMLWriter value(final boolean value) throws IOException, LLSDException {
+        beforeValue();
+        encoder.writeBoolean(value);
+        return this;
+    }
+
+    public LLSDXMLWriter value(final int value) throws IOException, LLSDException {
+        beforeValue();
+        encoder.writeInteger(value);
+        return this;
+    }
+
+    public LLSDXMLWriter value(final double value) throws IOException, LLSDException {
+        beforeValue();
+        encoder.writeReal(value);
+        return this;
+    }
+
+    /**
+     * Writes each remaining element of the iterator as an array item, as
+     * {@link #value(Object)} does. Elements are written as they are
+     * returned, so the iterator may generate them lazily.
+     */
+    public LLSDXMLWriter values(final Iterator<?> values) throws IOException, LLSDException {
+        while (values.hasNext()) {
+            value(values.next());
+        }
+        return this;
+    }
+
+    /**
+     * Writes each element of the stream as an array item. The stream is
+     * consumed in encounter order.
+     */
+    public LLSDXMLWriter values(final Stream<?> values) throws IOException, LLSDException {
+        return values(values.iterator());
+    }
+
+    /**
+     * Writes each remaining entry of the iterator as a map entry.
+     */
+    public LLSDXMLWriter entries(final Iterator<? extends Map.Entry<String, ?>> entries)
+        throws IOException, LLSDException {
+        while (entries.hasNext()) {
+            final Map.Entry<String, ?> entry = entries.next();
+
+            key(entry.getKey());
+            value(entry.getValue());
+        }
+        return this;
+    }
+
+    /**
+     * Writes out anything buffered. The underlying stream, if any, is not
+     * flushed itself.
+     */
+    @Override
+    public void flush() throws IOException {
+        buffer.flush();
+    }
+
+    /**
+     * Ends the document and flushes it. A document with no value is written
+     * as an empty &lt;llsd&gt; element, as for empty LLSD content.
+     *
+     * @throws IOException if a map or array is still open, or there was a
+     * problem writing.
+     */
+    @Override
+    public void close() throws IOException {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+        if (depth > 0) {
+            throw new IOException("LLSD document closed with "
+                + depth + " maps or arrays still open.");
+        }
+        encoder.writeEpilog();
+        buffer.flush();
+    }
+
+    private void checkOpen() throws LLSDException {
+        if (isClosed) {
+            throw new LLSDException("The writer has been closed.");
+        }
+    }
+
+    private void beforeValue() throws IOException, LLSDException {
+        checkOpen();
+        if (depth == 0) {
+            if (hasRootValue) {
+                throw new LLSDException("An LLSD document holds only one root value.");
+            }
+            hasRootValue = true;
+            return;
+        }
+
+        switch (containers[depth - 1]) {
+        case ARRAY:
+            encoder.writeArrayItem();
+            break;
+        case MAP_VALUE:
+            containers[depth - 1] = MAP_KEY;
+            break;
+        default:
+            throw new LLSDException("Expected a key before the next map value.");
+        }
+    }
+
+    private void push(final byte container) {
+        if (depth == containers.length) {
+            containers = Arrays.copyOf(containers, depth * 2);
+        }
+        containers[depth++] = container;
+    }
+}
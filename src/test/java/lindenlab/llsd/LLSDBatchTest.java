@@ -0,0 +1,134 @@
+package lindenlab.llsd;
+
+import junit.framework.TestCase;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+public class LLSDBatchTest extends TestCase {
+    private ForkJoinPool pool;
+    private ExecutorService threads;
+
+    @Override
+    protected void setUp() {
+        pool = new ForkJoinPool(4);
+        threads = Executors.newFixedThreadPool(3);
+    }
+
+    @Override
+    protected void tearDown() {
+        pool.shutdown();
+        threads.shutdown();
+    }
+
+    private static String region(final int i) {
+        return "<map><key>region_id</key><uuid>67153d5b-3659-afb4-8510-" + String.format("%012x", i) + "</uuid>"
+            + "<key>name</key><string>region " + i + "</string>"
+            + "<key>stats</key><array><real>" + (i * 0.25) + "</real><integer>" + i + "</integer></array></map>";
+    }
+
+    private static List<ByteBuffer> documents(final int count) throws Exception {
+        final List<ByteBuffer> documents = new ArrayList<ByteBuffer>();
+
+        for (int i = 0; i < count; i++) {
+            documents.add(ByteBuffer.wrap(("<?xml version=\"1.0\" encoding=\"UTF-8\"?><llsd>" + region(i) + "</llsd>")
+                .getBytes("UTF-8")));
+        }
+        return documents;
+    }
+
+    public void testParse() throws Exception {
+        final List<ByteBuffer> documents = documents(1000);
+        final LLSDParser parser = new LLSDParser();
+
+        for (ExecutorService executor: Arrays.asList(pool, threads)) {
+            final List<LLSD> parsed = new LLSDBatch(executor).parse(documents);
+
+            assertEquals(documents.size(), parsed.size());
+            for (int i = 0; i < documents.size(); i++) {
+                assertEquals(parser.parse(documents.get(i)).getContent(), parsed.get(i).getContent());
+            }
+        }
+        assertTrue(new LLSDBatch(pool).parse(Collections.<ByteBuffer>emptyList()).isEmpty());
+    }
+
+    public void testSerialise() throws Exception {
+        final LLSDBatch batch = new LLSDBatch(threads);
+        final List<LLSD> parsed = batch.parse(documents(100));
+        final List<ByteBuffer> encoded = batch.serialise(parsed);
+
+        for (int i = 0; i < parsed.size(); i++) {
+            assertEquals(new LLSDXMLSerialiser().serialise(parsed.get(i)), encoded.get(i));
+        }
+    }
+
+    public void testFailure() throws Exception {
+        final List<ByteBuffer> documents = new ArrayList<ByteBuffer>(documents(50));
+
+        documents.set(17, ByteBuffer.wrap("<llsd><integer>x</integer></llsd>".getBytes("UTF-8")));
+        documents.set(33, ByteBuffer.wrap("<llsd><map>".getBytes("UTF-8")));
+        for (ExecutorService executor: Arrays.asList(pool, threads)) {
+            try {
+                new LLSDBatch(executor).parse(documents);
+                fail("Expected LLSDException");
+            } catch (LLSDException e) {
+                // The first failure in order is reported.
+                assertTrue(e.getMessage(), e.getMessage().startsWith("Unable to parse document 17:"));
+                assertTrue(e.getCause() instanceof LLSDException);
+            }
+        }
+    }
+
+    public void testParseArray() throws Exception {
+        final StringBuilder document = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<llsd><array>");
+        final LLSDParser parser = new LLSDParser();
+        final ByteBuffer bytes;
+
+        for (int i = 0; i < 5000; i++) {
+            document.append(region(i)).append(i % 7 == 0 ? "<undef />" : "<!-- item -->\n");
+        }
+        bytes = ByteBuffer.wrap(document.append("</array></llsd>").toString().getBytes("UTF-8"));
+        for (ExecutorService executor: Arrays.asList(pool, threads)) {
+            assertEquals(parser.parse(bytes).getContent(), new LLSDBatch(executor).parseArray(bytes).getContent());
+        }
+
+        parser.setOrderedMaps(true);
+        assertTrue(((List<Object>) new LLSDBatch(parser, new LLSDXMLSerialiser(), pool).parseArray(bytes).getContent())
+            .get(0) instanceof LinkedHashMap);
+    }
+
+    public void testParseArrayFallback() throws Exception {
+        final LLSDBatch batch = new LLSDBatch(pool);
+
+        assertEquals(3, batch.parseArray(ByteBuffer.wrap("<llsd><integer>3</integer></llsd>".getBytes("UTF-8")))
+            .getContent());
+        assertNull(batch.parseArray(ByteBuffer.wrap("<llsd></llsd>".getBytes("UTF-8"))).getContent());
+        assertEquals(Collections.emptyList(), batch.parseArray(ByteBuffer.wrap("<llsd><array /></llsd>"
+            .getBytes("UTF-8"))).getContent());
+    }
+
+    public void testParseArrayLimits() throws Exception {
+        final LLSDParser parser = new LLSDParser();
+        final LLSDBatch batch = new LLSDBatch(parser, new LLSDXMLSerialiser(), pool);
+        final ByteBuffer document = ByteBuffer.wrap(("<llsd><array><integer>1</integer><array><array><integer>2"
+            + "</integer></array></array></array></llsd>").getBytes("UTF-8"));
+
+        parser.setLimits(LLSDLimits.DEFAULT.withMaxDepth(3));
+        try {
+            batch.parseArray(document);
+            fail("Expected LLSDException");
+        } catch (LLSDException e) {
+            assertTrue(e.getCause() instanceof LLSDLimitException.Depth);
+        }
+        try {
+            batch.parseArray(ByteBuffer.wrap("<llsd><array><integer>1</integer></array><integer>2</integer></llsd>"
+                .getBytes("UTF-8")));
+            fail("Expected LLSDException");
+        } catch (LLSDException e) {
+            // expected
+        }
+    }
+}
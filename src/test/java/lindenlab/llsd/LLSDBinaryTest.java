@@ -0,0 +1,162 @@
+package lindenlab.llsd;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+public class LLSDBinaryTest extends TestCase {
+    private Map<String, Object> sampleContent() throws Exception {
+        final Map<String, Object> content = new HashMap<String, Object>();
+        final List<Object> undefined = new ArrayList<Object>();
+
+        content.put("region_id", UUID.fromString("67153d5b-3659-afb4-8510-adda2c034649"));
+        content.put("scale", "one minute \u00e9\u4e2d");
+        content.put("sim fps", 44.38898);
+        content.put("agents", 12);
+        content.put("enabled", Boolean.TRUE);
+        content.put("disabled", Boolean.FALSE);
+        content.put("seen", new Date(1200000000000L));
+        content.put("home", new URI("http://example.com/a?b=c"));
+        content.put("nested", Collections.singletonMap("deep", Arrays.asList((Object) 1, 2.5, "x")));
+        undefined.addAll(Arrays.asList((Object[]) LLSDUndefined.values()));
+        content.put("undefined", undefined);
+        return content;
+    }
+
+    private void assertSameContent(final Map<String, Object> expected, final Map<String, Object> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+        for (String key: expected.keySet()) {
+            assertEquals(key, expected.get(key), actual.get(key));
+        }
+    }
+
+    public void testStreamRoundTrip() throws Exception {
+        final Map<String, Object> content = sampleContent();
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        content.put("blob", new byte[] {0, 1, 2, (byte) 0xff});
+        new LLSDBinarySerialiser(true).serialise(new LLSD(content), output);
+
+        final Map<String, Object> parsed = (Map<String, Object>) new LLSDBinaryParser(true)
+            .parse(new ByteArrayInputStream(output.toByteArray())).getContent();
+        assertTrue(Arrays.equals((byte[]) content.remove("blob"), (byte[]) parsed.remove("blob")));
+        assertSameContent(content, parsed);
+    }
+
+    public void testBufferRoundTrip() throws Exception {
+        final Map<String, Object> content = sampleContent();
+        final ByteBuffer buffer = new LLSDBinarySerialiser(true).serialise(new LLSD(content));
+
+        assertSameContent(content, (Map<String, Object>) new LLSDBinaryParser(true).parse(buffer).getContent());
+
+        final ByteBuffer direct = ByteBuffer.allocateDirect(buffer.remaining());
+        new LLSDBinarySerialiser(true).serialise(new LLSD(content), direct);
+        direct.flip();
+        assertEquals(buffer, direct);
+    }
+
+    public void testEncoding() throws Exception {
+        final ByteBuffer buffer = new LLSDBinarySerialiser()
+            .serialise(new LLSD(Arrays.asList((Object) 1, "a")));
+        final byte[] expected = {'[', 0, 0, 0, 2, 'i', 0, 0, 0, 1, 's', 0, 0, 0, 1, 'a', ']'};
+        final byte[] actual = new byte[buffer.remaining()];
+
+        buffer.get(actual);
+        assertTrue(Arrays.equals(expected, actual));
+    }
+
+    public void testUndefined() throws Exception {
+        final LLSD llsd = new LLSD(Arrays.asList((Object) LLSDUndefined.INTEGER, LLSDUndefined.STRING));
+        final ByteBuffer standard = new LLSDBinarySerialiser().serialise(llsd);
+        final ByteBuffer typed = new LLSDBinarySerialiser(true).serialise(llsd);
+        final ByteBuffer frozen = new LLSDBinarySerialiser(true).serialise(llsd.freeze());
+
+        assertEquals(ByteBuffer.wrap(new byte[] {'[', 0, 0, 0, 2, '!', '!', ']'}), standard);
+        assertEquals(ByteBuffer.wrap(new byte[] {'[', 0, 0, 0, 2, '?', 'i', '?', 's', ']'}), typed);
+        assertEquals(typed, frozen);
+        assertEquals(standard, ByteBuffer.wrap(llsd.freeze().encodedBytes(LLSDFormat.BINARY)));
+
+        assertEquals(Arrays.asList((Object) "", ""), new LLSDBinaryParser().parse(standard).getContent());
+        assertEquals(llsd.getContent(), new LLSDBinaryParser(true).parse(typed).getContent());
+        try {
+            new LLSDBinaryParser().parse(typed);
+            fail("Expected LLSDException");
+        } catch (LLSDException e) {
+            // expected
+        }
+    }
+
+    public void testHeaderAndUndef() throws Exception {
+        final byte[] document = "<? LLSD/Binary ?>\n!".getBytes("US-ASCII");
+
+        assertEquals("", new LLSDBinaryParser().parse(ByteBuffer.wrap(document)).getContent());
+    }
+
+    public void testEmptyDocument() throws Exception {
+        assertNull(new LLSDBinaryParser().parse(new ByteArrayInputStream(new byte[0])).getContent());
+    }
+
+    public void testTruncatedDocument() throws Exception {
+        try {
+            new LLSDBinaryParser().parse(ByteBuffer.wrap(new byte[] {'[', 0, 0, 0, 2, 'i', 0}));
+            fail("Expected LLSDException");
+        } catch (LLSDException e) {
+            // expected
+        }
+    }
+
+    public void testFalseLength() throws Exception {
+        final byte[] document = {'s', 0x7f, (byte) 0xff, (byte) 0xff, (byte) 0xf0};
+        final LLSDBinaryParser parser = new LLSDBinaryParser();
+
+        try {
+            parser.parse(new ByteArrayInputStream(document));
+            fail("Expected LLSDException");
+        } catch (LLSDException e) {
+            // expected
+        }
+        try {
+            parser.parse(ByteBuffer.wrap(document));
+            fail("Expected LLSDException");
+        } catch (LLSDException e) {
+            // expected
+        }
+
+        parser.setLimits(LLSDLimits.DEFAULT.withMaxStringLength(1).withMaxBinaryLength(1));
+        try {
+            parser.parse(new ByteArrayInputStream(document));
+            fail("Expected LLSDLimitException.StringLength");
+        } catch (LLSDLimitException.StringLength e) {
+            // expected
+        }
+        document[0] = 'b';
+        try {
+            parser.parse(new ByteArrayInputStream(document));
+            fail("Expected LLSDLimitException.BinaryLength");
+        } catch (LLSDLimitException.BinaryLength e) {
+            // expected
+        }
+    }
+
+    public void testTrailingData() throws Exception {
+        final byte[] document = {'i', 0, 0, 0, 1, 'i', 0, 0, 0, 2};
+
+        try {
+            new LLSDBinaryParser().parse(ByteBuffer.wrap(document));
+            fail("Expected LLSDException");
+        } catch (LLSDException e) {
+            // expected
+        }
+        try {
+            new LLSDBinaryParser().parseValue(new ByteArrayInputStream(document));
+            fail("Expected LLSDException");
+        } catch (LLSDException e) {
+            // expected
+        }
+        assertEquals(1, new LLSDBinaryParser().parse(ByteBuffer.wrap(document, 0, 5)).getContent());
+    }
+}
@@ -0,0 +1,122 @@
+package lindenlab.llsd;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+public class LLSDCompactMapTest extends TestCase {
+    static final String REGIONS = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><llsd><array>"
+        + "<map><key>region_id</key><uuid>67153d5b-3659-afb4-8510-adda2c034649</uuid>"
+        + "<key>scale</key><string>one minute</string>"
+        + "<key>stats</key><map><key>sim fps</key><real>44.5</real><key>agent count</key><integer>3</integer></map></map>"
+        + "<map><key>region_id</key><uuid>8e56ef5c-a7be-4b92-a85c-3f1dee7a58f7</uuid>"
+        + "<key>scale</key><string>one hour</string>"
+        + "<key>stats</key><map><key>sim fps</key><real>45</real><key>agent count</key><integer>0</integer></map></map>"
+        + "</array></llsd>";
+
+    public void testParseMatchesHashMaps() throws Exception {
+        final LLSDParser plain = new LLSDParser();
+        final LLSDParser compact = new LLSDParser();
+        final byte[] document = REGIONS.getBytes("UTF-8");
+        final Object expected = plain.parse(new ByteArrayInputStream(document)).getContent();
+
+        compact.setCompactMaps(true);
+        assertEquals(expected, compact.parse(new ByteArrayInputStream(document)).getContent());
+        assertEquals(expected, compact.parse(ByteBuffer.wrap(document)).getContent());
+        assertEquals(expected.hashCode(), compact.parse(ByteBuffer.wrap(document)).getContent().hashCode());
+        // Compact maps serialise in document order.
+        assertEquals(expected, plain.parse(new ByteArrayInputStream(
+            compact.parse(ByteBuffer.wrap(document)).toString().getBytes("UTF-8"))).getContent());
+    }
+
+    public void testKeysAndLayoutsShared() throws Exception {
+        final LLSDParser parser = new LLSDParser();
+        final List<Map<String, Object>> regions;
+        final List<String> firstKeys;
+        final List<String> secondKeys;
+
+        parser.setCompactMaps(true);
+        regions = (List<Map<String, Object>>) parser.parse(new ByteArrayInputStream(REGIONS.getBytes("UTF-8"))).getContent();
+        firstKeys = new ArrayList<String>(regions.get(0).keySet());
+        secondKeys = new ArrayList<String>(regions.get(1).keySet());
+
+        assertTrue(regions.get(0) instanceof LLSDCompactMap);
+        assertEquals(Arrays.asList("region_id", "scale", "stats"), firstKeys);
+        for (int i = 0; i < firstKeys.size(); i++) {
+            assertSame(firstKeys.get(i), secondKeys.get(i));
+        }
+        // Interned keys are the literals.
+        assertSame("scale", firstKeys.get(1));
+        assertEquals("one hour", regions.get(1).get("scale"));
+        assertEquals(3, ((Map<String, Object>) regions.get(0).get("stats")).get("agent count"));
+    }
+
+    public void testInternKeysOnly() throws Exception {
+        final LLSDParser parser = new LLSDParser();
+        final List<Map<String, Object>> regions;
+
+        parser.setInternKeys(true);
+        regions = (List<Map<String, Object>>) parser.parse(ByteBuffer.wrap(REGIONS.getBytes("UTF-8"))).getContent();
+        assertTrue(regions.get(0) instanceof HashMap);
+        for (String key: regions.get(1).keySet()) {
+            assertSame(key.intern(), key);
+        }
+    }
+
+    public void testMapOperations() {
+        final LLSDMapLayout root = LLSDMapLayout.root();
+        final Map<String, Object> map = LLSDCompactMap.build(root,
+            new String[] {"a", "b", "c"}, new Object[] {1, 2, 3}, 3);
+        final Iterator<Map.Entry<String, Object>> entries;
+        final Map.Entry<String, Object> entry;
+
+        assertEquals(3, map.size());
+        assertEquals(2, map.put("b", 20));
+        assertEquals(20, map.get(new String("b")));
+        assertEquals(1, map.remove("a"));
+        assertNull(map.remove("a"));
+        assertFalse(map.containsKey("a"));
+        assertEquals(2, map.size());
+        assertNull(map.put("a", 10));
+        assertEquals(3, map.size());
+
+        entries = map.entrySet().iterator();
+        entry = entries.next();
+        assertEquals("a", entry.getKey());
+        entry.setValue(100);
+        assertEquals(100, map.get("a"));
+        entries.next();
+        entries.remove();
+        assertFalse(map.containsKey("b"));
+
+        // A key outside the layout moves the map to a plain map.
+        assertNull(map.put("d", 4));
+        assertEquals(3, map.size());
+        assertEquals(100, map.get("a"));
+        assertEquals(Arrays.asList("a", "c", "d"), new ArrayList<String>(map.keySet()));
+
+        map.clear();
+        assertTrue(map.isEmpty());
+    }
+
+    public void testBuildLimits() {
+        final LLSDMapLayout root = LLSDMapLayout.root();
+        final String[] keys = new String[LLSDMapLayout.MAX_KEYS + 1];
+        final Object[] values = new Object[keys.length];
+        final Map<String, Object> duplicated;
+
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = "key " + i;
+            values[i] = i;
+        }
+        assertNull(LLSDCompactMap.build(root, keys, values, keys.length));
+        assertNotNull(LLSDCompactMap.build(root, keys, values, LLSDMapLayout.MAX_KEYS));
+        assertNull(LLSDCompactMap.build(root, new String[] {null}, new Object[] {1}, 1));
+
+        duplicated = LLSDCompactMap.build(root, new String[] {"a", "b", "a"}, new Object[] {1, 2, 3}, 3);
+        assertEquals(2, duplicated.size());
+        assertEquals(3, duplicated.get("a"));
+    }
+}
@@ -0,0 +1,246 @@
+package lindenlab.llsd;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+public class LLSDFrameTest extends TestCase {
+    private static LLSD event(final int number) {
+        final Map<String, Object> event = new LinkedHashMap<String, Object>();
+
+        event.put("message", "ChatFromSimulator");
+        event.put("sequence", number);
+        // Only values which untyped JSON reads back as the same type.
+        event.put("body", Arrays.asList((Object) "Hello", 1.5, true));
+        return new LLSD(event);
+    }
+
+    private static byte[] write(final LLSDFormat format, final boolean indexed, final int count)
+        throws Exception {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final LLSDFrameWriter writer = new LLSDFrameWriter(output, format, indexed);
+
+        for (int i = 0; i < count; i++) {
+            writer.write(event(i));
+        }
+        assertEquals(count, writer.getCount());
+        writer.close();
+        return output.toByteArray();
+    }
+
+    public void testFormats() throws Exception {
+        for (LLSDFormat format: LLSDFormat.values()) {
+            final LLSDFrameReader reader = new LLSDFrameReader(new ByteArrayInputStream(write(format, true, 3)));
+
+            assertEquals(format, reader.getFormat());
+            for (int i = 0; i < 3; i++) {
+                assertEquals(format.name(), event(i).getContent(), reader.next().getContent());
+            }
+            assertNull(reader.next());
+            assertNull(reader.next());
+        }
+    }
+
+    public void testBatches() throws Exception {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final LLSDFrameWriter writer = new LLSDFrameWriter(output, LLSDFormat.BINARY);
+        final LLSDFrameReader reader;
+        int count = 0;
+
+        // Small records wait for a full batch.
+        writer.write(event(0));
+        assertEquals(0, output.size());
+        writer.flush();
+        assertTrue(output.size() > 0);
+        while (output.size() < LLSDFrameWriter.BATCH_SIZE * 3) {
+            writer.write(event(++count));
+        }
+        // A record larger than a batch.
+        writer.write(new LLSD(new byte[LLSDFrameWriter.BATCH_SIZE * 2]));
+        writer.close();
+
+        reader = new LLSDFrameReader(new ByteArrayInputStream(output.toByteArray()));
+        for (int i = 0; i <= count; i++) {
+            assertEquals(event(i).getContent(), reader.next().getContent());
+        }
+        assertEquals(LLSDFrameWriter.BATCH_SIZE * 2, ((byte[]) reader.next().getContent()).length);
+        assertNull(reader.next());
+    }
+
+    public void testRecords() throws Exception {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final LLSDFrameWriter writer = new LLSDFrameWriter(output, LLSDFormat.COMPACT_XML);
+        final LLSDFrameReader reader;
+        final LLSDFrozen frozen = event(1).freeze();
+
+        writer.writeRecord(ByteBuffer.wrap("<llsd><integer>7</integer></llsd>".getBytes("UTF-8")));
+        try {
+            writer.write(new LLSD(Arrays.asList((Object) 1, new Object())));
+            fail("Expected LLSDException");
+        } catch (LLSDException e) {
+            // expected
+        }
+        try {
+            writer.write(new LLSD(new AbstractMap<String, Object>() {
+                public Set<Map.Entry<String, Object>> entrySet() {
+                    throw new IllegalStateException("Broken map");
+                }
+            }));
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        // Nothing was written for the failed documents.
+        writer.write(frozen);
+        writer.close();
+        try {
+            writer.write(event(2));
+            fail("Expected IOException");
+        } catch (java.io.IOException e) {
+            // expected
+        }
+
+        reader = new LLSDFrameReader(new ByteArrayInputStream(output.toByteArray()));
+        assertEquals("<llsd><integer>7</integer></llsd>", new String(toBytes(reader.nextRecord()), "UTF-8"));
+        assertTrue(Arrays.equals(toBytes(frozen.encoded(LLSDFormat.COMPACT_XML)), toBytes(reader.nextRecord())));
+        assertNull(reader.nextRecord());
+    }
+
+    private static byte[] toBytes(final ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.remaining()];
+
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    public void testSeek() throws Exception {
+        for (boolean indexed: new boolean[] {true, false}) {
+            final File file = File.createTempFile("frames", ".llsd");
+
+            try {
+                final FileChannel channel;
+                final LLSDFrameReader reader;
+
+                try (FileChannel output = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                    final LLSDFrameWriter writer = new LLSDFrameWriter(output, LLSDFormat.JSON, indexed);
+
+                    for (int i = 0; i < 100; i++) {
+                        writer.write(event(i));
+                    }
+                    writer.close();
+                }
+
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                try {
+                    reader = new LLSDFrameReader(channel);
+                    assertEquals(event(0).getContent(), reader.next().getContent());
+                    assertEquals(100, reader.size());
+                    // Finding the records does not lose the reader's place.
+                    assertEquals(event(1).getContent(), reader.next().getContent());
+                    assertEquals(event(57).getContent(), reader.get(57).getContent());
+                    assertEquals(event(58).getContent(), reader.next().getContent());
+                    reader.seek(99);
+                    assertEquals(event(99).getContent(), reader.next().getContent());
+                    assertNull(reader.next());
+                    reader.seek(3);
+                    assertEquals(event(3).getContent(), reader.next().getContent());
+                    try {
+                        reader.get(100);
+                        fail("Expected IndexOutOfBoundsException");
+                    } catch (IndexOutOfBoundsException e) {
+                        // expected
+                    }
+                } finally {
+                    channel.close();
+                }
+            } finally {
+                file.delete();
+            }
+        }
+    }
+
+    public void testNotSeekable() throws Exception {
+        final LLSDFrameReader reader = new LLSDFrameReader(new ByteArrayInputStream(write(LLSDFormat.BINARY, true, 2)));
+
+        try {
+            reader.seek(1);
+            fail("Expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    public void testInvalid() throws Exception {
+        final byte[] frames = write(LLSDFormat.NOTATION, false, 2);
+        final byte[] corrupt = frames.clone();
+        final LLSDFrameReader truncated = new LLSDFrameReader(
+            new ByteArrayInputStream(Arrays.copyOf(frames, frames.length - 3)));
+
+        try {
+            new LLSDFrameReader(new ByteArrayInputStream("<llsd/>".getBytes("UTF-8")));
+            fail("Expected LLSDException");
+        } catch (LLSDException e) {
+            // expected
+        }
+
+        assertNotNull(truncated.next());
+        try {
+            truncated.next();
+            fail("Expected LLSDException");
+        } catch (LLSDException e) {
+            // expected
+        }
+
+        // The first byte of the first record.
+        corrupt[4 + 2 + LLSDFormat.NOTATION.name().length() + 4] = ')';
+        try {
+            new LLSDFrameReader(new ByteArrayInputStream(corrupt)).next();
+            fail("Expected LLSDException");
+        } catch (LLSDException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Unable to parse record 0"));
+        }
+    }
+
+    public void testCorruptLength() throws Exception {
+        final byte[] frames = write(LLSDFormat.BINARY, false, 1);
+        final int start = 4 + 2 + LLSDFormat.BINARY.name().length();
+        final byte[] corrupt = Arrays.copyOf(frames, start + 4);
+        final File file = File.createTempFile("frames", ".llsd");
+        final LLSDParser parser = new LLSDParser();
+
+        ByteBuffer.wrap(corrupt).putInt(start, 0x7ff00000);
+        try {
+            new LLSDFrameReader(new ByteArrayInputStream(corrupt)).next();
+            fail("Expected LLSDException");
+        } catch (LLSDException e) {
+            // expected
+        }
+
+        parser.setLimits(LLSDLimits.DEFAULT.withMaxDocumentBytes(8));
+        try {
+            new LLSDFrameReader(java.nio.channels.Channels.newChannel(new ByteArrayInputStream(frames)), parser)
+                .next();
+            fail("Expected LLSDLimitException");
+        } catch (LLSDLimitException.DocumentSize e) {
+            // expected
+        }
+
+        try {
+            java.nio.file.Files.write(file.toPath(), corrupt);
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                new LLSDFrameReader(channel).next();
+                fail("Expected LLSDException");
+            } catch (LLSDException e) {
+                // expected
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package lindenlab.llsd;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.*;
+
+public class LLSDFrozenTest extends TestCase {
+    private static Map<String, Object> document(final int regions) {
+        final Map<String, Object> root = new LinkedHashMap<String, Object>();
+        final List<Object> list = new ArrayList<Object>();
+
+        for (int i = 0; i < regions; i++) {
+            final Map<String, Object> region = new LinkedHashMap<String, Object>();
+
+            region.put("region_id", new UUID(i, i * 31L));
+            region.put("name", "region " + i);
+            region.put("agents", i);
+            region.put("fps", 44.5 + i);
+            region.put("online", i % 2 == 0);
+            region.put("since", new Date(1200000000000L + i));
+            region.put("map", URI.create("http://example.com/map/" + i));
+            region.put("texture", new byte[] {1, 2, (byte) i});
+            list.add(region);
+        }
+        root.put("regions", list);
+        root.put("scale", "one minute");
+        return root;
+    }
+
+    private static byte[] bytes(final ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.remaining()];
+
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    public void testEncodedMatchesSerialisers() throws Exception {
+        final LLSD llsd = new LLSD(document(50));
+        final LLSDFrozen frozen = llsd.freeze(new LLSDEncodingCache(1024 * 1024));
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        assertTrue(Arrays.equals(bytes(new LLSDXMLSerialiser().serialise(llsd)),
+            bytes(frozen.encoded(LLSDFormat.XML))));
+        assertTrue(Arrays.equals(bytes(new LLSDXMLSerialiser().serialiseCanonical(llsd)),
+            bytes(frozen.encoded(LLSDFormat.CANONICAL_XML))));
+        assertTrue(Arrays.equals(bytes(new LLSDBinarySerialiser().serialise(llsd)),
+            bytes(frozen.encoded(LLSDFormat.BINARY))));
+        assertTrue(Arrays.equals(bytes(new LLSDNotationSerialiser().serialise(llsd)),
+            bytes(frozen.encoded(LLSDFormat.NOTATION))));
+
+        // The serialisers write the cached encodings of frozen documents.
+        new LLSDXMLSerialiser().serialise(frozen, output);
+        assertTrue(Arrays.equals(bytes(frozen.encoded(LLSDFormat.XML)), output.toByteArray()));
+        assertTrue(Arrays.equals(bytes(frozen.encoded(LLSDFormat.BINARY)),
+            bytes(new LLSDBinarySerialiser().serialise(frozen))));
+        assertEquals(new LLSDXMLSerialiser().hash(llsd), new LLSDXMLSerialiser().hash(frozen));
+        assertEquals(llsd.toString(), frozen.toString());
+    }
+
+    public void testFrozenContentParsesBack() throws Exception {
+        final LLSDFrozen frozen = new LLSD(document(3)).freeze();
+        final LLSD parsed = new LLSDParser().parse(new ByteArrayInputStream(bytes(frozen.encoded(LLSDFormat.XML))));
+        final Map<String, Object> region = (Map<String, Object>)
+            ((List<Object>) ((Map<String, Object>) parsed.getContent()).get("regions")).get(2);
+
+        assertEquals("region 2", region.get("name"));
+        assertEquals(2, region.get("agents"));
+    }
+
+    public void testImmutable() throws Exception {
+        final LLSDFrozen frozen = new LLSD(document(2)).freeze();
+        final Map<String, Object> root = (Map<String, Object>) frozen.getContent();
+
+        try {
+            root.put("scale", "one hour");
+            fail("Expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            ((List<Object>) root.get("regions")).add("region");
+            fail("Expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            frozen.encoded(LLSDFormat.XML).put((byte) 0);
+            fail("Expected ReadOnlyBufferException");
+        } catch (ReadOnlyBufferException e) {
+            // expected
+        }
+        assertSame(frozen, frozen.freeze());
+    }
+
+    public void testUnfreezable() {
+        try {
+            new LLSD(Collections.singletonList(new ByteArrayInputStream(new byte[1]))).freeze();
+            fail("Expected LLSDException");
+        } catch (LLSDException e) {
+            // expected
+        }
+        try {
+            new LLSD(Collections.singletonList(new Object())).freeze();
+            fail("Expected LLSDException");
+        } catch (LLSDException e) {
+            // expected
+        }
+    }
+
+    public void testWithSharesFragments() throws Exception {
+        final LLSDEncodingCache cache = new LLSDEncodingCache(1024 * 1024);
+        final LLSDFrozen frozen = new LLSD(document(50)).freeze(cache);
+        final LLSDFrozen changed;
+        final Map<String, Object> expected = document(50);
+        final long cached;
+
+        frozen.encoded(LLSDFormat.XML);
+        // The whole document, and the regions array within it.
+        cached = cache.size();
+        assertTrue(cached > frozen.encoded(LLSDFormat.XML).remaining());
+
+        changed = frozen.with("scale", "one hour");
+        expected.put("scale", "one hour");
+        assertSame(((Map<String, Object>) frozen.getContent()).get("regions"),
+            ((Map<String, Object>) changed.getContent()).get("regions"));
+        assertEquals(new LLSD(expected).toString(), changed.toString());
+
+        try {
+            new LLSD(Collections.emptyList()).freeze(cache).with("scale", "one hour");
+            fail("Expected LLSDException");
+        } catch (LLSDException e) {
+            // expected
+        }
+    }
+
+    public void testEviction() throws Exception {
+        final LLSDEncodingCache cache = new LLSDEncodingCache(4096);
+        final List<LLSDFrozen> documents = new ArrayList<LLSDFrozen>();
+
+        for (int i = 0; i < 20; i++) {
+            final LLSDFrozen frozen = new LLSD(document(4)).freeze(cache);
+
+            documents.add(frozen);
+            frozen.encoded(LLSDFormat.XML);
+            assertTrue(cache.size() <= cache.getBudget());
+        }
+        // Evicted encodings are encoded again.
+        assertEquals(new LLSD(document(4)).toString(), documents.get(0).toString());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        try {
+            new LLSDEncodingCache(-1);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testCacheKeysAreDistinct() {
+        final Set<Long> keys = new HashSet<Long>();
+
+        for (long id = 0; id < 100; id++) {
+            for (LLSDFormat format: LLSDFormat.values()) {
+                assertTrue(keys.add(LLSDEncodingCache.key(id, format)));
+            }
+        }
+    }
+}
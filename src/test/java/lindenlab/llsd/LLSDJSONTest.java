@@ -0,0 +1,160 @@
+package lindenlab.llsd;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+public class LLSDJSONTest extends TestCase {
+    private static final UUID REGION_ID = UUID.fromString("67153d5b-3659-afb4-8510-adda2c034649");
+
+    private Object parse(final String document, final boolean typed) throws Exception {
+        return new LLSDJSONParser(typed).parse(new ByteArrayInputStream(document.getBytes("UTF-8"))).getContent();
+    }
+
+    private String serialise(final Object content, final boolean typed) throws Exception {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        new LLSDJSONSerialiser(typed).serialise(new LLSD(content), output);
+        return output.toString("UTF-8");
+    }
+
+    public void testParse() throws Exception {
+        final Map<String, Object> content = (Map<String, Object>) parse(
+            "{\"key\": 42, \"id\": \"67153d5b-3659-afb4-8510-adda2c034649\",\n"
+            + " \"list\": [1.5, -2e3, true, false, null, 3000000000, -0],\n"
+            + " \"text\": \"tab\\there \\\"quoted\\\" \\u00e9\\ud83d\\ude00\\/\",\n"
+            + " \"empty\": {}, \"none\": [], \"$uuid\": 1}", false);
+
+        assertEquals(42, content.get("key"));
+        assertEquals("67153d5b-3659-afb4-8510-adda2c034649", content.get("id"));
+        assertEquals(Arrays.asList((Object) 1.5, -2000.0, true, false, "", 3.0e9, 0), content.get("list"));
+        assertEquals("tab\there \"quoted\" \u00e9\ud83d\ude00/", content.get("text"));
+        assertEquals(Collections.emptyMap(), content.get("empty"));
+        assertEquals(Collections.emptyList(), content.get("none"));
+        // Only typed parsers read tags.
+        assertEquals(1, content.get("$uuid"));
+    }
+
+    public void testSerialise() throws Exception {
+        final Map<String, Object> content = new LinkedHashMap<String, Object>();
+
+        content.put("key", 42);
+        content.put("say \"hi\"", "a\\b\n\u0001");
+        content.put("list", Arrays.asList((Object) 1.0, false, new byte[] {'h', 'i'}, LLSDUndefined.INTEGER,
+            Double.NaN, REGION_ID, new Date(1138804193430L), URI.create("http://example.com/")));
+        content.put("$key", "");
+        assertEquals("{\"key\":42,\"say \\\"hi\\\"\":\"a\\\\b\\n\\u0001\",\"list\":[1.0,false,\"aGk=\",null,null,"
+            + "\"67153d5b-3659-afb4-8510-adda2c034649\",\"2006-02-01T14:29:53.430Z\",\"http://example.com/\"],"
+            + "\"$key\":\"\"}", serialise(content, false));
+        assertEquals("{\"key\":42,\"say \\\"hi\\\"\":\"a\\\\b\\n\\u0001\",\"list\":[1.0,false,{\"$binary\":\"aGk=\"},"
+            + "{\"$undef\":\"integer\"},{\"$real\":\"nan\"},{\"$uuid\":\"67153d5b-3659-afb4-8510-adda2c034649\"},"
+            + "{\"$date\":\"2006-02-01T14:29:53.430Z\"},{\"$uri\":\"http://example.com/\"}],"
+            + "\"$$key\":\"\"}", serialise(content, true));
+    }
+
+    public void testTypedRoundTrip() throws Exception {
+        final Map<String, Object> content = new HashMap<String, Object>();
+        final Map<String, Object> parsed;
+        final String json;
+
+        content.put("region_id", REGION_ID);
+        content.put("scale", "one minute \u00e9\u4e2d\ud83d\ude00 'quoted' \"double\"");
+        content.put("sim fps", 44.38898);
+        content.put("whole", 2.0);
+        content.put("agents", Integer.MIN_VALUE);
+        content.put("when", new Date(1138804193430L));
+        content.put("where", URI.create("http://example.com/"));
+        content.put("data", new byte[] {0, 1, 2, (byte) 0xff});
+        content.put("limits", Arrays.asList((Object) Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, true, ""));
+        content.put("$dollar", Collections.singletonMap("$$", LLSDUndefined.DATE));
+        for (LLSDUndefined undefined: LLSDUndefined.values()) {
+            content.put(undefined.name(), undefined);
+        }
+
+        json = serialise(content, true);
+        parsed = (Map<String, Object>) parse(json, true);
+        assertEquals(content.keySet(), parsed.keySet());
+        for (String key: content.keySet()) {
+            if (content.get(key) instanceof byte[]) {
+                assertTrue(Arrays.equals((byte[]) content.get(key), (byte[]) parsed.get(key)));
+            } else {
+                assertEquals(key, content.get(key), parsed.get(key));
+            }
+        }
+        assertEquals(json, serialise(parsed, true));
+    }
+
+    public void testTypedValues() throws Exception {
+        final LLSDValue value = new LLSDJSONParser(true).parseValue(ByteBuffer.wrap(
+            "[1, 2, {\"$uuid\":\"67153d5b-3659-afb4-8510-adda2c034649\"}, {\"$undef\":\"real\"}, [1.5, 2.5]]"
+            .getBytes("UTF-8")));
+        final LLSDArray array = (LLSDArray) value;
+
+        assertEquals(5, array.size());
+        assertEquals(REGION_ID, array.get(2).asUUID());
+        assertEquals(LLSDUndef.valueOf(LLSDUndefined.REAL), array.get(3));
+        assertTrue(array.get(4) instanceof LLSDRealArray);
+        assertEquals("[1,2,{\"$uuid\":\"67153d5b-3659-afb4-8510-adda2c034649\"},{\"$undef\":\"real\"},[1.5,2.5]]",
+            new String(bytes(new LLSDJSONSerialiser(true).serialise(new LLSD(value))), "UTF-8"));
+    }
+
+    public void testReader() throws Exception {
+        final LLSDJSONReader reader = new LLSDJSONParser(true).reader(ByteBuffer.wrap(
+            "{\"$$a\": {\"$date\": \"2006-02-01T14:29:53.43Z\"}, \"b\": [null]}".getBytes("UTF-8")));
+
+        assertEquals(LLSDToken.START_MAP, reader.next());
+        assertEquals(LLSDToken.KEY, reader.next());
+        assertEquals("$a", reader.getKey());
+        assertEquals(LLSDToken.DATE, reader.next());
+        assertEquals(new Date(1138804193430L), reader.getDate());
+        assertEquals(LLSDToken.KEY, reader.next());
+        assertEquals(LLSDToken.START_ARRAY, reader.next());
+        reader.skipValue();
+        assertEquals(LLSDToken.END_ARRAY, reader.getToken());
+        assertEquals(LLSDToken.END_MAP, reader.next());
+        assertEquals(LLSDToken.END_DOCUMENT, reader.next());
+    }
+
+    public void testFrozen() throws Exception {
+        final Map<String, Object> content = new LinkedHashMap<String, Object>();
+        final LLSDFrozen frozen;
+
+        content.put("id", REGION_ID);
+        content.put("stats", Arrays.asList((Object) 1, 2.5));
+        frozen = new LLSD(content).freeze();
+        assertEquals(serialise(content, false), new String(bytes(frozen.encoded(LLSDFormat.JSON)), "UTF-8"));
+        assertEquals(serialise(content, true), new String(bytes(frozen.encoded(LLSDFormat.TYPED_JSON)), "UTF-8"));
+        assertEquals(serialise(content, true), serialise(frozen.with("id", REGION_ID).getContent(), true));
+    }
+
+    public void testMalformed() throws Exception {
+        final String[] documents = {
+            "{\"a\" 1}", "[1 2]", "[1,", "tru", "{\"$uuid\":\"x\",\"b\":1}", "\"\\q\"", "{\"$undef\":\"thing\"}",
+            "[1.2.3]", "\"\\ud83d\"", "[1] x", "{} {}", "1 2", "[01]", "-0.e1", "1e", "-"
+        };
+
+        for (String document: documents) {
+            try {
+                parse(document, true);
+                fail("Expected LLSDException for " + document);
+            } catch (LLSDException e) {
+                // expected
+            }
+        }
+    }
+
+    public void testTrailingWhitespace() throws Exception {
+        assertEquals(Arrays.asList((Object) 1, 0.5), parse(" [1, 0.5] \r\n\t", false));
+    }
+
+    private static byte[] bytes(final ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.remaining()];
+
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+}
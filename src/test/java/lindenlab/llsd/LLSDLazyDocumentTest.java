@@ -0,0 +1,130 @@
+package lindenlab.llsd;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+public class LLSDLazyDocumentTest extends TestCase {
+    final String DOCUMENT = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+        + "<!DOCTYPE llsd>\n<!-- region statistics -->\n<llsd>\n<map>\n"
+        + "  <key>region_id</key>\n    <uuid>67153d5b-3659-afb4-8510-adda2c034649</uuid>\n"
+        + "  <key>scale</key>\n    <string>one minute</string>\n"
+        + "  <key>simulator statistics</key>\n  <map>\n"
+        + "    <key>time dilation</key><real>0.9878624</real>\n"
+        + "    <key>sim fps</key><real>44.38898</real>\n"
+        + "    <!-- <key>frame ms</key><real>-1</real> -->\n"
+        + "    <key>frame ms</key><real>0.7757886</real>\n"
+        + "  </map>\n"
+        + "  <key>a &amp; b</key><string>x &lt; <![CDATA[<y>]]> &#x263A;</string>\n"
+        + "  <key>agents</key><array><integer>1</integer><integer><undef /></integer><string/>"
+        + "<map><key>name</key><string attr=\"a > b\">Bob</string></map></array>\n"
+        + "  <key>data</key><binary encoding=\"base64\">aGVsbG8=</binary>\n"
+        + "  <key>seen</key><date>2006-02-01T14:29:53Z</date>\n"
+        + "  <key>nothing</key><undef />\n"
+        + "  <key>empty</key><map />\n"
+        + "</map>\n</llsd>\n";
+
+    private LLSDLazyDocument lazy(final String document) throws Exception {
+        return new LLSDLazyDocument(document.getBytes("UTF-8"));
+    }
+
+    public void testGet() throws Exception {
+        final LLSDLazyDocument document = lazy(DOCUMENT);
+
+        assertEquals(UUID.fromString("67153d5b-3659-afb4-8510-adda2c034649"), document.get("region_id").asUUID());
+        assertEquals(0.7757886, document.get("simulator statistics", "frame ms").asReal());
+        assertEquals(44.38898, document.get("simulator statistics", "sim fps").asReal());
+        assertEquals("x < <y> \u263A", document.get("a & b").asString());
+        assertEquals(1, document.get("agents", "0").asInteger());
+        assertTrue(document.get("agents", "1").isUndefined());
+        assertEquals(LLSDType.INTEGER, document.get("agents", "1").getType());
+        assertEquals("", document.get("agents", "2").asString());
+        assertEquals("Bob", document.get("agents", "3", "name").asString());
+        assertEquals("hello", new String(document.get("data").asBinary(), "UTF-8"));
+        assertEquals(1138804193000L, document.get("seen").asDate().getTime());
+        assertSame(LLSDUndef.UNDEF, document.get("nothing"));
+        assertTrue(document.get("empty").asMap().isEmpty());
+        assertEquals(LLSDType.MAP, document.getType("simulator statistics"));
+        assertEquals(LLSDType.REAL, document.getType("simulator statistics", "sim fps"));
+    }
+
+    public void testMissing() throws Exception {
+        final LLSDLazyDocument document = lazy(DOCUMENT);
+
+        assertNull(document.get("region"));
+        assertNull(document.get("simulator statistics", "net ms"));
+        assertNull(document.get("scale", "one minute"));
+        assertNull(document.get("agents", "4"));
+        assertNull(document.get("agents", "-1"));
+        assertNull(document.get("agents", "name"));
+        assertFalse(document.has("empty", "anything"));
+        assertTrue(document.has("simulator statistics", "sim fps"));
+        assertNull(lazy("<llsd></llsd>").get());
+        assertNull(lazy("<llsd/>").get("a"));
+    }
+
+    public void testAgreesWithParser() throws Exception {
+        final LLSDValue expected = new LLSDParser().parseValue(new ByteArrayInputStream(DOCUMENT.getBytes("UTF-8")));
+        final ByteBuffer buffer = ByteBuffer.wrap(("  " + DOCUMENT + "  ").getBytes("UTF-8"));
+        final ByteBuffer direct = ByteBuffer.allocateDirect(DOCUMENT.getBytes("UTF-8").length);
+
+        // The DOM parser drops CDATA sections, so leave that string out.
+        expected.asMap().remove("a & b");
+        assertEquals(expected, withoutCDATA(lazy(DOCUMENT)));
+        buffer.position(2);
+        buffer.limit(buffer.limit() - 2);
+        assertEquals(expected, withoutCDATA(new LLSDLazyDocument(buffer)));
+        direct.put(buffer.duplicate());
+        direct.flip();
+        assertEquals(expected, withoutCDATA(new LLSDLazyDocument(direct)));
+        assertEquals(2, buffer.position());
+    }
+
+    private static LLSDValue withoutCDATA(final LLSDLazyDocument document) throws Exception {
+        final LLSDMap root = document.get().asMap();
+
+        root.remove("a & b");
+        return root;
+    }
+
+    public void testLineEndings() throws Exception {
+        final String document = "<llsd><map><key>a\r\nb</key><string>x\r\ny\rz</string>"
+            + "<key>c</key><string><![CDATA[1\r\n2]]>&#13;</string></map></llsd>";
+        final LLSDLazyDocument lazy = lazy(document);
+        final LLSDMap expected = new LLSDMap();
+
+        expected.put("a\nb", new LLSDString("x\ny\nz"));
+        expected.put("c", new LLSDString("1\n2\r"));
+        assertEquals(expected, lazy.get());
+        assertEquals("x\ny\nz", lazy.get("a\nb").asString());
+        assertFalse(lazy.has("a\r\nb"));
+        assertEquals(expected, new LLSDParser().parseValue(ByteBuffer.wrap(document.getBytes("UTF-8"))));
+    }
+
+    public void testMalformedIsOnlyReportedWhenRead() throws Exception {
+        final LLSDLazyDocument document = lazy("<llsd><map><key>good</key><integer>4</integer>"
+            + "<key>bad</key><integer>four</integer></map></llsd>");
+
+        assertEquals(4, document.get("good").asInteger());
+        try {
+            document.get("bad");
+            fail("Expected LLSDException");
+        } catch (LLSDException e) {
+            // expected
+        }
+        try {
+            lazy("<plist><map /></plist>");
+            fail("Expected LLSDException");
+        } catch (LLSDException e) {
+            // expected
+        }
+        try {
+            lazy("<llsd><map><key>a</key><string>unterminated</map>").get("a");
+            fail("Expected LLSDException");
+        } catch (LLSDException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package lindenlab.llsd;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.*;
+
+public class LLSDLimitsTest extends TestCase {
+    private static final String DOCUMENT = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><llsd><map>"
+        + "<key>name</key><string>region</string>"
+        + "<key>stats</key><array><real>44.5</real><integer>3</integer></array>"
+        + "<key>texture</key><binary encoding=\"base64\">AQIDBA==</binary>"
+        + "</map></llsd>";
+
+    public void testWithinLimits() throws Exception {
+        final LLSDParser parser = new LLSDParser();
+
+        parser.setLimits(LLSDLimits.UNTRUSTED.withMaxDepth(3).withMaxNodes(7).withMaxStringLength(7)
+            .withMaxBinaryLength(4).withMaxDocumentBytes(DOCUMENT.length()));
+        for (Object content: parseAll(parser, DOCUMENT)) {
+            assertEquals(3, ((Map<?, ?>) content).size());
+        }
+    }
+
+    public void testDepth() throws Exception {
+        final LLSDParser parser = new LLSDParser();
+
+        parser.setLimits(LLSDLimits.DEFAULT.withMaxDepth(2));
+        assertLimit(parser, DOCUMENT, LLSDLimitException.Depth.class);
+        assertLimit(parser, "<llsd><array><array><undef /></array></array></llsd>", LLSDLimitException.Depth.class);
+    }
+
+    public void testDefaultDepth() throws Exception {
+        final LLSDParser parser = new LLSDParser();
+        final StringBuilder document = new StringBuilder("<llsd>");
+
+        for (int i = 0; i < 100000; i++) {
+            document.append("<array>");
+        }
+        for (int i = 0; i < 100000; i++) {
+            document.append("</array>");
+        }
+        // Fails cleanly rather than overflowing the stack.
+        assertLimit(parser, document.append("</llsd>").toString(), LLSDLimitException.Depth.class);
+    }
+
+    public void testDefaultDepthOtherFormats() throws Exception {
+        final StringBuilder json = new StringBuilder();
+        final LLSDOutputBuffer binary = LLSDOutputBuffer.growable(1024);
+
+        for (int i = 0; i < 100000; i++) {
+            json.append('[');
+            binary.put((byte) '[');
+            binary.putInt(1);
+        }
+        for (int i = 0; i < 100000; i++) {
+            json.append(']');
+        }
+        // Fails cleanly rather than overflowing the stack.
+        try {
+            new LLSDJSONParser().parse(ByteBuffer.wrap(json.toString().getBytes("UTF-8")));
+            fail("Expected LLSDLimitException.Depth");
+        } catch (LLSDLimitException.Depth e) {
+            // expected
+        }
+        try {
+            new LLSDNotationParser().parseValue(new ByteArrayInputStream(json.toString().getBytes("UTF-8")));
+            fail("Expected LLSDLimitException.Depth");
+        } catch (LLSDLimitException.Depth e) {
+            // expected
+        }
+        try {
+            new LLSDBinaryParser().parse(binary.toBuffer());
+            fail("Expected LLSDLimitException.Depth");
+        } catch (LLSDLimitException.Depth e) {
+            // expected
+        }
+    }
+
+    public void testNodesOtherFormats() throws Exception {
+        final LLSDJSONParser parser = new LLSDJSONParser();
+
+        parser.setLimits(LLSDLimits.DEFAULT.withMaxNodes(3).withMaxDepth(2));
+        assertEquals(Arrays.asList((Object) 1, 2), parser.parse(ByteBuffer.wrap("[1, 2]".getBytes("UTF-8")))
+            .getContent());
+        try {
+            parser.parse(ByteBuffer.wrap("[1, 2, 3]".getBytes("UTF-8")));
+            fail("Expected LLSDLimitException.Nodes");
+        } catch (LLSDLimitException.Nodes e) {
+            // expected
+        }
+        try {
+            parser.parse(ByteBuffer.wrap("[[1]]".getBytes("UTF-8")));
+            fail("Expected LLSDLimitException.Depth");
+        } catch (LLSDLimitException.Depth e) {
+            // expected
+        }
+    }
+
+    public void testNodes() throws Exception {
+        final LLSDParser parser = new LLSDParser();
+
+        parser.setLimits(LLSDLimits.DEFAULT.withMaxNodes(5));
+        assertLimit(parser, DOCUMENT, LLSDLimitException.Nodes.class);
+    }
+
+    public void testStringLength() throws Exception {
+        final LLSDParser parser = new LLSDParser();
+
+        parser.setLimits(LLSDLimits.DEFAULT.withMaxStringLength(6));
+        assertLimit(parser, DOCUMENT, LLSDLimitException.StringLength.class);
+        parser.setLimits(LLSDLimits.DEFAULT.withMaxStringLength(3));
+        // Keys count as strings.
+        assertLimit(parser, "<llsd><map><key>stats</key><integer>1</integer></map></llsd>",
+            LLSDLimitException.StringLength.class);
+    }
+
+    public void testBinaryLength() throws Exception {
+        final LLSDParser parser = new LLSDParser();
+
+        parser.setLimits(LLSDLimits.DEFAULT.withMaxBinaryLength(3));
+        assertLimit(parser, DOCUMENT, LLSDLimitException.BinaryLength.class);
+    }
+
+    public void testDocumentSize() throws Exception {
+        final LLSDParser parser = new LLSDParser();
+
+        parser.setLimits(LLSDLimits.DEFAULT.withMaxDocumentBytes(DOCUMENT.length() - 1));
+        assertLimit(parser, DOCUMENT, LLSDLimitException.DocumentSize.class);
+        try {
+            parser.parse(Channels.newChannel(new ByteArrayInputStream(DOCUMENT.getBytes("UTF-8"))));
+            fail("Expected LLSDLimitException.DocumentSize");
+        } catch (LLSDLimitException.DocumentSize e) {
+            assertEquals(DOCUMENT.length() - 1, e.getLimit());
+        }
+    }
+
+    public void testDoctype() throws Exception {
+        final LLSDParser parser = new LLSDParser();
+        final String document = "<?xml version=\"1.0\"?><!-- <!DOCTYPE in a comment --><!DOCTYPE llsd [\n"
+            + "<!ENTITY a \"aaaaaaaaaaaaaaaa\"><!ENTITY b \"&a;&a;&a;&a;&a;&a;&a;&a;\">]>"
+            + "<llsd><string>&b;</string></llsd>";
+
+        assertEquals(128, ((String) parser.parse(new ByteArrayInputStream(document.getBytes("UTF-8")))
+            .getContent()).length());
+
+        parser.setLimits(LLSDLimits.UNTRUSTED);
+        assertLimit(parser, document, LLSDLimitException.Doctype.class);
+        assertLimit(parser, "<!DOCTYPE llsd><llsd><string>x</string></llsd>", LLSDLimitException.Doctype.class);
+        try {
+            parser.parse(new ByteArrayInputStream(("<?xml version=\"1.0\" encoding=\"UTF-16\"?>"
+                + "<!DOCTYPE llsd><llsd><string>x</string></llsd>").getBytes("UTF-16")));
+            fail("Expected LLSDLimitException.Doctype");
+        } catch (LLSDLimitException.Doctype e) {
+            // expected
+        }
+        for (Object content: parseAll(parser, "<?xml version=\"1.0\"?><!-- comment --><llsd><string>x</string></llsd>")) {
+            assertEquals("x", content);
+        }
+    }
+
+    public void testExternalEntitiesNotLoaded() throws Exception {
+        final LLSDParser parser = new LLSDParser();
+        final String document = "<!DOCTYPE llsd SYSTEM \"file:///nonexistent/llsd.dtd\"><llsd><integer>1</integer></llsd>";
+
+        assertEquals(1, parser.parse(new ByteArrayInputStream(document.getBytes("UTF-8"))).getContent());
+    }
+
+    public void testMetrics() throws Exception {
+        final LLSDParser parser = new LLSDParser();
+        final LLSDMetricsHistogram metrics = new LLSDMetricsHistogram();
+
+        parser.setMetrics(metrics);
+        parser.setLimits(LLSDLimits.DEFAULT.withMaxNodes(1));
+        assertLimit(parser, DOCUMENT, LLSDLimitException.Nodes.class);
+        assertEquals(4, metrics.getErrors(LLSDMetrics.Operation.PARSE, LLSDMetrics.ErrorCategory.LIMIT));
+    }
+
+    public void testOtherEncodings() throws Exception {
+        final LLSDParser parser = new LLSDParser();
+        final ByteBuffer document = ByteBuffer.wrap(DOCUMENT.replace("UTF-8", "UTF-16").getBytes("UTF-16"));
+
+        parser.setLimits(LLSDLimits.UNTRUSTED);
+        assertEquals(3, ((Map<?, ?>) parser.parse(document).getContent()).size());
+        // Checked before the DOM parser builds the document.
+        parser.setLimits(LLSDLimits.UNTRUSTED.withMaxNodes(5));
+        try {
+            parser.parse(document);
+            fail("Expected LLSDLimitException.Nodes");
+        } catch (LLSDLimitException.Nodes e) {
+            // expected
+        }
+        parser.setLimits(LLSDLimits.UNTRUSTED.withMaxStringLength(6));
+        try {
+            parser.parseValue(document);
+            fail("Expected LLSDLimitException.StringLength");
+        } catch (LLSDLimitException.StringLength e) {
+            // expected
+        }
+        parser.setLimits(LLSDLimits.UNTRUSTED.withMaxBinaryLength(3));
+        try {
+            parser.parse(document);
+            fail("Expected LLSDLimitException.BinaryLength");
+        } catch (LLSDLimitException.BinaryLength e) {
+            // expected
+        }
+    }
+
+    public void testStax() throws Exception {
+        final LLSDStaxParser parser = new LLSDStaxParser();
+        final byte[] document = DOCUMENT.getBytes("UTF-8");
+
+        parser.setLimits(LLSDLimits.UNTRUSTED.withMaxDepth(3).withMaxNodes(7).withMaxStringLength(7)
+            .withMaxBinaryLength(4).withMaxDocumentBytes(document.length));
+        assertEquals(3, ((Map<?, ?>) parser.parse(new ByteArrayInputStream(document)).getContent()).size());
+
+        assertStaxLimit(parser, LLSDLimits.DEFAULT.withMaxDepth(2), DOCUMENT, LLSDLimitException.Depth.class);
+        assertStaxLimit(parser, LLSDLimits.DEFAULT.withMaxNodes(5), DOCUMENT, LLSDLimitException.Nodes.class);
+        assertStaxLimit(parser, LLSDLimits.DEFAULT.withMaxStringLength(6), DOCUMENT,
+            LLSDLimitException.StringLength.class);
+        assertStaxLimit(parser, LLSDLimits.DEFAULT.withMaxStringLength(3),
+            "<llsd><map><key>stats</key><integer>1</integer></map></llsd>", LLSDLimitException.StringLength.class);
+        assertStaxLimit(parser, LLSDLimits.DEFAULT.withMaxBinaryLength(3), DOCUMENT,
+            LLSDLimitException.BinaryLength.class);
+        assertStaxLimit(parser, LLSDLimits.DEFAULT.withMaxDocumentBytes(document.length - 1), DOCUMENT,
+            LLSDLimitException.DocumentSize.class);
+        assertStaxLimit(parser, LLSDLimits.UNTRUSTED, "<!DOCTYPE llsd><llsd><string>x</string></llsd>",
+            LLSDLimitException.Doctype.class);
+
+        // Binary values decoded as they are read are checked too.
+        parser.setLimits(LLSDLimits.DEFAULT.withMaxBinaryLength(3));
+        try (LLSDReader reader = parser.reader(ByteBuffer.wrap(
+                "<llsd><binary>AQ<!-- rest -->IDBA==</binary></llsd>".getBytes("UTF-8")))) {
+            assertEquals(LLSDToken.BINARY, reader.next());
+            reader.getBinary(new java.io.ByteArrayOutputStream());
+            fail("Expected LLSDLimitException.BinaryLength");
+        } catch (LLSDLimitException.BinaryLength e) {
+            // expected
+        }
+    }
+
+    private static void assertStaxLimit(final LLSDStaxParser parser, final LLSDLimits limits,
+            final String document, final Class<? extends LLSDLimitException> expected) throws Exception {
+        parser.setLimits(limits);
+        try {
+            parser.parseValue(new ByteArrayInputStream(document.getBytes("UTF-8")));
+            fail("Expected " + expected.getSimpleName());
+        } catch (LLSDLimitException e) {
+            assertEquals(expected, e.getClass());
+        }
+    }
+
+    public void testInvalidLimits() {
+        try {
+            LLSDLimits.DEFAULT.withMaxDepth(0);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Parses the document from a stream and a buffer, as content and as a
+     * typed tree.
+     */
+    private static List<Object> parseAll(final LLSDParser parser, final String document) throws Exception {
+        final byte[] bytes = document.getBytes("UTF-8");
+        final List<Object> contents = new ArrayList<Object>();
+
+        contents.add(parser.parse(new ByteArrayInputStream(bytes)).getContent());
+        contents.add(parser.parse(ByteBuffer.wrap(bytes)).getContent());
+        contents.add(parser.parseValue(new ByteArrayInputStream(bytes)).toObject());
+        contents.add(parser.parseValue(ByteBuffer.wrap(bytes)).toObject());
+        return contents;
+    }
+
+    private static void assertLimit(final LLSDParser parser, final String document,
+            final Class<? extends LLSDLimitException> expected) throws Exception {
+        final byte[] bytes = document.getBytes("UTF-8");
+
+        for (int i = 0; i < 4; i++) {
+            try {
+                switch (i) {
+                case 0:
+                    parser.parse(new ByteArrayInputStream(bytes));
+                    break;
+                case 1:
+                    parser.parse(ByteBuffer.wrap(bytes));
+                    break;
+                case 2:
+                    parser.parseValue(new ByteArrayInputStream(bytes));
+                    break;
+                default:
+                    parser.parseValue(ByteBuffer.wrap(bytes));
+                    break;
+                }
+                fail("Expected " + expected.getSimpleName());
+            } catch (LLSDLimitException e) {
+                assertEquals(expected, e.getClass());
+            }
+        }
+    }
+}
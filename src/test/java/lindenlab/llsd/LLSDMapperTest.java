@@ -0,0 +1,294 @@
+package lindenlab.llsd;
+
+import junit.framework.TestCase;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.*;
+
+public class LLSDMapperTest extends TestCase {
+    private static final UUID REGION_ID = UUID.fromString("67153d5b-3659-afb4-8510-adda2c034649");
+
+    public enum Scale {
+        MINUTE, HOUR
+    }
+
+    public static class Region {
+        private UUID regionId;
+        private String name;
+        private Scale scale;
+        private boolean online;
+        private int agents;
+        private Integer parcels;
+        private float load;
+        private Map<String, Double> stats;
+        private List<Region> neighbours;
+        private Set<String> tags;
+        private int[] ports;
+
+        @LLSDProperty("region_id")
+        public UUID getRegionId() {
+            return regionId;
+        }
+
+        public void setRegionId(final UUID regionId) {
+            this.regionId = regionId;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(final String name) {
+            this.name = name;
+        }
+
+        public Scale getScale() {
+            return scale;
+        }
+
+        public void setScale(final Scale scale) {
+            this.scale = scale;
+        }
+
+        public boolean isOnline() {
+            return online;
+        }
+
+        public void setOnline(final boolean online) {
+            this.online = online;
+        }
+
+        public int getAgents() {
+            return agents;
+        }
+
+        public void setAgents(final int agents) {
+            this.agents = agents;
+        }
+
+        public Integer getParcels() {
+            return parcels;
+        }
+
+        public void setParcels(final Integer parcels) {
+            this.parcels = parcels;
+        }
+
+        public float getLoad() {
+            return load;
+        }
+
+        public void setLoad(final float load) {
+            this.load = load;
+        }
+
+        @LLSDProperty("simulator statistics")
+        public Map<String, Double> getStats() {
+            return stats;
+        }
+
+        public void setStats(final Map<String, Double> stats) {
+            this.stats = stats;
+        }
+
+        public List<Region> getNeighbours() {
+            return neighbours;
+        }
+
+        public void setNeighbours(final List<Region> neighbours) {
+            this.neighbours = neighbours;
+        }
+
+        public Set<String> getTags() {
+            return tags;
+        }
+
+        public void setTags(final Set<String> tags) {
+            this.tags = tags;
+        }
+
+        public int[] getPorts() {
+            return ports;
+        }
+
+        public void setPorts(final int[] ports) {
+            this.ports = ports;
+        }
+
+        public String getSummary() {
+            return name + " (" + agents + ")";
+        }
+    }
+
+    public static class Asset {
+        public URI location;
+        public Date created;
+        public byte[] data;
+        public Object extra;
+        public LLSDValue tree;
+        public final String kind = "texture";
+        public transient String cached;
+    }
+
+    private static final String REGION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><llsd><map>"
+        + "<key>region_id</key><uuid>67153d5b-3659-afb4-8510-adda2c034649</uuid>"
+        + "<key>name</key><string>Da Boom</string>"
+        + "<key>scale</key><string>MINUTE</string>"
+        + "<key>online</key><boolean>true</boolean>"
+        + "<key>agents</key><integer>12</integer>"
+        + "<key>parcels</key><undef />"
+        + "<key>load</key><integer>2</integer>"
+        + "<key>unknown</key><map><key>deep</key><array><integer>1</integer></array></map>"
+        + "<key>simulator statistics</key><map><key>fps</key><real>44.5</real><key>dilation</key><real>1</real></map>"
+        + "<key>neighbours</key><array><map><key>name</key><string>Ahern</string></map><undef /></array>"
+        + "<key>tags</key><array><string>b</string><string>a</string><string>b</string></array>"
+        + "<key>ports</key><array><integer>13000</integer><integer>13001</integer></array>"
+        + "<key>summary</key><string>ignored</string>"
+        + "</map></llsd>";
+
+    public void testReadBean() throws Exception {
+        final Region region = new LLSDMapper().read(new ByteArrayInputStream(REGION.getBytes("UTF-8")), Region.class);
+
+        assertEquals(REGION_ID, region.getRegionId());
+        assertEquals("Da Boom", region.getName());
+        assertEquals(Scale.MINUTE, region.getScale());
+        assertTrue(region.isOnline());
+        assertEquals(12, region.getAgents());
+        assertNull(region.getParcels());
+        assertEquals(2.0f, region.getLoad());
+        assertEquals(44.5, region.getStats().get("fps"));
+        assertEquals(1.0, region.getStats().get("dilation"));
+        assertEquals(2, region.getNeighbours().size());
+        assertEquals("Ahern", region.getNeighbours().get(0).getName());
+        assertNull(region.getNeighbours().get(1));
+        assertEquals(Arrays.asList("b", "a"), new ArrayList<String>(region.getTags()));
+        assertTrue(Arrays.equals(new int[] {13000, 13001}, region.getPorts()));
+    }
+
+    public void testRoundTrip() throws Exception {
+        final LLSDMapper mapper = new LLSDMapper();
+        final Region region = mapper.read(ByteBuffer.wrap(REGION.getBytes("UTF-8")), Region.class);
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final Map<String, Object> content;
+        final Region copy;
+
+        mapper.write(region, output);
+        content = (Map<String, Object>) new LLSDParser().parse(new ByteArrayInputStream(output.toByteArray()))
+            .getContent();
+        assertEquals(REGION_ID, content.get("region_id"));
+        assertEquals("MINUTE", content.get("scale"));
+        assertEquals("Da Boom (12)", content.get("summary"));
+        // Null properties are left out.
+        assertFalse(content.containsKey("parcels"));
+        assertEquals(Arrays.asList((Object) 13000, 13001), content.get("ports"));
+
+        copy = mapper.read(new ByteArrayInputStream(output.toByteArray()), Region.class);
+        assertEquals(region.getRegionId(), copy.getRegionId());
+        assertEquals(region.getStats(), copy.getStats());
+        assertEquals(region.getTags(), copy.getTags());
+        assertEquals("Ahern", copy.getNeighbours().get(0).getName());
+        assertNull(copy.getNeighbours().get(1));
+    }
+
+    public void testFields() throws Exception {
+        final LLSDMapper mapper = new LLSDMapper();
+        final Asset asset = new Asset();
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final Asset copy;
+
+        asset.location = URI.create("http://example.com/asset");
+        asset.created = new Date(1138804193000L);
+        asset.data = new byte[] {1, 2, 3};
+        asset.extra = Collections.singletonMap("nested", Arrays.asList((Object) 1, "two", asset.location));
+        asset.tree = LLSDInteger.valueOf(7);
+        asset.cached = "not written";
+        mapper.write(asset, output);
+        assertFalse(output.toString("UTF-8").contains("cached"));
+
+        copy = mapper.read(new ByteArrayInputStream(output.toByteArray()), Asset.class);
+        assertEquals(asset.location, copy.location);
+        assertEquals(asset.created, copy.created);
+        assertTrue(Arrays.equals(asset.data, copy.data));
+        assertEquals(asset.extra, copy.extra);
+        assertEquals(asset.tree, copy.tree);
+        assertNull(copy.cached);
+    }
+
+    public void testOtherFormats() throws Exception {
+        final LLSDMapper mapper = new LLSDMapper();
+        final Region region = mapper.read(new LLSDJSONParser().reader(ByteBuffer.wrap(
+            "{\"name\": \"Ahern\", \"agents\": 3, \"load\": 0.5, \"tags\": [\"x\"]}".getBytes("UTF-8"))), Region.class);
+
+        assertEquals("Ahern", region.getName());
+        assertEquals(3, region.getAgents());
+        assertEquals(0.5f, region.getLoad());
+        assertEquals(Collections.singleton("x"), region.getTags());
+    }
+
+    public void testMismatch() throws Exception {
+        final String[] documents = {
+            "<llsd><map><key>agents</key><string>12</string></map></llsd>",
+            "<llsd><map><key>scale</key><string>DAY</string></map></llsd>",
+            "<llsd><map><key>neighbours</key><map /></map></llsd>",
+            "<llsd><array /></llsd>"
+        };
+
+        for (String document: documents) {
+            try {
+                new LLSDMapper().read(new ByteArrayInputStream(document.getBytes("UTF-8")), Region.class);
+                fail("Expected LLSDException for " + document);
+            } catch (LLSDException e) {
+                // expected
+            }
+        }
+    }
+
+    public void testUnsupported() throws Exception {
+        try {
+            new LLSDMapper().write(Collections.singletonMap("when", 1L), new ByteArrayOutputStream());
+            fail("Expected LLSDException");
+        } catch (LLSDException e) {
+            // expected
+        }
+    }
+
+    public void testRecord() throws Exception {
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        final File directory;
+        final Class<?> type;
+        final LLSDMapper mapper = new LLSDMapper();
+        final Object region;
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        if (null == compiler || Double.parseDouble(System.getProperty("java.specification.version")) < 16) {
+            // Records need Java 16.
+            return;
+        }
+
+        directory = Files.createTempDirectory("records").toFile();
+        Files.write(new File(directory, "RegionRecord.java").toPath(), ("public record RegionRecord("
+            + "@lindenlab.llsd.LLSDProperty(\"region_id\") java.util.UUID regionId, String name, int agents,"
+            + " java.util.List<RegionRecord> neighbours) {}").getBytes("UTF-8"));
+        assertEquals(0, compiler.run(null, null, null, "-classpath", System.getProperty("java.class.path"),
+            "-d", directory.getPath(), new File(directory, "RegionRecord.java").getPath()));
+        type = new URLClassLoader(new URL[] {directory.toURI().toURL()}, getClass().getClassLoader())
+            .loadClass("RegionRecord");
+
+        region = mapper.read(new ByteArrayInputStream(REGION.getBytes("UTF-8")), type);
+        assertEquals("RegionRecord[regionId=" + REGION_ID + ", name=Da Boom, agents=12, "
+            + "neighbours=[RegionRecord[regionId=null, name=Ahern, agents=0, neighbours=null], null]]", region.toString());
+
+        mapper.write(region, output);
+        assertEquals(region, mapper.read(new ByteArrayInputStream(output.toByteArray()), type));
+        assertTrue(output.toString("UTF-8").contains("<key>region_id</key>"));
+    }
+}
@@ -0,0 +1,149 @@
+package lindenlab.llsd;
+
+import junit.framework.TestCase;
+import org.xml.sax.SAXException;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+public class LLSDMetricsTest extends TestCase {
+    private static final String DOCUMENT = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><llsd><map>"
+        + "<key>region_id</key><uuid>67153d5b-3659-afb4-8510-adda2c034649</uuid>"
+        + "<key>stats</key><array><real>44.5</real><real>1.25</real><integer>3</integer></array>"
+        + "<key>seen</key><date>2008-01-10T21:20:00Z</date>"
+        + "<key>texture</key><binary encoding=\"base64\">AQID</binary>"
+        + "</map></llsd>";
+
+    public void testParse() throws Exception {
+        final LLSDMetricsHistogram metrics = new LLSDMetricsHistogram();
+        final LLSDParser parser = new LLSDParser();
+        final byte[] document = DOCUMENT.getBytes("UTF-8");
+        final List<LLSDDocumentStats> reported = new ArrayList<LLSDDocumentStats>();
+
+        parser.setMetrics(new LLSDMetrics() {
+            public void completed(final Operation operation, final LLSDDocumentStats stats) {
+                assertEquals(Operation.PARSE, operation);
+                reported.add(stats);
+                metrics.completed(operation, stats);
+            }
+
+            public void failed(final Operation operation, final ErrorCategory category, final Exception error,
+                    final long elapsedNanos) {
+                metrics.failed(operation, category, error, elapsedNanos);
+            }
+        });
+        parser.parse(new ByteArrayInputStream(document));
+        parser.parse(ByteBuffer.wrap(document));
+        parser.parseValue(ByteBuffer.wrap(document));
+
+        assertEquals(3, reported.size());
+        for (LLSDDocumentStats stats: reported) {
+            assertEquals(document.length, stats.getBytes());
+            assertEquals(8, stats.getNodes());
+            assertEquals(3, stats.getMaxDepth());
+            assertEquals(2, stats.getCount(LLSDType.REAL));
+            assertEquals(1, stats.getCount(LLSDType.DATE));
+            assertEquals(3, stats.getBinaryBytes());
+            assertEquals("region_idstatsseentexture".length(), stats.getStringChars());
+            assertTrue(stats.getConversionNanos() <= stats.getElapsedNanos());
+        }
+        assertEquals(0, reported.get(2).getConversionNanos());
+
+        assertEquals(3, metrics.getDocuments(LLSDMetrics.Operation.PARSE));
+        assertEquals(0, metrics.getDocuments(LLSDMetrics.Operation.SERIALISE));
+        assertEquals(6, metrics.getValues(LLSDMetrics.Operation.PARSE, LLSDType.REAL));
+        assertEquals(3L * document.length, metrics.getBytes(LLSDMetrics.Operation.PARSE).getSum());
+        assertEquals(3, metrics.getElapsedNanos(LLSDMetrics.Operation.PARSE).getCount());
+    }
+
+    public void testParseErrors() throws Exception {
+        final LLSDMetricsHistogram metrics = new LLSDMetricsHistogram();
+        final LLSDParser parser = new LLSDParser();
+
+        parser.setMetrics(metrics);
+        try {
+            parser.parse(new ByteArrayInputStream("<llsd><map>".getBytes("UTF-8")));
+            fail("Expected SAXException");
+        } catch (SAXException e) {
+            // expected
+        }
+        try {
+            parser.parse(new ByteArrayInputStream("<llsd><integer>x</integer></llsd>".getBytes("UTF-8")));
+            fail("Expected LLSDValueException");
+        } catch (LLSDValueException e) {
+            // expected
+        }
+        try {
+            parser.parse(ByteBuffer.wrap("<llsd><real>x</real></llsd>".getBytes("UTF-8")));
+            fail("Expected LLSDValueException");
+        } catch (LLSDValueException e) {
+            // expected
+        }
+        try {
+            parser.parse(new ByteArrayInputStream("<lsd><integer>1</integer></lsd>".getBytes("UTF-8")));
+            fail("Expected LLSDException");
+        } catch (LLSDException e) {
+            // expected
+        }
+
+        assertEquals(1, metrics.getErrors(LLSDMetrics.Operation.PARSE, LLSDMetrics.ErrorCategory.SYNTAX));
+        assertEquals(2, metrics.getErrors(LLSDMetrics.Operation.PARSE, LLSDMetrics.ErrorCategory.VALUE));
+        assertEquals(1, metrics.getErrors(LLSDMetrics.Operation.PARSE, LLSDMetrics.ErrorCategory.STRUCTURE));
+        assertEquals(0, metrics.getDocuments(LLSDMetrics.Operation.PARSE));
+
+        metrics.reset();
+        assertEquals(0, metrics.getErrors(LLSDMetrics.Operation.PARSE, LLSDMetrics.ErrorCategory.VALUE));
+    }
+
+    public void testSerialise() throws Exception {
+        final LLSDMetricsHistogram metrics = new LLSDMetricsHistogram();
+        final LLSD llsd = new LLSDParser().parse(new ByteArrayInputStream(DOCUMENT.getBytes("UTF-8")));
+        final StringWriter writer = new StringWriter();
+        final ByteBuffer encoded;
+
+        LLSD.setMetrics(metrics);
+        try {
+            llsd.serialise(writer, "UTF-8");
+            // Not measured.
+            llsd.toString();
+            try {
+                new LLSD(Collections.singletonList(new Object())).serialise(new StringWriter(), "UTF-8");
+                fail("Expected LLSDException");
+            } catch (LLSDException e) {
+                // expected
+            }
+        } finally {
+            LLSD.setMetrics(null);
+        }
+        assertEquals(llsd.toString(), writer.toString());
+        assertEquals(1, metrics.getDocuments(LLSDMetrics.Operation.SERIALISE));
+        assertEquals(writer.toString().length(), metrics.getBytes(LLSDMetrics.Operation.SERIALISE).getSum());
+        assertEquals(8, metrics.getNodes(LLSDMetrics.Operation.SERIALISE).getSum());
+        assertEquals(1, metrics.getErrors(LLSDMetrics.Operation.SERIALISE,
+            LLSDMetrics.ErrorCategory.UNSUPPORTED_TYPE));
+
+        encoded = new LLSDXMLSerialiser(LLSDXMLOptions.COMPACT, metrics).serialise(llsd);
+        assertEquals(2, metrics.getDocuments(LLSDMetrics.Operation.SERIALISE));
+        assertEquals(writer.toString().length() + encoded.remaining(),
+            metrics.getBytes(LLSDMetrics.Operation.SERIALISE).getSum());
+    }
+
+    public void testHistogram() {
+        final LLSDMetricsHistogram.Histogram histogram = new LLSDMetricsHistogram().getDepth(LLSDMetrics.Operation.PARSE);
+
+        assertEquals(0, histogram.percentile(0.5));
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        histogram.record(0);
+        assertEquals(101, histogram.getCount());
+        assertEquals(5050, histogram.getSum());
+        assertEquals(1, histogram.getBucket(0));
+        assertEquals(2, histogram.getBucket(2));
+        assertEquals(63, histogram.percentile(0.5));
+        assertEquals(127, histogram.percentile(0.99));
+        assertEquals(0, histogram.percentile(0));
+    }
+}
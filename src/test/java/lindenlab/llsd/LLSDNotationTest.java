@@ -0,0 +1,143 @@
+package lindenlab.llsd;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+public class LLSDNotationTest extends TestCase {
+    private Object parse(final String document) throws Exception {
+        return new LLSDNotationParser().parse(new ByteArrayInputStream(document.getBytes("UTF-8"))).getContent();
+    }
+
+    private String serialise(final Object content) throws Exception {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        new LLSDNotationSerialiser().serialise(new LLSD(content), output);
+        return output.toString("UTF-8");
+    }
+
+    public void testParse() throws Exception {
+        final Map<String, Object> content = (Map<String, Object>) parse(
+            "{'key':i42, \"id\":u67153d5b-3659-afb4-8510-adda2c034649,\n"
+            + " 'data':b64\"aGVsbG8=\", 'hex':b16\"FF00\", 'raw':b(2)\"ab\",\n"
+            + " 'list':[ r1.5, rnan, true, F, 1, ! ], s(3)\"k'y\":'it\\'s \\x41',\n"
+            + " 'when':d\"2006-02-01T14:29:53.43Z\", 'where':l\"http://example.com/\",\n"
+            + " 'empty':{}, 'none':[]}");
+
+        assertEquals(42, content.get("key"));
+        assertEquals(UUID.fromString("67153d5b-3659-afb4-8510-adda2c034649"), content.get("id"));
+        assertEquals("hello", new String((byte[]) content.get("data"), "UTF-8"));
+        assertTrue(Arrays.equals(new byte[] {(byte) 0xff, 0}, (byte[]) content.get("hex")));
+        assertEquals("ab", new String((byte[]) content.get("raw"), "UTF-8"));
+        assertEquals(Arrays.asList((Object) 1.5, Double.NaN, true, false, true, ""), content.get("list"));
+        assertEquals("it's A", content.get("k'y"));
+        assertEquals(new Date(1138804193430L), content.get("when"));
+        assertEquals(new URI("http://example.com/"), content.get("where"));
+        assertEquals(Collections.emptyMap(), content.get("empty"));
+        assertEquals(Collections.emptyList(), content.get("none"));
+    }
+
+    public void testSerialise() throws Exception {
+        final Map<String, Object> content = new LinkedHashMap<String, Object>();
+
+        content.put("key", 42);
+        content.put("it's", "a\\b\n");
+        content.put("list", Arrays.asList((Object) 1.5, false, new byte[] {'h', 'i'}, LLSDUndefined.INTEGER));
+        assertEquals("{'key':i42,'it\\'s':'a\\\\b\\x0a','list':[r1.5,0,b64\"aGk=\",!]}", serialise(content));
+    }
+
+    public void testTypedUndefined() throws Exception {
+        final LLSD llsd = new LLSD(Arrays.asList((Object) LLSDUndefined.INTEGER, LLSDUndefined.STRING));
+        final ByteBuffer typed = new LLSDNotationSerialiser(true).serialise(llsd);
+
+        assertEquals("[!,!]", serialise(llsd.getContent()));
+        assertEquals("[?i,?s]", new String(typed.array(), 0, typed.remaining(), "UTF-8"));
+        assertEquals(typed, new LLSDNotationSerialiser(true).serialise(llsd.freeze()));
+        assertEquals(llsd.getContent(), new LLSDNotationParser(true).parse(typed).getContent());
+        try {
+            new LLSDNotationParser().parse(typed);
+            fail("Expected LLSDException");
+        } catch (LLSDException e) {
+            // expected
+        }
+    }
+
+    public void testRoundTrip() throws Exception {
+        final Map<String, Object> content = new HashMap<String, Object>();
+
+        content.put("region_id", UUID.fromString("67153d5b-3659-afb4-8510-adda2c034649"));
+        content.put("scale", "one minute \u00e9\u4e2d\ud83d\ude00 'quoted' \"double\"");
+        content.put("sim fps", 44.38898);
+        content.put("tiny", 1.0e-300);
+        content.put("agents", Integer.MIN_VALUE);
+        content.put("seen", new Date(1200000000123L));
+        content.put("home", new URI("http://example.com/a?b=%22c%22"));
+        content.put("nested", Collections.singletonMap("deep", Arrays.asList((Object) 1, 2.5, "x")));
+        content.put("undefined", new ArrayList<Object>(Arrays.asList((Object[]) LLSDUndefined.values())));
+
+        final ByteBuffer encoded = new LLSDNotationSerialiser(true).serialise(new LLSD(content));
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        assertEquals(content, new LLSDNotationParser(true).parse(encoded).getContent());
+        new LLSDNotationSerialiser(true).serialise(new LLSD(content), output);
+        assertEquals(content, new LLSDNotationParser(true).parse(new ByteArrayInputStream(output.toByteArray()))
+            .getContent());
+    }
+
+    public void testMalformed() throws Exception {
+        final String[] documents = {"{'a' i1}", "[i1 i2]", "{'a':i1", "i99999999999", "x"};
+
+        for (String document: documents) {
+            try {
+                parse(document);
+                fail("Expected LLSDException for " + document);
+            } catch (LLSDException e) {
+                // expected
+            }
+        }
+    }
+
+    public void testFalseLength() throws Exception {
+        final LLSDNotationParser parser = new LLSDNotationParser();
+        final byte[] document = "s(2147483000)\"ab".getBytes("UTF-8");
+
+        // Neither path allocates the claimed length.
+        try {
+            parser.parse(new ByteArrayInputStream(document));
+            fail("Expected LLSDException");
+        } catch (LLSDException e) {
+            // expected
+        }
+        try {
+            parser.parse(ByteBuffer.wrap(document));
+            fail("Expected LLSDException");
+        } catch (LLSDException e) {
+            // expected
+        }
+
+        parser.setLimits(LLSDLimits.DEFAULT.withMaxStringLength(2).withMaxBinaryLength(2));
+        assertEquals("ab", parser.parse(ByteBuffer.wrap("s(2)\"ab\"".getBytes("UTF-8"))).getContent());
+        try {
+            parser.parse(new ByteArrayInputStream("s(7)\"abcdefg\"".getBytes("UTF-8")));
+            fail("Expected LLSDLimitException.StringLength");
+        } catch (LLSDLimitException.StringLength e) {
+            // expected
+        }
+        try {
+            parser.parse(new ByteArrayInputStream("b(2147483000)\"ab".getBytes("UTF-8")));
+            fail("Expected LLSDLimitException.BinaryLength");
+        } catch (LLSDLimitException.BinaryLength e) {
+            // expected
+        }
+        try {
+            parser.parse(ByteBuffer.wrap("'abc'".getBytes("UTF-8")));
+            fail("Expected LLSDLimitException.StringLength");
+        } catch (LLSDLimitException.StringLength e) {
+            // expected
+        }
+    }
+}
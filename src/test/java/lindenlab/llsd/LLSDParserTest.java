@@ -1,10 +1,16 @@
 package lindenlab.llsd;
 
 import junit.framework.TestCase;
+import org.xml.sax.SAXException;
 
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
-import java.util.HashMap;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
 
 public class LLSDParserTest extends TestCase {
     final String VALID_DOCUMENT = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<llsd>\n<map>\n  <key>region_id</key>\n    <uuid>67153d5b-3659-afb4-8510-adda2c034649</uuid>\n  <key>scale</key>\n    <string>one minute</string>\n  <key>simulator statistics</key>\n  <map>\n    <key>time dilation</key><real>0.9878624</real>\n    <key>sim fps</key><real>44.38898</real>\n    <key>pysics fps</key><real>44.38906</real>\n    <key>agent updates per second</key><real>nan</real>\n    <key>lsl instructions per second</key><real>0</real>\n    <key>total task count</key><real>4</real>\n    <key>active task count</key><real>0</real>\n    <key>active script count</key><real>4</real>\n    <key>main agent count</key><real>0</real>\n    <key>child agent count</key><real>0</real>\n    <key>inbound packets per second</key><real>1.228283</real>\n    <key>outbound packets per second</key><real>1.277508</real>\n    <key>pending downloads</key><real>0</real>\n    <key>pending uploads</key><real>0.0001096525</real>\n    <key>frame ms</key><real>0.7757886</real>\n    <key>net ms</key><real>0.3152919</real>\n    <key>sim other ms</key><real>0.1826937</real>\n    <key>sim physics ms</key><real>0.04323055</real>\n    <key>agent ms</key><real>0.01599029</real>\n    <key>image ms</key><real>0.01865955</real>\n    <key>script ms</key><real>0.1338836</real>\n  </map>\n</map>\n</llsd>";
@@ -22,4 +28,179 @@ public class LLSDParserTest extends TestCase {
         assert ((HashMap) output.getContent()).get("volume_serial").toString().equals("");
         // System.out.println("volume_serial should be empty and it is: \"" + ((HashMap) output.getContent()).get("volume_serial").toString() + "\"");
     }
-}
\ No newline at end of file
+
+    public void testDateIsUTC() throws Exception {
+        final String document = "<llsd><array><date>2006-02-01T14:29:53Z</date>"
+            + "<date>2006-02-01T14:29:53.43Z</date></array></llsd>";
+        final List<Object> dates = (List<Object>) new LLSDParser()
+            .parse(new ByteArrayInputStream(document.getBytes("UTF-8"))).getContent();
+
+        assertEquals(Arrays.asList((Object) new Date(1138804193000L), new Date(1138804193430L)), dates);
+        assertTrue(new LLSD(dates.get(1)).toString().contains("<date>2006-02-01T14:29:53Z</date>"));
+    }
+
+    public void testScalarWhitespace() throws Exception {
+        final String document = "<llsd><array><real> 1.5 </real>"
+            + "<date>\n  2006-02-01T14:29:53Z\n</date></array></llsd>";
+        final byte[] bytes = document.getBytes("UTF-8");
+        final List<Object> expected = Arrays.asList((Object) 1.5, new Date(1138804193000L));
+
+        assertEquals(expected, new LLSDParser().parse(new ByteArrayInputStream(bytes)).getContent());
+        assertEquals(expected, new LLSDParser().parse(ByteBuffer.wrap(bytes)).getContent());
+        assertEquals(expected, new LLSDStaxParser().parse(new ByteArrayInputStream(bytes)).getContent());
+    }
+
+    public void testConcurrentParse() throws Exception {
+        final LLSDParser parser = new LLSDParser();
+        final LLSDStaxParser staxParser = new LLSDStaxParser();
+        final byte[] document = VALID_DOCUMENT.getBytes("UTF-8");
+        final String expected = parser.parse(new ByteArrayInputStream(document)).toString();
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        final List<Future<String>> results = new ArrayList<Future<String>>();
+
+        try {
+            for (int i = 0; i < 200; i++) {
+                final boolean stax = (i % 2) == 0;
+
+                results.add(executor.submit(new Callable<String>() {
+                    public String call() throws Exception {
+                        final LLSD llsd = stax
+                            ? staxParser.parse(new ByteArrayInputStream(document))
+                            : parser.parse(new ByteArrayInputStream(document));
+
+                        return llsd.toString();
+                    }
+                }));
+            }
+            for (Future<String> result: results) {
+                assertEquals(expected, result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void testParseBuffersFilesAndChannels() throws Exception {
+        final LLSDParser parser = new LLSDParser();
+        final Path file = Files.createTempFile("llsd", ".xml");
+
+        try {
+            for (String document: new String[] {VALID_DOCUMENT, UNDEF_DOCUMENT, "<llsd />"}) {
+                final byte[] bytes = document.getBytes("UTF-8");
+                final Object expected = parser.parse(new ByteArrayInputStream(bytes)).getContent();
+                final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+
+                Files.write(file, bytes);
+                assertEquals(expected, parser.parse(buffer).getContent());
+                assertEquals(0, buffer.position());
+                assertEquals(expected, parser.parse(file).getContent());
+                assertEquals(expected, parser.parse(Channels.newChannel(new ByteArrayInputStream(bytes))).getContent());
+                assertEquals(parser.parseValue(new ByteArrayInputStream(bytes)), parser.parseValue(file));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    public void testParseBufferEncodings() throws Exception {
+        final LLSDParser parser = new LLSDParser();
+        final String document = "<llsd><string>caf\u00e9</string></llsd>";
+        final byte[] bom = {(byte) 0xef, (byte) 0xbb, (byte) 0xbf};
+        final byte[] utf8 = document.getBytes("UTF-8");
+        final ByteBuffer withBOM = ByteBuffer.allocate(bom.length + utf8.length);
+
+        withBOM.put(bom).put(utf8);
+        withBOM.flip();
+        assertTrue(LLSDParser.isUTF8(withBOM));
+        assertEquals("caf\u00e9", parser.parse(withBOM).getContent());
+        assertFalse(LLSDParser.isUTF8(ByteBuffer.wrap(document.getBytes("UTF-16"))));
+        assertEquals("caf\u00e9", parser.parse(ByteBuffer.wrap(document.getBytes("UTF-16"))).getContent());
+        assertFalse(LLSDParser.isUTF8(ByteBuffer.wrap(("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>"
+            + document).getBytes("ISO-8859-1"))));
+        assertEquals("caf\u00e9", parser.parse(ByteBuffer.wrap(("<?xml version=\"1.0\" encoding='ISO-8859-1'?>"
+            + document).getBytes("ISO-8859-1"))).getContent());
+        assertTrue(LLSDParser.isUTF8(ByteBuffer.wrap("<?xml version=\"1.0\" encoding = 'utf-8'?><llsd/>".getBytes("UTF-8"))));
+    }
+
+    public void testParseBufferRejectsMalformed() throws Exception {
+        final LLSDParser parser = new LLSDParser();
+
+        for (String document: new String[] {
+            "<llsd><array><integer>1</real></array></llsd>",
+            "<llsd><map><key>a</key><string>b</string></array></llsd>",
+            "<llsd><string>a</string><string>b</string></llsd>",
+            "<llsd><map><key>a</key></map></llsd>",
+            "<llsd><map><string>a</string><integer>1</integer></map></llsd>",
+            "<llsd><integer>1</integer></llsd>garbage",
+            "<llsd><integer>1</integer></llsd><llsd><integer>2</integer></llsd>",
+            "<llsd><string a=1>x</string></llsd>",
+            "<llsd><integer>1</integer></llsd junk>",
+            "<llsd><string>a\u0001b</string></llsd>"}) {
+            try {
+                parser.parse(ByteBuffer.wrap(document.getBytes("UTF-8")));
+                fail("Expected LLSDException for " + document);
+            } catch (LLSDException e) {
+                // expected
+            }
+            try {
+                parser.parse(new ByteArrayInputStream(document.getBytes("UTF-8")));
+                fail("Expected an error for " + document);
+            } catch (LLSDException e) {
+                // expected
+            } catch (SAXException e) {
+                // expected
+            }
+        }
+
+        try {
+            parser.parse(ByteBuffer.wrap(new byte[] {
+                '<', 'l', 'l', 's', 'd', '>', '<', 's', 't', 'r', 'i', 'n', 'g', '>',
+                (byte) 0xc3, '(',
+                '<', '/', 's', 't', 'r', 'i', 'n', 'g', '>', '<', '/', 'l', 'l', 's', 'd', '>'}));
+            fail("Expected LLSDException for invalid UTF-8");
+        } catch (LLSDException e) {
+            // expected
+        }
+    }
+
+    public void testParseBufferFallsBackToDOM() throws Exception {
+        final LLSDParser parser = new LLSDParser();
+
+        for (String document: new String[] {
+            "<llsd>stray text<array><integer>1</integer>more</array></llsd>",
+            "<!DOCTYPE llsd [<!ENTITY one \"1\">]><llsd><array><integer>&one;</integer></array></llsd>"}) {
+            final byte[] bytes = document.getBytes("UTF-8");
+            final Object expected = parser.parse(new ByteArrayInputStream(bytes)).getContent();
+
+            assertEquals(Collections.singletonList(1), expected);
+            assertEquals(document, expected, parser.parse(ByteBuffer.wrap(bytes)).getContent());
+            assertEquals(document, expected, parser.parseValue(ByteBuffer.wrap(bytes)).toObject());
+        }
+
+        // Limits are still checked on the way.
+        parser.setLimits(LLSDLimits.UNTRUSTED.withDoctype(true).withMaxNodes(1));
+        try {
+            parser.parse(ByteBuffer.wrap("<llsd>text<array><integer>1</integer></array></llsd>".getBytes("UTF-8")));
+            fail("Expected LLSDLimitException.Nodes");
+        } catch (LLSDLimitException.Nodes e) {
+            // expected
+        }
+    }
+
+    public void testOrderedMaps() throws Exception {
+        final LLSDParser parser = new LLSDParser();
+        final byte[] document = VALID_DOCUMENT.getBytes("UTF-8");
+        final List<String> expected = Arrays.asList("region_id", "scale", "simulator statistics");
+        Map<String, Object> content;
+
+        parser.setOrderedMaps(true);
+        content = (Map<String, Object>) parser.parse(new ByteArrayInputStream(document)).getContent();
+        assertEquals(expected, new ArrayList<String>(content.keySet()));
+        assertEquals("time dilation", ((Map<String, Object>) content.get("simulator statistics")).keySet()
+            .iterator().next());
+        content = (Map<String, Object>) parser.parse(ByteBuffer.wrap(document)).getContent();
+        assertEquals(expected, new ArrayList<String>(content.keySet()));
+        assertEquals("script ms", new ArrayList<String>(((Map<String, Object>) content.get("simulator statistics"))
+            .keySet()).get(20));
+    }
+}
@@ -0,0 +1,283 @@
+package lindenlab.llsd;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.*;
+
+public class LLSDPatchTest extends TestCase {
+    private static Map<String, Object> region() {
+        final Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        final Map<String, Object> region = new LinkedHashMap<String, Object>();
+
+        stats.put("sim fps", 44.5);
+        stats.put("frame ms", 22.1);
+        stats.put("agents", 12);
+        region.put("region_id", UUID.fromString("67153d5b-3659-afb4-8510-adda2c034649"));
+        region.put("scale", "one minute");
+        region.put("simulator statistics", stats);
+        region.put("neighbours", new ArrayList<Object>(Arrays.asList((Object) "Ahern", "Bonifacio", "Clyde")));
+        region.put("texture", new byte[] {1, 2, 3});
+        return region;
+    }
+
+    public void testDiffMap() throws Exception {
+        final Map<String, Object> from = region();
+        final Map<String, Object> to = region();
+        final Map<String, Object> stats = (Map<String, Object>) to.get("simulator statistics");
+        final LLSDPatch patch;
+
+        stats.put("sim fps", 45.0);
+        stats.put("frame ms", 21.9);
+        to.remove("scale");
+        to.put("online", true);
+        patch = LLSDPatch.diff(from, to);
+        assertEquals("{m={simulator statistics={m={sim fps={v=45.0}, frame ms={v=21.9}}}, online={v=true}}, d=[scale]}",
+            patch.getContent().toString());
+
+        assertSame(from, patch.apply(from));
+        assertEquals(to.keySet(), from.keySet());
+        assertEquals(stats, from.get("simulator statistics"));
+    }
+
+    public void testEmpty() throws Exception {
+        final Map<String, Object> from = region();
+        final LLSDPatch patch = LLSDPatch.diff(from, region());
+
+        assertTrue(patch.isEmpty());
+        assertSame(from, patch.apply(from));
+        assertTrue(LLSDPatch.diff(from, from).isEmpty());
+    }
+
+    public void testReplace() throws Exception {
+        assertEquals(Collections.singletonMap("v", 2), LLSDPatch.diff(1, 2).getContent());
+        assertEquals(Collections.singletonMap("v", Arrays.asList((Object) 1)),
+            LLSDPatch.diff(Collections.singletonMap("a", 1), Arrays.asList((Object) 1)).getContent());
+        // Replacing every entry is smaller than patching each.
+        assertEquals(Collections.singletonMap("v", Collections.singletonMap("a", 2)),
+            LLSDPatch.diff(Collections.singletonMap("a", 1), Collections.singletonMap("a", 2)).getContent());
+        assertEquals(2, LLSDPatch.diff(1, 2).apply(1));
+    }
+
+    public void testDiffList() throws Exception {
+        final List<Object> from = Arrays.asList((Object) 1, 2, 3, 4, 5, 6);
+
+        // Inserted and removed items are spliced in and out alone.
+        assertEquals("{s=[3, 0, [9]]}", LLSDPatch.diff(from, Arrays.asList((Object) 1, 2, 3, 9, 4, 5, 6))
+            .getContent().toString());
+        assertEquals("{s=[0, 1, []]}", LLSDPatch.diff(from, Arrays.asList((Object) 2, 3, 4, 5, 6))
+            .getContent().toString());
+        assertEquals("{i={2={v=8}}, s=[6, 0, [7]]}", LLSDPatch.diff(from, Arrays.asList((Object) 1, 2, 8, 4, 5, 6, 7))
+            .getContent().toString());
+        assertEquals("{i={1={v=8}}, s=[2, 3, []]}", LLSDPatch.diff(from, Arrays.asList((Object) 1, 8, 6))
+            .getContent().toString());
+    }
+
+    public void testDiffDeepList() throws Exception {
+        Object from = 1;
+        Object to = 2;
+        Object patched;
+
+        // Each pair of items is diffed once, however deep the change.
+        for (int i = 0; i < 200; i++) {
+            from = Arrays.asList(0, from, 0);
+            to = Arrays.asList(0, to, 0);
+        }
+        patched = LLSDPatch.diff(from, to).applyCopy(from);
+        for (int i = 0; i < 200; i++) {
+            patched = ((List<?>) patched).get(1);
+        }
+        assertEquals(2, patched);
+    }
+
+    public void testApplyCopy() throws Exception {
+        final Map<String, Object> from = region();
+        final Map<String, Object> to = region();
+        final Map<String, Object> copy;
+
+        ((List<Object>) to.get("neighbours")).add(1, "Babbage");
+        copy = (Map<String, Object>) LLSDPatch.diff(from, to).applyCopy(from);
+        assertEquals(Arrays.asList((Object) "Ahern", "Babbage", "Bonifacio", "Clyde"), copy.get("neighbours"));
+        assertEquals(3, ((List<Object>) from.get("neighbours")).size());
+        // Only the path to the change is copied.
+        assertSame(from.get("simulator statistics"), copy.get("simulator statistics"));
+    }
+
+    public void testSerialised() throws Exception {
+        final Map<String, Object> from = region();
+        final Map<String, Object> to = region();
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final LLSDPatch patch;
+        final LLSDPatch received;
+
+        ((Map<String, Object>) to.get("simulator statistics")).put("agents", 13);
+        to.put("texture", new byte[] {1, 2, 4});
+        patch = LLSDPatch.diff(from, to);
+        new LLSDBinarySerialiser().serialise(new LLSD(patch.getContent()), output);
+        received = new LLSDPatch(new LLSDBinaryParser().parse(new ByteArrayInputStream(output.toByteArray()))
+            .getContent());
+
+        received.apply(from);
+        assertEquals(13, ((Map<String, Object>) from.get("simulator statistics")).get("agents"));
+        assertTrue(Arrays.equals(new byte[] {1, 2, 4}, (byte[]) from.get("texture")));
+        assertTrue(LLSDPatch.diff(from, to).isEmpty());
+    }
+
+    public void testFrozen() throws Exception {
+        final LLSDFrozen from = new LLSD(region()).freeze();
+        final LLSDFrozen to = from.with("scale", "one hour");
+        final LLSDPatch patch = LLSDPatch.diff(from.getContent(), to.getContent());
+
+        assertEquals("{m={scale={v=one hour}}}", patch.getContent().toString());
+        assertEquals("one hour", ((Map<String, Object>) patch.applyCopy(from.getContent())).get("scale"));
+        try {
+            patch.apply(from.getContent());
+            fail("Expected LLSDException");
+        } catch (LLSDException e) {
+            // expected
+        }
+    }
+
+    public void testFrozenBelowXMLPrecision() throws Exception {
+        final Map<String, Object> original = region();
+        final Map<String, Object> changed = region();
+        final LLSDFrozen from;
+        final LLSDFrozen to;
+        final LLSDPatch patch;
+
+        // Enough statistics for their map to have a cached encoding.
+        for (int i = 0; i < 60; i++) {
+            ((Map<String, Object>) original.get("simulator statistics")).put("stat " + i, 1.0 * i);
+            ((Map<String, Object>) changed.get("simulator statistics")).put("stat " + i, 1.0 * i);
+        }
+        ((Map<String, Object>) changed.get("simulator statistics")).put("sim fps", 44.501);
+        from = new LLSD(original).freeze();
+        to = new LLSD(changed).freeze();
+        // XML writes reals to two decimal places, so both encode the same.
+        assertEquals(from.encoded(LLSDFormat.XML), to.encoded(LLSDFormat.XML));
+        assertNotNull(((LLSDFrozen.Node) ((Map<String, Object>) to.getContent()).get("simulator statistics"))
+            .cached(LLSDFormat.XML));
+
+        patch = LLSDPatch.diff(from.getContent(), to.getContent());
+        assertEquals("{m={simulator statistics={m={sim fps={v=44.501}}}}}", patch.getContent().toString());
+    }
+
+    public void testRandom() throws Exception {
+        final Random random = new Random(42);
+
+        for (int i = 0; i < 500; i++) {
+            final Object from = randomValue(random, 3);
+            final Object to = mutate(random, from, 3);
+            final Object applied = LLSDPatch.diff(from, to).applyCopy(from);
+
+            assertEquals(to, applied);
+            assertEquals(to, LLSDPatch.diff(from, to).apply(copy(from)));
+        }
+    }
+
+    public void testMalformed() throws Exception {
+        final Object[] patches = {
+            Collections.singletonMap("x", 1),
+            Collections.singletonMap("m", Collections.singletonMap("missing", Collections.singletonMap("m",
+                Collections.emptyMap()))),
+            Collections.singletonMap("i", Collections.singletonMap("9", Collections.singletonMap("v", 1))),
+            Collections.singletonMap("s", Arrays.asList((Object) 0, 1))
+        };
+
+        try {
+            new LLSDPatch(Arrays.asList((Object) 1));
+            fail("Expected LLSDException");
+        } catch (LLSDException e) {
+            // expected
+        }
+        for (Object patch: patches) {
+            try {
+                new LLSDPatch(patch).applyCopy(patch.toString().contains("m=") ? region() : (Object) Arrays.asList((Object) 1));
+                fail("Expected LLSDException for " + patch);
+            } catch (LLSDException e) {
+                // expected
+            }
+        }
+    }
+
+    private static Object randomValue(final Random random, final int depth) {
+        final int kind = random.nextInt(depth > 0 ? 5 : 3);
+
+        switch (kind) {
+        case 0:
+            return random.nextInt(4);
+        case 1:
+            return "s" + random.nextInt(4);
+        case 2:
+            return random.nextBoolean();
+        case 3:
+            final Map<String, Object> map = new HashMap<String, Object>();
+
+            for (int i = random.nextInt(5); i > 0; i--) {
+                map.put("k" + random.nextInt(6), randomValue(random, depth - 1));
+            }
+            return map;
+        default:
+            final List<Object> list = new ArrayList<Object>();
+
+            for (int i = random.nextInt(6); i > 0; i--) {
+                list.add(randomValue(random, depth - 1));
+            }
+            return list;
+        }
+    }
+
+    /**
+     * Returns a deep copy of the value with a few random changes.
+     */
+    private static Object mutate(final Random random, final Object value, final int depth) {
+        if (random.nextInt(8) == 0) {
+            return randomValue(random, depth);
+        } else if (value instanceof Map) {
+            final Map<String, Object> map = new HashMap<String, Object>();
+
+            for (Map.Entry<String, Object> entry: ((Map<String, Object>) value).entrySet()) {
+                if (random.nextInt(6) != 0) {
+                    map.put(entry.getKey(), mutate(random, entry.getValue(), depth - 1));
+                }
+            }
+            if (random.nextInt(3) == 0) {
+                map.put("k" + random.nextInt(6), randomValue(random, depth - 1));
+            }
+            return map;
+        } else if (value instanceof List) {
+            final List<Object> list = new ArrayList<Object>();
+
+            for (Object item: (List<Object>) value) {
+                if (random.nextInt(6) != 0) {
+                    list.add(mutate(random, item, depth - 1));
+                }
+                if (random.nextInt(6) == 0) {
+                    list.add(randomValue(random, depth - 1));
+                }
+            }
+            return list;
+        }
+        return value;
+    }
+
+    private static Object copy(final Object value) {
+        if (value instanceof Map) {
+            final Map<String, Object> map = new HashMap<String, Object>();
+
+            for (Map.Entry<String, Object> entry: ((Map<String, Object>) value).entrySet()) {
+                map.put(entry.getKey(), copy(entry.getValue()));
+            }
+            return map;
+        } else if (value instanceof List) {
+            final List<Object> list = new ArrayList<Object>();
+
+            for (Object item: (List<Object>) value) {
+                list.add(copy(item));
+            }
+            return list;
+        }
+        return value;
+    }
+}
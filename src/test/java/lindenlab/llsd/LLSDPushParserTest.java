@@ -0,0 +1,106 @@
+package lindenlab.llsd;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class LLSDPushParserTest extends TestCase {
+    final String DOCUMENT = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<llsd>\n<map>\n"
+        + "  <key>region_id</key><uuid>67153d5b-3659-afb4-8510-adda2c034649</uuid>\n"
+        + "  <key>name</key><string>caf\u00e9 \u4e2d</string>\n"
+        + "  <key>stats</key><array><real>44.38898</real><integer>4</integer><undef /></array>\n"
+        + "</map>\n</llsd>\n";
+
+    public void testChunks() throws Exception {
+        final LLSDParser parser = new LLSDParser();
+        final byte[] bytes = DOCUMENT.getBytes("UTF-8");
+        final Object expected = parser.parse(new ByteArrayInputStream(bytes)).getContent();
+
+        for (int size: new int[] {1, 3, 64, bytes.length}) {
+            final LLSDPushParser push = new LLSDPushParser(parser);
+            final ByteBuffer chunk = ByteBuffer.allocateDirect(size);
+
+            for (int i = 0; i < bytes.length; i += size) {
+                chunk.clear();
+                chunk.put(bytes, i, Math.min(size, bytes.length - i));
+                chunk.flip();
+                push.accept(chunk);
+                assertFalse(chunk.hasRemaining());
+                assertFalse(push.result().isDone());
+            }
+            assertEquals(expected, push.complete().get().getContent());
+        }
+    }
+
+    public void testExecutor() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            final LLSDPushParser push = new LLSDPushParser(new LLSDParser(), executor);
+
+            push.accept(ByteBuffer.wrap(DOCUMENT.getBytes("UTF-8")));
+            assertEquals(new LLSDParser().parse(new ByteArrayInputStream(DOCUMENT.getBytes("UTF-8"))).getContent(),
+                push.complete().get(10, TimeUnit.SECONDS).getContent());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void testDocumentSize() throws Exception {
+        final LLSDParser parser = new LLSDParser();
+        final LLSDPushParser push;
+        final ByteBuffer chunk = ByteBuffer.allocate(512);
+
+        parser.setLimits(LLSDLimits.DEFAULT.withMaxDocumentBytes(1024));
+        push = new LLSDPushParser(parser);
+        push.accept(chunk);
+        chunk.clear();
+        push.accept(chunk);
+        assertFalse(push.result().isDone());
+
+        // Fails as soon as the limit is passed, and discards the rest.
+        chunk.clear();
+        push.accept(chunk);
+        assertTrue(push.result().isCompletedExceptionally());
+        for (int i = 0; i < 1000; i++) {
+            chunk.clear();
+            push.accept(chunk);
+            assertFalse(chunk.hasRemaining());
+        }
+        try {
+            push.complete().get();
+            fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof LLSDLimitException.DocumentSize);
+        }
+    }
+
+    public void testFailures() throws Exception {
+        final LLSDPushParser invalid = new LLSDPushParser(new LLSDParser());
+        final LLSDPushParser abandoned = new LLSDPushParser(new LLSDParser());
+
+        invalid.accept(ByteBuffer.wrap("<llsd><integer>four</integer></llsd>".getBytes("UTF-8")));
+        try {
+            invalid.complete().get();
+            fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof LLSDException);
+        }
+        try {
+            invalid.accept(ByteBuffer.allocate(1));
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        abandoned.accept(ByteBuffer.wrap("<llsd>".getBytes("UTF-8")));
+        abandoned.fail(new EOFException());
+        assertTrue(abandoned.result().isCompletedExceptionally());
+    }
+}
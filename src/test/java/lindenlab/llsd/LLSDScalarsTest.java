@@ -0,0 +1,198 @@
+package lindenlab.llsd;
+
+import junit.framework.TestCase;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+import java.util.UUID;
+
+public class LLSDScalarsTest extends TestCase {
+    private static byte[] bytes(final String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void assertRejected(final String type, final String text) {
+        final byte[] encoded = bytes(" " + text + " ");
+
+        try {
+            switch (type) {
+            case "integer":
+                LLSDScalars.parseInteger(text);
+                LLSDScalars.parseInteger(encoded, 1, encoded.length - 1);
+                break;
+            case "real":
+                LLSDScalars.parseReal(text);
+                LLSDScalars.parseReal(encoded, 1, encoded.length - 1);
+                break;
+            case "uuid":
+                LLSDScalars.parseUUID(text);
+                LLSDScalars.parseUUID(encoded, 1, encoded.length - 1);
+                break;
+            default:
+                LLSDScalars.parseTime(text, 0, text.length());
+                LLSDScalars.parseTime(encoded, 1, encoded.length - 1);
+                break;
+            }
+            fail("Expected LLSDException for " + type + " \"" + text + "\"");
+        } catch(LLSDException e) {
+            // expected
+        }
+    }
+
+    public void testInteger() throws Exception {
+        final Random random = new Random(10);
+
+        assertEquals(0, LLSDScalars.parseInteger(""));
+        assertEquals(7, LLSDScalars.parseInteger("+7"));
+        assertEquals(Integer.MIN_VALUE, LLSDScalars.parseInteger("-2147483648"));
+        assertEquals(Integer.MAX_VALUE, LLSDScalars.parseInteger(bytes("2147483647"), 0, 10));
+        for (int i = 0; i < 10000; i++) {
+            final int value = random.nextInt();
+            final byte[] text = bytes("x" + value);
+
+            assertEquals(value, LLSDScalars.parseInteger(Integer.toString(value)));
+            assertEquals(value, LLSDScalars.parseInteger(text, 1, text.length));
+        }
+        for (String text: new String[] {"2147483648", "-2147483649", "99999999999", "-", "+", " 1", "1 ",
+            "1.0", "0x10", "\u0661", "1e3"}) {
+            assertRejected("integer", text);
+        }
+    }
+
+    public void testReal() throws Exception {
+        final Random random = new Random(11);
+
+        assertEquals(0.0, LLSDScalars.parseReal(""));
+        assertTrue(Double.isNaN(LLSDScalars.parseReal("nan")));
+        assertTrue(Double.isNaN(LLSDScalars.parseReal(bytes("NaN"), 0, 3)));
+        assertEquals(Double.POSITIVE_INFINITY, LLSDScalars.parseReal("inf"));
+        assertEquals(Double.NEGATIVE_INFINITY, LLSDScalars.parseReal("-Infinity"));
+        assertEquals(Double.doubleToLongBits(-0.0), Double.doubleToLongBits(LLSDScalars.parseReal("-0")));
+        assertEquals(0.5, LLSDScalars.parseReal(".5"));
+        assertEquals(5.0, LLSDScalars.parseReal("5."));
+        assertEquals(0.0001096525, LLSDScalars.parseReal("0.0001096525"));
+        assertEquals(1.7976931348623157E308, LLSDScalars.parseReal("1.7976931348623157E308"));
+        assertEquals(4.9E-324, LLSDScalars.parseReal("4.9e-324"));
+
+        // Whatever the digits, the result is the correctly rounded double.
+        for (int i = 0; i < 100000; i++) {
+            final String text;
+
+            switch (i % 4) {
+            case 0:
+                text = Double.toString(Double.longBitsToDouble(random.nextLong()));
+                break;
+            case 1:
+                text = Long.toString(random.nextLong() % 1000000000000000L) + "." + random.nextInt(1000000);
+                break;
+            case 2:
+                text = random.nextInt(100000) + "e" + (random.nextInt(60) - 30);
+                break;
+            default:
+                text = (random.nextDouble() * 1000.0) + "";
+                break;
+            }
+            if (text.contains("N") || text.contains("I")) {
+                continue;
+            }
+
+            final byte[] encoded = bytes(text);
+            final long expected = Double.doubleToLongBits(Double.parseDouble(text));
+
+            assertEquals(text, expected, Double.doubleToLongBits(LLSDScalars.parseReal(text)));
+            assertEquals(text, expected, Double.doubleToLongBits(LLSDScalars.parseReal(encoded, 0, encoded.length)));
+        }
+
+        // XML whitespace around the value is ignored, as the DOM parser did.
+        assertEquals(1.5, LLSDScalars.parseReal(" 1.5 "));
+        assertEquals(1.5, LLSDScalars.parseReal(bytes("\r\n\t1.5\n"), 0, 6));
+        assertEquals(0.0, LLSDScalars.parseReal("  "));
+
+        for (String text: new String[] {".", "-", "1e", "1e+", "e5", "1.5d", "1.5f", "0x1p3", "1 .5",
+            "1..5", "1.5.", "nanx", "infinity", "Inf", "--1", "\u0661.5"}) {
+            assertRejected("real", text);
+        }
+    }
+
+    public void testUUID() throws Exception {
+        final Random random = new Random(12);
+
+        assertEquals(new UUID(0L, 0L), LLSDScalars.parseUUID(""));
+        assertEquals(UUID.fromString("67153d5b-3659-afb4-8510-adda2c034649"),
+            LLSDScalars.parseUUID("67153D5B-3659-AFB4-8510-ADDA2C034649"));
+        for (int i = 0; i < 1000; i++) {
+            final UUID value = new UUID(random.nextLong(), random.nextLong());
+            final byte[] encoded = bytes(value.toString());
+
+            assertEquals(value, LLSDScalars.parseUUID(value.toString()));
+            assertEquals(value, LLSDScalars.parseUUID(encoded, 0, encoded.length));
+        }
+        for (String text: new String[] {"1-1-1-1-1", "67153d5b-3659-afb4-8510-adda2c03464",
+            "67153d5b-3659-afb4-8510-adda2c0346490", "67153d5b+3659-afb4-8510-adda2c034649",
+            "67153d5g-3659-afb4-8510-adda2c034649", "67153d5b3659-afb4-8510-adda2c0346490"}) {
+            assertRejected("uuid", text);
+        }
+    }
+
+    public void testDate() throws Exception {
+        final Random random = new Random(13);
+
+        assertEquals(0L, LLSDScalars.parseTime("", 0, 0));
+        assertEquals(1138804193000L, LLSDScalars.parseTime("2006-02-01T14:29:53Z", 0, 20));
+        assertEquals(1138804193430L, LLSDScalars.parseTime(bytes("2006-02-01T14:29:53.43Z"), 0, 23));
+        assertEquals(Instant.parse("2008-12-31T23:59:60Z").toEpochMilli(),
+            LLSDScalars.parseTime("2008-12-31T23:59:60Z", 0, 20));
+        for (int i = 0; i < 10000; i++) {
+            final Instant value = Instant.ofEpochSecond(random.nextInt() * 16L, random.nextInt(1000000000));
+            final String text = value.toString();
+            final byte[] encoded = bytes(text);
+
+            if (text.startsWith("-") || text.startsWith("+")) {
+                continue;
+            }
+            assertEquals(text, value.toEpochMilli(), LLSDScalars.parseTime(text, 0, text.length()));
+            assertEquals(text, value.toEpochMilli(), LLSDScalars.parseTime(encoded, 0, encoded.length));
+        }
+        assertEquals(1138804193000L, LLSDScalars.parseTime(" 2006-02-01T14:29:53Z ", 0, 22));
+        assertEquals(1138804193000L, LLSDScalars.parseTime(bytes("\n\t2006-02-01T14:29:53Z\r\n"), 0, 24));
+        for (String text: new String[] {"2006-02-01", "2006-02-01T14:29:53", "2006-02-01 14:29:53Z",
+            "2006-02-01T14:29:53+00:00", "2006-13-01T14:29:53Z", "2007-02-29T14:29:53Z",
+            "2006-02-01T24:00:00Z", "2006-02-01T14:60:00Z", "2006-02-01T14:29:60Z",
+            "2006-02-01T14:29:53.Z", "2006-02-01T14:29:53.1234567890Z", "2006-2-01T14:29:53Z"}) {
+            assertRejected("date", text);
+        }
+        assertEquals(Instant.parse("2008-02-29T00:00:00Z").toEpochMilli(),
+            LLSDScalars.parseTime("2008-02-29T00:00:00Z", 0, 20));
+    }
+
+    public void testBinary() throws Exception {
+        final Random random = new Random(14);
+
+        for (int i = 0; i < 200; i++) {
+            final byte[] value = new byte[random.nextInt(100)];
+
+            random.nextBytes(value);
+
+            final String text = Base64.getEncoder().encodeToString(value);
+            final String wrapped = Base64.getMimeEncoder(8, new byte[] {'\n'}).encodeToString(value);
+            final String unpadded = Base64.getEncoder().withoutPadding().encodeToString(value);
+            final byte[] encoded = bytes(" " + wrapped + " ");
+
+            assertTrue(Arrays.equals(value, LLSDScalars.parseBinary(text)));
+            assertTrue(Arrays.equals(value, LLSDScalars.parseBinary(wrapped)));
+            assertTrue(Arrays.equals(value, LLSDScalars.parseBinary(unpadded)));
+            assertTrue(Arrays.equals(value, LLSDScalars.parseBinary(encoded, 0, encoded.length)));
+        }
+        for (String text: new String[] {"a", "aGk=x", "aGk=aGk=", "a===", "aG=", "aGk*", "=aGk", "aGVsbG8\u00e9"}) {
+            try {
+                LLSDScalars.parseBinary(text);
+                fail("Expected LLSDException for \"" + text + "\"");
+            } catch(LLSDException e) {
+                // expected
+            }
+        }
+    }
+}
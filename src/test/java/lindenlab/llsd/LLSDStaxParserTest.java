@@ -0,0 +1,94 @@
+package lindenlab.llsd;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+public class LLSDStaxParserTest extends TestCase {
+    final String VALID_DOCUMENT = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<llsd>\n<map>\n  <key>region_id</key>\n    <uuid>67153d5b-3659-afb4-8510-adda2c034649</uuid>\n  <key>scale</key>\n    <string>one minute</string>\n  <key>simulator statistics</key>\n  <map>\n    <key>time dilation</key><real>0.9878624</real>\n    <key>sim fps</key><real>44.38898</real>\n    <key>agent updates per second</key><real>nan</real>\n    <key>total task count</key><real>4</real>\n    <key>pending uploads</key><real>0.0001096525</real>\n  </map>\n  <key>flags</key>\n  <array><integer>1</integer><integer><undef /></integer><boolean>true</boolean><binary encoding=\"base64\">aGVsbG8=</binary><string>a &amp; b</string><undef /></array>\n</map>\n</llsd>";
+
+    private Object parseDOM(final String document) throws Exception {
+        return new LLSDParser().parse(new ByteArrayInputStream(document.getBytes("UTF-8"))).getContent();
+    }
+
+    private Object parseStAX(final String document) throws Exception {
+        return new LLSDStaxParser().parse(new ByteArrayInputStream(document.getBytes("UTF-8"))).getContent();
+    }
+
+    public void testMatchesDOMParser() throws Exception {
+        final Map<String, Object> dom = (Map<String, Object>) parseDOM(VALID_DOCUMENT);
+        final Map<String, Object> stax = (Map<String, Object>) parseStAX(VALID_DOCUMENT);
+
+        assertEquals(dom.keySet(), stax.keySet());
+        assertEquals(dom.get("region_id"), stax.get("region_id"));
+        assertEquals(dom.get("simulator statistics"), stax.get("simulator statistics"));
+        assertEquals(new LLSD(dom).toString(), new LLSD(stax).toString());
+    }
+
+    public void testReaderOverFilesBuffersAndChannels() throws Exception {
+        final byte[] bytes = VALID_DOCUMENT.getBytes("UTF-8");
+        final String expected = new LLSD(parseDOM(VALID_DOCUMENT)).toString();
+        final LLSDStaxParser parser = new LLSDStaxParser();
+        final Path file = Files.createTempFile("llsd", ".xml");
+
+        try {
+            Files.write(file, bytes);
+            try (LLSDReader reader = parser.reader(file)) {
+                assertEquals(expected, reader.readDocument().toString());
+            }
+            try (LLSDReader reader = parser.reader(ByteBuffer.wrap(bytes))) {
+                assertEquals(expected, reader.readDocument().toString());
+            }
+            try (LLSDReader reader = parser.reader(Channels.newChannel(new ByteArrayInputStream(bytes)))) {
+                assertEquals(expected, reader.readDocument().toString());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    public void testEmptyDocument() throws Exception {
+        assertNull(parseStAX("<?xml version=\"1.0\" ?><llsd></llsd>"));
+    }
+
+    public void testRejectsWrongRoot() throws Exception {
+        try {
+            parseStAX("<?xml version=\"1.0\" ?><lsd><integer>1</integer></lsd>");
+            fail("Expected LLSDException");
+        } catch (LLSDException e) {
+            // expected
+        }
+    }
+
+    public void testRejectsMalformedXML() throws Exception {
+        try {
+            parseStAX("<?xml version=\"1.0\" ?><llsd><integer>1</llsd>");
+            fail("Expected LLSDException");
+        } catch (LLSDException e) {
+            // expected
+        }
+    }
+
+    public void testRejectsMapWithoutKeys() throws Exception {
+        final String document = "<?xml version=\"1.0\" ?><llsd><map><string>a</string><integer>1</integer></map></llsd>";
+
+        // The DOM parser rejects it in the same way.
+        try {
+            parseStAX(document);
+            fail("Expected LLSDException");
+        } catch (LLSDException e) {
+            // expected
+        }
+        try {
+            parseDOM(document);
+            fail("Expected LLSDException");
+        } catch (LLSDException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package lindenlab.llsd;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URI;
+import java.util.*;
+
+public class LLSDValueTest extends TestCase {
+    final String DOCUMENT = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<llsd>\n<map>\n"
+        + "  <key>region_id</key><uuid>67153d5b-3659-afb4-8510-adda2c034649</uuid>\n"
+        + "  <key>scale</key><string>one minute</string>\n"
+        + "  <key>agents</key><array><integer>1</integer><integer>-5</integer><integer>70000</integer></array>\n"
+        + "  <key>fps</key><array><real>44.5</real><real>nan</real><real>0.25</real></array>\n"
+        + "  <key>mixed</key><array><integer>1</integer><real>2.5</real><undef /><integer><undef /></integer></array>\n"
+        + "  <key>flags</key><map><key>up</key><boolean>true</boolean><key>count</key><integer>4</integer></map>\n"
+        + "  <key>seen</key><date>2006-02-01T14:29:53Z</date>\n"
+        + "  <key>home</key><uri>http://example.com/</uri>\n"
+        + "  <key>data</key><binary encoding=\"base64\">aGVsbG8=</binary>\n"
+        + "  <key>empty</key><array></array>\n"
+        + "</map>\n</llsd>\n";
+
+    private LLSDValue parse(final String document) throws Exception {
+        return new LLSDParser().parseValue(new ByteArrayInputStream(document.getBytes("UTF-8")));
+    }
+
+    public void testParse() throws Exception {
+        final LLSDMap root = parse(DOCUMENT).asMap();
+        final LLSDArray agents = root.get("agents").asArray();
+        final LLSDArray fps = root.get("fps").asArray();
+        final LLSDArray mixed = root.get("mixed").asArray();
+
+        assertEquals(UUID.fromString("67153d5b-3659-afb4-8510-adda2c034649"), root.get("region_id").asUUID());
+        assertEquals("one minute", root.get("scale").asString());
+
+        assertTrue(agents instanceof LLSDIntegerArray);
+        assertTrue(Arrays.equals(new int[] {1, -5, 70000}, ((LLSDIntegerArray) agents).toIntegerArray()));
+        assertTrue(fps instanceof LLSDRealArray);
+        assertTrue(Double.isNaN(fps.getReal(1)));
+        assertEquals(0.25, fps.getReal(2));
+
+        assertTrue(mixed instanceof LLSDValueArray);
+        assertEquals(1, mixed.getInteger(0));
+        assertEquals(2.5, mixed.getReal(1));
+        assertSame(LLSDUndef.UNDEF, mixed.get(2));
+        assertEquals(LLSDType.INTEGER, mixed.get(3).getType());
+        assertTrue(mixed.get(3).isUndefined());
+
+        assertTrue(root.get("flags").asMap().get("up").asBoolean());
+        assertEquals(4, root.get("flags").asMap().get("count").asInteger());
+        assertEquals(new Date(1138804193000L), root.get("seen").asDate());
+        assertEquals(new URI("http://example.com/"), root.get("home").asURI());
+        assertEquals("hello", new String(root.get("data").asBinary(), "UTF-8"));
+        assertTrue(root.get("empty").asArray().isEmpty());
+        assertEquals(Arrays.asList("region_id", "scale", "agents", "fps", "mixed", "flags", "seen", "home", "data", "empty"),
+            new ArrayList<String>(root.keySet()));
+    }
+
+    public void testAccessorTypes() throws Exception {
+        final LLSDValue undefined = LLSDUndef.valueOf(LLSDUndefined.REAL);
+
+        try {
+            new LLSDString("4").asInteger();
+            fail("Expected LLSDException");
+        } catch (LLSDException e) {
+            // expected
+        }
+        try {
+            undefined.asReal();
+            fail("Expected LLSDException");
+        } catch (LLSDException e) {
+            assertTrue(e.getMessage().contains("undefined"));
+        }
+        try {
+            new LLSDIntegerArray(new int[] {1}).get(1);
+            fail("Expected IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+    }
+
+    public void testBackendsAgree() throws Exception {
+        final LLSDValue expected = parse(DOCUMENT);
+        final LLSD llsd = new LLSD(expected);
+
+        assertEquals(expected, new LLSDStaxParser().parseValue(new ByteArrayInputStream(DOCUMENT.getBytes("UTF-8"))));
+        assertEquals(expected, new LLSDBinaryParser(true).parseValue(new LLSDBinarySerialiser(true).serialise(llsd)));
+        assertEquals(expected, new LLSDNotationParser(true).parseValue(new LLSDNotationSerialiser(true).serialise(llsd)));
+        assertEquals(expected, parse(llsd.toString()));
+    }
+
+    public void testObjectConversion() throws Exception {
+        final Object content = new LLSDParser().parse(new ByteArrayInputStream(DOCUMENT.getBytes("UTF-8"))).getContent();
+        final LLSDMap tree = LLSDValue.fromObject(content).asMap();
+        final LLSDMap expected = parse(DOCUMENT).asMap();
+
+        // The Object form cannot tell a bare <undef /> from an empty string.
+        assertEquals(new LLSDString(""), tree.get("mixed").asArray().get(2));
+        tree.remove("mixed");
+        expected.remove("mixed");
+        assertEquals(expected, tree);
+        assertTrue(LLSDValue.fromObject(Arrays.asList((Object) 1, 2, 3)) instanceof LLSDIntegerArray);
+        assertEquals(new LLSDIntegerArray(new int[] {1, 2}), LLSDValue.fromObject(Arrays.asList((Object) 1, 2)));
+        assertEquals(new LLSDIntegerArray(new int[] {1, 2}).hashCode(),
+            LLSDValue.fromObject(Arrays.asList((Object) 1, 2)).hashCode());
+        try {
+            LLSDValue.fromObject(new Object());
+            fail("Expected LLSDException");
+        } catch (LLSDException e) {
+            // expected
+        }
+    }
+
+    public void testSerialise() throws Exception {
+        final LLSDValue tree = parse(DOCUMENT);
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        final ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        final Writer writer = new OutputStreamWriter(expected, "UTF-8");
+
+        new LLSD(tree).serialise(writer, "UTF-8");
+        writer.flush();
+        new LLSDXMLSerialiser().serialise(new LLSD(tree), actual);
+        assertEquals(expected.toString("UTF-8"), actual.toString("UTF-8"));
+        assertTrue(expected.toString("UTF-8").contains("\t<integer>-5</integer>\n\t<integer>70000</integer>\n</array>"));
+        assertTrue(expected.toString("UTF-8").contains("\t<undef />\n"));
+
+        // Scalars and primitive arrays come out as the equivalent Object content does.
+        final Map<String, Object> content = new LinkedHashMap<String, Object>();
+        final LLSDMap map = new LLSDMap();
+
+        content.put("reals", Arrays.asList((Object) 1.5, Double.NaN, -0.004));
+        content.put("on", Boolean.FALSE);
+        map.put("reals", new LLSDRealArray(new double[] {1.5, Double.NaN, -0.004}));
+        map.put("on", LLSDBoolean.FALSE);
+        assertEquals(new LLSD(content).toString(), new LLSD(map).toString());
+    }
+}
@@ -0,0 +1,80 @@
+package lindenlab.llsd;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+public class LLSDXMLChannelTest extends TestCase {
+    private static Object content() throws Exception {
+        final Map<String, Object> content = new LinkedHashMap<String, Object>();
+        final List<Object> agents = new ArrayList<Object>();
+        final LLSDMap tree = new LLSDMap(2);
+
+        for (int i = 0; i < 500; i++) {
+            agents.add(Collections.singletonMap("name", "agent " + i));
+        }
+        tree.put("integers", LLSDValue.fromObject(Arrays.asList((Object) 1, 2, 3)));
+        tree.put("reals", LLSDValue.fromObject(Arrays.asList((Object) 1.5, 2.5)));
+        content.put("agents", agents);
+        content.put("empty", new ArrayList<Object>());
+        content.put("tree", tree);
+        content.put("data", new byte[20000]);
+        content.put("nothing", LLSDUndef.UNDEF);
+        return content;
+    }
+
+    private static byte[] expected(final LLSD llsd) throws Exception {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        new LLSDXMLSerialiser().serialise(llsd, output);
+        return output.toByteArray();
+    }
+
+    public void testNextChunk() throws Exception {
+        final LLSD llsd = new LLSD(content());
+        final LLSDXMLChannel channel = new LLSDXMLSerialiser().channel(llsd, 1000);
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        int chunks = 0;
+
+        for (ByteBuffer chunk = channel.nextChunk(); null != chunk; chunk = channel.nextChunk()) {
+            assertTrue(chunk.remaining() <= 1000);
+            output.write(chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining());
+            chunks++;
+        }
+        assertTrue(Arrays.equals(expected(llsd), output.toByteArray()));
+        assertTrue(chunks > 20);
+        assertNull(channel.nextChunk());
+    }
+
+    public void testRead() throws Exception {
+        for (Object content: new Object[] {content(), null, "", LLSDValue.fromObject(Arrays.asList((Object) 1))}) {
+            final LLSD llsd = new LLSD(content);
+            final LLSDXMLChannel channel = new LLSDXMLSerialiser().channel(llsd);
+            final ByteBuffer target = ByteBuffer.allocate(7);
+            final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+            while (channel.read(target) >= 0) {
+                output.write(target.array(), 0, target.position());
+                target.clear();
+            }
+            assertTrue(Arrays.equals(expected(llsd), output.toByteArray()));
+        }
+    }
+
+    public void testUnserialisable() throws Exception {
+        final LLSDXMLChannel channel = new LLSDXMLSerialiser().channel(
+            new LLSD(Arrays.asList((Object) 1, new Object())), 16);
+
+        try {
+            while (channel.read(ByteBuffer.allocate(16)) >= 0) {
+                // keep reading
+            }
+            fail("Expected IOException");
+        } catch (IOException e) {
+            assertTrue(e.getCause() instanceof LLSDException);
+        }
+    }
+}
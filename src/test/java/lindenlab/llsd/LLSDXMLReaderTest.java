@@ -0,0 +1,147 @@
+package lindenlab.llsd;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+public class LLSDXMLReaderTest extends TestCase {
+    final String DOCUMENT = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<llsd>\n<map>\n  <key>region_id</key>\n    <uuid>67153d5b-3659-afb4-8510-adda2c034649</uuid>\n  <key>simulator statistics</key>\n  <map>\n    <key>sim fps</key><real>44.38898</real>\n    <key>frame ms</key><real>0.7757886</real>\n  </map>\n  <key>agents</key>\n  <array><integer>3</integer><integer><undef /></integer><undef /><binary encoding=\"base64\">aGVsbG8=</binary></array>\n</map>\n</llsd>";
+
+    private LLSDXMLReader open(final String document) throws Exception {
+        return new LLSDStaxParser().reader(new ByteArrayInputStream(document.getBytes("UTF-8")));
+    }
+
+    public void testTokens() throws Exception {
+        final LLSDXMLReader reader = open(DOCUMENT);
+
+        assertEquals(LLSDToken.START_MAP, reader.next());
+        assertEquals(LLSDToken.KEY, reader.next());
+        assertEquals("region_id", reader.getKey());
+        assertEquals(LLSDToken.UUID, reader.next());
+        assertEquals(UUID.fromString("67153d5b-3659-afb4-8510-adda2c034649"), reader.getUUID());
+        assertEquals(LLSDToken.KEY, reader.next());
+        assertEquals(LLSDToken.START_MAP, reader.next());
+        assertEquals(LLSDToken.KEY, reader.next());
+        assertEquals(LLSDToken.REAL, reader.next());
+        assertEquals(44.38898, reader.getReal(), 0.0);
+        assertEquals(LLSDToken.KEY, reader.next());
+        assertEquals(LLSDToken.REAL, reader.next());
+        assertEquals(LLSDToken.END_MAP, reader.next());
+        assertEquals(LLSDToken.KEY, reader.next());
+        assertEquals(LLSDToken.START_ARRAY, reader.next());
+        assertEquals(LLSDToken.INTEGER, reader.next());
+        assertEquals(3, reader.getInteger());
+        assertEquals(LLSDToken.INTEGER, reader.next());
+        assertTrue(reader.isUndefined());
+        assertEquals(LLSDUndefined.INTEGER, reader.getValue());
+        assertEquals(LLSDToken.UNDEF, reader.next());
+        assertEquals("", reader.getValue());
+        assertEquals(LLSDToken.BINARY, reader.next());
+        assertTrue(Arrays.equals("hello".getBytes("UTF-8"), reader.getBinary()));
+        assertEquals(LLSDToken.END_ARRAY, reader.next());
+        assertEquals(LLSDToken.END_MAP, reader.next());
+        assertEquals(LLSDToken.END_DOCUMENT, reader.next());
+        assertEquals(LLSDToken.END_DOCUMENT, reader.next());
+    }
+
+    public void testSkipValue() throws Exception {
+        final LLSDXMLReader reader = open(DOCUMENT);
+        Object agents = null;
+
+        reader.next();
+        while (reader.next() == LLSDToken.KEY) {
+            final String key = reader.getKey();
+
+            reader.next();
+            if (key.equals("agents")) {
+                agents = reader.readValue();
+            } else {
+                reader.skipValue();
+            }
+        }
+
+        assertEquals(LLSDToken.END_MAP, reader.getToken());
+        assertEquals(Arrays.asList(3, LLSDUndefined.INTEGER, ""), ((List<Object>) agents).subList(0, 3));
+        assertTrue(Arrays.equals("hello".getBytes("UTF-8"), (byte[]) ((List<Object>) agents).get(3)));
+    }
+
+    public void testReadValueMatchesParser() throws Exception {
+        final LLSDXMLReader reader = open(DOCUMENT);
+        final Map<String, Object> parsed = (Map<String, Object>) new LLSDParser()
+            .parse(new ByteArrayInputStream(DOCUMENT.getBytes("UTF-8"))).getContent();
+
+        reader.next();
+        final Map<String, Object> read = (Map<String, Object>) reader.readValue();
+        assertEquals(parsed.get("region_id"), read.get("region_id"));
+        assertEquals(parsed.get("simulator statistics"), read.get("simulator statistics"));
+    }
+
+    public void testOddMap() throws Exception {
+        final LLSDXMLReader reader = open("<llsd><map><key>a</key></map></llsd>");
+
+        reader.next();
+        reader.next();
+        try {
+            reader.next();
+            fail("Expected LLSDException");
+        } catch (LLSDException e) {
+            // expected
+        }
+    }
+
+    public void testStreamingBinary() throws Exception {
+        final byte[] value = new byte[200000];
+        final String encoded;
+        final StringBuilder wrapped = new StringBuilder();
+        final ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        final ByteBuffer buffered = ByteBuffer.allocate(value.length);
+        final String document;
+        LLSDXMLReader reader;
+
+        new Random(11).nextBytes(value);
+        encoded = Base64.getEncoder().encodeToString(value);
+        for (int i = 0; i < encoded.length(); i += 76) {
+            wrapped.append(encoded, i, Math.min(encoded.length(), i + 76)).append('\n');
+        }
+        document = "<llsd><array><binary encoding=\"base64\">\n" + wrapped
+            + "</binary><binary><undef /></binary><integer>4</integer></array></llsd>";
+
+        reader = open(document);
+        reader.next();
+        assertEquals(LLSDToken.BINARY, reader.next());
+        assertEquals(value.length, reader.getBinary(streamed));
+        assertTrue(Arrays.equals(value, streamed.toByteArray()));
+        try {
+            reader.getBinary();
+            fail("Expected LLSDException");
+        } catch (LLSDException e) {
+            // expected
+        }
+        assertEquals(LLSDToken.BINARY, reader.next());
+        assertTrue(reader.isUndefined());
+        assertEquals(LLSDToken.INTEGER, reader.next());
+        assertEquals(4, reader.getInteger());
+
+        // Unread values are skipped, and may be read whole or into a buffer.
+        reader = open(document);
+        reader.next();
+        reader.next();
+        assertEquals(LLSDToken.BINARY, reader.next());
+        assertEquals(LLSDToken.INTEGER, reader.next());
+        reader = open(document);
+        reader.next();
+        reader.next();
+        assertTrue(Arrays.equals(value, reader.getBinary()));
+        assertEquals(value.length, reader.getBinary(buffered));
+        assertTrue(Arrays.equals(value, buffered.array()));
+        assertEquals(LLSDToken.BINARY, reader.next());
+    }
+}
@@ -0,0 +1,330 @@
+package lindenlab.llsd;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+public class LLSDXMLSerialiserTest extends TestCase {
+    private static byte[] expected(final Object content) throws Exception {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final Writer writer = new OutputStreamWriter(output, "UTF-8");
+
+        new LLSD(content).serialise(writer, "UTF-8");
+        writer.flush();
+        return output.toByteArray();
+    }
+
+    private static byte[] actual(final Object content) throws Exception {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        new LLSDXMLSerialiser().serialise(new LLSD(content), output);
+        return output.toByteArray();
+    }
+
+    private static void assertSameOutput(final Object content) throws Exception {
+        final byte[] expected = expected(content);
+
+        assertEquals(new String(expected, "UTF-8"), new String(actual(content), "UTF-8"));
+        assertTrue(Arrays.equals(expected, actual(content)));
+    }
+
+    public void testAllTypes() throws Exception {
+        final Map<String, Object> content = new LinkedHashMap<String, Object>();
+
+        content.put("region_id", UUID.fromString("67153d5b-3659-afb4-8510-adda2c034649"));
+        content.put("scale", "one-minute <b>&\"\u00e9\u4e2d\ud83d\ude00\ud800'");
+        content.put("a<b>", Boolean.TRUE);
+        content.put("no", Boolean.FALSE);
+        content.put("agents", Integer.MIN_VALUE);
+        content.put("sim fps", 44.38898);
+        content.put("float", 2.125f);
+        content.put("nan", Double.NaN);
+        content.put("float nan", Float.NaN);
+        content.put("infinite", Arrays.asList((Object) Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY));
+        content.put("seen", new Date(1200000000123L));
+        content.put("home", new URI("http://example.com/a-b?c=%22d%22"));
+        content.put("data", new byte[] {0, 1, 2, (byte) 0xff, 'x'});
+        content.put("empty", new HashMap<String, Object>());
+        content.put("nested", Collections.singletonMap("deep", Arrays.asList((Object) 1, 2.5, "x")));
+        content.put("undefined", Arrays.asList((Object[]) LLSDUndefined.values()));
+        assertSameOutput(content);
+        assertSameOutput(null);
+        assertSameOutput("");
+    }
+
+    public void testReals() throws Exception {
+        final Random random = new Random(42);
+        final List<Object> reals = new ArrayList<Object>(Arrays.asList((Object) 0.0, -0.0, -0.001,
+            0.005, 0.015, 0.125, 0.375, 1.005, 2.675, 1e12 + 0.5, 9.99e12, 1e13, 1e300,
+            -1e-300, Double.MIN_VALUE, Double.MAX_VALUE, (double) Long.MAX_VALUE));
+
+        for (int i = 0; i < 20000; i++) {
+            reals.add(random.nextDouble() * 1000.0 - 500.0);
+            reals.add(Math.round(random.nextDouble() * 100000.0) / 1000.0);
+            reals.add(Double.longBitsToDouble(random.nextLong()));
+        }
+        assertSameOutput(reals);
+    }
+
+    public void testLongStrings() throws Exception {
+        final StringBuilder text = new StringBuilder();
+
+        for (int i = 0; i < 5000; i++) {
+            text.append(i % 7 == 0 ? "\ud83d\ude00" : "ab-<\u00e9");
+        }
+        assertSameOutput(Arrays.asList((Object) text.toString(), new byte[100001]));
+    }
+
+    public void testBuffers() throws Exception {
+        final LLSD llsd = new LLSD(Collections.singletonMap("key", (Object) "value"));
+        final byte[] expected = expected(llsd.getContent());
+        final LLSDXMLSerialiser serialiser = new LLSDXMLSerialiser();
+        final ByteBuffer target = ByteBuffer.allocate(expected.length + 4);
+        final ByteBuffer encoded = serialiser.serialise(llsd);
+        final byte[] encodedBytes = new byte[encoded.remaining()];
+
+        encoded.get(encodedBytes);
+        assertTrue(Arrays.equals(expected, encodedBytes));
+
+        serialiser.serialise(llsd, target);
+        assertEquals(expected.length, target.position());
+        assertTrue(Arrays.equals(expected, Arrays.copyOf(target.array(), expected.length)));
+
+        try {
+            serialiser.serialise(llsd, ByteBuffer.allocate(expected.length - 1));
+            fail("Expected BufferOverflowException");
+        } catch (java.nio.BufferOverflowException e) {
+            // expected
+        }
+    }
+
+    public void testUnsupportedType() throws Exception {
+        try {
+            actual(new Object());
+            fail("Expected LLSDException");
+        } catch (LLSDException e) {
+            // expected
+        }
+    }
+
+    public void testBinarySources() throws Exception {
+        final byte[] value = new byte[10000];
+        final ByteBuffer heap = ByteBuffer.allocate(value.length + 10);
+        final ByteBuffer direct = ByteBuffer.allocateDirect(value.length);
+        final LLSD expected;
+
+        new Random(12).nextBytes(value);
+        heap.position(5);
+        heap.put(value);
+        heap.position(5);
+        heap.limit(5 + value.length);
+        direct.put(value);
+        direct.flip();
+        expected = new LLSD(Arrays.asList((Object) value, value, value));
+
+        for (Object source: new Object[] {heap, direct, new java.io.ByteArrayInputStream(value)}) {
+            final Object content = Arrays.asList(value, source, value);
+
+            assertEquals(expected.toString(), new String(actual(content), "UTF-8"));
+        }
+        assertEquals(5, heap.position());
+        assertEquals(0, direct.position());
+        assertEquals(expected.toString(), new LLSD(Arrays.asList(value, heap, new java.io.ByteArrayInputStream(value)))
+            .toString());
+
+        final LLSDValue tree = new LLSDParser().parseValue(new java.io.ByteArrayInputStream(
+            expected.toString().getBytes("UTF-8")));
+
+        assertEquals(tree, new LLSDBinaryParser().parseValue(new LLSDBinarySerialiser().serialise(
+            new LLSD(Arrays.asList(value, direct, new java.io.ByteArrayInputStream(value))))));
+        assertEquals(tree, new LLSDNotationParser().parseValue(new LLSDNotationSerialiser().serialise(
+            new LLSD(Arrays.asList(value, heap, new java.io.ByteArrayInputStream(value))))));
+    }
+
+    private static String canonical(final Object content) throws Exception {
+        final ByteBuffer encoded = new LLSDXMLSerialiser().serialiseCanonical(new LLSD(content));
+
+        return new String(encoded.array(), encoded.position(), encoded.remaining(), "UTF-8");
+    }
+
+    public void testCanonical() throws Exception {
+        final Map<String, Object> forwards = new LinkedHashMap<String, Object>();
+        final Map<String, Object> backwards = new LinkedHashMap<String, Object>();
+        final LLSDMap typed = new LLSDMap();
+        final String text;
+
+        forwards.put("a", 1);
+        forwards.put("b", Arrays.asList((Object) 0.1, "x<y"));
+        forwards.put("c", LLSDUndefined.REAL);
+        backwards.put("c", LLSDUndefined.REAL);
+        backwards.put("b", Arrays.asList((Object) 0.1f, "x<y"));
+        backwards.put("a", 1);
+        typed.put("c", LLSDValue.fromObject(LLSDUndefined.REAL));
+        typed.put("b", LLSDValue.fromObject(Arrays.asList((Object) 0.1, "x<y")));
+        typed.put("a", LLSDInteger.valueOf(1));
+
+        text = canonical(forwards);
+        assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?><llsd><map><key>a</key><integer>1</integer>"
+            + "<key>b</key><array><real>0.1</real><string>x&lt;y</string></array>"
+            + "<key>c</key><real><undef /></real></map></llsd>", text);
+        assertEquals(text, canonical(typed));
+        // A float is widened, so it is not the same real.
+        assertFalse(text.equals(canonical(backwards)));
+        backwards.put("b", forwards.get("b"));
+        assertEquals(text, canonical(backwards));
+
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        new LLSDXMLSerialiser().serialiseCanonical(new LLSD(typed), output);
+        assertEquals(text, output.toString("UTF-8"));
+        assertEquals(new LLSDParser().parse(new java.io.ByteArrayInputStream(output.toByteArray())).getContent(),
+            forwards);
+    }
+
+    public void testCanonicalReals() throws Exception {
+        final double[] values = {0.1, 1.0 / 3, -2.5, 1e21, 1e-8, 123456789012345678.0, Double.MIN_VALUE,
+            Double.MAX_VALUE, 44.38898, -1e300, 0.000001};
+
+        assertEquals("0.1", LLSDRealFormat.formatCanonical(0.1));
+        assertEquals("0.3333333333333333", LLSDRealFormat.formatCanonical(1.0 / 3));
+        assertEquals("-2.5", LLSDRealFormat.formatCanonical(-2.5));
+        assertEquals("100.0", LLSDRealFormat.formatCanonical(100));
+        assertEquals("0.0", LLSDRealFormat.formatCanonical(-0.0));
+        assertEquals("1.0e21", LLSDRealFormat.formatCanonical(1e21));
+        assertEquals("1.5e-8", LLSDRealFormat.formatCanonical(1.5e-8));
+        assertEquals("0.000001", LLSDRealFormat.formatCanonical(0.000001));
+        assertEquals("nan", LLSDRealFormat.formatCanonical(Double.NaN));
+        assertEquals("-inf", LLSDRealFormat.formatCanonical(Double.NEGATIVE_INFINITY));
+        for (double value: values) {
+            final String text = LLSDRealFormat.formatCanonical(value);
+
+            assertEquals(text, value, LLSDScalars.parseReal(text));
+        }
+    }
+
+    public void testHash() throws Exception {
+        final LLSDXMLSerialiser serialiser = new LLSDXMLSerialiser();
+        final LLSDHasher hasher = new LLSDHasher();
+        final Map<String, Object> forwards = new LinkedHashMap<String, Object>();
+        final Map<String, Object> backwards = new LinkedHashMap<String, Object>();
+        final byte[] binary = new byte[100000];
+        final ByteBuffer encoded;
+        final byte[] bytes;
+
+        new Random(3).nextBytes(binary);
+        forwards.put("scale", "one minute");
+        forwards.put("binary", binary);
+        backwards.put("binary", binary);
+        backwards.put("scale", "one minute");
+        assertEquals(serialiser.hash(new LLSD(forwards)), serialiser.hash(new LLSD(backwards)));
+        assertEquals(serialiser.hash(new LLSD(forwards)).asLong(), serialiser.hash64(new LLSD(backwards)));
+        assertFalse(serialiser.hash(new LLSD(forwards)).equals(serialiser.hash(new LLSD("one minute"))));
+
+        // The hash is that of the canonical text, written in odd pieces.
+        encoded = serialiser.serialiseCanonical(new LLSD(forwards));
+        bytes = Arrays.copyOfRange(encoded.array(), encoded.position(), encoded.limit());
+        hasher.write(bytes[0]);
+        hasher.write(bytes, 1, 7);
+        hasher.write(bytes, 8, bytes.length - 8);
+        assertEquals(hasher.finish(), serialiser.hash(new LLSD(forwards)));
+
+        // MurmurHash3 x64 128 reference values.
+        assertEquals("00000000000000000000000000000000", new LLSDHasher().finish().toString());
+        final LLSDHasher fox = new LLSDHasher();
+
+        fox.write("The quick brown fox jumps over the lazy dog".getBytes("US-ASCII"));
+        assertEquals("6c1b07bc7bbc4be347939ac4a93c437a", fox.finish().toString());
+    }
+
+    private static String serialise(final LLSDXMLOptions options, final Object content) throws Exception {
+        final ByteBuffer encoded = new LLSDXMLSerialiser(options).serialise(new LLSD(content));
+
+        return new String(encoded.array(), encoded.position(), encoded.remaining(), "UTF-8");
+    }
+
+    public void testLayouts() throws Exception {
+        final Map<String, Object> content = new LinkedHashMap<String, Object>();
+        final Map<String, Object> nested = new LinkedHashMap<String, Object>();
+
+        nested.put("deep", Arrays.asList((Object) 1, Collections.emptyList()));
+        content.put("a", true);
+        content.put("b", nested);
+
+        assertEquals(new String(expected(content), "UTF-8"), serialise(LLSDXMLOptions.DEFAULT, content));
+        assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?><llsd><map><key>a</key><boolean>true</boolean>"
+            + "<key>b</key><map><key>deep</key><array><integer>1</integer><array></array></array></map>"
+            + "</map></llsd>", serialise(LLSDXMLOptions.COMPACT, content));
+        assertEquals("<llsd><string>x</string></llsd>",
+            serialise(LLSDXMLOptions.COMPACT.withProlog(false), "x"));
+        assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<llsd>\n"
+            + "<map>\n"
+            + "\t<key>a</key>\n"
+            + "\t<boolean>true</boolean>\n"
+            + "\t<key>b</key>\n"
+            + "\t<map>\n"
+            + "\t\t<key>deep</key>\n"
+            + "\t\t<array>\n"
+            + "\t\t\t<integer>1</integer>\n"
+            + "\t\t\t<array>\n"
+            + "\t\t\t</array>\n"
+            + "\t\t</array>\n"
+            + "\t</map>\n"
+            + "</map>\n"
+            + "</llsd>\n", serialise(LLSDXMLOptions.PRETTY, content));
+        assertEquals("<llsd>\n<undef />\n</llsd>\n",
+            serialise(LLSDXMLOptions.DEFAULT.withProlog(false), LLSDUndef.UNDEF));
+
+        assertSame(LLSDXMLOptions.PRETTY, LLSDXMLOptions.PRETTY.withProlog(false).withProlog(true));
+        assertTrue(LLSDXMLOptions.COMPACT.isCompact());
+        assertFalse(LLSDXMLOptions.COMPACT.withProlog(false).hasProlog());
+        for (LLSDXMLOptions options: new LLSDXMLOptions[] {LLSDXMLOptions.COMPACT, LLSDXMLOptions.PRETTY,
+                LLSDXMLOptions.PRETTY.withProlog(false)}) {
+            assertEquals(options.toString(), content, new LLSDParser().parse(new java.io.ByteArrayInputStream(
+                serialise(options, content).getBytes("UTF-8"))).getContent());
+        }
+    }
+
+    public void testLayoutsOfWritersAndFrozen() throws Exception {
+        final LLSDXMLSerialiser serialiser = new LLSDXMLSerialiser(LLSDXMLOptions.PRETTY);
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final Map<String, Object> content = new LinkedHashMap<String, Object>();
+        final List<Object> items = new ArrayList<Object>();
+        final LLSDFrozen frozen;
+
+        for (int i = 0; i < 200; i++) {
+            items.add(Collections.singletonMap("item", i));
+        }
+        content.put("items", items);
+
+        final LLSDXMLWriter writer = serialiser.writer(output);
+
+        writer.beginMap().key("items").beginArray();
+        for (Object item: items) {
+            writer.value(item);
+        }
+        writer.endArray().endMap().close();
+        assertEquals(serialise(LLSDXMLOptions.PRETTY, content), output.toString("UTF-8"));
+
+        // Frozen documents are written in each layout, and cached in the
+        // compact one.
+        frozen = new LLSD(content).freeze(new LLSDEncodingCache(1024 * 1024));
+        assertEquals(serialise(LLSDXMLOptions.PRETTY, content),
+            new String(bytes(serialiser.serialise(frozen)), "UTF-8"));
+        assertEquals(serialise(LLSDXMLOptions.COMPACT, content),
+            new String(bytes(frozen.encoded(LLSDFormat.COMPACT_XML)), "UTF-8"));
+        assertEquals(serialise(LLSDXMLOptions.COMPACT.withProlog(false), content),
+            new String(bytes(new LLSDXMLSerialiser(LLSDXMLOptions.COMPACT.withProlog(false)).serialise(frozen)), "UTF-8"));
+    }
+
+    private static byte[] bytes(final ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.remaining()];
+
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,166 @@
+package lindenlab.llsd;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.*;
+import java.util.stream.IntStream;
+
+public class LLSDXMLWriterTest extends TestCase {
+    /**
+     * Channel which records the size of each write, and accepts at most a
+     * few bytes per call as a slow consumer might.
+     */
+    private static final class RecordingChannel implements WritableByteChannel {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int largestWrite = 0;
+        int writes = 0;
+
+        @Override
+        public int write(final ByteBuffer source) {
+            final int length = Math.min(source.remaining(), 1000);
+            final byte[] chunk = new byte[length];
+
+            largestWrite = Math.max(largestWrite, source.remaining());
+            writes++;
+            source.get(chunk);
+            bytes.write(chunk, 0, length);
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static String expected(final Object content) throws Exception {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final Writer writer = new OutputStreamWriter(output, "UTF-8");
+
+        new LLSD(content).serialise(writer, "UTF-8");
+        writer.flush();
+        return output.toString("UTF-8");
+    }
+
+    public void testMatchesSerialise() throws Exception {
+        final Map<String, Object> content = new LinkedHashMap<String, Object>();
+        final List<Object> items = new ArrayList<Object>();
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final LLSDXMLWriter writer = new LLSDXMLSerialiser().writer(output);
+
+        items.add(UUID.fromString("67153d5b-3659-afb4-8510-adda2c034649"));
+        items.add(Collections.singletonMap("name", "a-b <c>"));
+        items.add(new Date(1200000000123L));
+        items.add(Arrays.asList((Object) 1, 2.5));
+        content.put("id", 42);
+        content.put("fps", 44.38898);
+        content.put("ok", Boolean.TRUE);
+        content.put("home", new URI("http://example.com/"));
+        content.put("data", new byte[] {0, 1, 2});
+        content.put("items", items);
+        content.put("empty", new ArrayList<Object>());
+        content.put("nothing", LLSDUndefined.STRING);
+
+        writer.beginMap()
+            .key("id").value(42)
+            .key("fps").value(44.38898)
+            .key("ok").value(true)
+            .key("home").value(new URI("http://example.com/"))
+            .key("data").value(new byte[] {0, 1, 2})
+            .key("items").beginArray()
+            .values(items.subList(0, 2).iterator())
+            .value(items.get(2))
+            .beginArray().value(1).value(2.5).endArray()
+            .endArray()
+            .key("empty").beginArray().endArray()
+            .entries(Collections.singletonMap("nothing", LLSDUndefined.STRING).entrySet().iterator())
+            .endMap();
+        writer.close();
+        assertEquals(expected(content), output.toString("UTF-8"));
+
+        output.reset();
+        new LLSDXMLSerialiser().writer(output).close();
+        assertEquals(expected(null), output.toString("UTF-8"));
+    }
+
+    public void testBoundedWrites() throws Exception {
+        final RecordingChannel channel = new RecordingChannel();
+        final List<Object> items = new ArrayList<Object>();
+
+        try (LLSDXMLWriter writer = new LLSDXMLSerialiser().writer(channel)) {
+            writer.beginArray();
+            writer.values(IntStream.range(0, 20000).mapToObj(i -> "item " + i));
+            writer.endArray();
+        }
+        for (int i = 0; i < 20000; i++) {
+            items.add("item " + i);
+        }
+        assertEquals(expected(items), channel.bytes.toString("UTF-8"));
+        assertTrue(channel.largestWrite <= LLSDOutputBuffer.STREAM_BUFFER_SIZE);
+        assertTrue(channel.writes > 100);
+    }
+
+    public void testMisuse() throws Exception {
+        final LLSDXMLWriter writer = new LLSDXMLSerialiser().writer(new ByteArrayOutputStream());
+
+        try {
+            writer.key("a");
+            fail("Expected LLSDException");
+        } catch (LLSDException e) {
+            // expected
+        }
+        writer.beginMap();
+        try {
+            writer.value(1);
+            fail("Expected LLSDException");
+        } catch (LLSDException e) {
+            // expected
+        }
+        try {
+            writer.endArray();
+            fail("Expected LLSDException");
+        } catch (LLSDException e) {
+            // expected
+        }
+        writer.key("a");
+        try {
+            writer.endMap();
+            fail("Expected LLSDException");
+        } catch (LLSDException e) {
+            // expected
+        }
+        try {
+            writer.value((Object) null);
+            fail("Expected LLSDException");
+        } catch (LLSDException e) {
+            // expected
+        }
+        try {
+            writer.close();
+            fail("Expected IOException");
+        } catch (IOException e) {
+            // expected
+        }
+
+        final LLSDXMLWriter single = new LLSDXMLSerialiser().writer(new ByteArrayOutputStream());
+
+        single.value("one");
+        try {
+            single.value("two");
+            fail("Expected LLSDException");
+        } catch (LLSDException e) {
+            // expected
+        }
+    }
+}